@@ -60,3 +60,28 @@ dependencies {
     // For ActivityResult APIs
     implementation("androidx.activity:activity-ktx:1.9.0")
 }
+
+// Benchmarks time or measure rather than check behaviour, so the unit test tasks leave them out.
+// ./gradlew benchmark runs only them, against the debug unit tests, and keeps their results in
+// build/reports/benchmarks.txt
+tasks.withType<Test>().configureEach {
+    if (name != "benchmark") {
+        useJUnit { excludeCategories("com.example.shopping_basket.Benchmark") }
+    }
+}
+
+tasks.register<Test>("benchmark") {
+    description = "Runs the unit test benchmarks."
+    group = "verification"
+    val unitTests = tasks.named<Test>("testDebugUnitTest").get()
+    testClassesDirs = unitTests.testClassesDirs
+    classpath = unitTests.classpath
+    useJUnit { includeCategories("com.example.shopping_basket.Benchmark") }
+    val report = layout.buildDirectory.file("reports/benchmarks.txt").get().asFile
+    systemProperty("benchmark.report", report.path)
+    doFirst {
+        report.parentFile.mkdirs()
+        report.delete()
+    }
+    outputs.upToDateWhen { false }
+}
@@ -0,0 +1,66 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Decodes posters through {@link PosterDecoder} on a device and checks the memory each bitmap
+ * really takes against what {@link PosterSampling} estimates for it.
+ * Poster sizes are multiples of the sample sizes, so no decoder rounding is involved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PosterDecoderTest {
+    private final PosterDecoder decoder = new PosterDecoder();
+
+    private static byte[] encode(int width, int height, Bitmap.CompressFormat format, int color) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(format, 90, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testThumbnailAllocationMatchesEstimate() {
+        // A large poster from before they were resized, in a 360x180 card at xhdpi
+        byte[] jpeg = encode(2048, 1536, Bitmap.CompressFormat.JPEG, Color.BLUE);
+        Bitmap thumbnail = decoder.decode(jpeg, 720, 360);
+        assertNotNull(thumbnail);
+
+        int sampleSize = PosterSampling.sampleSize(2048, 1536, 720, 360);
+        assertEquals(2, sampleSize);
+        assertEquals(Bitmap.Config.RGB_565, thumbnail.getConfig());
+        assertEquals(PosterSampling.allocationBytes(2048, 1536, sampleSize, PosterSampling.BYTES_PER_PIXEL_OPAQUE),
+                thumbnail.getAllocationByteCount());
+
+        // Against the same poster decoded in full, the way it was before
+        Bitmap full = decoder.decode(jpeg, 0, 0);
+        assertNotNull(full);
+        assertEquals(2048 * 1536 * PosterSampling.BYTES_PER_PIXEL_OPAQUE, full.getAllocationByteCount());
+        long unsampled = PosterSampling.allocationBytes(2048, 1536, 1, PosterSampling.BYTES_PER_PIXEL_ALPHA);
+        assertTrue(thumbnail.getAllocationByteCount() * 8L <= unsampled);
+    }
+
+    @Test
+    public void testTransparentPosterKeepsAlpha() {
+        byte[] png = encode(512, 384, Bitmap.CompressFormat.PNG, Color.TRANSPARENT);
+        Bitmap thumbnail = decoder.decode(png, 256, 192);
+        assertNotNull(thumbnail);
+
+        assertEquals(Bitmap.Config.ARGB_8888, thumbnail.getConfig());
+        assertEquals(PosterSampling.allocationBytes(512, 384, 2, PosterSampling.BYTES_PER_PIXEL_ALPHA),
+                thumbnail.getAllocationByteCount());
+    }
+}
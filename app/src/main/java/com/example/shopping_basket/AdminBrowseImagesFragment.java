@@ -35,17 +35,22 @@ import java.util.Map;
  * AdminBrowseImagesFragment
  *
  * Admin screen that shows all event posters.
- * Posters are stored as fields inside the "events" documents:
+ * Poster fields are stored inside the "events" documents:
  *  - hasPoster (boolean)
- *  - posterBase64 (string)
+ *  - posterHash (string, the poster's document in the "posters" collection)
+ *  - thumbnailHash (string, the smaller rendition shown here, if the poster has one)
+ *  - posterBase64 (string, only on events not migrated yet)
+ *  - posterSize (number, bytes)
  *  - posterUploaderName (string)
  *
- * We query "events" where hasPoster == true, decode Base64, and display.
+ * We page through "events" where hasPoster == true, keeping only each poster's
+ * metadata; the images are loaded by the adapter as they scroll into view.
  */
 public class AdminBrowseImagesFragment extends Fragment {
 
     private static final String TAG = "AdminBrowseImagesFrag";
     private static final String EVENTS_COLLECTION = "events";
+    private static final int PAGE_SIZE = 20;
 
     private RecyclerView recyclerView;
     private ImageRecyclerViewAdapter adapter;
@@ -53,6 +58,12 @@ public class AdminBrowseImagesFragment extends Fragment {
     private FirebaseFirestore db;
     private MenuProvider menuProvider;   // for showing the Admin button
 
+    // Paging state: the last document loaded, and whether a page is on its way or all are loaded
+    private DocumentSnapshot lastLoaded;
+    private boolean loadingPage = false;
+    private boolean allLoaded = false;
+    private int pageGeneration = 0;   // pages requested for an earlier list are dropped
+
     public AdminBrowseImagesFragment() {
         // Required empty public constructor
     }
@@ -72,8 +83,21 @@ public class AdminBrowseImagesFragment extends Fragment {
         Context context = view.getContext();
         recyclerView.setLayoutManager(new LinearLayoutManager(context));
 
+        // Start from the first page each time the list is shown
+        posters.clear();
+        lastLoaded = null;
+        loadingPage = false;
+        allLoaded = false;
+        pageGeneration++;
+
         adapter = new ImageRecyclerViewAdapter(posters, this::confirmDeletePoster);
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                checkPrefetch();
+            }
+        });
 
         return view;
     }
@@ -91,7 +115,7 @@ public class AdminBrowseImagesFragment extends Fragment {
         // Show the Admin toolbar button on this screen
         setupMenu();
 
-        loadPosters();
+        loadNextPage();
     }
 
     /**
@@ -129,41 +153,51 @@ public class AdminBrowseImagesFragment extends Fragment {
     }
 
     /**
-     * Loads posters directly from the "events" collection.
-     * We only care about events where hasPoster == true.
+     * Loads the next page of poster metadata and appends it to the list.
      */
-    private void loadPosters() {
-        db.collection(EVENTS_COLLECTION)
-                .whereEqualTo("hasPoster", true)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    posters.clear();
-
-                    for (DocumentSnapshot doc : queryDocumentSnapshots) {
-                        String eventId = doc.getString("eventId");
-                        if (eventId == null || eventId.isEmpty()) {
-                            eventId = doc.getId(); // fallback
-                        }
-
-                        String name = doc.getString("name");
-                        String base64 = doc.getString("posterBase64");
-                        String uploaderName = doc.getString("posterUploaderName");
-
-                        if (base64 == null || base64.isEmpty()) {
-                            continue; // nothing to display
-                        }
-
-                        posters.add(new EventPoster(eventId, name, base64, uploaderName));
-                    }
+    private void loadNextPage() {
+        if (loadingPage || allLoaded) {
+            return;
+        }
+        loadingPage = true;
+        int generation = pageGeneration;
+        PosterRepository.getPosterPage(lastLoaded, PAGE_SIZE, (page, legacyPosters, last, error) -> {
+            if (generation != pageGeneration) {
+                return;
+            }
+            loadingPage = false;
+            if (!isAdded() || recyclerView == null) {
+                return;
+            }
+            if (error != null) {
+                // Keep the cursor so the next scroll retries the same page
+                Toast.makeText(getContext(), "Failed to load posters.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            // On disk before their rows are bound, so they are not read from Firestore again
+            PosterCache.getInstance(requireContext()).putLegacy(legacyPosters);
+            lastLoaded = last;
+            allLoaded = last == null;
+            int start = posters.size();
+            posters.addAll(page);
+            adapter.notifyItemRangeInserted(start, page.size());
+            // A short list may not scroll at all, so check whether more is needed to fill it
+            recyclerView.post(this::checkPrefetch);
+        });
+    }
 
-                    adapter.notifyDataSetChanged();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading posters", e);
-                    if (getContext() != null) {
-                        Toast.makeText(getContext(), "Failed to load posters.", Toast.LENGTH_SHORT).show();
-                    }
-                });
+    /**
+     * Requests the next page once the last visible poster is close to the end of the list.
+     */
+    private void checkPrefetch() {
+        if (recyclerView == null) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager != null
+                && layoutManager.findLastVisibleItemPosition() + EventFeed.PREFETCH_DISTANCE >= posters.size() - 1) {
+            loadNextPage();
+        }
     }
 
     private void confirmDeletePoster(EventPoster poster) {
@@ -181,6 +215,7 @@ public class AdminBrowseImagesFragment extends Fragment {
 
     /**
      * Clears the poster fields on the related event document.
+     * The poster itself stays in the "posters" collection, since other events may share it.
      */
     private void deletePoster(EventPoster poster) {
         if (db == null || getContext() == null) return;
@@ -191,17 +226,26 @@ public class AdminBrowseImagesFragment extends Fragment {
             return;
         }
 
+        PosterCache posterCache = PosterCache.getInstance(requireContext());
         Map<String, Object> updates = new HashMap<>();
         updates.put("hasPoster", false);
-        updates.put("posterBase64", FieldValue.delete());
+        updates.put(PosterRepository.LEGACY_POSTER_FIELD, FieldValue.delete());
+        updates.put(PosterRepository.POSTER_HASH, FieldValue.delete());
+        updates.put(PosterRepository.THUMBNAIL_HASH, FieldValue.delete());
+        updates.put(PosterRepository.POSTER_SIZE, FieldValue.delete());
         updates.put("posterUploaderId", FieldValue.delete());
         updates.put("posterUploaderName", FieldValue.delete());
+        updates.put(EventRepository.UPDATED_AT, FieldValue.serverTimestamp());
 
         db.collection(EVENTS_COLLECTION).document(eventId)
                 .update(updates)
                 .addOnSuccessListener(aVoid -> {
-                    posters.remove(poster);
-                    adapter.notifyDataSetChanged();
+                    posterCache.remove(eventId);
+                    int index = posters.indexOf(poster);
+                    if (index >= 0) {
+                        posters.remove(index);
+                        adapter.notifyItemRemoved(index);
+                    }
                     Toast.makeText(getContext(), "Poster removed.", Toast.LENGTH_SHORT).show();
                 })
                 .addOnFailureListener(e -> {
@@ -213,6 +257,7 @@ public class AdminBrowseImagesFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        recyclerView = null;
         // Clean up the menu provider so we don't leak it
         if (menuProvider != null) {
             requireActivity().removeMenuProvider(menuProvider);
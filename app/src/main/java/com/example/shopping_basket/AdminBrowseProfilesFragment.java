@@ -22,8 +22,6 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -47,7 +45,6 @@ public class AdminBrowseProfilesFragment extends Fragment {
     private RecyclerView recyclerView;
     private UserProfileRecyclerViewAdapter adapter;
     private final List<Profile> profiles = new ArrayList<>();
-    private FirebaseFirestore db;
     private MenuProvider menuProvider;   // for showing the Admin button
 
     public AdminBrowseProfilesFragment() {
@@ -65,7 +62,6 @@ public class AdminBrowseProfilesFragment extends Fragment {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        db = FirebaseFirestore.getInstance();
 
         if (getArguments() != null) {
             mColumnCount = getArguments().getInt(ARG_COLUMN_COUNT);
@@ -150,24 +146,17 @@ public class AdminBrowseProfilesFragment extends Fragment {
      * Fetches all profiles from the "profiles" collection and displays them.
      */
     private void loadProfiles() {
-        db.collection("profiles").get().addOnSuccessListener(queryDocumentSnapshots -> {
-            profiles.clear();
-            for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                Profile profile = document.toObject(Profile.class);
-
-                // Ensure the guid field is set even if it wasn't stored explicitly.
-                if (profile.getGuid() == null || profile.getGuid().isEmpty()) {
-                    profile.setGuid(document.getId());
+        ProfileRepository.getAllProfiles((loaded, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Error loading profiles", error);
+                if (getContext() != null) {
+                    Toast.makeText(getContext(), "Failed to load profiles. Please try again.", Toast.LENGTH_SHORT).show();
                 }
-
-                profiles.add(profile);
+                return;
             }
+            profiles.clear();
+            profiles.addAll(loaded);
             adapter.notifyDataSetChanged();
-        }).addOnFailureListener(e -> {
-            Log.e(TAG, "Error loading profiles", e);
-            if (getContext() != null) {
-                Toast.makeText(getContext(), "Failed to load profiles. Please try again.", Toast.LENGTH_SHORT).show();
-            }
         });
     }
 
@@ -199,7 +188,7 @@ public class AdminBrowseProfilesFragment extends Fragment {
      * Implements US 03.02.01 – Remove profiles (admin).
      */
     private void deleteProfile(Profile profile) {
-        if (db == null || getContext() == null) {
+        if (getContext() == null) {
             return;
         }
 
@@ -209,17 +198,16 @@ public class AdminBrowseProfilesFragment extends Fragment {
             return;
         }
 
-        db.collection("profiles").document(guid)
-                .delete()
-                .addOnSuccessListener(aVoid -> {
-                    profiles.remove(profile);
-                    adapter.notifyDataSetChanged();
-                    Toast.makeText(getContext(), "Profile deleted.", Toast.LENGTH_SHORT).show();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error deleting profile", e);
-                    Toast.makeText(getContext(), "Failed to delete profile. Please try again.", Toast.LENGTH_SHORT).show();
-                });
+        ProfileRepository.deleteProfile(guid, error -> {
+            if (error == null) {
+                profiles.remove(profile);
+                adapter.notifyDataSetChanged();
+                Toast.makeText(getContext(), "Profile deleted.", Toast.LENGTH_SHORT).show();
+            } else {
+                Log.e(TAG, "Error deleting profile", error);
+                Toast.makeText(getContext(), "Failed to delete profile. Please try again.", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
@@ -118,10 +118,10 @@ public class AdminEventDetailFragment extends Fragment {
         String waitlistSummary = String.format(
                 Locale.US,
                 "Waiting: %d • Invited: %d • Enrolled: %d • Cancelled: %d",
-                event.getWaitingList() != null ? event.getWaitingList().size() : 0,
-                event.getInviteList() != null ? event.getInviteList().size() : 0,
-                event.getEnrollList() != null ? event.getEnrollList().size() : 0,
-                event.getCancelList() != null ? event.getCancelList().size() : 0
+                event.getWaitingCount(),
+                event.getInvitedCount(),
+                event.getEnrolledCount(),
+                event.getCancelledCount()
         );
         binding.detailWaitlistMessage.setText(waitlistSummary);
 
@@ -187,6 +187,14 @@ public class AdminEventDetailFragment extends Fragment {
 
         FirebaseFirestore.getInstance().collection("events").document(event.getEventId())
             .delete().addOnSuccessListener(aVoid -> {Log.d(TAG, "Event deleted by admin: " + event.getEventId());
+            // Drop it from this device's cached feed straight away; other devices find it gone when they revalidate
+            EventDiskCache eventCache = EventRepository.getEventCache(requireContext());
+            String eventId = event.getEventId();
+            HomeFragment.cacheExecutor.execute(() -> {
+                eventCache.remove(eventId);
+                eventCache.save();
+            });
+            PosterCache.getInstance(requireContext()).remove(event.getEventId());
             Toast.makeText(getContext(), "Event deleted successfully.", Toast.LENGTH_SHORT).show();
             NavHostFragment.findNavController(this).popBackStack();})
             .addOnFailureListener(e -> {Log.e(TAG, "Failed to delete event: " + e.getMessage(), e);
@@ -11,6 +11,7 @@ import androidx.navigation.fragment.NavHostFragment;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentAdminMenuBinding;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
@@ -81,6 +82,70 @@ public class AdminMenuFragment extends Fragment {
                     .navigate(R.id.action_adminMenuFragment_to_inboxFragment);
         });
 
+        // Rebuilds the user -> events index used by the registered events screen
+        binding.buttonAdminCheckRegistrations.setOnClickListener(v -> {
+            binding.buttonAdminCheckRegistrations.setEnabled(false);
+            EntrantRepository.checkRegistrationIndex(true, (mismatches, error) -> {
+                if (binding != null) {
+                    binding.buttonAdminCheckRegistrations.setEnabled(true);
+                }
+                if (getContext() == null) return;
+                if (error != null) {
+                    Toast.makeText(getContext(), "Failed to check registration index.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getContext(), "Repaired " + mismatches.size() + " events.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+
+        // Moves the participation lists still embedded in event documents into entrant subcollections
+        binding.buttonAdminMigrateEntrants.setOnClickListener(v -> {
+            binding.buttonAdminMigrateEntrants.setEnabled(false);
+            EntrantRepository.migrateAllEvents((migratedEvents, error) -> {
+                if (binding != null) {
+                    binding.buttonAdminMigrateEntrants.setEnabled(true);
+                }
+                if (getContext() == null) return;
+                if (error != null) {
+                    Toast.makeText(getContext(), "Migrated " + migratedEvents + " events before failing.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getContext(), "Migrated " + migratedEvents + " events.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+
+        // Moves posters still stored as Base64 on event documents into the "posters" collection
+        binding.buttonAdminMigratePosters.setOnClickListener(v -> {
+            binding.buttonAdminMigratePosters.setEnabled(false);
+            PosterRepository.migrateAllPosters((migratedEvents, error) -> {
+                if (binding != null) {
+                    binding.buttonAdminMigratePosters.setEnabled(true);
+                }
+                if (getContext() == null) return;
+                if (error != null) {
+                    Toast.makeText(getContext(), "Migrated " + migratedEvents + " events before failing.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getContext(), "Migrated " + migratedEvents + " events.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+
+        // Writes the keyword search tokens of events saved before they were indexed
+        binding.buttonAdminIndexEvents.setOnClickListener(v -> {
+            binding.buttonAdminIndexEvents.setEnabled(false);
+            EventRepository.indexAllEvents((indexedEvents, error) -> {
+                if (binding != null) {
+                    binding.buttonAdminIndexEvents.setEnabled(true);
+                }
+                if (getContext() == null) return;
+                if (error != null) {
+                    Toast.makeText(getContext(), "Indexed " + indexedEvents + " events before failing.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getContext(), "Indexed " + indexedEvents + " events.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+
         binding.buttonAdminToHome.setOnClickListener(v -> {
             ProfileManager.getInstance().setAdminMode(false);
             NavHostFragment.findNavController(this).popBackStack();
@@ -0,0 +1,164 @@
+package com.example.shopping_basket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * This class decodes Base64 text as a stream, straight from the characters of the string
+ * holding it. Posters not migrated yet are read from Firestore as Base64 strings, and
+ * decoding one the usual way holds the string, a byte copy of it and the decoded bytes at
+ * the same time; streaming the string to disk or a decoder needs only a few small buffers.
+ * Line breaks and other whitespace are skipped, as Android's Base64.DEFAULT inserts them.
+ */
+public class Base64Stream extends InputStream {
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final CharSequence text;
+    private int position = 0;
+    // Bytes decoded from the last group of four characters, not read yet
+    private final byte[] group = new byte[3];
+    private int groupStart = 0;
+    private int groupEnd = 0;
+    private boolean ended = false;
+
+    /**
+     * Creates a stream over Base64 text
+     * @param text
+     *     the Base64 text; it is read in place, not copied
+     */
+    public Base64Stream(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Decodes Base64 text into an array of exactly the decoded size
+     * @param text
+     *     the Base64 text
+     * @return
+     *     the decoded bytes
+     * @throws IllegalArgumentException
+     *     if the text is not valid Base64
+     */
+    public static byte[] decode(CharSequence text) {
+        byte[] data = new byte[decodedLength(text)];
+        try (Base64Stream stream = new Base64Stream(text)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = stream.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            if (offset != data.length || stream.read() != -1) {
+                throw new IllegalArgumentException("Malformed Base64");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return data;
+    }
+
+    /**
+     * Gets the number of bytes Base64 text decodes to
+     * @param text
+     *     the Base64 text
+     * @return
+     *     the decoded length
+     */
+    public static int decodedLength(CharSequence text) {
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            if (!isWhitespace(c)) {
+                digits++;
+            }
+        }
+        return (int) ((long) digits * 3 / 4);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (groupStart == groupEnd && !fill()) {
+            return -1;
+        }
+        return group[groupStart++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int read = 0;
+        while (read < length) {
+            if (groupStart == groupEnd && !fill()) {
+                break;
+            }
+            int count = Math.min(length - read, groupEnd - groupStart);
+            System.arraycopy(group, groupStart, buffer, offset + read, count);
+            groupStart += count;
+            read += count;
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    // Decodes the next group of four characters; false at the end of the text
+    private boolean fill() throws IOException {
+        if (ended) {
+            return false;
+        }
+        int bits = 0;
+        int digits = 0;
+        while (digits < 4) {
+            int c = nextChar();
+            if (c < 0 || c == '=') {
+                ended = true;
+                break;
+            }
+            int value = c < VALUES.length ? VALUES[c] : -1;
+            if (value < 0) {
+                throw new IOException("Invalid Base64 character at " + (position - 1));
+            }
+            bits = (bits << 6) | value;
+            digits++;
+        }
+        if (digits == 1) {
+            throw new IOException("Truncated Base64");
+        }
+        // A short final group holds one or two bytes
+        bits <<= 6 * (4 - digits);
+        groupStart = 0;
+        groupEnd = digits * 3 / 4;
+        group[0] = (byte) (bits >> 16);
+        group[1] = (byte) (bits >> 8);
+        group[2] = (byte) bits;
+        return groupEnd > 0;
+    }
+
+    private int nextChar() {
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (!isWhitespace(c)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == '\n' || c == '\r' || c == ' ' || c == '\t';
+    }
+}
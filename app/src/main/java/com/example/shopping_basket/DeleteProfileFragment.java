@@ -17,7 +17,6 @@ import android.view.Window;
 import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentDeleteProfileBinding;
-import com.google.android.gms.tasks.OnFailureListener;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.WriteBatch;
@@ -135,23 +134,20 @@ public class DeleteProfileFragment extends DialogFragment {
      * On success, it clears local data and navigates to the signup screen.
      */
     private void deleteProfile(String userId) {
-        db.collection("profiles").document(userId)
-                .delete()
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Profile successfully deleted in Firestore for user: " + userId);
-                    // Clear the user's profile from the singleton immediately after deletion.
-                    ProfileManager.getInstance().clearUserProfile();
-                    Toast.makeText(getContext(), "Profile deleted.", Toast.LENGTH_SHORT).show();
-
-                    navigateToSignup();
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        Log.e(TAG, "Error deleting profile in Firestore", e);
-                        Toast.makeText(getContext(), "Failed to delete profile. Please try again.", Toast.LENGTH_SHORT).show();
-                    }
-                });
+        ProfileRepository.deleteProfile(userId, error -> {
+            if (error == null) {
+                Log.d(TAG, "Profile successfully deleted in Firestore for user: " + userId);
+                // Clear the user's profile from the singleton immediately after deletion.
+                ProfileManager.getInstance().clearUserProfile();
+                ProfileRepository.invalidateAll();
+                Toast.makeText(getContext(), "Profile deleted.", Toast.LENGTH_SHORT).show();
+
+                navigateToSignup();
+            } else {
+                Log.e(TAG, "Error deleting profile in Firestore", error);
+                Toast.makeText(getContext(), "Failed to delete profile. Please try again.", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     /**
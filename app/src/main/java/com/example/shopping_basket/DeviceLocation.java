@@ -0,0 +1,106 @@
+package com.example.shopping_basket;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Address;
+import android.location.Geocoder;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds locations as {@link Geohash}es: where the device is, for "near me" filtering, and
+ * where an event is, from the address its organizer typed.
+ * Only the last location the system already knows is used, so asking never waits for a fix
+ * or turns on the GPS. Coarse location is enough, since the smallest area searched is a few kilometers.
+ */
+public class DeviceLocation {
+    private static final String TAG = "DeviceLocation";
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Callback for a geocoded address; geohash is null if the address could not be found
+    public interface GeocodeCallback {
+        void onCallback(@Nullable String geohash);
+    }
+
+    /**
+     * Checks whether the app may read the device's approximate location.
+     *
+     * @param context The context to check the permission in.
+     * @return True if ACCESS_COARSE_LOCATION is granted.
+     */
+    public static boolean hasPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Gets the most recent location known to any enabled provider.
+     *
+     * @param context The context to get the location service from.
+     * @return The geohash of the location, or null without permission or a known location.
+     */
+    public static String lastKnownGeohash(Context context) {
+        if (!hasPermission(context)) {
+            return null;
+        }
+        LocationManager manager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        if (manager == null) {
+            return null;
+        }
+        Location latest = null;
+        try {
+            for (String provider : manager.getProviders(true)) {
+                Location location = manager.getLastKnownLocation(provider);
+                if (location != null && (latest == null || location.getTime() > latest.getTime())) {
+                    latest = location;
+                }
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission was revoked", e);
+            return null;
+        }
+        if (latest == null) {
+            return null;
+        }
+        return Geohash.encode(latest.getLatitude(), latest.getLongitude(), Geohash.PRECISION);
+    }
+
+    /**
+     * Looks up an address on a background thread, since the geocoder may go to the network.
+     *
+     * @param context The context to create the geocoder with.
+     * @param address The address as typed, such as "Rutherford Library, Edmonton".
+     * @param callback The callback that will be invoked on the main thread with the geohash of the first match.
+     */
+    public static void geocode(Context context, String address, GeocodeCallback callback) {
+        Geocoder geocoder = new Geocoder(context.getApplicationContext(), Locale.getDefault());
+        executor.execute(() -> {
+            String geohash = null;
+            try {
+                List<Address> matches = geocoder.getFromLocationName(address, 1);
+                if (matches != null && !matches.isEmpty()) {
+                    Address match = matches.get(0);
+                    geohash = Geohash.encode(match.getLatitude(), match.getLongitude(), Geohash.PRECISION);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "Could not geocode " + address, e);
+            }
+            String result = geohash;
+            mainHandler.post(() -> callback.onCallback(result));
+        });
+    }
+}
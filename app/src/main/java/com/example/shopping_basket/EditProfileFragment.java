@@ -15,7 +15,6 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.DialogFragment;
 
 import com.example.shopping_basket.databinding.FragmentEditProfileBinding;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -42,7 +41,6 @@ public class EditProfileFragment extends DialogFragment {
     private static final String TAG = "EditProfileFragment";
     private FragmentEditProfileBinding binding;
     private Profile currentUser;
-    private FirebaseFirestore db;
 
     /**
      * Default public constructor.
@@ -54,7 +52,7 @@ public class EditProfileFragment extends DialogFragment {
 
     /**
      * Called when the fragment is first created.
-     * Initializes the {@code currentUser} from {@link ProfileManager} and the {@code db} Firestore instance.
+     * Initializes the {@code currentUser} from {@link ProfileManager}.
      *
      * @param savedInstanceState If the fragment is being re-created from a previous saved state, this is the state.
      */
@@ -62,7 +60,6 @@ public class EditProfileFragment extends DialogFragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         currentUser = ProfileManager.getInstance().getCurrentUserProfile();
-        db = FirebaseFirestore.getInstance();
     }
 
 
@@ -172,23 +169,22 @@ public class EditProfileFragment extends DialogFragment {
 
         String userId = currentUser.getGuid();
 
-        db.collection("profiles").document(userId)
-                .update(updatedData)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Profile successfully updated in Firestore for user: " + userId);
-                    currentUser.setName(newName);
-                    currentUser.setEmail(newEmail);
-                    currentUser.setPhone(newPhone);
-                    ProfileManager.getInstance().setCurrentUserProfile(currentUser);
-
-                    getParentFragmentManager().setFragmentResult("profile-edited", new Bundle());
-                    Toast.makeText(getContext(), "Profile updated!", Toast.LENGTH_SHORT).show();
-                    dismiss(); // Close the dialog on success
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error updating profile in Firestore", e);
-                    Toast.makeText(getContext(), "Failed to update profile. Please try again.", Toast.LENGTH_SHORT).show();
-                });
+        ProfileRepository.updateFields(userId, updatedData, error -> {
+            if (error == null) {
+                Log.d(TAG, "Profile successfully updated in Firestore for user: " + userId);
+                currentUser.setName(newName);
+                currentUser.setEmail(newEmail);
+                currentUser.setPhone(newPhone);
+                ProfileManager.getInstance().setCurrentUserProfile(currentUser);
+
+                getParentFragmentManager().setFragmentResult("profile-edited", new Bundle());
+                Toast.makeText(getContext(), "Profile updated!", Toast.LENGTH_SHORT).show();
+                dismiss(); // Close the dialog on success
+            } else {
+                Log.e(TAG, "Error updating profile in Firestore", error);
+                Toast.makeText(getContext(), "Failed to update profile. Please try again.", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     /**
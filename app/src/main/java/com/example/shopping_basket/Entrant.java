@@ -0,0 +1,60 @@
+package com.example.shopping_basket;
+
+import com.google.firebase.firestore.ServerTimestamp;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * This class defines an entrant document stored at events/{eventId}/entrants/{guid}
+ * for events that keep their participation lists in a subcollection
+ */
+public class Entrant implements Serializable {
+    private String guid;
+    private Profile profile;
+    private EntrantStatus status;
+    // When the entrant joined the waiting list; left null on registration so the server fills it
+    // in, then carried over on every later move. Orders entrants for FAVOUR_EARLY_REGISTRATION
+    @ServerTimestamp
+    private Date registeredAt;
+
+    public Entrant() {}
+
+    public Entrant(Profile profile, EntrantStatus status){
+        this.guid = profile.getGuid();
+        this.profile = profile;
+        this.status = status;
+    }
+
+    public String getGuid() {
+        return guid;
+    }
+
+    public void setGuid(String guid) {
+        this.guid = guid;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    public EntrantStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(EntrantStatus status) {
+        this.status = status;
+    }
+
+    public Date getRegisteredAt() {
+        return registeredAt;
+    }
+
+    public void setRegisteredAt(Date registeredAt) {
+        this.registeredAt = registeredAt;
+    }
+}
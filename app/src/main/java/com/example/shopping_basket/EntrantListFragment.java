@@ -15,6 +15,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ListView;
 import android.widget.Toast;
 
@@ -33,6 +34,13 @@ public class EntrantListFragment extends Fragment {
     private EntrantListAdapter adapter;
     private String entrantListTitle;
     private MenuProvider menuProvider;
+    // Paging state: the statuses shown in this list, the one being loaded, and the cursor within it
+    private static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_DISTANCE = 10;
+    private EntrantStatus[] statuses = new EntrantStatus[0];
+    private int statusIndex = 0;
+    private String cursor;
+    private boolean loadingPage = false;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -73,28 +81,38 @@ public class EntrantListFragment extends Fragment {
 
         switch (entrantListTitle) {
             case "All":
-                profiles = new ArrayList<>(); // Use a new list to avoid modifying original lists
-                profiles.addAll(event.getWaitingList());
-                profiles.addAll(event.getEnrollList());
-                profiles.addAll(event.getCancelList());
+                statuses = new EntrantStatus[]{EntrantStatus.WAITING, EntrantStatus.ENROLLED, EntrantStatus.CANCELLED};
                 break;
             case "Enrolled":
-                profiles = event.getEnrollList();
+                statuses = new EntrantStatus[]{EntrantStatus.ENROLLED};
                 break;
             case "Invited":
-                profiles = event.getInviteList();
+                statuses = new EntrantStatus[]{EntrantStatus.INVITED};
                 break;
             case "Waiting":
-                profiles = event.getWaitingList();
+                statuses = new EntrantStatus[]{EntrantStatus.WAITING};
                 break;
             case "Cancelled":
-                profiles = event.getCancelList();
+                statuses = new EntrantStatus[]{EntrantStatus.CANCELLED};
                 break;
         }
-        adapter = new EntrantListAdapter(this.getContext(), profiles);
-
+        profiles = new ArrayList<>(); // Filled page by page as the list is scrolled
         adapter = new EntrantListAdapter(requireContext(), profiles);
         binding.entrantList.setAdapter(adapter);
+        binding.entrantList.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                // Fetch the next page once the end of the loaded entrants comes into view
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - PREFETCH_DISTANCE) {
+                    loadNextPage(null);
+                }
+            }
+        });
+        loadNextPage(null);
 
         if (getActivity() instanceof AppCompatActivity) {
             ((AppCompatActivity) getActivity()).getSupportActionBar().setTitle(entrantListTitle + " Entrants");
@@ -126,8 +144,11 @@ public class EntrantListFragment extends Fragment {
             @Override
             public boolean onMenuItemSelected(@NonNull MenuItem menuItem) {
                 if (menuItem.getItemId() == R.id.action_export_csv) {
-                    ExportEntrantListFragment dialog = ExportEntrantListFragment.newInstance(profiles, event);
-                    dialog.show(getParentFragmentManager(), "ExportEntrantListFragment");
+                    // The export needs every entrant, not just the pages scrolled so far
+                    loadAllPages(() -> {
+                        ExportEntrantListFragment dialog = ExportEntrantListFragment.newInstance(profiles, event);
+                        dialog.show(getParentFragmentManager(), "ExportEntrantListFragment");
+                    });
                     return true;
                 }
                 return false;
@@ -136,6 +157,55 @@ public class EntrantListFragment extends Fragment {
         requireActivity().addMenuProvider(menuProvider, getViewLifecycleOwner(), Lifecycle.State.RESUMED);
     }
 
+    /**
+     * Loads the next page of entrants through {@link Event#loadEntrants}, moving on to the
+     * next status once the current one is exhausted. Only one page is requested at a time.
+     *
+     * @param onLoaded Run after the page has been added, or null. Not run if the page failed to load.
+     */
+    private void loadNextPage(@Nullable Runnable onLoaded) {
+        if (loadingPage || statusIndex >= statuses.length) {
+            return;
+        }
+        loadingPage = true;
+        event.loadEntrants(statuses[statusIndex], cursor, PAGE_SIZE, EntrantRepository::loadPage, (page, nextCursor, error) -> {
+            loadingPage = false;
+            if (error != null) {
+                // The cursor is kept, so scrolling again retries the same page
+                if (getContext() != null) {
+                    Toast.makeText(getContext(), "Failed to load entrants.", Toast.LENGTH_SHORT).show();
+                }
+                return;
+            }
+            profiles.addAll(page);
+            cursor = nextCursor;
+            if (nextCursor == null) {
+                statusIndex++;
+            }
+            if (adapter != null) {
+                adapter.notifyDataSetChanged();
+            }
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+        });
+    }
+
+    /**
+     * Keeps loading pages until every entrant in the list has been loaded.
+     *
+     * @param done Run once the list is complete.
+     */
+    private void loadAllPages(Runnable done) {
+        if (statusIndex >= statuses.length) {
+            done.run();
+        } else if (!loadingPage) {
+            loadNextPage(() -> loadAllPages(done));
+        } else {
+            Toast.makeText(getContext(), "Still loading entrants, please try again.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
     private void setupClickListeners() {
         binding.buttonEntrantListToMyEvent.setOnClickListener(v -> {
             getParentFragmentManager().popBackStack();
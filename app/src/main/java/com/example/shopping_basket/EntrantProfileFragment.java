@@ -15,7 +15,6 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentEntrantProfileBinding;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.ArrayList;
 
@@ -81,7 +80,18 @@ public class EntrantProfileFragment extends DialogFragment {
         super.onViewCreated(view, savedInstanceState);
         setupClickListeners();
 
-        String entrantProfileTitleString = entrantProfile.getName() + " registered for this event.";
+        showTitle(entrantProfile.getName());
+        // The entrant list keeps the profile as it was at registration, so show the current name.
+        // The event's copy is left alone, since removing the entrant has to match it
+        ProfileRepository.getProfile(entrantProfile.getGuid(), profile -> {
+            if (binding != null && profile != null) {
+                showTitle(profile.getName());
+            }
+        });
+    }
+
+    private void showTitle(String name) {
+        String entrantProfileTitleString = name + " registered for this event.";
         binding.textViewEntrantProfileTitle.setText(entrantProfileTitleString);
     }
 
@@ -89,26 +99,26 @@ public class EntrantProfileFragment extends DialogFragment {
         binding.buttonCancelRemoveEntrant.setOnClickListener(v -> dismiss());
 
         binding.buttonConfirmRemoveEntrant.setOnClickListener(v -> {
+            EntrantStatus before = event.statusOf(entrantProfile.getGuid());
             event.decline(entrantProfile);
-            updateFirestore();
+            updateFirestore(before, event.statusOf(entrantProfile.getGuid()));
             dismiss();
         });
     }
 
-    private void updateFirestore() {
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        db.collection("events")
-                .document(event.getEventId())
-                .set(event)
-                .addOnSuccessListener(aVoid -> {
-                    // Optionally send the result
-                    Bundle result = new Bundle();
-                    result.putBoolean("entrantRemoved", true);
-                    getParentFragmentManager().setFragmentResult("entrantProfileResult", result);
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(getContext(), "Failed to remove entrant", Toast.LENGTH_SHORT).show();
-                });
+    // Writes only the removed entrant's move, leaving the rest of the event untouched
+    private void updateFirestore(EntrantStatus before, EntrantStatus after) {
+        EventDelta delta = new EventDelta(event).move(entrantProfile, before, after);
+        EventRepository.updateEvent(delta, error -> {
+            if (error == null) {
+                // Optionally send the result
+                Bundle result = new Bundle();
+                result.putBoolean("entrantRemoved", true);
+                getParentFragmentManager().setFragmentResult("entrantProfileResult", result);
+            } else {
+                Toast.makeText(getContext(), "Failed to remove entrant", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
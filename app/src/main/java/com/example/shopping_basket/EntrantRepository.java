@@ -0,0 +1,466 @@
+package com.example.shopping_basket;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes the events/{eventId}/entrants subcollection, which holds one document
+ * per registered profile for events that do not embed their participation lists.
+ */
+public class EntrantRepository {
+    private static final String TAG = "EntrantRepository";
+    private static final String EVENTS_COLLECTION = "events";
+    public static final String ENTRANTS_COLLECTION = "entrants";
+    public static final int PAGE_SIZE = 100;
+    // Events read per page when migrating or checking every event
+    private static final int SCAN_PAGE_SIZE = 200;
+    // Times one event's migration starts over when its lists change too much while it runs
+    private static final int MAX_MIGRATION_ATTEMPTS = 3;
+
+    // Callback for a single entrant, null if the profile has not registered
+    public interface EntrantCallback {
+        void onCallback(@Nullable Entrant entrant);
+    }
+
+    // Callback for a finished migration; error is null on success
+    public interface MigrationCallback {
+        void onCallback(int migratedEvents, @Nullable Exception error);
+    }
+
+    // Callback for a finished index check; error is null if every event was checked
+    public interface IndexCheckCallback {
+        void onCallback(List<RegistrationIndex.Mismatch> mismatches, @Nullable Exception error);
+    }
+
+    private interface GuidsCallback {
+        void onCallback(@Nullable List<String> guids);
+    }
+
+    private static CollectionReference entrants(String eventId) {
+        return FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .document(eventId)
+                .collection(ENTRANTS_COLLECTION);
+    }
+
+    /**
+     * Loads one page of an event's entrants with the given status, ordered by GUID.
+     * Matches {@link EntrantSource}.
+     *
+     * @param eventId   The ID of the event.
+     * @param status    The status of the entrants to load.
+     * @param afterGuid The GUID of the last entrant of the previous page, or null for the first page.
+     * @param limit     The largest number of entrants in the page.
+     * @param callback  The callback that will be invoked with the page and the cursor for the next one.
+     */
+    public static void loadPage(String eventId, EntrantStatus status, @Nullable String afterGuid, int limit,
+                                EntrantSource.EntrantPageCallback callback) {
+        Query query = entrants(eventId)
+                .whereEqualTo("status", status.name())
+                .orderBy(FieldPath.documentId())
+                .limit(limit);
+        if (afterGuid != null) {
+            query = query.startAfter(afterGuid);
+        }
+
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    ArrayList<Entrant> page = new ArrayList<>();
+                    for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+                        Entrant entrant = document.toObject(Entrant.class);
+                        if (entrant != null && entrant.getProfile() != null) {
+                            page.add(entrant);
+                        }
+                    }
+                    DocumentSnapshot last = Paging.nextCursor(querySnapshot.getDocuments(), limit);
+                    String nextCursor = last != null ? last.getId() : null;
+                    callback.onCallback(page, nextCursor, null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error loading entrants of event: " + eventId, e);
+                    callback.onCallback(new ArrayList<>(), null, e);
+                });
+    }
+
+    /**
+     * Loads a single entrant of an event and adds it to the event, so that
+     * {@link Event#statusOf(String)} and the list mutators work for that profile.
+     *
+     * @param event    The event, stored in subcollection mode.
+     * @param guid     The GUID of the profile to look up.
+     * @param callback The callback that will be invoked with the entrant, or null if they have not registered.
+     */
+    public static void loadEntrant(Event event, String guid, EntrantCallback callback) {
+        entrants(event.getEventId()).document(guid)
+                .get()
+                .addOnSuccessListener(document -> {
+                    Entrant entrant = document.exists() ? document.toObject(Entrant.class) : null;
+                    if (entrant != null) {
+                        event.putEntrant(entrant);
+                    }
+                    callback.onCallback(entrant);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error loading entrant " + guid + " of event: " + event.getEventId(), e);
+                    callback.onCallback(null);
+                });
+    }
+
+    /**
+     * Loads every entrant of an event stored in subcollection mode, so the organizer
+     * has the full participation lists.
+     *
+     * @param event The event to fill in.
+     * @param done  The callback that will be invoked with null once all entrants have been loaded,
+     *              or with the failure that stopped loading, in which case the lists are incomplete.
+     */
+    public static void loadAllEntrants(Event event, LotteryCommit.CommitCallback done) {
+        event.loadAllEntrants(EntrantRepository::loadPage, PAGE_SIZE, done);
+    }
+
+    /**
+     * Moves one event's participation lists out of the event document and into the
+     * entrants subcollection. Entrant documents are written first, in batches within
+     * Firestore's write limit. The event document is then switched over in a transaction
+     * that reads the lists again, writes the entrants that joined or moved since they were
+     * read, and only then sets the counters and removes the lists, so no change made while
+     * the batches were committed is lost. If too many entrants changed to fit, the migration
+     * starts over from the current lists. Entrant documents are keyed by GUID, so running
+     * this again after a failure rewrites the same documents.
+     *
+     * @param event    The event, as read with its embedded lists.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    public static void migrateEvent(Event event, LotteryCommit.CommitCallback callback) {
+        migrateEvent(event, 1, callback);
+    }
+
+    private static void migrateEvent(Event event, int attempt, LotteryCommit.CommitCallback callback) {
+        if (event.isEntrantsInSubcollection()) {
+            callback.onCallback(null);
+            return;
+        }
+
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        DocumentReference eventRef = db.collection(EVENTS_COLLECTION).document(event.getEventId());
+        List<Entrant> pending = event.toEntrants();
+        Map<String, EntrantStatus> written = new HashMap<>();
+
+        List<WriteBatch> batches = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += LotteryCommit.MAX_BATCH_WRITES) {
+            WriteBatch batch = db.batch();
+            for (Entrant entrant : pending.subList(start, Math.min(start + LotteryCommit.MAX_BATCH_WRITES, pending.size()))) {
+                batch.set(eventRef.collection(ENTRANTS_COLLECTION).document(entrant.getGuid()), entrant);
+                written.put(entrant.getGuid(), entrant.getStatus());
+            }
+            batches.add(batch);
+        }
+
+        commitInOrder(batches, 0, event.getEventId(), error -> {
+            if (error != null) {
+                callback.onCallback(error);
+                return;
+            }
+            switchOver(db, eventRef, written, attempt, callback);
+        });
+    }
+
+    /**
+     * Switches an event over to the subcollection in a transaction, after its entrant
+     * documents have been written from an earlier read of its lists.
+     *
+     * @param db       The Firestore instance.
+     * @param eventRef The event document.
+     * @param written  The status each entrant document was written with.
+     * @param attempt  The number of times the migration of this event has been started.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    private static void switchOver(FirebaseFirestore db, DocumentReference eventRef, Map<String, EntrantStatus> written,
+                                   int attempt, LotteryCommit.CommitCallback callback) {
+        db.runTransaction(transaction -> {
+                    Event current = transaction.get(eventRef).toObject(Event.class);
+                    if (current == null) {
+                        throw new FirebaseFirestoreException("Event no longer exists: " + eventRef.getId(),
+                                FirebaseFirestoreException.Code.NOT_FOUND);
+                    }
+                    if (current.isEntrantsInSubcollection()) {
+                        return null; // Switched over by another migration already
+                    }
+                    // Entrants who joined or moved after the batches were built, and any who are gone
+                    List<Entrant> changed = new ArrayList<>();
+                    Set<String> gone = new HashSet<>(written.keySet());
+                    for (Entrant entrant : current.toEntrants()) {
+                        gone.remove(entrant.getGuid());
+                        if (written.get(entrant.getGuid()) != entrant.getStatus()) {
+                            changed.add(entrant);
+                        }
+                    }
+                    // One write is kept for the event document
+                    if (changed.size() + gone.size() > LotteryCommit.MAX_BATCH_WRITES - 1) {
+                        throw new FirebaseFirestoreException("Entrants changed during migration: " + eventRef.getId(),
+                                FirebaseFirestoreException.Code.ABORTED);
+                    }
+                    for (Entrant entrant : changed) {
+                        transaction.set(eventRef.collection(ENTRANTS_COLLECTION).document(entrant.getGuid()), entrant);
+                    }
+                    for (String guid : gone) {
+                        transaction.delete(eventRef.collection(ENTRANTS_COLLECTION).document(guid));
+                    }
+
+                    Map<String, Object> updates = new HashMap<>();
+                    updates.put("entrantsInSubcollection", true);
+                    updates.put("waitingCount", current.getWaitingCount());
+                    updates.put("invitedCount", current.getInvitedCount());
+                    updates.put("enrolledCount", current.getEnrolledCount());
+                    updates.put("cancelledCount", current.getCancelledCount());
+                    updates.put(RegistrationIndex.FIELD, current.getParticipantGuids());
+                    updates.put(EventDelta.WAITING_LIST, FieldValue.delete());
+                    updates.put(EventDelta.INVITE_LIST, FieldValue.delete());
+                    updates.put(EventDelta.ENROLL_LIST, FieldValue.delete());
+                    updates.put(EventDelta.CANCEL_LIST, FieldValue.delete());
+                    updates.put(EventRepository.UPDATED_AT, FieldValue.serverTimestamp());
+                    transaction.update(eventRef, updates);
+                    return null;
+                })
+                .addOnSuccessListener(result -> {
+                    Log.d(TAG, "Migrated entrants of event: " + eventRef.getId());
+                    callback.onCallback(null);
+                })
+                .addOnFailureListener(e -> {
+                    boolean changedTooMuch = e instanceof FirebaseFirestoreException
+                            && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.ABORTED;
+                    if (!changedTooMuch || attempt >= MAX_MIGRATION_ATTEMPTS) {
+                        Log.e(TAG, "Error migrating entrants of event: " + eventRef.getId(), e);
+                        callback.onCallback(e);
+                        return;
+                    }
+                    // Start over from the lists as they are now
+                    eventRef.get()
+                            .addOnSuccessListener(document -> {
+                                Event event = document.toObject(Event.class);
+                                if (event == null) {
+                                    callback.onCallback(e);
+                                    return;
+                                }
+                                event.setEventId(document.getId());
+                                migrateEvent(event, attempt + 1, callback);
+                            })
+                            .addOnFailureListener(callback::onCallback);
+                });
+    }
+
+    private static void commitInOrder(List<WriteBatch> batches, int index, String eventId, LotteryCommit.CommitCallback callback) {
+        if (index == batches.size()) {
+            callback.onCallback(null);
+            return;
+        }
+        batches.get(index).commit()
+                .addOnSuccessListener(aVoid -> commitInOrder(batches, index + 1, eventId, callback))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error migrating entrants of event: " + eventId, e);
+                    callback.onCallback(e);
+                });
+    }
+
+    /**
+     * Migrates every event that still embeds its participation lists, one event at a time,
+     * stopping at the first failure. Events are read a page at a time by document ID and each
+     * page is migrated before the next is fetched, so at most one page of lists is held in memory.
+     *
+     * @param callback The callback that will be invoked with the number of events migrated.
+     */
+    public static void migrateAllEvents(MigrationCallback callback) {
+        migrateEventsAfter(null, 0, callback);
+    }
+
+    private static void migrateEventsAfter(@Nullable DocumentSnapshot after, int migrated, MigrationCallback callback) {
+        Query query = FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .orderBy(FieldPath.documentId())
+                .limit(SCAN_PAGE_SIZE);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<Event> events = new ArrayList<>();
+                    for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+                        Event event = document.toObject(Event.class);
+                        if (event != null && !event.isEntrantsInSubcollection()) {
+                            event.setEventId(document.getId());
+                            events.add(event);
+                        }
+                    }
+                    DocumentSnapshot last = Paging.nextCursor(querySnapshot.getDocuments(), SCAN_PAGE_SIZE);
+                    migrateInOrder(events, 0, (pageMigrated, error) -> {
+                        int total = migrated + pageMigrated;
+                        if (error != null || last == null) {
+                            Log.d(TAG, "Migrated entrants of " + total + " events");
+                            callback.onCallback(total, error);
+                        } else {
+                            migrateEventsAfter(last, total, callback);
+                        }
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching events to migrate", e);
+                    callback.onCallback(migrated, e);
+                });
+    }
+
+    private static void migrateInOrder(List<Event> events, int index, MigrationCallback callback) {
+        if (index == events.size()) {
+            callback.onCallback(index, null);
+            return;
+        }
+        migrateEvent(events.get(index), error -> {
+            if (error != null) {
+                callback.onCallback(index, error);
+            } else {
+                migrateInOrder(events, index + 1, callback);
+            }
+        });
+    }
+
+    /**
+     * Checks the participantGuids index of every event against its participation lists,
+     * or against its entrants subcollection, and optionally repairs the index where they differ.
+     * Events are read a page at a time by document ID, so the check holds at most one page of
+     * events and the entrants of one subcollection event in memory. Repairs only add the missing
+     * GUIDs and remove the extra ones, so registrations made while the check runs are kept.
+     *
+     * @param repair   Whether to repair the index of events that do not match.
+     * @param callback The callback that will be invoked with every mismatch found, and the failure
+     *                 if reading events or committing a page of repairs stopped the check early.
+     */
+    public static void checkRegistrationIndex(boolean repair, IndexCheckCallback callback) {
+        checkEventsAfter(null, 0, repair, new ArrayList<>(), callback);
+    }
+
+    private static void checkEventsAfter(@Nullable DocumentSnapshot after, int checked, boolean repair,
+                                         List<RegistrationIndex.Mismatch> mismatches, IndexCheckCallback callback) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        Query query = db.collection(EVENTS_COLLECTION)
+                .orderBy(FieldPath.documentId())
+                .limit(SCAN_PAGE_SIZE);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+                    int total = checked + documents.size();
+                    DocumentSnapshot last = Paging.nextCursor(documents, SCAN_PAGE_SIZE);
+                    // At most two writes per event, so a page of repairs fits in one batch
+                    WriteBatch writeBatch = db.batch();
+                    checkPage(documents, 0, repair, writeBatch, mismatches, () ->
+                            writeBatch.commit().addOnCompleteListener(task -> {
+                                if (!task.isSuccessful()) {
+                                    // The mismatches found so far are reported, but not as repaired
+                                    Log.e(TAG, "Error repairing registration index", task.getException());
+                                    callback.onCallback(mismatches, task.getException());
+                                    return;
+                                }
+                                if (last == null) {
+                                    Log.d(TAG, "Checked " + total + " events, " + mismatches.size() + " index mismatches");
+                                    callback.onCallback(mismatches, null);
+                                } else {
+                                    checkEventsAfter(last, total, repair, mismatches, callback);
+                                }
+                            }));
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching events to check", e);
+                    callback.onCallback(mismatches, e);
+                });
+    }
+
+    /**
+     * Checks the events of one page in order. Events with embedded lists are checked in the loop;
+     * only events whose entrants have to be fetched continue from a Firestore callback, so the
+     * stack does not grow with the number of events.
+     */
+    private static void checkPage(List<DocumentSnapshot> documents, int start, boolean repair, WriteBatch writeBatch,
+                                  List<RegistrationIndex.Mismatch> mismatches, Runnable done) {
+        for (int index = start; index < documents.size(); index++) {
+            DocumentSnapshot document = documents.get(index);
+            Event event = document.toObject(Event.class);
+            if (event == null) {
+                continue;
+            }
+            if (!event.isEntrantsInSubcollection()) {
+                checkEvent(document, event.getParticipantGuids(), repair, writeBatch, mismatches);
+                continue;
+            }
+            int next = index + 1;
+            loadEntrantGuids(document.getId(), expected -> {
+                // Could not read the entrants if null, leave this event for the next check
+                if (expected != null) {
+                    checkEvent(document, expected, repair, writeBatch, mismatches);
+                }
+                checkPage(documents, next, repair, writeBatch, mismatches, done);
+            });
+            return;
+        }
+        done.run();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void checkEvent(DocumentSnapshot document, List<String> expected, boolean repair,
+                                   WriteBatch writeBatch, List<RegistrationIndex.Mismatch> mismatches) {
+        Object stored = document.get(RegistrationIndex.FIELD);
+        RegistrationIndex.Mismatch mismatch = RegistrationIndex.compare(document.getId(),
+                stored instanceof List ? (List<String>) stored : null, expected);
+        if (mismatch == null) {
+            return;
+        }
+        mismatches.add(mismatch);
+        if (!repair) {
+            return;
+        }
+        // Firestore allows one array transform per field in an update, so adding and removing take two
+        if (!mismatch.getMissing().isEmpty()) {
+            writeBatch.update(document.getReference(),
+                    RegistrationIndex.FIELD, FieldValue.arrayUnion(mismatch.getMissing().toArray()),
+                    EventRepository.UPDATED_AT, FieldValue.serverTimestamp());
+        }
+        if (!mismatch.getExtra().isEmpty()) {
+            writeBatch.update(document.getReference(),
+                    RegistrationIndex.FIELD, FieldValue.arrayRemove(mismatch.getExtra().toArray()),
+                    EventRepository.UPDATED_AT, FieldValue.serverTimestamp());
+        }
+    }
+
+    private static void loadEntrantGuids(String eventId, GuidsCallback callback) {
+        entrants(eventId).get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<String> guids = new ArrayList<>();
+                    for (DocumentSnapshot entrant : querySnapshot.getDocuments()) {
+                        guids.add(entrant.getId());
+                    }
+                    callback.onCallback(guids);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error loading entrants of event: " + eventId, e);
+                    callback.onCallback(null);
+                });
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+
+/**
+ * Loads pages of an event's entrants with a given status, such as from the
+ * events/{eventId}/entrants subcollection in Firestore
+ */
+public interface EntrantSource {
+
+    // Callback for one page of profiles; nextCursor is null when there are no more pages, error is null on success
+    interface PageCallback {
+        void onCallback(ArrayList<Profile> page, String nextCursor, Exception error);
+    }
+
+    // Callback for one page of entrant documents, with the same cursor and error as PageCallback
+    interface EntrantPageCallback {
+        void onCallback(ArrayList<Entrant> page, String nextCursor, Exception error);
+    }
+
+    /**
+     * Loads one page of entrants, ordered by GUID
+     * @param eventId
+     *     event the entrants belong to
+     * @param status
+     *     status of the entrants to load
+     * @param afterGuid
+     *     GUID of the last entrant of the previous page, null for the first page
+     * @param limit
+     *     largest number of entrants in the page
+     * @param callback
+     *     receives the page, or an empty page and the failure if loading failed
+     */
+    void loadPage(String eventId, EntrantStatus status, String afterGuid, int limit, EntrantPageCallback callback);
+}
@@ -0,0 +1,13 @@
+package com.example.shopping_basket;
+
+/**
+ * The participation status of a profile within a single {@link Event}
+ * Each value corresponds to one of the event's participation lists
+ */
+public enum EntrantStatus {
+    WAITING,
+    INVITED,
+    ENROLLED,
+    CANCELLED,
+    NONE
+}
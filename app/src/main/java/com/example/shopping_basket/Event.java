@@ -1,12 +1,18 @@
 package com.example.shopping_basket;
 
+import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.IgnoreExtraProperties;
 import com.google.firebase.firestore.ServerTimestamp;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.Random;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 /**
  * This class defines a user created event
  * and tracks all registrants
@@ -27,14 +33,51 @@ public class Event implements Serializable {
     private Date endDate;
     //private ----- poster;
     private Date eventTime;
-    private ArrayList<Profile> waitingList = new ArrayList<>();
-    private ArrayList<Profile> inviteList = new ArrayList<>();
-    private ArrayList<Profile> enrollList = new ArrayList<>();
-    private ArrayList<Profile> cancelList = new ArrayList<>();
+    // Participation lists are keyed by profile GUID and keep insertion order, so membership
+    // checks and moves between lists are constant-time. Firestore still reads and writes them
+    // as plain arrays through the list getters and setters below.
+    private LinkedHashMap<String, Profile> waiting = new LinkedHashMap<>();
+    private LinkedHashMap<String, Profile> invited = new LinkedHashMap<>();
+    private LinkedHashMap<String, Profile> enrolled = new LinkedHashMap<>();
+    private LinkedHashMap<String, Profile> cancelled = new LinkedHashMap<>();
+    // GUID -> status across all four lists. Not stored; rebuilt on first lookup after the
+    // lists are loaded from Firestore or a Bundle, then kept current by the mutators.
+    private transient HashMap<String, EntrantStatus> statuses;
+
+    // When set, entrants are stored in the events/{eventId}/entrants subcollection and the
+    // event document only keeps the counters below. The lists above then hold just the
+    // entrants loaded so far through loadEntrants.
+    private boolean entrantsInSubcollection;
+    private int waitingCount;
+    private int invitedCount;
+    private int enrolledCount;
+    private int cancelledCount;
+    // GUIDs of everyone who has ever registered, stored on the document so "my events" is a
+    // single array-contains query. Derived from the lists unless entrants are in the subcollection
+    private LinkedHashSet<String> participantGuids = new LinkedHashSet<>();
+    // GUID -> when the entrant registered, for entrants loaded from the subcollection (see
+    // Entrant#getRegisteredAt). Not stored on the event document; embedded lists keep registration order instead
+    private HashMap<String, Date> registeredAt = new HashMap<>();
+
+    private Long lotterySeed;   // Seed of the most recent draw, kept so it can be audited and replayed
+    private LotteryStrategy lotteryStrategy;    // Strategy of the most recent draw
+    private HashMap<String, Integer> lotteryLosses = new HashMap<>();   // GUID -> draws lost so far
+    // GUID -> draws lost before the most recent draw, the weights it used. Not stored, since it grows with
+    // the waiting list; a replay takes lotteryLosses less one for each entrant the draw left waiting
+    private HashMap<String, Integer> lotteryDrawLosses = new HashMap<>();
+
+    private String posterHash;  // SHA-256 of the poster in the "posters" collection, null if there is none
+    private String thumbnailHash;  // SHA-256 of the smaller rendition shown in lists, null for older posters
+    private List<String> searchTokens;  // Words of the name, description and guideline, see EventSearchIndex
+    private List<String> categories;  // Lowercase category tags, see EventFacets
+    private String geohash;  // Location of the event, see Geohash; null if it has none
 
     @ServerTimestamp // Tells Firestore to automatically populate this field with the server's current timestamp
     private Date creationTimestamp; // The timestamp the Event is initialized
 
+    @ServerTimestamp // Populated on creation; every later write sets it to the server time as well
+    private Date updatedAt; // The timestamp the event document last changed
+
     public Event() {}
 
     public Event(Profile owner, String name, String desc, int selectNum, int maxReg, Date startDate, Date endDate, Date eventTime){
@@ -67,28 +110,21 @@ public class Event implements Serializable {
      */
     public void joinEvent(Profile profile){
         //check if waiting list is at capacity
-        if((waitingList.size() >= maxReg) && (maxReg != 0)){
+        if((getWaitingCount() >= maxReg) && (maxReg != 0)){
             //show app error that registration is full
             return;
         }
         //check if user is already registered
-        for(int i = 0; i < waitingList.size(); i++){
-            if(waitingList.get(i).getGuid().equals(profile.getGuid())){
-                //show code error that user is already registered
-                //**maybe return 1 on success, -1 on fail**
-                return;
-            }
-        }
-        //check if user previously cancelled
-        for(int i = 0; i < cancelList.size(); i++){
-            if(cancelList.get(i).getGuid().equals(profile.getGuid())){
-                //remove user from cancel list
-                cancelList.remove(i);
-                break;
-            }
+        if(waiting.containsKey(profile.getGuid())){
+            //show code error that user is already registered
+            return;
         }
-        //otherwise, add user to waiting list
-        waitingList.add(profile);
+        //if user previously cancelled, remove them from the cancel list
+        EntrantStatus from = cancelled.remove(profile.getGuid()) != null ? EntrantStatus.CANCELLED : EntrantStatus.NONE;
+        //otherwise, add user to waiting list; the server records the time of this registration
+        registeredAt.remove(profile.getGuid());
+        waiting.put(profile.getGuid(), profile);
+        moved(profile.getGuid(), from, EntrantStatus.WAITING);
     }
 
     /**
@@ -98,14 +134,10 @@ public class Event implements Serializable {
      *     profile to be moved
      */
     public void leaveEvent(Profile profile){
-        //check that user is in waiting list
-        for(int i = 0; i < waitingList.size(); i++){
-            if(waitingList.get(i).getGuid().equals(profile.getGuid())){
-                //if user found, transfer from invite list to enrolled
-                cancelList.add(profile);
-                waitingList.remove(i);
-                return;
-            }
+        //check that user is in waiting list, then transfer to cancelled
+        if(waiting.remove(profile.getGuid()) != null){
+            cancelled.put(profile.getGuid(), profile);
+            moved(profile.getGuid(), EntrantStatus.WAITING, EntrantStatus.CANCELLED);
         }
         //if not, return code error
     }
@@ -119,39 +151,171 @@ public class Event implements Serializable {
      *     Array of invites to be added to database
      */
     public ArrayList<Invite> runLottery(){
-        int slots = selectNum - (inviteList.size() + enrollList.size());
+        return runLottery(LotteryEngine.newSeed());
+    }
+
+    /**
+     * This method runs the lottery with a given seed and records the seed on the event.
+     * Running it again with the same seed on the same waiting list picks the same winners,
+     * whatever order the entrants were loaded in
+     * @param seed
+     *     seed for the draw
+     * @return
+     *     Array of invites to be added to database
+     */
+    public ArrayList<Invite> runLottery(long seed){
+        return runLottery(LotteryStrategy.UNIFORM, seed);
+    }
+
+    /**
+     * This method runs the lottery using the given strategy to pick winners,
+     * recording the strategy and seed on the event, and the losses the draw was weighted by
+     * until the event is next read.
+     * Entrants left on the waiting list after a draw have the loss counted for later draws.
+     * The waiting list is drawn from in GUID order, so a replay does not depend on the order
+     * entrants were loaded in. Setting the recorded draw losses as the lottery losses of the
+     * same waiting list and running it again with the same strategy and seed picks the same winners;
+     * FAVOUR_EARLY_REGISTRATION also needs the same registration order
+     * @param strategy
+     *     how winners are chosen from the waiting list
+     * @param seed
+     *     seed for the draw
+     * @return
+     *     Array of invites to be added to database
+     */
+    public ArrayList<Invite> runLottery(LotteryStrategy strategy, long seed){
+        int slots = selectNum - (getInvitedCount() + getEnrolledCount());
         //account for possible errors with altered selectNum value
         if(slots <= 0){
             //return app error that all slots are currently filled
             return null;
         }
         //if waiting list is empty, return null
-        if(waitingList.isEmpty()){
+        if(waiting.isEmpty()){
             return null;
         }
 
+        ArrayList<Profile> winners = new ArrayList<>(waiting.values());
+        //if there are not enough slots for everyone in the lottery, commence the draw
+        boolean drawn = slots < winners.size();
+        if(drawn){
+            lotterySeed = seed;
+            lotteryStrategy = strategy;
+            lotteryDrawLosses = new HashMap<>();
+            for(Profile i : winners){
+                if(previousLosses(i.getGuid()) > 0){
+                    lotteryDrawLosses.put(i.getGuid(), previousLosses(i.getGuid()));
+                }
+            }
+            //ranked before sorting, since entrants without a registration time keep their list order
+            HashMap<String, Integer> ranks = strategy == LotteryStrategy.FAVOUR_EARLY_REGISTRATION ? registrationRanks(winners) : null;
+            winners.sort(Comparator.comparing(Profile::getGuid));
+            winners = drawWinners(winners, slots, strategy, ranks, LotteryEngine.seeded(seed));
+        }
+
         ArrayList<Invite> invites = new ArrayList<Invite>();
         String message = "You have been invited to enroll in " + name;
-        //if there are enough slots for everyone in the lottery, simply take them all
-        if(slots >= waitingList.size()){
-            inviteList.addAll(waitingList);
-            for(Profile i : waitingList){
-                invites.add(new Invite(i.getGuid(), message));
+        for(Profile i : winners){
+            waiting.remove(i.getGuid());
+            invited.put(i.getGuid(), i);
+            invites.add(new Invite(i.getGuid(), message));
+            moved(i.getGuid(), EntrantStatus.WAITING, EntrantStatus.INVITED);
+        }
+        if(drawn){
+            for(String i : waiting.keySet()){
+                lotteryLosses.put(i, previousLosses(i) + 1);
+            }
+        }
+        return invites;
+    }
+
+    /**
+     * Picks winners from the waiting list according to the lottery strategy
+     * @param pool
+     *     waiting list, in GUID order
+     * @param slots
+     *     number of winners to pick
+     * @param strategy
+     *     how winners are chosen
+     * @param ranks
+     *     GUID -> place in registration order, for FAVOUR_EARLY_REGISTRATION
+     * @param random
+     *     source of random values for the draw
+     * @return
+     *     the winners
+     */
+    private ArrayList<Profile> drawWinners(ArrayList<Profile> pool, int slots, LotteryStrategy strategy,
+                                           Map<String, Integer> ranks, LotteryEngine.RandomSource random){
+        if(strategy == LotteryStrategy.FAVOUR_PREVIOUS_ENTRANTS || strategy == LotteryStrategy.FAVOUR_EARLY_REGISTRATION){
+            double[] weights = new double[pool.size()];
+            for(int i = 0; i < pool.size(); i++){
+                weights[i] = strategy == LotteryStrategy.FAVOUR_PREVIOUS_ENTRANTS
+                        ? 1 + previousLosses(pool.get(i).getGuid())
+                        : 2 - (double) ranks.get(pool.get(i).getGuid()) / pool.size();
             }
-            waitingList.clear();
-            return invites;
+            return LotteryEngine.drawWeighted(pool, weights, slots, random);
         }
+        if(strategy == LotteryStrategy.STRATIFIED){
+            // stratum 0 is first-time entrants, stratum 1 is entrants who lost an earlier draw
+            int[] strata = new int[pool.size()];
+            for(int i = 0; i < pool.size(); i++){
+                strata[i] = previousLosses(pool.get(i).getGuid()) > 0 ? 1 : 0;
+            }
+            return LotteryEngine.drawStratified(pool, strata, slots, random);
+        }
+        return LotteryEngine.draw(pool, slots, random);
+    }
 
-        //otherwise commence lottery
-        Random lottery = new Random();
-        int winner;
-        for(int i = 0; i < slots; i++){
-            winner = lottery.nextInt(waitingList.size());
-            inviteList.add(waitingList.get(winner));
-            invites.add(new Invite(waitingList.get(winner).getGuid(), message));
-            waitingList.remove(winner);
+    /**
+     * Orders the pool by when each entrant registered. Entrants loaded from the subcollection
+     * carry their registration time; the rest, such as embedded lists or entrants who have just
+     * joined, come after them in the order they appear in the pool
+     * @param pool
+     *     entrants to rank
+     * @return
+     *     GUID -> place in registration order, starting at 0
+     */
+    private HashMap<String, Integer> registrationRanks(List<Profile> pool){
+        ArrayList<Integer> order = new ArrayList<>();
+        for(int i = 0; i < pool.size(); i++){
+            order.add(i);
         }
-        return invites;
+        // stable sort, so entrants without a time keep their pool order
+        order.sort((a, b) -> {
+            Date first = registeredAt.get(pool.get(a).getGuid());
+            Date second = registeredAt.get(pool.get(b).getGuid());
+            if(first == null || second == null){
+                return first == second ? 0 : first == null ? 1 : -1;
+            }
+            return first.compareTo(second);
+        });
+        HashMap<String, Integer> ranks = new HashMap<>();
+        for(int i = 0; i < order.size(); i++){
+            ranks.put(pool.get(order.get(i)).getGuid(), i);
+        }
+        return ranks;
+    }
+
+    /**
+     * @param guid
+     *     GUID of the entrant
+     * @return
+     *     when the entrant registered, or null if it is not known, such as for embedded lists
+     *     or an entrant who has just joined and not been read back from the subcollection
+     */
+    public Date registeredAt(String guid){
+        return registeredAt.get(guid);
+    }
+
+    /**
+     * @param guid
+     *     GUID of the entrant
+     * @return
+     *     number of earlier draws of this event the entrant has lost
+     */
+    private int previousLosses(String guid){
+        Integer losses = lotteryLosses.get(guid);
+        return losses != null ? losses : 0;
     }
 
     /**
@@ -161,14 +325,10 @@ public class Event implements Serializable {
      *     profile to move
      */
     public void enroll(Profile profile){
-        //check that user was invited and was not uninvited
-        for(int i = 0; i < inviteList.size(); i++){
-            if(inviteList.get(i).getGuid().equals(profile.getGuid())){
-                //if user found, transfer from invite list to enrolled
-                enrollList.add(profile);
-                inviteList.remove(i);
-                return;
-            }
+        //check that user was invited and was not uninvited, then transfer to enrolled
+        if(invited.remove(profile.getGuid()) != null){
+            enrolled.put(profile.getGuid(), profile);
+            moved(profile.getGuid(), EntrantStatus.INVITED, EntrantStatus.ENROLLED);
         }
         //if not, return app error that invitation has expired
     }
@@ -180,18 +340,238 @@ public class Event implements Serializable {
      *     profile t be moved
      */
     public void decline(Profile profile){
-        //check that user was invited
-        for(int i = 0; i < inviteList.size(); i++){
-            if(inviteList.get(i).getGuid().equals(profile.getGuid())){
-                //if user found, transfer from invite list to cancelled
-                cancelList.add(profile);
-                inviteList.remove(i);
-                return;
-            }
+        //check that user was invited, then transfer to cancelled
+        if(invited.remove(profile.getGuid()) != null){
+            cancelled.put(profile.getGuid(), profile);
+            moved(profile.getGuid(), EntrantStatus.INVITED, EntrantStatus.CANCELLED);
         }
         //if not, return code error
     }
 
+    /**
+     * This method finds which participation list a profile is in with a single lookup
+     * @param guid
+     *     GUID of the profile to look up
+     * @return
+     *     status of the profile in this event, NONE if they have not registered
+     */
+    public EntrantStatus statusOf(String guid){
+        if(statuses == null){
+            statuses = new HashMap<>();
+            // later lists take precedence if a profile somehow appears in more than one
+            for(String i : cancelled.keySet()) statuses.put(i, EntrantStatus.CANCELLED);
+            for(String i : waiting.keySet()) statuses.put(i, EntrantStatus.WAITING);
+            for(String i : invited.keySet()) statuses.put(i, EntrantStatus.INVITED);
+            for(String i : enrolled.keySet()) statuses.put(i, EntrantStatus.ENROLLED);
+        }
+        EntrantStatus status = statuses.get(guid);
+        return status != null ? status : EntrantStatus.NONE;
+    }
+
+    /**
+     * This method finds the stored profile of an entrant in any of the participation lists
+     * @param guid
+     *     GUID of the entrant
+     * @return
+     *     the profile as stored on the event, or null if they have not registered
+     */
+    public Profile findEntrant(String guid){
+        if(enrolled.containsKey(guid)) return enrolled.get(guid);
+        if(invited.containsKey(guid)) return invited.get(guid);
+        if(waiting.containsKey(guid)) return waiting.get(guid);
+        return cancelled.get(guid);
+    }
+
+    /**
+     * Records that a profile moved between participation lists. Keeps the status lookup
+     * in step, and the counters too when the entrants are stored in a subcollection
+     * @param guid
+     *     GUID of the profile that moved
+     * @param from
+     *     status before the move
+     * @param to
+     *     status after the move
+     */
+    private void moved(String guid, EntrantStatus from, EntrantStatus to){
+        if(entrantsInSubcollection){
+            adjustCount(from, -1);
+            adjustCount(to, 1);
+            participantGuids.add(guid);
+        }
+        refreshStatus(guid);
+    }
+
+    private void adjustCount(EntrantStatus status, int change){
+        switch(status){
+            case WAITING: waitingCount += change; break;
+            case INVITED: invitedCount += change; break;
+            case ENROLLED: enrolledCount += change; break;
+            case CANCELLED: cancelledCount += change; break;
+            default: break;
+        }
+    }
+
+    /**
+     * Keeps the status lookup in step with the lists after a profile has moved
+     * @param guid
+     *     GUID of the profile that moved
+     */
+    private void refreshStatus(String guid){
+        if(statuses == null){
+            return; // not built yet, statusOf will build it from the lists
+        }
+        if(enrolled.containsKey(guid)) statuses.put(guid, EntrantStatus.ENROLLED);
+        else if(invited.containsKey(guid)) statuses.put(guid, EntrantStatus.INVITED);
+        else if(waiting.containsKey(guid)) statuses.put(guid, EntrantStatus.WAITING);
+        else if(cancelled.containsKey(guid)) statuses.put(guid, EntrantStatus.CANCELLED);
+        else statuses.remove(guid);
+    }
+
+    /**
+     * Adds an entrant loaded from the subcollection to the matching participation list,
+     * without changing the counters
+     * @param entrant
+     *     entrant as stored in the subcollection
+     */
+    public void putEntrant(Entrant entrant){
+        String guid = entrant.getGuid();
+        waiting.remove(guid);
+        invited.remove(guid);
+        enrolled.remove(guid);
+        cancelled.remove(guid);
+        LinkedHashMap<String, Profile> list = listFor(entrant.getStatus());
+        if(list != null){
+            list.put(guid, entrant.getProfile());
+        }
+        if(entrant.getRegisteredAt() != null){
+            registeredAt.put(guid, entrant.getRegisteredAt());
+        } else {
+            registeredAt.remove(guid);
+        }
+        refreshStatus(guid);
+    }
+
+    /**
+     * This method loads one page of a participation list. Entrants stored in the subcollection
+     * are fetched from the source and kept on the event; otherwise the page is read from the
+     * lists already on the event, in registration order
+     * @param status
+     *     which participation list to read
+     * @param afterGuid
+     *     GUID of the last entrant of the previous page, null for the first page
+     * @param limit
+     *     largest number of entrants in the page
+     * @param source
+     *     where subcollection entrants are fetched from
+     * @param callback
+     *     receives the page and the cursor for the next one
+     */
+    public void loadEntrants(EntrantStatus status, String afterGuid, int limit, EntrantSource source, EntrantSource.PageCallback callback){
+        if(entrantsInSubcollection){
+            source.loadPage(eventId, status, afterGuid, limit, (page, nextCursor, error) -> {
+                ArrayList<Profile> profiles = new ArrayList<>();
+                for(Entrant i : page){
+                    putEntrant(i);
+                    profiles.add(i.getProfile());
+                }
+                callback.onCallback(profiles, nextCursor, error);
+            });
+            return;
+        }
+
+        ArrayList<Profile> page = new ArrayList<>();
+        LinkedHashMap<String, Profile> list = listFor(status);
+        if(list == null){
+            callback.onCallback(page, null, null);
+            return;
+        }
+        boolean started = afterGuid == null;
+        String nextCursor = null;
+        for(Map.Entry<String, Profile> i : list.entrySet()){
+            if(!started){
+                started = i.getKey().equals(afterGuid);
+                continue;
+            }
+            if(page.size() == limit){
+                nextCursor = page.get(page.size() - 1).getGuid();
+                break;
+            }
+            page.add(i.getValue());
+        }
+        callback.onCallback(page, nextCursor, null);
+    }
+
+    /**
+     * This method loads every entrant of the event, page by page, so the full participation
+     * lists are available to the organizer. Does nothing extra for events that store their
+     * lists on the event document
+     * @param source
+     *     where subcollection entrants are fetched from
+     * @param pageSize
+     *     number of entrants fetched per request
+     * @param done
+     *     receives null once every list has been loaded, or the failure that stopped loading,
+     *     in which case the lists are incomplete and must not be drawn from
+     */
+    public void loadAllEntrants(EntrantSource source, int pageSize, LotteryCommit.CommitCallback done){
+        if(!entrantsInSubcollection){
+            done.onCallback(null);
+            return;
+        }
+        loadRemaining(new EntrantStatus[]{EntrantStatus.WAITING, EntrantStatus.INVITED, EntrantStatus.ENROLLED, EntrantStatus.CANCELLED},
+                0, null, source, pageSize, done);
+    }
+
+    private void loadRemaining(EntrantStatus[] order, int index, String afterGuid, EntrantSource source, int pageSize, LotteryCommit.CommitCallback done){
+        if(index == order.length){
+            done.onCallback(null);
+            return;
+        }
+        loadEntrants(order[index], afterGuid, pageSize, source, (page, nextCursor, error) -> {
+            if(error != null){
+                done.onCallback(error);
+            } else if(nextCursor != null){
+                loadRemaining(order, index, nextCursor, source, pageSize, done);
+            } else {
+                loadRemaining(order, index + 1, null, source, pageSize, done);
+            }
+        });
+    }
+
+    /**
+     * This method builds the subcollection documents for every entrant on the event,
+     * used when moving an event's lists out of the event document. The lists do not record
+     * when anyone registered, so entrants are given registration times a millisecond apart
+     * from the creation of the event, which keeps the waiting list in its registration order
+     * @return
+     *     one entrant per registered profile, with the status statusOf reports
+     */
+    public ArrayList<Entrant> toEntrants(){
+        ArrayList<Entrant> entrants = new ArrayList<>();
+        long registered = creationTimestamp != null ? creationTimestamp.getTime() : 0;
+        for(EntrantStatus status : new EntrantStatus[]{EntrantStatus.WAITING, EntrantStatus.INVITED, EntrantStatus.ENROLLED, EntrantStatus.CANCELLED}){
+            for(Profile i : listFor(status).values()){
+                // a profile found in more than one list is written once, with its winning status
+                if(statusOf(i.getGuid()) == status){
+                    Entrant entrant = new Entrant(i, status);
+                    entrant.setRegisteredAt(new Date(registered++));
+                    entrants.add(entrant);
+                }
+            }
+        }
+        return entrants;
+    }
+
+    private LinkedHashMap<String, Profile> listFor(EntrantStatus status){
+        switch(status){
+            case WAITING: return waiting;
+            case INVITED: return invited;
+            case ENROLLED: return enrolled;
+            case CANCELLED: return cancelled;
+            default: return null;
+        }
+    }
+
     /**
      * This methods sends a general notifications to all profiles in the waiting list
      * @param string
@@ -201,7 +581,7 @@ public class Event implements Serializable {
      */
     public ArrayList<Notif> notifyWaiting(String string){
         ArrayList<Notif> notifyList = new ArrayList<Notif>();
-        for(Profile i : waitingList){
+        for(Profile i : waiting.values()){
             notifyList.add(new Notif(i.getGuid(), string));
         }
         return notifyList;
@@ -216,7 +596,7 @@ public class Event implements Serializable {
      */
     public ArrayList<Notif> notifyInvited(String string){
         ArrayList<Notif> notifyList = new ArrayList<Notif>();
-        for(Profile i : inviteList){
+        for(Profile i : invited.values()){
             notifyList.add(new Notif(i.getGuid(), string));
         }
         return notifyList;
@@ -231,7 +611,7 @@ public class Event implements Serializable {
      */
     public ArrayList<Notif> notifyEnrolled(String string){
         ArrayList<Notif> notifyList = new ArrayList<Notif>();
-        for(Profile i : enrollList){
+        for(Profile i : enrolled.values()){
             notifyList.add(new Notif(i.getGuid(), string));
         }
         return notifyList;
@@ -246,7 +626,7 @@ public class Event implements Serializable {
      */
     public ArrayList<Notif> notifyCancelled(String string){
         ArrayList<Notif> notifyList = new ArrayList<Notif>();
-        for(Profile i : cancelList){
+        for(Profile i : cancelled.values()){
             notifyList.add(new Notif(i.getGuid(), string));
         }
         return notifyList;
@@ -315,23 +695,116 @@ public class Event implements Serializable {
     }
 
     public ArrayList<Profile> getWaitingList() {
-        return waitingList;
+        return new ArrayList<>(waiting.values());
+    }
+
+    public void setWaitingList(List<Profile> waitingList) {
+        this.waiting = index(waitingList);
+        this.statuses = null;
     }
 
     public int getWaitListSize() {
-        return waitingList.size();
+        return getWaitingCount();
     }
 
     public ArrayList<Profile> getInviteList() {
-        return inviteList;
+        return new ArrayList<>(invited.values());
+    }
+
+    public void setInviteList(List<Profile> inviteList) {
+        this.invited = index(inviteList);
+        this.statuses = null;
     }
 
     public ArrayList<Profile> getEnrollList() {
-        return enrollList;
+        return new ArrayList<>(enrolled.values());
+    }
+
+    public void setEnrollList(List<Profile> enrollList) {
+        this.enrolled = index(enrollList);
+        this.statuses = null;
     }
 
     public ArrayList<Profile> getCancelList() {
-        return cancelList;
+        return new ArrayList<>(cancelled.values());
+    }
+
+    public void setCancelList(List<Profile> cancelList) {
+        this.cancelled = index(cancelList);
+        this.statuses = null;
+    }
+
+    /**
+     * Builds a GUID-keyed participation list from the array form stored in Firestore
+     * @param profiles
+     *     profiles in their stored order, may be null
+     * @return
+     *     insertion-ordered map of GUID to profile
+     */
+    private static LinkedHashMap<String, Profile> index(List<Profile> profiles){
+        LinkedHashMap<String, Profile> map = new LinkedHashMap<>();
+        if(profiles != null){
+            for(Profile i : profiles){
+                map.put(i.getGuid(), i);
+            }
+        }
+        return map;
+    }
+
+    public boolean isEntrantsInSubcollection() {
+        return entrantsInSubcollection;
+    }
+
+    public void setEntrantsInSubcollection(boolean entrantsInSubcollection) {
+        this.entrantsInSubcollection = entrantsInSubcollection;
+    }
+
+    // Counters come from the lists themselves unless the entrants live in the subcollection
+    public int getWaitingCount() {
+        return entrantsInSubcollection ? waitingCount : waiting.size();
+    }
+
+    public void setWaitingCount(int waitingCount) {
+        this.waitingCount = waitingCount;
+    }
+
+    public int getInvitedCount() {
+        return entrantsInSubcollection ? invitedCount : invited.size();
+    }
+
+    public void setInvitedCount(int invitedCount) {
+        this.invitedCount = invitedCount;
+    }
+
+    public int getEnrolledCount() {
+        return entrantsInSubcollection ? enrolledCount : enrolled.size();
+    }
+
+    public void setEnrolledCount(int enrolledCount) {
+        this.enrolledCount = enrolledCount;
+    }
+
+    public int getCancelledCount() {
+        return entrantsInSubcollection ? cancelledCount : cancelled.size();
+    }
+
+    public void setCancelledCount(int cancelledCount) {
+        this.cancelledCount = cancelledCount;
+    }
+
+    public ArrayList<String> getParticipantGuids() {
+        if(entrantsInSubcollection){
+            return new ArrayList<>(participantGuids);
+        }
+        LinkedHashSet<String> guids = new LinkedHashSet<>(waiting.keySet());
+        guids.addAll(invited.keySet());
+        guids.addAll(enrolled.keySet());
+        guids.addAll(cancelled.keySet());
+        return new ArrayList<>(guids);
+    }
+
+    public void setParticipantGuids(List<String> participantGuids) {
+        this.participantGuids = participantGuids != null ? new LinkedHashSet<>(participantGuids) : new LinkedHashSet<>();
     }
 
     public Date getEventTime() {
@@ -358,6 +831,40 @@ public class Event implements Serializable {
         this.eventURL = eventURL;
     }
 
+    public Long getLotterySeed() {
+        return lotterySeed;
+    }
+
+    public void setLotterySeed(Long lotterySeed) {
+        this.lotterySeed = lotterySeed;
+    }
+
+    public LotteryStrategy getLotteryStrategy() {
+        return lotteryStrategy;
+    }
+
+    public void setLotteryStrategy(LotteryStrategy lotteryStrategy) {
+        this.lotteryStrategy = lotteryStrategy;
+    }
+
+    public HashMap<String, Integer> getLotteryLosses() {
+        return lotteryLosses;
+    }
+
+    public void setLotteryLosses(Map<String, Integer> lotteryLosses) {
+        this.lotteryLosses = lotteryLosses != null ? new HashMap<>(lotteryLosses) : new HashMap<>();
+    }
+
+    @Exclude
+    public HashMap<String, Integer> getLotteryDrawLosses() {
+        return lotteryDrawLosses;
+    }
+
+    @Exclude
+    public void setLotteryDrawLosses(Map<String, Integer> lotteryDrawLosses) {
+        this.lotteryDrawLosses = lotteryDrawLosses != null ? new HashMap<>(lotteryDrawLosses) : new HashMap<>();
+    }
+
     public Date getCreationTimestamp() {
         return creationTimestamp;
     }
@@ -365,4 +872,58 @@ public class Event implements Serializable {
     public void setCreationTimestamp(Date creationTimestamp) {
         this.creationTimestamp = creationTimestamp;
     }
+
+    public String getPosterHash() {
+        return posterHash;
+    }
+
+    public void setPosterHash(String posterHash) {
+        this.posterHash = posterHash;
+    }
+
+    public String getThumbnailHash() {
+        return thumbnailHash;
+    }
+
+    public void setThumbnailHash(String thumbnailHash) {
+        this.thumbnailHash = thumbnailHash;
+    }
+
+    // Sorted words and word prefixes for keyword search, null for events saved before it existed
+    public List<String> getSearchTokens() {
+        return searchTokens;
+    }
+
+    public void setSearchTokens(List<String> searchTokens) {
+        this.searchTokens = searchTokens;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    public String getGeohash() {
+        return geohash;
+    }
+
+    public void setGeohash(String geohash) {
+        this.geohash = geohash;
+    }
+
+    // The cells around the location, stored so "near me" can match them exactly; there is no setter
+    public Map<String, String> getGeoCells() {
+        return Geohash.cells(geohash);
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
 }
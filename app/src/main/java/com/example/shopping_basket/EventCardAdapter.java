@@ -1,8 +1,5 @@
 package com.example.shopping_basket;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,35 +7,69 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * RecyclerView.Adapter for displaying a list of Event objects in cards on the
  * Home screen.
  *
  * This version also supports showing an uploaded poster image on the card.
- * The poster image is stored as a Base64 string on the event document in
- * Firestore and provided to the adapter via the eventPosters map.
+ * The poster is loaded through {@link PosterCache} when the card is bound, by
+ * the hash of its thumbnail rendition, or for events not migrated yet from the Base64 string on the event
+ * document, provided to the adapter via the eventPosters map.
+ *
+ * Lists are handed over with {@link #submitList}, and only the cards that
+ * were added, removed or changed are rebound.
  */
-public class EventCardAdapter extends RecyclerView.Adapter<EventCardAdapter.EventViewHolder> {
+public class EventCardAdapter extends ListAdapter<Event, EventCardAdapter.EventViewHolder> {
+
+    // Events are the same card if they share an ID, and need rebinding only if what the card shows changed
+    private static final DiffUtil.ItemCallback<Event> DIFF_CALLBACK = new DiffUtil.ItemCallback<Event>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Event oldItem, @NonNull Event newItem) {
+            return Objects.equals(oldItem.getEventId(), newItem.getEventId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Event oldItem, @NonNull Event newItem) {
+            return oldItem == newItem
+                    || (Objects.equals(oldItem.getName(), newItem.getName())
+                    && Objects.equals(oldItem.getStartDate(), newItem.getStartDate())
+                    && Objects.equals(oldItem.getEndDate(), newItem.getEndDate())
+                    && Objects.equals(oldItem.getEventTime(), newItem.getEventTime())
+                    && Objects.equals(oldItem.getPosterHash(), newItem.getPosterHash())
+                    && Objects.equals(oldItem.getThumbnailHash(), newItem.getThumbnailHash()));
+        }
+    };
 
     public interface OnItemClickListener {
         void onItemClick(int position);
     }
 
-    private final ArrayList<Event> events;
     private final Map<String, String> eventPosters;
     private OnItemClickListener listener;
 
-    public EventCardAdapter(ArrayList<Event> events, Map<String, String> eventPosters) {
-        this.events = events;
+    public EventCardAdapter(Map<String, String> eventPosters) {
+        super(DIFF_CALLBACK);
         this.eventPosters = eventPosters;
     }
 
+    /**
+     * Returns the event shown at the given position.
+     *
+     * @param position The adapter position of the card.
+     * @return The event on that card.
+     */
+    public Event getEvent(int position) {
+        return getItem(position);
+    }
+
     public void setOnItemClickListener(OnItemClickListener listener) {
         this.listener = listener;
     }
@@ -53,7 +84,7 @@ public class EventCardAdapter extends RecyclerView.Adapter<EventCardAdapter.Even
 
     @Override
     public void onBindViewHolder(@NonNull EventViewHolder holder, int position) {
-        Event event = events.get(position);
+        Event event = getItem(position);
 
         holder.eventName.setText(event.getName() != null ? event.getName() : "Unnamed event");
 
@@ -90,34 +121,30 @@ public class EventCardAdapter extends RecyclerView.Adapter<EventCardAdapter.Even
             holder.eventStatus.setText("");
         }
 
-        // Poster image
+        // Poster image, loaded off the main thread unless it is already in memory
         String posterBase64 = null;
         if (eventPosters != null && event.getEventId() != null) {
             posterBase64 = eventPosters.get(event.getEventId());
         }
-
-        if (posterBase64 != null && !posterBase64.isEmpty()) {
-            try {
-                byte[] bytes = Base64.decode(posterBase64, Base64.DEFAULT);
-                Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                if (bitmap != null) {
-                    holder.eventPoster.setImageBitmap(bitmap);
-                } else {
-                    holder.eventPoster.setImageResource(R.drawable.image_placeholder);
-                }
-            } catch (IllegalArgumentException e) {
-                // bad base64 → show placeholder
-                holder.eventPoster.setImageResource(R.drawable.image_placeholder);
-            }
-        } else {
-            // No poster for this event yet → placeholder
-            holder.eventPoster.setImageResource(R.drawable.image_placeholder);
+        // Cards only need the thumbnail; posters saved before thumbnails existed fall back to the full one
+        String posterHash = event.getThumbnailHash() != null ? event.getThumbnailHash() : event.getPosterHash();
+        boolean hasPoster = posterHash != null || (posterBase64 != null && !posterBase64.isEmpty());
+        holder.posterKey = hasPoster && event.getEventId() != null
+                ? PosterDiskCache.key(event.getEventId(), posterHash)
+                : null;
+        // No poster for this event yet, or it is still loading → placeholder
+        holder.eventPoster.setImageResource(R.drawable.image_placeholder);
+        if (holder.posterKey == null) {
+            return;
         }
-    }
-
-    @Override
-    public int getItemCount() {
-        return events.size();
+        String key = holder.posterKey;
+        PosterCache.getInstance(holder.itemView.getContext())
+                .load(event.getEventId(), posterHash, posterBase64,
+                        holder.posterWidth, holder.posterHeight, bitmap -> {
+                    if (bitmap != null && key.equals(holder.posterKey)) {
+                        holder.eventPoster.setImageBitmap(bitmap);
+                    } // Otherwise no poster, or the card now shows another event
+                });
     }
 
     static class EventViewHolder extends RecyclerView.ViewHolder {
@@ -127,6 +154,9 @@ public class EventCardAdapter extends RecyclerView.Adapter<EventCardAdapter.Even
         TextView eventDate;
         TextView eventTime;
         TextView eventStatus;
+        String posterKey;  // Poster the card is showing, so a late one for a recycled card is dropped
+        final int posterWidth;
+        final int posterHeight;
 
         EventViewHolder(@NonNull View itemView, final OnItemClickListener listener) {
             super(itemView);
@@ -135,6 +165,9 @@ public class EventCardAdapter extends RecyclerView.Adapter<EventCardAdapter.Even
             eventDate   = itemView.findViewById(R.id.event_card_date);
             eventTime   = itemView.findViewById(R.id.event_card_time);
             eventStatus = itemView.findViewById(R.id.event_card_status);
+            // Posters are decoded just large enough to cover the poster view, which spans the card
+            posterWidth = itemView.getResources().getDisplayMetrics().widthPixels;
+            posterHeight = itemView.getResources().getDimensionPixelSize(R.dimen.poster_thumbnail_height);
 
             itemView.setOnClickListener(v -> {
                 if (listener != null) {
@@ -6,10 +6,9 @@ import static androidx.navigation.Navigation.findNavController;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
+import android.text.TextUtils;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
@@ -19,7 +18,6 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.ui.NavigationUI;
 
-import android.util.Base64;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -27,15 +25,15 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentEventCreationBinding;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import com.google.firebase.firestore.SetOptions;
 
 
 /**
@@ -43,12 +41,16 @@ import com.google.firebase.firestore.SetOptions;
  *
  * Poster workflow (NO Firebase Storage):
  *  - Organizer taps "Set event poster" and picks an image from device.
- *  - Image is compressed & encoded to Base64 and kept in local fields.
- *  - When event is saved/updated, we write these poster fields directly
+ *  - Image is encoded off the main thread into a list thumbnail and a detail
+ *    rendition (see {@link PosterEncoder}), kept in local fields.
+ *  - When event is saved/updated, each JPEG is stored once in the "posters" collection
+ *    under its hash (see {@link PosterRepository}), and we write these poster fields
  *    onto the event document in Firestore:
- *      hasPoster, posterBase64, posterUploaderId, posterUploaderName
+ *      hasPoster, posterHash, thumbnailHash, posterUploaderId, posterUploaderName
  *
- * NOTE: Location is only used for UI here; Event model does not store it.
+ * Categories are typed as a comma separated list (see {@link EventFacets#parseCategories}).
+ * A location is geocoded into a geohash (see {@link DeviceLocation#geocode}) so the event can be
+ * found with the "near me" filter; the address text itself is not stored.
  */
 public class EventCreationFragment extends Fragment {
 
@@ -60,8 +62,9 @@ public class EventCreationFragment extends Fragment {
 
     private FirebaseFirestore db;
 
-    // Poster data kept in memory until we save the event
-    private String posterBase64;
+    // Poster renditions kept in memory until we save the event
+    private byte[] posterBytes;
+    private byte[] thumbnailBytes;
     private String posterUploaderId;
     private String posterUploaderName;
     private boolean hasPoster = false;
@@ -166,7 +169,7 @@ public class EventCreationFragment extends Fragment {
     }
 
     // ----------------------------------------------------------------------
-    // Poster selection (Base64, no Firebase Storage)
+    // Poster selection (no Firebase Storage)
     // ----------------------------------------------------------------------
 
     private void openImagePicker() {
@@ -177,33 +180,24 @@ public class EventCreationFragment extends Fragment {
     }
 
     /**
-     * Reads the selected image, compresses it, and stores as Base64
-     * in the fragment's fields.
+     * Encodes the selected image into the poster renditions on a background thread,
+     * and keeps them in the fragment's fields. Saving waits until they are ready.
      */
     private void handlePosterSelection(@NonNull Uri imageUri) {
-        try {
-            InputStream stream = requireContext().getContentResolver().openInputStream(imageUri);
-            if (stream == null) {
-                showToast("Unable to read selected image.");
-                return;
+        binding.buttonCreateEvent.setEnabled(false);
+        PosterEncoder.encode(requireContext().getContentResolver(), imageUri, (renditions, error) -> {
+            if (!isAdded() || binding == null) {
+                return; // Fragment is no longer attached
             }
-
-            Bitmap bitmap = BitmapFactory.decodeStream(stream);
-            stream.close();
-
-            if (bitmap == null) {
-                showToast("Unsupported image.");
+            binding.buttonCreateEvent.setEnabled(true);
+            if (error != null) {
+                showToast("Failed to read image. Try a smaller one.");
                 return;
             }
 
-            // Resize to max 512px on longer side to keep Firestore doc small
-            bitmap = scaleBitmap(bitmap, 512);
-
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 60, baos);
-            byte[] data = baos.toByteArray();
-
-            posterBase64 = Base64.encodeToString(data, Base64.DEFAULT);
+            posterBytes = renditions.detail;
+            thumbnailBytes = renditions.thumbnail;
+            Log.d(TAG, "Poster encoded in " + renditions.encodeMillis + " ms");
 
             Profile currentUser = ProfileManager.getInstance().getCurrentUserProfile();
             if (currentUser != null) {
@@ -217,24 +211,7 @@ public class EventCreationFragment extends Fragment {
             hasPoster = true;
 
             showToast("Poster selected. It will be saved with the event.");
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling poster selection", e);
-            showToast("Failed to read image. Try a smaller one.");
-        }
-    }
-
-    private Bitmap scaleBitmap(Bitmap bitmap, int maxSize) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        float scale = Math.min((float) maxSize / width, (float) maxSize / height);
-        if (scale >= 1.0f) {
-            return bitmap; // already small enough
-        }
-
-        int newW = Math.round(width * scale);
-        int newH = Math.round(height * scale);
-        return Bitmap.createScaledBitmap(bitmap, newW, newH, true);
+        });
     }
 
     // ----------------------------------------------------------------------
@@ -269,7 +246,6 @@ public class EventCreationFragment extends Fragment {
                     endDate,
                     eventTime
             );
-            // Location is not stored on Event in this version
         } else {
             event.setName(eventName);
             event.setDesc(eventDesc);
@@ -279,22 +255,86 @@ public class EventCreationFragment extends Fragment {
             event.setEndDate(endDate);
             event.setEventTime(eventTime);
         }
+        event.setSearchTokens(EventSearchIndex.searchTokens(event));
+        event.setCategories(EventFacets.parseCategories(
+                binding.textInputCreateCategories.getText().toString()));
+
+        String location = binding.textInputCreateLocation.getText().toString().trim();
+        if (!binding.checkboxRequireLocation.isChecked()) {
+            event.setGeohash(null);
+        } else if (!location.isEmpty()) {
+            // Saving waits for the address to be looked up
+            binding.buttonCreateEvent.setEnabled(false);
+            DeviceLocation.geocode(requireContext(), location, geohash -> {
+                if (!isAdded() || binding == null) {
+                    return; // Fragment is no longer attached
+                }
+                binding.buttonCreateEvent.setEnabled(true);
+                if (geohash == null) {
+                    showToast("Location not found. Try a more specific address.");
+                    return;
+                }
+                event.setGeohash(geohash);
+                uploadToFirebase(event);
+            });
+            return;
+        }
+        // With the box checked but no new address, an edited event keeps its location
 
         uploadToFirebase(event);
     }
 
+    /**
+     * Stores both renditions of the selected poster, if any, then writes the event with references to them.
+     */
     private void uploadToFirebase(Event event) {
+        if (!hasPoster || posterBytes == null || thumbnailBytes == null) {
+            writeEvent(event, null, null);
+            return;
+        }
+        PosterRepository.putPoster(posterBytes, (posterHash, error) -> {
+            if (error != null) {
+                showToast("Failed to save poster. Please try again.");
+                return;
+            }
+            PosterRepository.putPoster(thumbnailBytes, (thumbnailHash, thumbnailError) -> {
+                if (thumbnailError != null) {
+                    showToast("Failed to save poster. Please try again.");
+                    return;
+                }
+                writeEvent(event, posterHash, thumbnailHash);
+            });
+        });
+    }
+
+    private void writeEvent(Event event, @Nullable String posterHash, @Nullable String thumbnailHash) {
+        if (posterHash != null) {
+            event.setPosterHash(posterHash);
+            event.setThumbnailHash(thumbnailHash);
+        }
 
         if (event.getEventId() != null && !event.getEventId().isEmpty()) {
-            // Update existing event document
+            // Update existing event document. Only the edited details are written, so the
+            // poster fields and the participation lists are left as they are.
+            Map<String, Object> details = new HashMap<>();
+            details.put("name", event.getName());
+            details.put("desc", event.getDesc());
+            details.put("guideline", event.getGuideline());
+            details.put("maxReg", event.getMaxReg());
+            details.put("startDate", event.getStartDate());
+            details.put("endDate", event.getEndDate());
+            details.put("eventTime", event.getEventTime());
+            details.put(EventSearchIndex.SEARCH_TOKENS, event.getSearchTokens());
+            details.put(EventFacets.CATEGORIES, event.getCategories());
+            details.put("geohash", event.getGeohash());
+            details.put(EventFacets.GEO_CELLS, event.getGeoCells());
+            details.put(EventRepository.UPDATED_AT, FieldValue.serverTimestamp());
+            // A new poster goes out in the same update, so the event never points at the old one
+            putPosterFields(details, posterHash, thumbnailHash);
             db.collection(EVENTS_COLLECTION)
                     .document(event.getEventId())
-                    .set(event, SetOptions.merge())  // Keep existing poster field
+                    .update(details)
                     .addOnSuccessListener(aVoid -> {
-
-                        // Update poster fields if we have new one selected
-                        updatePosterFieldsIfNeeded(event.getEventId());
-
                         Bundle bundle = new Bundle();
                         bundle.putSerializable("event", event);
                         findNavController(requireView())
@@ -304,42 +344,45 @@ public class EventCreationFragment extends Fragment {
                             Log.e(TAG, "Error updating event: " + e.getMessage(), e)
                     );
         } else {
-            // New event: add, then update with ID, URL, and any poster fields
-            db.collection(EVENTS_COLLECTION)
-                    .add(event)
-                    .addOnSuccessListener(documentReference -> {
-                        String eventId = documentReference.getId();
-                        String eventURL = "shopping-basket://event/" + eventId;
-
-                        event.setEventId(eventId);
-                        event.setEventURL(eventURL);
-
-                        Map<String, Object> updates = new HashMap<>();
-                        updates.put("eventId", eventId);
-                        updates.put("eventURL", eventURL);
-
-                        if (hasPoster && posterBase64 != null && !posterBase64.isEmpty()) {
-                            updates.put("hasPoster", true);
-                            updates.put("posterBase64", posterBase64);
-                            if (posterUploaderId != null) {
-                                updates.put("posterUploaderId", posterUploaderId);
-                            }
-                            if (posterUploaderName != null) {
-                                updates.put("posterUploaderName", posterUploaderName);
-                            }
-                        }
+            // New event: keeps its entrants in the subcollection, so the document only carries
+            // the counters. The ID is picked first so the event, its URL and any poster fields
+            // go out in one batch, whose second write drops the empty lists the event serializes.
+            DocumentReference documentReference = db.collection(EVENTS_COLLECTION).document();
+            String eventId = documentReference.getId();
+            String eventURL = "shopping-basket://event/" + eventId;
+
+            event.setEventId(eventId);
+            event.setEventURL(eventURL);
+            event.setEntrantsInSubcollection(true);
+
+            Map<String, Object> updates = new HashMap<>();
+            updates.put(EventDelta.WAITING_LIST, FieldValue.delete());
+            updates.put(EventDelta.INVITE_LIST, FieldValue.delete());
+            updates.put(EventDelta.ENROLL_LIST, FieldValue.delete());
+            updates.put(EventDelta.CANCEL_LIST, FieldValue.delete());
+            updates.put(EventRepository.UPDATED_AT, FieldValue.serverTimestamp());
+
+            if (posterHash != null) {
+                updates.put("hasPoster", true);
+                updates.put(PosterRepository.POSTER_SIZE, posterBytes.length);
+                if (posterUploaderId != null) {
+                    updates.put("posterUploaderId", posterUploaderId);
+                }
+                if (posterUploaderName != null) {
+                    updates.put("posterUploaderName", posterUploaderName);
+                }
+            }
 
-                        documentReference.update(updates)
-                                .addOnSuccessListener(v -> {
-                                    Log.d(TAG, "Event created and updated with ID: " + event.getEventId());
-                                    Bundle bundle = new Bundle();
-                                    bundle.putSerializable("event", event);
-                                    findNavController(requireView())
-                                            .navigate(R.id.action_eventCreationFragment_to_eventQRFragment, bundle);
-                                })
-                                .addOnFailureListener(e ->
-                                        Log.e(TAG, "Error during event creation/update: " + e.getMessage(), e)
-                                );
+            WriteBatch writeBatch = db.batch();
+            writeBatch.set(documentReference, event);
+            writeBatch.update(documentReference, updates);
+            writeBatch.commit()
+                    .addOnSuccessListener(v -> {
+                        Log.d(TAG, "Event created with ID: " + event.getEventId());
+                        Bundle bundle = new Bundle();
+                        bundle.putSerializable("event", event);
+                        findNavController(requireView())
+                                .navigate(R.id.action_eventCreationFragment_to_eventQRFragment, bundle);
                     })
                     .addOnFailureListener(e ->
                             Log.e(TAG, "Error adding new event: " + e.getMessage(), e)
@@ -348,29 +391,27 @@ public class EventCreationFragment extends Fragment {
     }
 
     /**
-     * For existing events, we separately update the poster fields on the document.
+     * Adds the fields of a newly selected poster to the update of an existing event.
+     * Does nothing when no new poster was selected.
      */
-    private void updatePosterFieldsIfNeeded(String eventId) {
-        if (!hasPoster || posterBase64 == null || posterBase64.isEmpty()) {
+    private void putPosterFields(Map<String, Object> posterUpdates, @Nullable String posterHash,
+                                 @Nullable String thumbnailHash) {
+        if (posterHash == null) {
             return;
         }
 
-        Map<String, Object> posterUpdates = new HashMap<>();
         posterUpdates.put("hasPoster", true);
-        posterUpdates.put("posterBase64", posterBase64);
+        posterUpdates.put(PosterRepository.POSTER_HASH, posterHash);
+        posterUpdates.put(PosterRepository.THUMBNAIL_HASH, thumbnailHash);
+        posterUpdates.put(PosterRepository.POSTER_SIZE, posterBytes.length);
+        // Drop the copy an event saved before posters were moved out of it may still carry
+        posterUpdates.put(PosterRepository.LEGACY_POSTER_FIELD, FieldValue.delete());
         if (posterUploaderId != null) {
             posterUpdates.put("posterUploaderId", posterUploaderId);
         }
         if (posterUploaderName != null) {
             posterUpdates.put("posterUploaderName", posterUploaderName);
         }
-
-        db.collection(EVENTS_COLLECTION).document(eventId)
-                .update(posterUpdates)
-                .addOnSuccessListener(aVoid ->
-                        Log.d(TAG, "Poster fields updated for event " + eventId))
-                .addOnFailureListener(e ->
-                        Log.e(TAG, "Failed to update poster fields: " + e.getMessage(), e));
     }
 
     private void populateEventData() {
@@ -408,9 +449,17 @@ public class EventCreationFragment extends Fragment {
             );
         }
 
-        // Location is not stored on Event; keep UI hidden by default
-        binding.checkboxRequireLocation.setChecked(false);
-        binding.textInputCreateLocation.setVisibility(GONE);
+        if (event.getCategories() != null) {
+            binding.textInputCreateCategories.setText(TextUtils.join(", ", event.getCategories()));
+        }
+
+        // Only the geohash of the location is stored, so an existing one is kept unless a new address is typed
+        boolean hasLocation = event.getGeohash() != null;
+        binding.checkboxRequireLocation.setChecked(hasLocation);
+        binding.textInputCreateLocation.setVisibility(hasLocation ? VISIBLE : GONE);
+        if (hasLocation) {
+            binding.textInputCreateLocation.setHint("Location saved; enter a new one to change it");
+        }
 
         binding.buttonCreateEvent.setText("Update");
     }
@@ -0,0 +1,373 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class describes a change to a stored event document in terms of the entrants
+ * that moved between participation lists and the plain fields that changed,
+ * so the change can be written without rewriting the whole event.
+ * List changes are applied with Firestore's arrayRemove/arrayUnion, or, for events that keep
+ * their entrants in a subcollection, as writes to the entrant documents plus counter increments.
+ * A subcollection delta with more entrant documents than fit in one batch can be split, so the
+ * entrant documents are written first and the event document last (see {@link #split(int)}).
+ */
+public class EventDelta {
+    public static final String WAITING_LIST = "waitingList";
+    public static final String INVITE_LIST = "inviteList";
+    public static final String ENROLL_LIST = "enrollList";
+    public static final String CANCEL_LIST = "cancelList";
+    public static final String LOTTERY_LOSSES = "lotteryLosses";
+
+    private final String eventId;
+    private final boolean entrantsInSubcollection;
+    // Event the delta was built from, for the registration times of moved entrants; null for split parts
+    private final Event event;
+    private final LinkedHashMap<String, ArrayList<Profile>> removed = new LinkedHashMap<>();
+    private final LinkedHashMap<String, ArrayList<Profile>> added = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Object> fields = new LinkedHashMap<>();
+    // Subcollection storage only: the new status of each moved entrant, and counter changes
+    private final LinkedHashMap<String, Entrant> entrants = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+    // GUID -> draws lost to add to that entrant's entry in lotteryLosses, so the map is never rewritten whole
+    private final LinkedHashMap<String, Integer> losses = new LinkedHashMap<>();
+    // GUIDs registering for the first time, added to the participantGuids index
+    private final ArrayList<String> joined = new ArrayList<>();
+    // Subcollection storage only: each moved entrant as it was before the move, so a part can be undone
+    private final LinkedHashMap<String, Entrant> previous = new LinkedHashMap<>();
+    // Set on the parts split off by split(), which write entrant documents and leave the event document alone
+    private boolean entrantsOnly;
+
+    public EventDelta(Event event) {
+        this(event.getEventId(), event.isEntrantsInSubcollection(), event);
+    }
+
+    private EventDelta(String eventId, boolean entrantsInSubcollection, Event event) {
+        this.eventId = eventId;
+        this.entrantsInSubcollection = entrantsInSubcollection;
+        this.event = event;
+    }
+
+    /**
+     * Builds the delta for a lottery that has just been run on the event
+     * @param event
+     *     event after the lottery was run
+     * @param invites
+     *     invites returned by the lottery, may be null if nobody was drawn
+     * @return
+     *     delta moving the winners from the waiting list to the invite list
+     */
+    public static EventDelta forLottery(Event event, List<Invite> invites) {
+        EventDelta delta = new EventDelta(event);
+        if (invites != null) {
+            for (Invite i : invites) {
+                delta.move(event.findEntrant(i.getTarget()), EntrantStatus.WAITING, EntrantStatus.INVITED);
+            }
+        }
+        delta.set("selectNum", event.getSelectNum());
+        delta.set("waitListSize", event.getWaitListSize());
+        delta.set("lotterySeed", event.getLotterySeed());
+        delta.set("lotteryStrategy", event.getLotteryStrategy() != null ? event.getLotteryStrategy().name() : null);
+        if (invites != null && !invites.isEmpty()) {
+            // A lottery that invited anyone left the waiting list holding exactly the entrants who lost
+            for (Profile i : event.getWaitingList()) {
+                delta.losses.put(i.getGuid(), 1);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Records that a profile moved from one participation list to another
+     * @param profile
+     *     profile that moved
+     * @param from
+     *     status before the move, NONE if they had not registered
+     * @param to
+     *     status after the move
+     * @return
+     *     this delta
+     */
+    public EventDelta move(Profile profile, EntrantStatus from, EntrantStatus to) {
+        return move(profile, profile, from, to);
+    }
+
+    /**
+     * Records that a profile moved from one participation list to another, where the copy
+     * stored in the old list may differ from the one joining the new list.
+     * arrayRemove only matches an exact copy of the stored element. An entrant document keeps
+     * the registration time the event holds for it, except on joining the waiting list,
+     * where it is left for the server to fill in
+     * @param stored
+     *     profile as stored in the list it left
+     * @param current
+     *     profile as it should be stored in the list it joined
+     * @param from
+     *     status before the move, NONE if they had not registered
+     * @param to
+     *     status after the move
+     * @return
+     *     this delta
+     */
+    public EventDelta move(Profile stored, Profile current, EntrantStatus from, EntrantStatus to) {
+        if (from == to) {
+            return this;
+        }
+        if (listField(from) != null) {
+            listFor(removed, listField(from)).add(stored);
+            addCount(countField(from), -1);
+        }
+        if (listField(to) != null) {
+            listFor(added, listField(to)).add(current);
+            addCount(countField(to), 1);
+        }
+        Date registered = event != null ? event.registeredAt(current.getGuid()) : null;
+        if (from == EntrantStatus.NONE) {
+            joined.add(current.getGuid());
+        } else {
+            previous.put(current.getGuid(), entrant(stored, from, registered));
+        }
+        boolean registering = to == EntrantStatus.WAITING && (from == EntrantStatus.NONE || from == EntrantStatus.CANCELLED);
+        entrants.put(current.getGuid(), entrant(current, to, registering ? null : registered));
+        return this;
+    }
+
+    private static Entrant entrant(Profile profile, EntrantStatus status, Date registeredAt) {
+        Entrant entrant = new Entrant(profile, status);
+        entrant.setRegisteredAt(registeredAt);
+        return entrant;
+    }
+
+    /**
+     * Splits a subcollection delta that has more writes than fit in one batch. The documents of
+     * entrants who were already registered go into parts of their own, each within maxWrites,
+     * to be committed first; writing such a document again leaves it the same, so a part can be
+     * retried. The last part keeps the counters, the fields and any newly registered entrants,
+     * so the event document still changes in a single write
+     * @param maxWrites
+     *     largest number of writes in one batch
+     * @return
+     *     the parts in commit order, ending with the event change; only this delta if it fits
+     */
+    public List<EventDelta> split(int maxWrites) {
+        List<EventDelta> parts = new ArrayList<>();
+        if (!entrantsInSubcollection || getWriteCount() <= maxWrites) {
+            parts.add(this);
+            return parts;
+        }
+        EventDelta change = new EventDelta(eventId, true, null);
+        EventDelta part = null;
+        for (Entrant entrant : entrants.values()) {
+            Entrant before = previous.get(entrant.getGuid());
+            if (before == null) {
+                // Registering now; undoing it would need a delete, so it stays with the event change
+                change.entrants.put(entrant.getGuid(), entrant);
+                continue;
+            }
+            if (part == null || part.getWriteCount() == maxWrites) {
+                part = new EventDelta(eventId, true, null);
+                part.entrantsOnly = true;
+                parts.add(part);
+            }
+            part.entrants.put(entrant.getGuid(), entrant);
+            part.previous.put(entrant.getGuid(), before);
+        }
+        change.fields.putAll(fields);
+        change.counts.putAll(counts);
+        change.losses.putAll(losses);
+        change.joined.addAll(joined);
+        parts.add(change);
+        return parts;
+    }
+
+    /**
+     * Builds the writes that put the entrant documents of a part split off by {@link #split(int)}
+     * back the way they were, for when the event change after it could not be committed
+     * @return
+     *     a part writing each entrant with the status it had before the move
+     */
+    public EventDelta reverted() {
+        EventDelta undo = new EventDelta(eventId, true, null);
+        undo.entrantsOnly = true;
+        for (Map.Entry<String, Entrant> entry : previous.entrySet()) {
+            undo.entrants.put(entry.getKey(), entry.getValue());
+            undo.previous.put(entry.getKey(), entrants.get(entry.getKey()));
+        }
+        return undo;
+    }
+
+    /**
+     * @param status
+     *     participation status
+     * @return
+     *     name of the list field on the event document, null for NONE
+     */
+    public static String listField(EntrantStatus status) {
+        switch (status) {
+            case WAITING: return WAITING_LIST;
+            case INVITED: return INVITE_LIST;
+            case ENROLLED: return ENROLL_LIST;
+            case CANCELLED: return CANCEL_LIST;
+            default: return null;
+        }
+    }
+
+    /**
+     * @param status
+     *     participation status
+     * @return
+     *     name of the counter field on the event document, null for NONE
+     */
+    public static String countField(EntrantStatus status) {
+        switch (status) {
+            case WAITING: return "waitingCount";
+            case INVITED: return "invitedCount";
+            case ENROLLED: return "enrolledCount";
+            case CANCELLED: return "cancelledCount";
+            default: return null;
+        }
+    }
+
+    /**
+     * Records a new value for a plain field of the event document
+     * @param field
+     *     name of the field
+     * @param value
+     *     new value
+     * @return
+     *     this delta
+     */
+    public EventDelta set(String field, Object value) {
+        fields.put(field, value);
+        return this;
+    }
+
+    /**
+     * Applies this delta to a stored copy of the event, the way the writes would change the
+     * event document, for stores that keep events in memory
+     * @param stored
+     *     the stored event, changed in place
+     */
+    public void applyTo(Event stored) {
+        for (Entrant entrant : entrants.values()) {
+            stored.putEntrant(entrant);
+        }
+        if (stored.isEntrantsInSubcollection()) {
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                switch (entry.getKey()) {
+                    case "waitingCount": stored.setWaitingCount(stored.getWaitingCount() + entry.getValue()); break;
+                    case "invitedCount": stored.setInvitedCount(stored.getInvitedCount() + entry.getValue()); break;
+                    case "enrolledCount": stored.setEnrolledCount(stored.getEnrolledCount() + entry.getValue()); break;
+                    case "cancelledCount": stored.setCancelledCount(stored.getCancelledCount() + entry.getValue()); break;
+                }
+            }
+            if (!joined.isEmpty()) {
+                List<String> guids = new ArrayList<>(stored.getParticipantGuids());
+                guids.addAll(joined);
+                stored.setParticipantGuids(guids);
+            }
+        }
+        if (!losses.isEmpty()) {
+            Map<String, Integer> storedLosses = new HashMap<>(stored.getLotteryLosses());
+            for (Map.Entry<String, Integer> entry : losses.entrySet()) {
+                storedLosses.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+            stored.setLotteryLosses(storedLosses);
+        }
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            Object value = entry.getValue();
+            switch (entry.getKey()) {
+                case "selectNum": stored.setSelectNum(((Number) value).intValue()); break;
+                case "waitListSize": break; // Derived from the waiting list on the stored event
+                case "lotterySeed": stored.setLotterySeed(value != null ? ((Number) value).longValue() : null); break;
+                case "lotteryStrategy": stored.setLotteryStrategy(value != null ? LotteryStrategy.valueOf((String) value) : null); break;
+                default: throw new IllegalArgumentException("Cannot apply field " + entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Firestore allows a single array transform per field in one update, so a field
+     * that both loses and gains entrants needs a second write.
+     * With subcollection storage each moved entrant is its own document write
+     * @return
+     *     number of document writes needed to apply this delta
+     */
+    public int getWriteCount() {
+        if (entrantsInSubcollection) {
+            return (entrantsOnly ? 0 : 1) + entrants.size();
+        }
+        for (String field : removed.keySet()) {
+            if (added.containsKey(field)) {
+                return 2;
+            }
+        }
+        return 1;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public boolean isEntrantsInSubcollection() {
+        return entrantsInSubcollection;
+    }
+
+    // True for the parts split off by split(), which do not write the event document
+    public boolean isEntrantsOnly() {
+        return entrantsOnly;
+    }
+
+    public boolean isEmpty() {
+        return entrants.isEmpty() && fields.isEmpty() && losses.isEmpty();
+    }
+
+    public Map<String, ArrayList<Profile>> getRemoved() {
+        return removed;
+    }
+
+    public Map<String, ArrayList<Profile>> getAdded() {
+        return added;
+    }
+
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    // New entrant documents, keyed by GUID
+    public Map<String, Entrant> getEntrants() {
+        return entrants;
+    }
+
+    public List<String> getJoined() {
+        return joined;
+    }
+
+    // Counter field -> change in value
+    public Map<String, Integer> getCounts() {
+        return counts;
+    }
+
+    // GUID -> draws lost to add to lotteryLosses
+    public Map<String, Integer> getLosses() {
+        return losses;
+    }
+
+    private void addCount(String field, int change) {
+        Integer current = counts.get(field);
+        counts.put(field, (current != null ? current : 0) + change);
+    }
+
+    private static ArrayList<Profile> listFor(LinkedHashMap<String, ArrayList<Profile>> lists, String field) {
+        ArrayList<Profile> list = lists.get(field);
+        if (list == null) {
+            list = new ArrayList<>();
+            lists.put(field, list);
+        }
+        return list;
+    }
+}
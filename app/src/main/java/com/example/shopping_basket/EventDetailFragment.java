@@ -21,9 +21,7 @@ import com.example.shopping_basket.databinding.FragmentEventDetailBinding;
 import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
-import java.util.stream.Collectors;
 
 /**
  * A {@link Fragment} that displays detailed information about a specific event.
@@ -127,6 +125,16 @@ public class EventDetailFragment extends Fragment {
         setupEventDetail();
         setupClickListeners();
         updateRegisterButtonState();
+
+        // Events with a subcollection of entrants only carry counters, so look up this user's entry
+        if (event.isEntrantsInSubcollection() && profile != null) {
+            binding.buttonRegisterEvent.setEnabled(false);
+            EntrantRepository.loadEntrant(event, profile.getGuid(), entrant -> {
+                if (binding != null) {
+                    updateRegisterButtonState();
+                }
+            });
+        }
     }
 
     /**
@@ -194,10 +202,11 @@ public class EventDetailFragment extends Fragment {
         binding.buttonDecline.setVisibility(View.GONE);
         binding.buttonDetailToHome.setVisibility(View.VISIBLE);
 
-        // Check if the current user's profile is in the inviteList
-        boolean isInvited = event.getInviteList().stream().anyMatch(p -> p.getGuid().equals(profile.getGuid()));
-        boolean isRegistered = event.getWaitingList().stream().anyMatch(p -> p.getGuid().equals(profile.getGuid()));
-        boolean isEnrolled = event.getEnrollList().stream().anyMatch(p -> p.getGuid().equals(profile.getGuid()));
+        // Find which of the event's lists the current user is in
+        EntrantStatus status = event.statusOf(profile.getGuid());
+        boolean isInvited = status == EntrantStatus.INVITED;
+        boolean isRegistered = status == EntrantStatus.WAITING;
+        boolean isEnrolled = status == EntrantStatus.ENROLLED;
         boolean isRegistrationOpen = event.getEndDate().after(new Date());
 
         if (isRegistrationOpen) {
@@ -239,6 +248,8 @@ public class EventDetailFragment extends Fragment {
             NavHostFragment.findNavController(this).navigate(R.id.action_eventDetailFragment_to_homeFragment);
         });
         binding.buttonRegisterEvent.setOnClickListener(v -> {
+            EntrantStatus before = event.statusOf(profile.getGuid());
+            Profile stored = event.findEntrant(profile.getGuid());
             String buttonText = binding.buttonRegisterEvent.getText().toString();
             switch (buttonText) {
                 case "Register":
@@ -255,7 +266,7 @@ public class EventDetailFragment extends Fragment {
                     break;
             }
             // Update Firestore's database
-            updateEventParticipationCollections();
+            updateEventParticipationCollections(stored, before, event.statusOf(profile.getGuid()));
             // After the click, update the button's state and text
             updateRegisterButtonState();
             // Update TextView displaying the count of registered users
@@ -265,51 +276,35 @@ public class EventDetailFragment extends Fragment {
     }
 
     /**
-     * Updates the event document in Firestore with the current state of its lists.
-     * This method extracts the GUIDs from the Profile objects in each list
-     * and overwrites the corresponding arrays in the Firestore document.
+     * Writes the current user's move between participation lists to Firestore.
+     * Only this user's entry changes, so other entrants registering at the same time are not overwritten.
+     *
+     * @param stored The user's profile as stored on the event before the click, or null if they had not registered.
+     * @param before The user's status before the click.
+     * @param after  The user's status after the click.
      */
-    private void updateEventParticipationCollections() {
+    private void updateEventParticipationCollections(Profile stored, EntrantStatus before, EntrantStatus after) {
         if (event == null || event.getEventId() == null) {
             Log.e("Firestore", "Event or Event ID is null. Cannot update.");
+            return;
         }
 
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-//        List<String> waitingListIds = event.getWaitingList().stream()
-//                .map(Profile::getGuid)
-//                .collect(Collectors.toList());
-//
-//
-//        // Convert ArrayList<Profile> to ArrayList<String> of GUIDs for Firestore
-//        List<String> enrollListIds = event.getEnrollList().stream()
-//                .map(Profile::getGuid)
-//                .collect(Collectors.toList());
-//
-//        List<String> cancelListIds = event.getCancelList().stream()
-//                .map(Profile::getGuid)
-//                .collect(Collectors.toList());
-//
-//        List<String> inviteListIds = event.getInviteList().stream()
-//                .map(Profile::getGuid)
-//                .collect(Collectors.toList());
-
-        // Update the specific fields in the Firestore document
-        db.collection("events").document(event.getEventId())
-                .update(
-                        "waitingList", event.getWaitingList(),
-                        "enrollList", event.getEnrollList(),
-                        "cancelList", event.getCancelList(),
-                        "inviteList", event.getInviteList()
-                )
-                .addOnSuccessListener(aVoid -> Log.d("FirestoreUpdate", "Event lists updated successfully!"))
-                .addOnFailureListener(e -> Log.e("FirestoreUpdate", "Error updating event lists", e));
+        Profile current = event.findEntrant(profile.getGuid());
+        EventDelta delta = new EventDelta(event).move(stored != null ? stored : current, current, before, after);
+        EventRepository.updateEvent(delta, error -> {
+            if (error == null) {
+                Log.d("FirestoreUpdate", "Event lists updated successfully!");
+            } else {
+                Log.e("FirestoreUpdate", "Error updating event lists", error);
+            }
+        });
     }
 
     // In EventDetailFragment.java
 
     /**
-     * Loads the poster image for this event from its Firestore document.
-     * The image is expected to be stored as a Base64 encoded string.
+     * Loads the poster image for this event through the shared poster cache, so a
+     * poster already shown elsewhere is not fetched or decoded again.
      * If no poster is found or an error occurs, a placeholder is displayed.
      */
     private void loadPosterImage() {
@@ -321,47 +316,18 @@ public class EventDetailFragment extends Fragment {
             return;
         }
 
-        FirebaseFirestore.getInstance()
-                .collection("events")
-                .document(event.getEventId())
-                .get()
-                .addOnSuccessListener(doc -> {
-                    // Check if the fragment is still attached to an activity
-                    if (!isAdded() || binding == null) {
-                        return;
-                    }
-
-                    if (doc != null && doc.exists()) {
-                        String posterBase64 = doc.getString("posterBase64");
-                        if (posterBase64 != null && !posterBase64.isEmpty()) {
-                            try {
-                                byte[] bytes = android.util.Base64.decode(posterBase64, android.util.Base64.DEFAULT);
-                                android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                                if (bitmap != null) {
-                                    binding.detailEventPoster.setImageBitmap(bitmap);
-                                } else {
-                                    // Decoding failed, use placeholder
-                                    binding.detailEventPoster.setImageResource(R.drawable.image_placeholder);
-                                }
-                            } catch (IllegalArgumentException e) {
-                                Log.e("EventDetailFragment", "Invalid Base64 poster string", e);
-                                binding.detailEventPoster.setImageResource(R.drawable.image_placeholder);
-                            }
-                        } else {
-                            // posterBase64 field is null or empty, use placeholder
-                            binding.detailEventPoster.setImageResource(R.drawable.image_placeholder);
-                        }
-                    } else {
-                        // Document doesn't exist, use placeholder
-                        binding.detailEventPoster.setImageResource(R.drawable.image_placeholder);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("EventDetailFragment", "Failed to load poster image.", e);
-                    if (isAdded() && binding != null) {
-                        binding.detailEventPoster.setImageResource(R.drawable.image_placeholder);
-                    }
-                });
+        PosterCache.getInstance(requireContext()).load(event.getEventId(), event.getPosterHash(), null, bitmap -> {
+            // Check if the fragment is still attached to an activity
+            if (!isAdded() || binding == null) {
+                return;
+            }
+            if (bitmap != null) {
+                binding.detailEventPoster.setImageBitmap(bitmap);
+            } else {
+                // No poster, or decoding failed, use placeholder
+                binding.detailEventPoster.setImageResource(R.drawable.image_placeholder);
+            }
+        });
     }
 
 
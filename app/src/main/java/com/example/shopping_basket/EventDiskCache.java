@@ -0,0 +1,429 @@
+package com.example.shopping_basket;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the start of the home event feed in a single file, so the feed can be
+ * shown as soon as the app launches and then revalidated against Firestore.
+ * Each event is serialized once when it arrives from the network and kept as bytes with its
+ * poster and the time it was requested. Events are fetched at different times, so the watermark is
+ * the earliest of those times among the events in the feed: every change made after it is fetched
+ * again, and no cached event can have changed before it without that change being cached.
+ * The cache holds at most a fixed number of bytes, evicting the least recently used events when full.
+ * A hit is an event shown from the cache, a miss is an event that had to be fetched.
+ * The cache can be used from any thread, but every method may wait for a {@link #save()} in
+ * progress and most of them serialize events, so they belong on a background thread.
+ */
+public class EventDiskCache {
+    private static final String TAG = "EventDiskCache";
+    private static final int FORMAT_VERSION = 2;
+
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    // Enough events to fill the screen and the first prefetch
+    public static final int FEED_LENGTH = EventFeed.FIRST_PAGE_SIZE + EventFeed.PAGE_SIZE;
+    // Caches whose first page was loaded longer ago than this are dropped, however often they were
+    // revalidated since, so anything revalidation misses is bounded by a full reload
+    public static final long MAX_AGE_MILLIS = 24L * 60 * 60 * 1000;
+    // Fetch times come from the device clock and are compared with server times,
+    // so the watermark is moved back by this much in case the device clock is ahead
+    public static final long CLOCK_SKEW_MILLIS = 5L * 60 * 1000;
+
+    // Same order as the feed query: by end date, then by document ID
+    static final Comparator<Event> FEED_ORDER = Comparator
+            .comparing(Event::getEndDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Event::getEventId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    // One cached event, as stored on disk
+    private static class Entry {
+        final byte[] data;
+        final byte[] poster;
+        long fetchedAt; // When the event was requested; it is current as of then
+
+        Entry(byte[] data, byte[] poster, long fetchedAt) {
+            this.data = data;
+            this.poster = poster;
+            this.fetchedAt = fetchedAt;
+        }
+
+        long size() {
+            return data.length + (poster != null ? poster.length : 0);
+        }
+    }
+
+    private final File file;
+    private final long maxBytes;
+    // Access order makes the first entry the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayList<String> feed = new ArrayList<>();
+    private boolean feedOpen = false; // Whether the next page fetched continues the recorded feed
+    private long totalBytes = 0;
+    private long validatedAt = 0; // When the first page of the recorded feed was last loaded in full
+    private boolean loaded = false;
+    private boolean dirty = false;
+    private int hits = 0;
+    private int misses = 0;
+
+    public EventDiskCache(File file) {
+        this(file, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param file
+     *     file the cache is kept in, created on the first save
+     * @param maxBytes
+     *     largest total size of the cached events and posters
+     */
+    public EventDiskCache(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cached start of the feed, reading the file the first time.
+     * Events whose registration has ended by now are left out, as the feed query would.
+     * @param now
+     *     current time
+     * @param posters
+     *     receives the cached posters, keyed by event ID
+     * @return
+     *     the cached events in feed order, empty if there is no cache or it is too old
+     */
+    public synchronized List<Event> getFeed(Date now, Map<String, String> posters) {
+        load();
+        List<Event> events = new ArrayList<>();
+        if (now.getTime() - validatedAt > MAX_AGE_MILLIS) {
+            if (!entries.isEmpty()) {
+                clear();
+            }
+            return events;
+        }
+        for (int i = 0; i < feed.size(); i++) {
+            String eventId = feed.get(i);
+            Entry entry = entries.get(eventId);
+            Event event = entry != null ? decode(entry.data) : null;
+            if (event == null) {
+                truncateFeed(i);
+                break;
+            }
+            if (event.getEndDate() != null && event.getEndDate().after(now)) {
+                events.add(event);
+                if (entry.poster != null) {
+                    posters.put(eventId, new String(entry.poster, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        hits += events.size();
+        feedOpen = true;
+        return events;
+    }
+
+    /**
+     * Stores a page of events fetched from the network and records its place in the feed
+     * @param page
+     *     events in feed order
+     * @param posters
+     *     posters of the events that have one, keyed by event ID
+     * @param firstPage
+     *     whether this is the first page, which replaces the recorded feed
+     * @param fetchedAt
+     *     when the page was requested
+     */
+    public synchronized void putPage(List<Event> page, Map<String, String> posters, boolean firstPage,
+                                     Date fetchedAt) {
+        if (firstPage) {
+            feed.clear();
+            feedOpen = true;
+            validatedAt = fetchedAt.getTime();
+        }
+        for (Event event : page) {
+            put(event, posters.get(event.getEventId()), fetchedAt.getTime());
+            misses++;
+            if (feedOpen && feed.size() < FEED_LENGTH && !feed.contains(event.getEventId())) {
+                feed.add(event.getEventId());
+            }
+        }
+    }
+
+    /**
+     * Merges events changed since the watermark into the events shown from the cache.
+     * Changed and new events up to the cursor take their place in feed order, and events that
+     * have ended or moved past the cursor are dropped; those after it arrive with the next page.
+     * @param shown
+     *     events shown from {@link #getFeed(Date, Map)}
+     * @param cursor
+     *     last event of the cached feed, where paging resumes
+     * @param changed
+     *     events changed since {@link #getWatermark()}
+     * @param posters
+     *     posters of the changed events that have one, keyed by event ID
+     * @param now
+     *     when the changed events were requested, taken as the current time
+     * @return
+     *     the shown events brought up to date, in feed order. Deleted events are not among the
+     *     changes, so the caller checks the shown events still exist; the cache is dropped at
+     *     {@link #MAX_AGE_MILLIS} after the last full load whatever happens here
+     */
+    public synchronized List<Event> revalidate(List<Event> shown, Event cursor, List<Event> changed,
+                                               Map<String, String> posters, Date now) {
+        Map<String, Event> merged = new LinkedHashMap<>();
+        for (Event event : shown) {
+            merged.put(event.getEventId(), event);
+            // Every change since the watermark was fetched, so the unchanged events are current as of now
+            Entry entry = entries.get(event.getEventId());
+            if (entry != null) {
+                entry.fetchedAt = Math.max(entry.fetchedAt, now.getTime());
+            }
+        }
+        for (Event event : changed) {
+            put(event, posters.get(event.getEventId()), now.getTime());
+            misses++;
+            merged.put(event.getEventId(), event);
+        }
+
+        List<Event> events = new ArrayList<>();
+        for (Event event : merged.values()) {
+            boolean open = event.getEndDate() != null && event.getEndDate().after(now);
+            if (open && FEED_ORDER.compare(event, cursor) <= 0) {
+                events.add(event);
+            }
+        }
+        events.sort(FEED_ORDER);
+        feed.clear();
+        for (Event event : events) {
+            feed.add(event.getEventId());
+        }
+        feedOpen = true;
+        dirty = true;
+        return events;
+    }
+
+    /**
+     * Gets the time changes have to be fetched from to bring the cached feed up to date: the
+     * earliest time an event in the feed was requested, less {@link #CLOCK_SKEW_MILLIS}
+     * @return
+     *     the watermark, or null if the feed is empty
+     */
+    public synchronized Date getWatermark() {
+        long watermark = Long.MAX_VALUE;
+        for (String eventId : feed) {
+            Entry entry = entries.get(eventId);
+            if (entry != null) {
+                watermark = Math.min(watermark, entry.fetchedAt);
+            }
+        }
+        return watermark < Long.MAX_VALUE ? new Date(watermark - CLOCK_SKEW_MILLIS) : null;
+    }
+
+    // Drops an event, such as one that has been deleted
+    public synchronized void remove(String eventId) {
+        Entry removed = entries.remove(eventId);
+        if (removed != null) {
+            totalBytes -= removed.size();
+            feed.remove(eventId);
+            dirty = true;
+        }
+    }
+
+    // Drops every cached event
+    public synchronized void clear() {
+        entries.clear();
+        feed.clear();
+        totalBytes = 0;
+        dirty = true;
+    }
+
+    /**
+     * Writes the cache to its file if it changed since it was read or last saved.
+     * The file is written under a temporary name and renamed over the old one, so a write
+     * cut short still leaves the previous cache readable.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(validatedAt);
+            out.writeInt(feed.size());
+            for (String eventId : feed) {
+                out.writeUTF(eventId);
+            }
+            // Least recently used first, so reading them back keeps the same order
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().fetchedAt);
+                writeBytes(out, entry.getValue().data);
+                writeBytes(out, entry.getValue().poster);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving event cache", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Could not replace event cache");
+            return;
+        }
+        dirty = false;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return
+     *     the fraction of events shown from the cache rather than fetched, 0 before any
+     */
+    public synchronized double getHitRate() {
+        int total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private void put(Event event, String poster, long fetchedAt) {
+        if (event.getEventId() == null) {
+            return;
+        }
+        byte[] data = encode(event);
+        if (data == null) {
+            return;
+        }
+        Entry entry = new Entry(data, poster != null ? poster.getBytes(StandardCharsets.UTF_8) : null, fetchedAt);
+        Entry replaced = entries.put(event.getEventId(), entry);
+        if (replaced != null) {
+            totalBytes -= replaced.size();
+        }
+        totalBytes += entry.size();
+        dirty = true;
+        trim();
+    }
+
+    // Evicts the least recently used events until the cache fits, always keeping the newest one
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            totalBytes -= eldest.getValue().size();
+            int index = feed.indexOf(eldest.getKey());
+            if (index >= 0) {
+                truncateFeed(index);
+            }
+            iterator.remove();
+        }
+    }
+
+    // The feed is only usable up to its first missing event, and later pages no longer follow on from it
+    private void truncateFeed(int index) {
+        feed.subList(index, feed.size()).clear();
+        feedOpen = false;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown format");
+            }
+            validatedAt = in.readLong();
+            int feedSize = in.readInt();
+            for (int i = 0; i < feedSize; i++) {
+                feed.add(in.readUTF());
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String eventId = in.readUTF();
+                long fetchedAt = in.readLong();
+                Entry entry = new Entry(readBytes(in), readBytes(in), fetchedAt);
+                entries.put(eventId, entry);
+                totalBytes += entry.size();
+            }
+        } catch (IOException e) {
+            // An unreadable cache only costs a network load, so start over
+            Log.e(TAG, "Discarding unreadable event cache", e);
+            clear();
+            file.delete();
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes != null ? bytes.length : -1);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static byte[] encode(Event event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(event);
+        } catch (IOException e) {
+            Log.e(TAG, "Error encoding event " + event.getEventId(), e);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Event decode(byte[] data) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (Event) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            Log.e(TAG, "Error decoding cached event", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class counts the loaded events in each facet of the feed filter: each category, and
+ * each map cell of the lengths in {@link Geohash#CELL_PRECISIONS}. Counts are updated one event
+ * at a time as events are added, replaced or removed, so showing them never rescans the feed.
+ * The number of events near a location is the sum of the counts of the cells around it.
+ */
+public class EventFacets {
+    // Fields of an event document the facets are stored in
+    public static final String CATEGORIES = "categories";
+    public static final String GEO_CELLS = "geoCells";
+
+    // What an event was counted under, so it can be taken back out
+    private static class Counted {
+        final List<String> categories;
+        final Collection<String> cells;
+
+        Counted(List<String> categories, Collection<String> cells) {
+            this.categories = categories;
+            this.cells = cells;
+        }
+    }
+
+    private final Map<String, Integer> categoryCounts = new HashMap<>();
+    private final Map<String, Integer> cellCounts = new HashMap<>();
+    private final Map<String, Counted> counted = new HashMap<>();
+
+    /**
+     * Turns category tags as typed into the form stored on events
+     * @param text
+     *     tags separated by commas, such as "Sports, swimming"
+     * @return
+     *     the tags in lowercase, without blanks or repeats
+     */
+    public static List<String> parseCategories(String text) {
+        Set<String> categories = new LinkedHashSet<>();
+        if (text != null) {
+            for (String part : text.split(",")) {
+                String category = part.trim().toLowerCase(Locale.ROOT);
+                if (!category.isEmpty()) {
+                    categories.add(category);
+                }
+            }
+        }
+        return new ArrayList<>(categories);
+    }
+
+    /**
+     * Counts an event, replacing what was counted for it before
+     * @param event
+     *     the event
+     */
+    public void add(Event event) {
+        remove(event.getEventId());
+        List<String> categories = event.getCategories() != null
+                ? new ArrayList<>(event.getCategories())
+                : new ArrayList<>();
+        Collection<String> cells = event.getGeoCells().values();
+        for (String category : categories) {
+            categoryCounts.merge(category, 1, Integer::sum);
+        }
+        for (String cell : cells) {
+            cellCounts.merge(cell, 1, Integer::sum);
+        }
+        counted.put(event.getEventId(), new Counted(categories, cells));
+    }
+
+    public void addAll(List<Event> events) {
+        for (Event event : events) {
+            add(event);
+        }
+    }
+
+    /**
+     * Stops counting an event
+     * @param eventId
+     *     ID of the event, ignored if it was never added
+     */
+    public void remove(String eventId) {
+        Counted previous = counted.remove(eventId);
+        if (previous == null) {
+            return;
+        }
+        for (String category : previous.categories) {
+            decrement(categoryCounts, category);
+        }
+        for (String cell : previous.cells) {
+            decrement(cellCounts, cell);
+        }
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        if (count == null || count <= 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+    }
+
+    public void clear() {
+        categoryCounts.clear();
+        cellCounts.clear();
+        counted.clear();
+    }
+
+    // Number of events counted
+    public int size() {
+        return counted.size();
+    }
+
+    /**
+     * Gets the number of events in each category
+     * @return
+     *     the counts, largest first, ties in alphabetical order
+     */
+    public LinkedHashMap<String, Integer> getCategoryCounts() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(categoryCounts.entrySet());
+        entries.sort((a, b) -> {
+            int byCount = Integer.compare(b.getValue(), a.getValue());
+            return byCount != 0 ? byCount : a.getKey().compareTo(b.getKey());
+        });
+        LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries) {
+            counts.put(entry.getKey(), entry.getValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the number of events near a location
+     * @param location
+     *     geohash of the location, at least precision characters long
+     * @param precision
+     *     one of {@link Geohash#CELL_PRECISIONS}, the shorter the farther
+     * @return
+     *     the number of events in the cell around the location and the cells next to it
+     */
+    public int nearCount(String location, int precision) {
+        int count = 0;
+        for (String cell : Geohash.neighborhood(location.substring(0, precision))) {
+            Integer cellCount = cellCounts.get(cell);
+            if (cellCount != null) {
+                count += cellCount;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class pages through the events shown on the home screen.
+ * Events are requested a page at a time from a {@link PageSource}, each page continuing after
+ * the cursor returned by the one before it. The first page is kept small so it arrives quickly,
+ * and the next page is requested once the user scrolls within {@link #PREFETCH_DISTANCE}
+ * items of the end of what is loaded.
+ * Callbacks are expected on a single thread, which is how Firestore delivers them.
+ */
+public class EventFeed {
+    public static final int FIRST_PAGE_SIZE = 10;
+    public static final int PAGE_SIZE = 20;
+    public static final int PREFETCH_DISTANCE = 5;
+
+    /**
+     * Loads one page of events, such as a Firestore query with limit and startAfter
+     */
+    public interface PageSource {
+        /**
+         * @param cursor
+         *     value returned with the previous page, null for the first page
+         * @param limit
+         *     largest number of events in the page
+         * @param callback
+         *     receives the page
+         */
+        void loadPage(Object cursor, int limit, PageCallback callback);
+    }
+
+    // Callback for one page; nextCursor is null when there are no more pages
+    public interface PageCallback {
+        void onCallback(List<Event> page, Object nextCursor, Exception error);
+    }
+
+    // Callback for each page delivered to the screen; error is null on success
+    public interface Listener {
+        void onCallback(List<Event> page, Exception error);
+    }
+
+    private final PageSource source;
+    private final Listener listener;
+    private final int firstPageSize;
+    private final int pageSize;
+    private final ArrayList<Event> events = new ArrayList<>();
+    private Object cursor;
+    private boolean loading = false;
+    private boolean endReached = false;
+    private int generation = 0;
+
+    public EventFeed(PageSource source, Listener listener) {
+        this(source, listener, FIRST_PAGE_SIZE, PAGE_SIZE);
+    }
+
+    /**
+     * @param source
+     *     where pages are loaded from
+     * @param listener
+     *     invoked with each page as it arrives
+     * @param firstPageSize
+     *     size of the first page
+     * @param pageSize
+     *     size of every later page
+     */
+    public EventFeed(PageSource source, Listener listener, int firstPageSize, int pageSize) {
+        this.source = source;
+        this.listener = listener;
+        this.firstPageSize = firstPageSize;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Requests the next page, unless one is already loading or the last page has arrived
+     */
+    public void loadMore() {
+        if (loading || endReached) {
+            return;
+        }
+        loading = true;
+        int requested = events.isEmpty() ? firstPageSize : pageSize;
+        int requestGeneration = generation;
+        source.loadPage(cursor, requested, (page, nextCursor, error) -> {
+            if (requestGeneration != generation) {
+                return; // The feed was reset while this page was loading
+            }
+            loading = false;
+            if (error != null) {
+                // Keep the cursor so the next scroll retries the same page
+                listener.onCallback(new ArrayList<>(), error);
+                return;
+            }
+            events.addAll(page);
+            cursor = nextCursor;
+            endReached = nextCursor == null || page.size() < requested;
+            listener.onCallback(page, null);
+        });
+    }
+
+    /**
+     * Starts the feed from events already known, such as ones cached on the device, so the
+     * next page continues after them. The events are delivered to the listener as the first page.
+     * Does nothing once a page has been loaded
+     * @param page
+     *     events in feed order
+     * @param nextCursor
+     *     value the next page continues after
+     */
+    public void seed(List<Event> page, Object nextCursor) {
+        if (!events.isEmpty() || loading || page.isEmpty()) {
+            return;
+        }
+        events.addAll(page);
+        cursor = nextCursor;
+        listener.onCallback(page, null);
+    }
+
+    /**
+     * Requests the next page if the given item is close to the end of the list
+     * @param lastVisiblePosition
+     *     adapter position of the last item on screen
+     * @param itemCount
+     *     number of items in the list
+     */
+    public void onScrolled(int lastVisiblePosition, int itemCount) {
+        if (lastVisiblePosition + PREFETCH_DISTANCE >= itemCount - 1) {
+            loadMore();
+        }
+    }
+
+    /**
+     * Drops every loaded event and ignores any page still loading, ready to start from the first page
+     */
+    public void reset() {
+        generation++;
+        events.clear();
+        cursor = null;
+        loading = false;
+        endReached = false;
+    }
+
+    // Every event loaded so far, in feed order
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public boolean isEndReached() {
+        return endReached;
+    }
+}
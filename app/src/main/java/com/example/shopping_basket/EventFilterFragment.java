@@ -1,6 +1,7 @@
 package com.example.shopping_basket;
 
 import android.app.DatePickerDialog;
+import android.Manifest;
 import android.app.Dialog;
 import android.os.Bundle;
 import android.view.Gravity;
@@ -8,6 +9,10 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -16,17 +21,28 @@ import androidx.fragment.app.DialogFragment;
 import androidx.navigation.fragment.NavHostFragment;
 
 import com.example.shopping_basket.databinding.FragmentEventFilterBinding;
+import com.google.android.material.chip.Chip;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 public class EventFilterFragment extends DialogFragment {
 
     private FragmentEventFilterBinding binding;
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy", Locale.getDefault());
+    private ActivityResultLauncher<String> requestLocationLauncher;
+    // Where the user is, once known, and how many loaded events are within each distance of it
+    private String nearLocation;
+    private int[] nearCounts;
+    private Chip anywhereChip;
 
     // FilterCriteria inner class remains the same
     public static class FilterCriteria implements java.io.Serializable {
@@ -34,24 +50,54 @@ public class EventFilterFragment extends DialogFragment {
         public Date regStartDate;
         public Date regEndDate;
         public Date eventTimeDate;
+        public ArrayList<String> categories;
+        // Geohash of the user's location, and how near events have to be, see Geohash#CELL_PRECISIONS
+        public String nearLocation;
+        public int nearPrecision;
+        // The parsed keywords and the day of eventTimeDate, kept for the values they were worked out from
+        private transient String queryOf;
+        private transient EventSearchIndex.Query query;
+        private transient Date dayOf;
+        private transient TimeZone zone;
+        private transient long eventDay;
+        private transient String nearOf;
+        private transient List<String> nearCells;
 
         public FilterCriteria() {
             this.keywords = "";
+            this.categories = new ArrayList<>();
         }
 
         public boolean isDefault() {
             return (keywords == null || keywords.isEmpty()) &&
                     regStartDate == null &&
                     regEndDate == null &&
-                    eventTimeDate == null;
+                    eventTimeDate == null &&
+                    (categories == null || categories.isEmpty()) &&
+                    nearLocation == null;
+        }
+
+        /**
+         * Plans the feed query for these filters, see {@link EventQueryPlan}.
+         *
+         * @param includeEnded Whether to include events whose registration period has ended.
+         * @param now The time registration periods are compared with.
+         * @param sample Events of the unfiltered feed, to estimate which range matches the fewest.
+         * @return The plan.
+         */
+        public EventQueryPlan toQueryPlan(boolean includeEnded, Date now, List<Event> sample) {
+            return EventQueryPlan.plan(keywords, regStartDate, regEndDate, eventTimeDate, categories,
+                    nearLocation, nearPrecision, includeEnded, now, TimeZone.getDefault(), sample);
         }
 
         public boolean matches(Event event) {
             if (keywords != null && !keywords.isEmpty()) {
-                String lowerKeywords = keywords.toLowerCase();
-                boolean nameMatch = event.getName() != null && event.getName().toLowerCase().contains(lowerKeywords);
-                boolean descMatch = event.getDesc() != null && event.getDesc().toLowerCase().contains(lowerKeywords);
-                if (!nameMatch && !descMatch) {
+                // Parsed once, then checked against the event's sorted search tokens
+                if (queryOf != keywords) {
+                    query = EventSearchIndex.Query.parse(keywords);
+                    queryOf = keywords;
+                }
+                if (!query.isEmpty() && !query.matches(event)) {
                     return false;
                 }
             }
@@ -69,18 +115,32 @@ public class EventFilterFragment extends DialogFragment {
             }
 
             if (eventTimeDate != null && event.getEventTime() != null) {
-                Calendar filterCal = Calendar.getInstance();
-                filterCal.setTime(eventTimeDate);
-
-                Calendar eventCal = Calendar.getInstance();
-                eventCal.setTime(event.getEventTime());
+                // Compare only the day, as a day number worked out once for the filter
+                if (dayOf != eventTimeDate) {
+                    zone = TimeZone.getDefault();
+                    eventDay = EventQueryPlan.epochDay(eventTimeDate, zone);
+                    dayOf = eventTimeDate;
+                }
+                if (EventQueryPlan.epochDay(event.getEventTime(), zone) != eventDay) {
+                    return false;
+                }
+            }
 
-                // Compare only the year, month, and day. Ignore time-of-day.
-                boolean sameDay = filterCal.get(Calendar.YEAR) == eventCal.get(Calendar.YEAR) &&
-                        filterCal.get(Calendar.MONTH) == eventCal.get(Calendar.MONTH) &&
-                        filterCal.get(Calendar.DAY_OF_MONTH) == eventCal.get(Calendar.DAY_OF_MONTH);
+            if (categories != null && !categories.isEmpty()) {
+                if (event.getCategories() == null || Collections.disjoint(event.getCategories(), categories)) {
+                    return false;
+                }
+            }
 
-                if (!sameDay) {
+            if (nearLocation != null) {
+                // The cells around the location are worked out once, then looked up in each event's cells
+                String near = nearLocation.substring(0, nearPrecision);
+                if (!near.equals(nearOf)) {
+                    nearCells = Geohash.neighborhood(near);
+                    nearOf = near;
+                }
+                String cell = event.getGeoCells().get(Geohash.cellKey(nearPrecision));
+                if (cell == null || !nearCells.contains(cell)) {
                     return false;
                 }
             }
@@ -92,6 +152,27 @@ public class EventFilterFragment extends DialogFragment {
         // Required empty public constructor
     }
 
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (getArguments() != null) {
+            nearLocation = getArguments().getString("nearLocation");
+            nearCounts = getArguments().getIntArray("nearCounts");
+        }
+
+        // Asked for the first time a distance is picked
+        requestLocationLauncher = registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
+            if (isGranted) {
+                locateDevice();
+            } else {
+                Toast.makeText(getContext(), "Location permission denied.", Toast.LENGTH_SHORT).show();
+                if (anywhereChip != null) {
+                    anywhereChip.setChecked(true);
+                }
+            }
+        });
+    }
+
     /**
      * Called when the fragment's dialog is started.
      * Configures the dialog to be dismissable on an outside touch and sets its layout dimensions.
@@ -121,12 +202,15 @@ public class EventFilterFragment extends DialogFragment {
         super.onViewCreated(view, savedInstanceState);
 
         // Restore filter criteria if they exist
+        FilterCriteria existing = null;
         if (getArguments() != null && getArguments().containsKey("filterCriteria")) {
-            FilterCriteria existing = (FilterCriteria) getArguments().getSerializable("filterCriteria");
+            existing = (FilterCriteria) getArguments().getSerializable("filterCriteria");
             if (existing != null) {
                 restoreFilterCriteria(existing);
             }
         }
+        setupCategoryChips(existing);
+        setupDistanceChips(existing);
 
         setupClickListeners();
     }
@@ -145,6 +229,94 @@ public class EventFilterFragment extends DialogFragment {
         });
     }
 
+    /**
+     * Adds a chip for each category of the loaded events, with the number of events in it.
+     * Categories that are selected but no longer loaded are still shown so they can be unselected.
+     *
+     * @param existing The filter being edited, or null.
+     */
+    @SuppressWarnings("unchecked")
+    private void setupCategoryChips(@Nullable FilterCriteria existing) {
+        LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+        if (getArguments() != null && getArguments().getSerializable("categoryCounts") != null) {
+            counts.putAll((Map<String, Integer>) getArguments().getSerializable("categoryCounts"));
+        }
+        List<String> selected = existing != null && existing.categories != null
+                ? existing.categories
+                : new ArrayList<>();
+        for (String category : selected) {
+            counts.putIfAbsent(category, 0);
+        }
+
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Chip chip = new Chip(requireContext());
+            chip.setText(String.format(Locale.getDefault(), "%s (%d)", entry.getKey(), entry.getValue()));
+            chip.setTag(entry.getKey());
+            chip.setCheckable(true);
+            chip.setChecked(selected.contains(entry.getKey()));
+            binding.chipGroupCategories.addView(chip);
+        }
+        if (counts.isEmpty()) {
+            binding.textViewFilterCategories.setVisibility(View.GONE);
+            binding.chipGroupCategories.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Adds a chip for "anywhere" and one for each distance in {@link Geohash#CELL_RADIUS_KM},
+     * with the number of loaded events within it when the location is already known.
+     * Picking a distance without a location asks for the location permission.
+     *
+     * @param existing The filter being edited, or null.
+     */
+    private void setupDistanceChips(@Nullable FilterCriteria existing) {
+        int selectedPrecision = existing != null && existing.nearLocation != null ? existing.nearPrecision : 0;
+        if (nearLocation == null && existing != null) {
+            nearLocation = existing.nearLocation;
+        }
+
+        anywhereChip = addDistanceChip("Anywhere", 0);
+        anywhereChip.setChecked(selectedPrecision == 0);
+        for (int i = 0; i < Geohash.CELL_PRECISIONS.length; i++) {
+            String label = "Within " + Geohash.CELL_RADIUS_KM[i] + " km";
+            if (nearCounts != null) {
+                label += " (" + nearCounts[i] + ")";
+            }
+            Chip chip = addDistanceChip(label, Geohash.CELL_PRECISIONS[i]);
+            chip.setChecked(selectedPrecision == Geohash.CELL_PRECISIONS[i]);
+            chip.setOnCheckedChangeListener((button, isChecked) -> {
+                if (isChecked && nearLocation == null) {
+                    if (DeviceLocation.hasPermission(requireContext())) {
+                        locateDevice();
+                    } else {
+                        requestLocationLauncher.launch(Manifest.permission.ACCESS_COARSE_LOCATION);
+                    }
+                }
+            });
+        }
+    }
+
+    private Chip addDistanceChip(String label, int precision) {
+        Chip chip = new Chip(requireContext());
+        chip.setId(View.generateViewId());
+        chip.setText(label);
+        chip.setTag(precision);
+        chip.setCheckable(true);
+        binding.chipGroupDistance.addView(chip);
+        return chip;
+    }
+
+    /**
+     * Reads the device's last known location, going back to "anywhere" if there is none.
+     */
+    private void locateDevice() {
+        nearLocation = DeviceLocation.lastKnownGeohash(requireContext());
+        if (nearLocation == null && binding != null) {
+            Toast.makeText(getContext(), "Location not available.", Toast.LENGTH_SHORT).show();
+            anywhereChip.setChecked(true);
+        }
+    }
+
     /**
      * Sets up an EditText to show a DatePickerDialog on click, using CalendarUtils.
      */
@@ -192,6 +364,19 @@ public class EventFilterFragment extends DialogFragment {
         criteria.regEndDate = CalendarUtils.stringToDate(binding.editTextRegEnd.getText().toString(), "MM/dd/yyyy");
         criteria.eventTimeDate = CalendarUtils.stringToDate(binding.editTextEventTime.getText().toString(), "MM/dd/yyyy");
 
+        for (int i = 0; i < binding.chipGroupCategories.getChildCount(); i++) {
+            Chip chip = (Chip) binding.chipGroupCategories.getChildAt(i);
+            if (chip.isChecked()) {
+                criteria.categories.add((String) chip.getTag());
+            }
+        }
+        Chip distance = binding.chipGroupDistance.findViewById(binding.chipGroupDistance.getCheckedChipId());
+        int precision = distance != null ? (int) distance.getTag() : 0;
+        if (precision > 0 && nearLocation != null) {
+            criteria.nearLocation = nearLocation;
+            criteria.nearPrecision = precision;
+        }
+
         Bundle result = new Bundle();
         result.putSerializable("filterCriteria", criteria);
 
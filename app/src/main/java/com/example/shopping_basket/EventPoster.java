@@ -1,26 +1,37 @@
 package com.example.shopping_basket;
 
 /**
- * Lightweight view model for posters stored inside event documents.
- * We do NOT use Firebase Storage. The image data is stored as a Base64
- * string on the event document itself.
+ * Lightweight view model for the metadata of an event poster.
+ * We do NOT use Firebase Storage. The image data is stored in the "posters"
+ * collection under posterHash (events not migrated yet still carry it as a
+ * Base64 string on the event document), and is loaded only when the poster
+ * is shown, so this class never holds it.
  */
 public class EventPoster {
     private String eventId;
     private String eventName;
-    private String posterBase64;
+    private String posterHash;
+    private String thumbnailHash;
+    private String uploaderId;
     private String uploaderName;
+    private long posterSize;
 
     public EventPoster() { }
 
     public EventPoster(String eventId,
                        String eventName,
-                       String posterBase64,
-                       String uploaderName) {
+                       String posterHash,
+                       String thumbnailHash,
+                       String uploaderId,
+                       String uploaderName,
+                       long posterSize) {
         this.eventId = eventId;
         this.eventName = eventName;
-        this.posterBase64 = posterBase64;
+        this.posterHash = posterHash;
+        this.thumbnailHash = thumbnailHash;
+        this.uploaderId = uploaderId;
         this.uploaderName = uploaderName;
+        this.posterSize = posterSize;
     }
 
     public String getEventId() {
@@ -39,12 +50,29 @@ public class EventPoster {
         this.eventName = eventName;
     }
 
-    public String getPosterBase64() {
-        return posterBase64;
+    public String getPosterHash() {
+        return posterHash;
     }
 
-    public void setPosterBase64(String posterBase64) {
-        this.posterBase64 = posterBase64;
+    public void setPosterHash(String posterHash) {
+        this.posterHash = posterHash;
+    }
+
+    public String getThumbnailHash() {
+        return thumbnailHash;
+    }
+
+    public void setThumbnailHash(String thumbnailHash) {
+        this.thumbnailHash = thumbnailHash;
+    }
+
+    // GUID of the profile that uploaded the poster, null for posters saved without one
+    public String getUploaderId() {
+        return uploaderId;
+    }
+
+    public void setUploaderId(String uploaderId) {
+        this.uploaderId = uploaderId;
     }
 
     public String getUploaderName() {
@@ -54,4 +82,13 @@ public class EventPoster {
     public void setUploaderName(String uploaderName) {
         this.uploaderName = uploaderName;
     }
-}
\ No newline at end of file
+
+    // Size of the poster in bytes, 0 if unknown
+    public long getPosterSize() {
+        return posterSize;
+    }
+
+    public void setPosterSize(long posterSize) {
+        this.posterSize = posterSize;
+    }
+}
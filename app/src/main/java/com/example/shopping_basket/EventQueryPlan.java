@@ -0,0 +1,437 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * This class plans the query behind the event feed once filters are set.
+ * Firestore allows range filters on one field per query, and that field has to be the
+ * first one the results are ordered by, so of the date ranges asked for, the one expected
+ * to return the fewest events is sent to the server. Keywords are narrowed on the server with
+ * an array-contains-any filter on {@link EventSearchIndex#SEARCH_TOKENS} when they can be.
+ * Selected categories are matched on the server with array-contains-any on
+ * {@link EventFacets#CATEGORIES} when the keywords don't need that filter, and "near me" with an
+ * in filter on one of {@link Event#getGeoCells()}, while Firestore's limit of
+ * {@link EventSearchIndex#MAX_QUERY_VALUES} combinations allows it.
+ * The other ranges, the keywords themselves and any facet not sent are left in
+ * {@link #getResidual()}, which is checked on each loaded event.
+ * Each combination of a facet with another facet or a range needs a composite index, listed in
+ * firestore.indexes.json at the root of the project and deployed with
+ * {@code firebase deploy --only firestore:indexes}; while one is missing,
+ * {@link #withoutServerFacets()} gives the query to run instead.
+ * Each range is kept as bounds in milliseconds, so checking an event never builds a Calendar;
+ * a day is matched by its start and the start of the next day in the local time zone.
+ * Firestore leaves out documents missing the field a range is on, while the filter dialog
+ * lets events without the date through; every event has its dates, so the two agree.
+ */
+public class EventQueryPlan {
+    public static final String START_DATE = "startDate";
+    public static final String END_DATE = "endDate";
+    public static final String EVENT_TIME = "eventTime";
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * A range on one date field of an event. A missing bound leaves that side open.
+     */
+    static class Range {
+        final String field;
+        final long lower; // inclusive, Long.MIN_VALUE when open
+        final long upper; // exclusive, Long.MAX_VALUE when open
+        // Whether an event without the field is in the range, as the filter dialog lets it through
+        final boolean keepsMissing;
+
+        Range(String field, long lower, long upper, boolean keepsMissing) {
+            this.field = field;
+            this.lower = lower;
+            this.upper = upper;
+            this.keepsMissing = keepsMissing;
+        }
+
+        boolean contains(Event event) {
+            Date value = fieldValue(event, field);
+            if (value == null) {
+                return keepsMissing;
+            }
+            long time = value.getTime();
+            return time >= lower && time < upper;
+        }
+
+        // Both ranges at once, on the same field
+        Range intersect(Range other) {
+            return new Range(field, Math.max(lower, other.lower), Math.min(upper, other.upper),
+                    keepsMissing && other.keepsMissing);
+        }
+
+        boolean isBounded() {
+            return lower != Long.MIN_VALUE && upper != Long.MAX_VALUE;
+        }
+    }
+
+    private final boolean filtered;
+    private final Date now;
+    private final Range range;
+    private final List<Range> residualRanges;
+    private final EventSearchIndex.Query search;
+    private final List<String> searchValues;
+    private final Set<String> categories;
+    private final List<String> categoryValues;
+    private final List<String> nearCells;
+    private final boolean nearOnServer;
+    private final FilteredEventList.Filter residual;
+
+    private EventQueryPlan(boolean filtered, Date now, Range range, List<Range> residualRanges,
+                           EventSearchIndex.Query search, Set<String> categories, List<String> nearCells,
+                           boolean facetsOnServer) {
+        this.filtered = filtered;
+        this.now = now;
+        this.range = range;
+        this.residualRanges = residualRanges;
+        this.search = search;
+        this.searchValues = search == null || !facetsOnServer ? null : search.getServerValues();
+        this.categories = categories;
+        this.nearCells = nearCells;
+
+        // Firestore allows one array-contains-any per query
+        this.categoryValues = facetsOnServer && categories != null && searchValues == null
+                && categories.size() <= EventSearchIndex.MAX_QUERY_VALUES
+                ? new ArrayList<>(categories)
+                : null;
+        // and an in filter next to it only while the combinations stay within the limit
+        int arrayValues = searchValues != null ? searchValues.size()
+                : categoryValues != null ? categoryValues.size() : 1;
+        this.nearOnServer = facetsOnServer && nearCells != null
+                && nearCells.size() * arrayValues <= EventSearchIndex.MAX_QUERY_VALUES;
+
+        boolean facetsLeft = (categories != null && categoryValues == null) || (nearCells != null && !nearOnServer);
+        this.residual = residualRanges.isEmpty() && search == null && !facetsLeft ? null : this::matchesResidual;
+    }
+
+    /**
+     * Plans the unfiltered feed: every event for admins, otherwise the events whose
+     * registration period has not ended
+     * @param includeEnded
+     *     whether to include events whose registration period has ended
+     * @param now
+     *     the time registration periods are compared with
+     * @return
+     *     the plan
+     */
+    public static EventQueryPlan feed(boolean includeEnded, Date now) {
+        return plan(null, null, null, null, includeEnded, now, TimeZone.getDefault(), new ArrayList<>());
+    }
+
+    /**
+     * Plans the feed with date and keyword filters, see
+     * {@link #plan(String, Date, Date, Date, List, String, int, boolean, Date, TimeZone, List)}
+     */
+    public static EventQueryPlan plan(String keywords, Date regStartDate, Date regEndDate, Date eventTimeDate,
+                                      boolean includeEnded, Date now, TimeZone zone, List<Event> sample) {
+        return plan(keywords, regStartDate, regEndDate, eventTimeDate, null, null, 0,
+                includeEnded, now, zone, sample);
+    }
+
+    /**
+     * Plans the feed with filters. When more than one range is set, the one matching the fewest
+     * events of the sample goes to the server; with no sample to go by, a single day is preferred,
+     * then a registration period closed on both sides, then the others.
+     * @param keywords
+     *     a keyword query as {@link EventSearchIndex.Query} parses it, null or empty for any
+     * @param regStartDate
+     *     earliest start of the registration period, null for any
+     * @param regEndDate
+     *     latest end of the registration period, null for any
+     * @param eventTimeDate
+     *     any time on the day the event has to take place, null for any
+     * @param categories
+     *     categories the event has to have one of, null or empty for any
+     * @param nearLocation
+     *     geohash of the location events have to be near, null for anywhere
+     * @param nearPrecision
+     *     one of {@link Geohash#CELL_PRECISIONS}, how near: the shorter the farther
+     * @param includeEnded
+     *     whether to include events whose registration period has ended
+     * @param now
+     *     the time registration periods are compared with
+     * @param zone
+     *     the time zone days are taken in
+     * @param sample
+     *     events of the unfiltered feed to estimate how many events each range matches, may be empty
+     * @return
+     *     the plan
+     */
+    public static EventQueryPlan plan(String keywords, Date regStartDate, Date regEndDate, Date eventTimeDate,
+                                      List<String> categories, String nearLocation, int nearPrecision,
+                                      boolean includeEnded, Date now, TimeZone zone, List<Event> sample) {
+        Set<String> categorySet = categories == null || categories.isEmpty() ? null : new TreeSet<>(categories);
+        List<String> nearCells = nearLocation == null || nearLocation.length() < nearPrecision || nearPrecision <= 0
+                ? null
+                : Geohash.neighborhood(nearLocation.substring(0, nearPrecision));
+        boolean filtered = (keywords != null && !keywords.isEmpty())
+                || regStartDate != null || regEndDate != null || eventTimeDate != null
+                || categorySet != null || nearCells != null;
+
+        // In order of preference when the sample doesn't tell them apart
+        List<Range> candidates = new ArrayList<>();
+        if (eventTimeDate != null) {
+            long day = epochDay(eventTimeDate, zone);
+            candidates.add(new Range(EVENT_TIME, startOfDay(day, zone), startOfDay(day + 1, zone), true));
+        }
+        Range endRange = null;
+        if (!includeEnded) {
+            endRange = new Range(END_DATE, now.getTime() + 1, Long.MAX_VALUE, false);
+        }
+        if (regEndDate != null) {
+            Range byFilter = new Range(END_DATE, Long.MIN_VALUE, regEndDate.getTime() + 1, true);
+            endRange = endRange == null ? byFilter : endRange.intersect(byFilter);
+        }
+        if (endRange != null && endRange.isBounded()) {
+            candidates.add(endRange);
+        }
+        if (regStartDate != null) {
+            candidates.add(new Range(START_DATE, regStartDate.getTime(), Long.MAX_VALUE, true));
+        }
+        if (endRange != null && !endRange.isBounded()) {
+            candidates.add(endRange);
+        }
+
+        Range chosen = null;
+        int fewest = Integer.MAX_VALUE;
+        for (Range candidate : candidates) {
+            int matching = 0;
+            for (Event event : sample) {
+                if (candidate.contains(event)) {
+                    matching++;
+                }
+            }
+            if (matching < fewest) {
+                chosen = candidate;
+                fewest = matching;
+            }
+        }
+        candidates.remove(chosen);
+
+        EventSearchIndex.Query search = EventSearchIndex.Query.parse(keywords);
+        return new EventQueryPlan(filtered, now, chosen, candidates, search.isEmpty() ? null : search,
+                categorySet, nearCells, true);
+    }
+
+    /**
+     * Gets the same plan with the keyword, category and "near me" filters all checked on each
+     * loaded event, so the query needs no composite index. The results come in the same order,
+     * so a cursor from either plan can be used with the other.
+     * @return
+     *     the plan without filters on the facets, this plan if it has none
+     */
+    public EventQueryPlan withoutServerFacets() {
+        if (!hasServerFacets()) {
+            return this;
+        }
+        return new EventQueryPlan(filtered, now, range, residualRanges, search, categories, nearCells, false);
+    }
+
+    // Whether the query filters on the search tokens, the categories or a geo cell
+    public boolean hasServerFacets() {
+        return searchValues != null || categoryValues != null || nearOnServer;
+    }
+
+    /**
+     * Gets the day a time falls on, counted from 1970-01-01, so two times can be checked
+     * for the same day with one comparison
+     * @param date
+     *     the time
+     * @param zone
+     *     the time zone the day is taken in
+     * @return
+     *     the day number
+     */
+    public static long epochDay(Date date, TimeZone zone) {
+        long time = date.getTime();
+        return Math.floorDiv(time + zone.getOffset(time), DAY_MILLIS);
+    }
+
+    // The first instant of a day number in the time zone, allowing for a daylight saving change that day
+    static long startOfDay(long day, TimeZone zone) {
+        long local = day * DAY_MILLIS;
+        long guess = local - zone.getOffset(local - zone.getRawOffset());
+        return local - zone.getOffset(guess);
+    }
+
+    /**
+     * Gets one of the date fields the plan can put a range on
+     * @param event
+     *     the event
+     * @param field
+     *     {@link #START_DATE}, {@link #END_DATE} or {@link #EVENT_TIME}
+     * @return
+     *     the value, null if the event has none
+     */
+    public static Date fieldValue(Event event, String field) {
+        switch (field) {
+            case START_DATE:
+                return event.getStartDate();
+            case END_DATE:
+                return event.getEndDate();
+            case EVENT_TIME:
+                return event.getEventTime();
+            default:
+                throw new IllegalArgumentException("No range on " + field);
+        }
+    }
+
+    private boolean matchesResidual(Event event) {
+        for (Range other : residualRanges) {
+            if (!other.contains(event)) {
+                return false;
+            }
+        }
+        if (categories != null && categoryValues == null && !hasCategory(event, categories)) {
+            return false;
+        }
+        if (nearCells != null && !nearOnServer && !isNear(event)) {
+            return false;
+        }
+        return search == null || search.matches(event);
+    }
+
+    private static boolean hasCategory(Event event, Collection<String> categories) {
+        return event.getCategories() != null && !Collections.disjoint(event.getCategories(), categories);
+    }
+
+    // Whether the event's location is in one of the cells near the location searched
+    private boolean isNear(Event event) {
+        String geohash = event.getGeohash();
+        if (geohash == null) {
+            return false;
+        }
+        for (String cell : nearCells) {
+            if (geohash.startsWith(cell)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks an event against the part of the plan run by the server
+     * @param event
+     *     the event
+     * @return
+     *     true if the query returns the event
+     */
+    public boolean matchesQuery(Event event) {
+        if (searchValues != null) {
+            List<String> tokens = event.getSearchTokens();
+            if (tokens == null || Collections.disjoint(tokens, searchValues)) {
+                return false;
+            }
+        }
+        if (categoryValues != null && !hasCategory(event, categoryValues)) {
+            return false;
+        }
+        if (nearOnServer && !isNear(event)) {
+            return false;
+        }
+        if (range == null) {
+            return true;
+        }
+        return fieldValue(event, range.field) != null && range.contains(event);
+    }
+
+    // The order of the query results: by the range field, then document ID
+    public Comparator<Event> getOrder() {
+        Comparator<Event> byId = Comparator.comparing(Event::getEventId);
+        if (range == null) {
+            return byId;
+        }
+        return Comparator.comparing((Event event) -> fieldValue(event, range.field)).thenComparing(byId);
+    }
+
+    /**
+     * Checks whether another plan sends the same query, so loaded events can be kept and
+     * only checked against the other plan's residual
+     * @param other
+     *     the other plan
+     * @return
+     *     true if both plans query the same events
+     */
+    public boolean sameQuery(EventQueryPlan other) {
+        if (!Objects.equals(searchValues, other.searchValues)
+                || !Objects.equals(categoryValues, other.categoryValues)
+                || !Objects.equals(getNearCells(), other.getNearCells())) {
+            return false;
+        }
+        if (range == null || other.range == null) {
+            return range == other.range;
+        }
+        return range.field.equals(other.range.field)
+                && range.lower == other.range.lower && range.upper == other.range.upper;
+    }
+
+    // Whether any filter was set, beyond hiding ended events
+    public boolean isFiltered() {
+        return filtered;
+    }
+
+    public Date getNow() {
+        return now;
+    }
+
+    // The field the query has a range on, null when it is ordered by document ID alone
+    public String getRangeField() {
+        return range == null ? null : range.field;
+    }
+
+    // Inclusive lower bound of the range, null when open
+    public Date getLowerBound() {
+        return range == null || range.lower == Long.MIN_VALUE ? null : new Date(range.lower);
+    }
+
+    // Exclusive upper bound of the range, null when open
+    public Date getUpperBound() {
+        return range == null || range.upper == Long.MAX_VALUE ? null : new Date(range.upper);
+    }
+
+    // Values of the array-contains-any filter on the search tokens, null when there is none
+    public List<String> getSearchValues() {
+        return searchValues;
+    }
+
+    // Values of the array-contains-any filter on the categories, null when there is none
+    public List<String> getCategoryValues() {
+        return categoryValues;
+    }
+
+    // Values of the in filter on getNearCellKey(), null when there is none
+    public List<String> getNearCells() {
+        return nearOnServer ? nearCells : null;
+    }
+
+    // Key in Event#getGeoCells() the near cells are matched on, null when there is no in filter
+    public String getNearCellKey() {
+        return nearOnServer ? Geohash.cellKey(nearCells.get(0).length()) : null;
+    }
+
+    // The checks left for each loaded event, null when the query does all of them
+    public FilteredEventList.Filter getResidual() {
+        return residual;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "range on %s, %d residual ranges%s%s%s%s",
+                Objects.toString(getRangeField(), "nothing"), residualRanges.size(),
+                searchValues == null ? "" : ", search tokens " + searchValues,
+                categoryValues == null ? "" : ", categories " + categoryValues,
+                getNearCells() == null ? "" : ", near " + getNearCells(),
+                search == null ? "" : ", keywords");
+    }
+}
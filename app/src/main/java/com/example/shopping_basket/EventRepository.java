@@ -1,23 +1,56 @@
 package com.example.shopping_basket;
 
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class EventRepository {
     private static final String TAG = "EventRepository";
     private static final String PROFILES_COLLECTION = "profiles";
     private static final String EVENTS_COLLECTION = "events";
+    private static final String NOTIFICATIONS_COLLECTION = "notifications";
+    private static final String FANOUT_DIRECTORY = "notification_fanout";
+    private static final String EVENT_CACHE_FILE = "event_cache.bin";
+    // Set to the server time by every write to an event document, so cached copies can be revalidated
+    public static final String UPDATED_AT = "updatedAt";
+    // Events read and written at a time when indexing search tokens, within a batch's 500 writes
+    private static final int INDEX_PAGE_SIZE = 200;
+    // Firestore's limit on the values of a single whereIn
+    private static final int MAX_WHERE_IN = 30;
+
+    private static EventDiskCache eventCache;
+    // Records fan-out progress off the main thread, one write at a time
+    private static final ExecutorService fanOutExecutor = Executors.newSingleThreadExecutor();
+    // Shapes of feed queries Firestore has no composite index for, see getEventPage
+    private static final Set<String> missingIndexes = ConcurrentHashMap.newKeySet();
 
     // Callback for a list of events
     public interface EventsCallback {
@@ -29,6 +62,17 @@ public class EventRepository {
         void onCallback(@Nullable Event event);
     }
 
+    // Callback for a number of events; error is null on success
+    public interface EventCountCallback {
+        void onCallback(long count, @Nullable Exception error);
+    }
+
+    // Callback for one page of the event feed; nextCursor is null when there are no more pages
+    public interface EventPageCallback {
+        void onCallback(ArrayList<Event> page, Map<String, String> posters,
+                        @Nullable DocumentSnapshot nextCursor, @Nullable Exception error);
+    }
+
     /**
      * Asynchronously fetches the single most recent event created by a specific user.
      * Orders events by their creation timestamp in descending order and returns the first one.
@@ -140,4 +184,449 @@ public class EventRepository {
                     }
                 });
     }
+
+    /**
+     * Fetches one page of the event feed, as planned by an {@link EventQueryPlan}: the range the
+     * plan picked, its search tokens and its facets are filtered on the server, ordered by the
+     * range's field, then document ID, and the plan's residual is left to the caller.
+     * With no range, events are ordered by document ID.
+     * When Firestore rejects the query for lack of a composite index, the facets are checked on
+     * the events of {@link EventQueryPlan#withoutServerFacets()} instead, until the page is full,
+     * and later pages of the same kind of query skip straight to that.
+     * Posters are returned separately, keyed by event ID.
+     *
+     * @param plan     The query plan, such as {@link EventQueryPlan#feed} for the unfiltered feed.
+     * @param after    The last document of the previous page, or the last {@link Event} of it
+     *                 when the page came from the {@link EventDiskCache}. Null for the first page.
+     * @param limit    The largest number of events in the page.
+     * @param callback The callback that will be invoked with the page and the cursor for the next one.
+     */
+    public static void getEventPage(EventQueryPlan plan, @Nullable Object after, int limit,
+                                    EventPageCallback callback) {
+        String shape = indexShape(plan);
+        if (missingIndexes.contains(shape)) {
+            getFilteredPage(plan, after, limit, new ArrayList<>(), new HashMap<>(), callback);
+            return;
+        }
+        pageQuery(plan, after, limit).get()
+                .addOnSuccessListener(querySnapshot -> {
+                    Map<String, String> posters = new HashMap<>();
+                    ArrayList<Event> page = toEvents(querySnapshot, posters);
+                    DocumentSnapshot nextCursor = Paging.nextCursor(querySnapshot.getDocuments(), limit);
+                    callback.onCallback(page, posters, nextCursor, null);
+                })
+                .addOnFailureListener(e -> {
+                    if (plan.hasServerFacets() && e instanceof FirebaseFirestoreException
+                            && ((FirebaseFirestoreException) e).getCode()
+                            == FirebaseFirestoreException.Code.FAILED_PRECONDITION) {
+                        Log.w(TAG, "Missing index for " + plan + ", filtering on the device: " + e.getMessage());
+                        missingIndexes.add(shape);
+                        getFilteredPage(plan, after, limit, new ArrayList<>(), new HashMap<>(), callback);
+                        return;
+                    }
+                    Log.e(TAG, "Error fetching event page", e);
+                    callback.onCallback(new ArrayList<>(), new HashMap<>(), null, e);
+                });
+    }
+
+    // Reads the plan's query without its facets, keeping the events the facets match, until the page is full
+    private static void getFilteredPage(EventQueryPlan plan, @Nullable Object after, int limit,
+                                        ArrayList<Event> page, Map<String, String> posters,
+                                        EventPageCallback callback) {
+        pageQuery(plan.withoutServerFacets(), after, limit).get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+                    for (DocumentSnapshot document : documents) {
+                        Event event = toEvent(document, posters);
+                        if (event == null) {
+                            continue;
+                        }
+                        if (!plan.matchesQuery(event)) {
+                            posters.remove(event.getEventId());
+                            continue;
+                        }
+                        page.add(event);
+                        if (page.size() == limit) {
+                            callback.onCallback(page, posters, document, null);
+                            return;
+                        }
+                    }
+                    DocumentSnapshot last = Paging.nextCursor(documents, limit);
+                    if (last == null) {
+                        callback.onCallback(page, posters, null, null);
+                        return;
+                    }
+                    getFilteredPage(plan, last, limit, page, posters, callback);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching event page", e);
+                    callback.onCallback(new ArrayList<>(), new HashMap<>(), null, e);
+                });
+    }
+
+    // The fields a plan's query filters on, which tells which composite index it needs
+    private static String indexShape(EventQueryPlan plan) {
+        return (plan.getSearchValues() != null ? EventSearchIndex.SEARCH_TOKENS : "")
+                + "," + (plan.getCategoryValues() != null ? EventFacets.CATEGORIES : "")
+                + "," + Objects.toString(plan.getNearCellKey(), "")
+                + "," + Objects.toString(plan.getRangeField(), "");
+    }
+
+    private static Query pageQuery(EventQueryPlan plan, @Nullable Object after, int limit) {
+        Query query = FirebaseFirestore.getInstance().collection(EVENTS_COLLECTION);
+        if (plan.getSearchValues() != null) {
+            query = query.whereArrayContainsAny(EventSearchIndex.SEARCH_TOKENS, plan.getSearchValues());
+        }
+        if (plan.getCategoryValues() != null) {
+            query = query.whereArrayContainsAny(EventFacets.CATEGORIES, plan.getCategoryValues());
+        }
+        if (plan.getNearCells() != null) {
+            query = query.whereIn(FieldPath.of(EventFacets.GEO_CELLS, plan.getNearCellKey()), plan.getNearCells());
+        }
+        String rangeField = plan.getRangeField();
+        if (rangeField != null) {
+            if (plan.getLowerBound() != null) {
+                query = query.whereGreaterThanOrEqualTo(rangeField, plan.getLowerBound());
+            }
+            if (plan.getUpperBound() != null) {
+                query = query.whereLessThan(rangeField, plan.getUpperBound());
+            }
+            query = query.orderBy(rangeField);
+        }
+        query = query.orderBy(FieldPath.documentId()).limit(limit);
+        if (after instanceof DocumentSnapshot) {
+            query = query.startAfter((DocumentSnapshot) after);
+        } else if (after instanceof Event) {
+            // Resume from field values, since a cached event has no snapshot
+            Event last = (Event) after;
+            query = rangeField == null
+                    ? query.startAfter(last.getEventId())
+                    : query.startAfter(EventQueryPlan.fieldValue(last, rangeField), last.getEventId());
+        }
+        return query;
+    }
+
+    /**
+     * Writes the search tokens of every event whose stored ones are missing or out of date, such as
+     * events saved before keyword search was indexed. Events are read a page at a time in document
+     * ID order and each page is written in one batch, stopping at the first failure.
+     * Running it again only writes what is left.
+     *
+     * @param callback The callback that will be invoked with the number of events written.
+     */
+    public static void indexAllEvents(PosterRepository.MigrationCallback callback) {
+        indexEventsAfter(null, 0, callback);
+    }
+
+    private static void indexEventsAfter(@Nullable DocumentSnapshot after, int indexed,
+                                         PosterRepository.MigrationCallback callback) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        Query query = db.collection(EVENTS_COLLECTION)
+                .orderBy(FieldPath.documentId())
+                .limit(INDEX_PAGE_SIZE);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    WriteBatch writeBatch = db.batch();
+                    int writes = 0;
+                    for (QueryDocumentSnapshot document : querySnapshot) {
+                        Event event = document.toObject(Event.class);
+                        List<String> tokens = EventSearchIndex.searchTokens(event);
+                        if (!tokens.equals(event.getSearchTokens())) {
+                            writeBatch.update(document.getReference(), EventSearchIndex.SEARCH_TOKENS, tokens);
+                            writes++;
+                        }
+                    }
+                    int total = indexed + writes;
+                    DocumentSnapshot last = Paging.nextCursor(querySnapshot.getDocuments(), INDEX_PAGE_SIZE);
+                    writeBatch.commit()
+                            .addOnSuccessListener(aVoid -> {
+                                if (last == null) {
+                                    Log.d(TAG, "Indexed search tokens of " + total + " events");
+                                    callback.onCallback(total, null);
+                                } else {
+                                    indexEventsAfter(last, total, callback);
+                                }
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Error writing search tokens", e);
+                                callback.onCallback(indexed, e);
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching events to index", e);
+                    callback.onCallback(indexed, e);
+                });
+    }
+
+    /**
+     * Fetches the events whose documents changed after a given time, oldest change first,
+     * to bring cached copies up to date without reading the unchanged ones.
+     * Documents written before {@link #UPDATED_AT} existed are never returned.
+     *
+     * @param since    The time changes are needed from, such as {@link EventDiskCache#getWatermark()}.
+     * @param limit    The largest number of events to fetch.
+     * @param callback The callback that will be invoked with the changed events. The cursor is
+     *                 non-null when the limit was reached and more changes may remain.
+     */
+    public static void getEventsChangedSince(Date since, int limit, EventPageCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .whereGreaterThan(UPDATED_AT, since)
+                .orderBy(UPDATED_AT)
+                .limit(limit)
+                .get()
+                .addOnSuccessListener(querySnapshot -> {
+                    Map<String, String> posters = new HashMap<>();
+                    ArrayList<Event> changed = toEvents(querySnapshot, posters);
+                    DocumentSnapshot nextCursor = Paging.nextCursor(querySnapshot.getDocuments(), limit);
+                    callback.onCallback(changed, posters, nextCursor, null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching changed events", e);
+                    callback.onCallback(new ArrayList<>(), new HashMap<>(), null, e);
+                });
+    }
+
+    /**
+     * Counts how many of the given events still exist, with count aggregations rather than
+     * reading the documents, so a cached feed can tell that one of its events was deleted.
+     *
+     * @param eventIds The IDs of the events to look for.
+     * @param callback The callback that will be invoked with the number that exist, or the failure.
+     */
+    public static void countExistingEvents(List<String> eventIds, EventCountCallback callback) {
+        countExistingEvents(eventIds, 0, 0, callback);
+    }
+
+    private static void countExistingEvents(List<String> eventIds, int start, long found, EventCountCallback callback) {
+        if (start >= eventIds.size()) {
+            callback.onCallback(found, null);
+            return;
+        }
+        List<String> chunk = eventIds.subList(start, Math.min(start + MAX_WHERE_IN, eventIds.size()));
+        FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .whereIn(FieldPath.documentId(), new ArrayList<>(chunk))
+                .count()
+                .get(AggregateSource.SERVER)
+                .addOnSuccessListener(snapshot ->
+                        countExistingEvents(eventIds, start + chunk.size(), found + snapshot.getCount(), callback))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error counting existing events", e);
+                    callback.onCallback(found, e);
+                });
+    }
+
+    /**
+     * Gets the on-device cache of the home feed, creating it on first use.
+     *
+     * @param context Context used to locate the app's files directory.
+     * @return The shared event cache.
+     */
+    public static synchronized EventDiskCache getEventCache(Context context) {
+        if (eventCache == null) {
+            eventCache = new EventDiskCache(new File(context.getApplicationContext().getFilesDir(), EVENT_CACHE_FILE));
+        }
+        return eventCache;
+    }
+
+    /**
+     * Converts query results to events, setting missing event IDs from the document IDs
+     * and collecting posters separately.
+     *
+     * @param querySnapshot The query results.
+     * @param posters       Receives the posters, keyed by event ID.
+     * @return The events, in query order.
+     */
+    private static ArrayList<Event> toEvents(QuerySnapshot querySnapshot, Map<String, String> posters) {
+        ArrayList<Event> events = new ArrayList<>();
+        for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+            Event event = toEvent(document, posters);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    // Converts one document, putting its legacy poster if any in posters
+    @Nullable
+    private static Event toEvent(DocumentSnapshot document, Map<String, String> posters) {
+        Event event = document.toObject(Event.class);
+        if (event == null) {
+            return null;
+        }
+        if (event.getEventId() == null || event.getEventId().isEmpty()) {
+            event.setEventId(document.getId());
+        }
+        String posterBase64 = document.getString("posterBase64");
+        if (posterBase64 != null && !posterBase64.isEmpty()) {
+            posters.put(event.getEventId(), posterBase64);
+        }
+        return event;
+    }
+
+    /**
+     * Commits one batch of a lottery result or notification fan-out to Firestore as a single atomic WriteBatch.
+     * Moved entrants are applied with arrayRemove/arrayUnion so the unchanged parts of
+     * the participation lists are never rewritten. A list that both loses and gains
+     * entrants is updated in a second write, since Firestore allows one transform per field.
+     * Events that keep their entrants in a subcollection get one write per moved entrant
+     * and counter increments instead; a part split off by {@link EventDelta#split(int)} only
+     * writes its entrant documents.
+     * Notifications get new document ids and each target's unread count is incremented in the
+     * same batch. A batch with a key, which is only notifications and may be retried after it had
+     * in fact been committed, is written under fixed ids in a transaction instead, which skips
+     * notifications that already exist so they are neither counted twice nor marked unread again.
+     * Matches {@link LotteryCommit.BatchSink}.
+     *
+     * @param batch    The event change and notifications to write.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    public static void commitBatch(LotteryCommit.Batch batch, LotteryCommit.CommitCallback callback) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        if (batch.getKey() != null && batch.getDelta() == null) {
+            commitNotificationsOnce(db, batch, callback);
+            return;
+        }
+        WriteBatch writeBatch = db.batch();
+
+        EventDelta delta = batch.getDelta();
+        if (delta != null) {
+            applyDelta(db, writeBatch, delta);
+        }
+
+        List<Notif> notifications = batch.getNotifications();
+        for (Notif notif : notifications) {
+            writeBatch.set(db.collection(NOTIFICATIONS_COLLECTION).document(), notif);
+        }
+        NotificationRepository.addUnreadCounts(db, writeBatch, notifications);
+
+        writeBatch.commit()
+                .addOnSuccessListener(aVoid -> callback.onCallback(null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error committing batch", e);
+                    callback.onCallback(e);
+                });
+    }
+
+    /**
+     * Writes the notifications of a keyed batch under fixed ids in one transaction, creating only
+     * the ones that do not exist yet and counting only those as unread.
+     *
+     * @param db       The Firestore instance.
+     * @param batch    The batch, with a key and no event change.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    private static void commitNotificationsOnce(FirebaseFirestore db, LotteryCommit.Batch batch,
+                                                LotteryCommit.CommitCallback callback) {
+        List<Notif> notifications = batch.getNotifications();
+        db.runTransaction(transaction -> {
+                    // Every read comes before the first write, as transactions require
+                    List<DocumentReference> refs = new ArrayList<>();
+                    List<Notif> created = new ArrayList<>();
+                    for (int i = 0; i < notifications.size(); i++) {
+                        DocumentReference notifRef = db.collection(NOTIFICATIONS_COLLECTION)
+                                .document(batch.getKey() + "-" + i);
+                        if (!transaction.get(notifRef).exists()) {
+                            refs.add(notifRef);
+                            created.add(notifications.get(i));
+                        }
+                    }
+                    for (int i = 0; i < refs.size(); i++) {
+                        transaction.set(refs.get(i), created.get(i));
+                    }
+                    NotificationRepository.addUnreadCounts(db, transaction, created);
+                    return null;
+                })
+                .addOnSuccessListener(result -> callback.onCallback(null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error committing batch " + batch.getKey(), e);
+                    callback.onCallback(e);
+                });
+    }
+
+    /**
+     * Writes a change to a single event, such as an entrant joining or leaving,
+     * without rewriting the rest of the event document.
+     *
+     * @param delta    The change to write.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    public static void updateEvent(EventDelta delta, LotteryCommit.CommitCallback callback) {
+        if (delta.isEmpty()) {
+            callback.onCallback(null);
+            return;
+        }
+        commitBatch(new LotteryCommit.Batch(delta, new ArrayList<>()), callback);
+    }
+
+    /**
+     * Adds the writes for an event change to a WriteBatch.
+     *
+     * @param db         The Firestore instance.
+     * @param writeBatch The batch to add the writes to.
+     * @param delta      The change to the event.
+     */
+    private static void applyDelta(FirebaseFirestore db, WriteBatch writeBatch, EventDelta delta) {
+        DocumentReference eventRef = db.collection(EVENTS_COLLECTION).document(delta.getEventId());
+        Map<String, Object> updates = new HashMap<>(delta.getFields());
+        updates.put(UPDATED_AT, FieldValue.serverTimestamp());
+        if (!delta.getJoined().isEmpty()) {
+            // Keep the user -> events index in step with new registrations
+            updates.put(RegistrationIndex.FIELD, FieldValue.arrayUnion(delta.getJoined().toArray()));
+        }
+        for (Map.Entry<String, Integer> entry : delta.getLosses().entrySet()) {
+            // Only this draw's losers are touched, each through its own path in the map
+            updates.put(EventDelta.LOTTERY_LOSSES + "." + entry.getKey(), FieldValue.increment(entry.getValue()));
+        }
+
+        if (delta.isEntrantsInSubcollection()) {
+            for (Entrant entrant : delta.getEntrants().values()) {
+                writeBatch.set(eventRef.collection(EntrantRepository.ENTRANTS_COLLECTION).document(entrant.getGuid()), entrant);
+            }
+            if (delta.isEntrantsOnly()) {
+                return;
+            }
+            for (Map.Entry<String, Integer> entry : delta.getCounts().entrySet()) {
+                updates.put(entry.getKey(), FieldValue.increment(entry.getValue()));
+            }
+            writeBatch.update(eventRef, updates);
+            return;
+        }
+
+        Map<String, Object> additions = new HashMap<>();
+        for (Map.Entry<String, ArrayList<Profile>> entry : delta.getRemoved().entrySet()) {
+            updates.put(entry.getKey(), FieldValue.arrayRemove(entry.getValue().toArray()));
+        }
+        for (Map.Entry<String, ArrayList<Profile>> entry : delta.getAdded().entrySet()) {
+            Object union = FieldValue.arrayUnion(entry.getValue().toArray());
+            if (updates.containsKey(entry.getKey())) {
+                additions.put(entry.getKey(), union);
+            } else {
+                updates.put(entry.getKey(), union);
+            }
+        }
+        writeBatch.update(eventRef, updates);
+        if (!additions.isEmpty()) {
+            writeBatch.update(eventRef, additions);
+        }
+    }
+
+    /**
+     * Creates a notification fan-out that writes to Firestore, retries on the main thread
+     * and keeps its checkpoints in the app's private storage, recording progress on a background thread
+     * @param context
+     *     context used to locate the app's files directory
+     * @return
+     *     a fan-out ready to send or resume notifications
+     */
+    public static NotificationFanOut notificationFanOut(Context context) {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return new NotificationFanOut(EventRepository::commitBatch, handler::postDelayed,
+                new FileCheckpointStore(new File(context.getFilesDir(), FANOUT_DIRECTORY), fanOutExecutor));
+    }
 }
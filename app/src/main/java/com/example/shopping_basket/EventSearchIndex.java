@@ -0,0 +1,361 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This class indexes the words of event names, descriptions and guidelines for keyword search.
+ * Every event stores its words and their prefixes, sorted, in {@link #SEARCH_TOKENS}, so Firestore
+ * can look events up with array-contains-any, and a loaded event is checked against a query with
+ * a binary search instead of lowercasing its text.
+ * The index itself is a trie over the words of the events added to it. It finds the events matching
+ * a query ranked by how often the query's words occur in them, and the words that complete what has
+ * been typed so far.
+ * A query is a list of terms that all have to match, with "OR" between lists; a term matches
+ * every word it is a prefix of.
+ */
+public class EventSearchIndex {
+    public static final String SEARCH_TOKENS = "searchTokens";
+    // Prefixes shorter than this are not stored, since they would match most events
+    public static final int MIN_PREFIX_LENGTH = 2;
+    // Longer words are stored whole, and with prefixes up to this length
+    public static final int MAX_PREFIX_LENGTH = 12;
+    // Firestore takes at most this many values in one array-contains-any filter
+    public static final int MAX_QUERY_VALUES = 30;
+
+    /**
+     * A parsed keyword query.
+     */
+    public static class Query {
+        private final List<List<String>> groups;
+
+        private Query(List<List<String>> groups) {
+            this.groups = groups;
+        }
+
+        /**
+         * Parses a query, such as "swim lesson OR pool"
+         * @param text
+         *     the query as typed, null for an empty query
+         * @return
+         *     the query; it is empty when the text has no words
+         */
+        public static Query parse(String text) {
+            List<List<String>> groups = new ArrayList<>();
+            List<String> group = new ArrayList<>();
+            if (text != null) {
+                for (String part : text.trim().split("\\s+")) {
+                    if (part.equals("OR")) {
+                        if (!group.isEmpty()) {
+                            groups.add(group);
+                        }
+                        group = new ArrayList<>();
+                    } else {
+                        group.addAll(words(part));
+                    }
+                }
+            }
+            if (!group.isEmpty()) {
+                groups.add(group);
+            }
+            return new Query(groups);
+        }
+
+        public boolean isEmpty() {
+            return groups.isEmpty();
+        }
+
+        /**
+         * Checks an event against the query, using its stored tokens when it has them
+         * @param event
+         *     the event
+         * @return
+         *     true if every term of one of the lists matches a word of the event
+         */
+        public boolean matches(Event event) {
+            List<String> tokens = event.getSearchTokens();
+            return matches(tokens != null ? tokens : searchTokens(event));
+        }
+
+        boolean matches(List<String> sortedTokens) {
+            for (List<String> group : groups) {
+                boolean all = true;
+                for (String term : group) {
+                    if (!hasPrefix(sortedTokens, term)) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets the values for an array-contains-any filter on {@link #SEARCH_TOKENS} that returns
+         * every event matching the query, along with others the query then has to be checked on.
+         * The longest term of each list is used, as it is likely to match the fewest events.
+         * @return
+         *     the values, or null when the query cannot be narrowed this way, such as when a list
+         *     has only terms shorter than {@link #MIN_PREFIX_LENGTH}
+         */
+        public List<String> getServerValues() {
+            if (groups.isEmpty()) {
+                return null;
+            }
+            Set<String> values = new LinkedHashSet<>();
+            for (List<String> group : groups) {
+                String longest = "";
+                for (String term : group) {
+                    if (term.length() > longest.length()) {
+                        longest = term;
+                    }
+                }
+                if (longest.length() < MIN_PREFIX_LENGTH) {
+                    return null;
+                }
+                values.add(longest.length() > MAX_PREFIX_LENGTH ? longest.substring(0, MAX_PREFIX_LENGTH) : longest);
+            }
+            return values.size() > MAX_QUERY_VALUES ? null : new ArrayList<>(values);
+        }
+    }
+
+    // One letter of a word; the words ending here are counted in postings
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        Map<String, Integer> postings; // times the word occurs in each event, by event ID
+    }
+
+    private final Node root = new Node();
+    private final Map<String, Map<String, Integer>> wordsByEvent = new HashMap<>();
+
+    /**
+     * Splits text into lowercase words of letters and digits
+     * @param text
+     *     the text, may be null
+     * @return
+     *     the words in order, repeats included
+     */
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    // The words of an event's name, description and guideline
+    private static List<String> words(Event event) {
+        List<String> words = words(event.getName());
+        words.addAll(words(event.getDesc()));
+        words.addAll(words(event.getGuideline()));
+        return words;
+    }
+
+    /**
+     * Gets the value to store in {@link #SEARCH_TOKENS}: each word of the event, and each of its
+     * prefixes from {@link #MIN_PREFIX_LENGTH} to {@link #MAX_PREFIX_LENGTH} letters long
+     * @param event
+     *     the event, with its name, description and guideline set
+     * @return
+     *     the tokens, sorted and without repeats
+     */
+    public static List<String> searchTokens(Event event) {
+        TreeSet<String> tokens = new TreeSet<>();
+        for (String word : words(event)) {
+            tokens.add(word);
+            int longest = Math.min(word.length() - 1, MAX_PREFIX_LENGTH);
+            for (int length = MIN_PREFIX_LENGTH; length <= longest; length++) {
+                tokens.add(word.substring(0, length));
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    // Whether a sorted list has a token starting with the term; the whole word always is one
+    private static boolean hasPrefix(List<String> sortedTokens, String term) {
+        int index = Collections.binarySearch(sortedTokens, term);
+        if (index >= 0) {
+            return true;
+        }
+        int next = -index - 1;
+        return next < sortedTokens.size() && sortedTokens.get(next).startsWith(term);
+    }
+
+    /**
+     * Adds an event to the index, replacing what was indexed for it before
+     * @param event
+     *     the event
+     */
+    public void add(Event event) {
+        String eventId = event.getEventId();
+        remove(eventId);
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : words(event)) {
+            counts.merge(word, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Node node = root;
+            for (int i = 0; i < entry.getKey().length(); i++) {
+                node = node.children.computeIfAbsent(entry.getKey().charAt(i), c -> new Node());
+            }
+            if (node.postings == null) {
+                node.postings = new HashMap<>();
+            }
+            node.postings.put(eventId, entry.getValue());
+        }
+        wordsByEvent.put(eventId, counts);
+    }
+
+    /**
+     * Removes an event from the index
+     * @param eventId
+     *     ID of the event, ignored if it was never added
+     */
+    public void remove(String eventId) {
+        Map<String, Integer> counts = wordsByEvent.remove(eventId);
+        if (counts == null) {
+            return;
+        }
+        for (String word : counts.keySet()) {
+            Node node = find(word);
+            if (node != null && node.postings != null) {
+                node.postings.remove(eventId);
+            }
+        }
+    }
+
+    public void clear() {
+        root.children.clear();
+        wordsByEvent.clear();
+    }
+
+    // Number of events in the index
+    public int size() {
+        return wordsByEvent.size();
+    }
+
+    /**
+     * Finds the events matching a query, the ones its terms occur in most often first.
+     * An event matching more than one list is ranked by the list it matches best.
+     * @param query
+     *     the query
+     * @return
+     *     IDs of the matching events, ties in ID order
+     */
+    public List<String> search(Query query) {
+        Map<String, Integer> scores = new HashMap<>();
+        for (List<String> group : query.groups) {
+            Map<String, Integer> groupScores = null;
+            for (String term : group) {
+                Map<String, Integer> termScores = occurrences(term);
+                if (groupScores == null) {
+                    groupScores = termScores;
+                } else {
+                    groupScores.keySet().retainAll(termScores.keySet());
+                    for (Map.Entry<String, Integer> entry : groupScores.entrySet()) {
+                        entry.setValue(entry.getValue() + termScores.get(entry.getKey()));
+                    }
+                }
+                if (groupScores.isEmpty()) {
+                    break;
+                }
+            }
+            for (Map.Entry<String, Integer> entry : groupScores.entrySet()) {
+                scores.merge(entry.getKey(), entry.getValue(), Math::max);
+            }
+        }
+        List<String> ranked = new ArrayList<>(scores.keySet());
+        ranked.sort((a, b) -> {
+            int byScore = Integer.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : a.compareTo(b);
+        });
+        return ranked;
+    }
+
+    /**
+     * Finds the words starting with what has been typed, for type-ahead
+     * @param prefix
+     *     the start of a word, in any case
+     * @param limit
+     *     largest number of words to return
+     * @return
+     *     the words, the ones in the most events first, ties in alphabetical order
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> completions = new ArrayList<>();
+        Node start = find(prefix.toLowerCase());
+        if (start == null) {
+            return completions;
+        }
+        Map<String, Integer> eventCounts = new HashMap<>();
+        collectWords(start, new StringBuilder(prefix.toLowerCase()), eventCounts);
+        completions.addAll(eventCounts.keySet());
+        completions.sort((a, b) -> {
+            int byCount = Integer.compare(eventCounts.get(b), eventCounts.get(a));
+            return byCount != 0 ? byCount : a.compareTo(b);
+        });
+        return completions.size() > limit ? new ArrayList<>(completions.subList(0, limit)) : completions;
+    }
+
+    private Node find(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.children.get(word.charAt(i));
+        }
+        return node;
+    }
+
+    // Times the words starting with the term occur in each event, by event ID
+    private Map<String, Integer> occurrences(String term) {
+        Map<String, Integer> counts = new HashMap<>();
+        Node start = find(term);
+        if (start != null) {
+            collectOccurrences(start, counts);
+        }
+        return counts;
+    }
+
+    private static void collectOccurrences(Node node, Map<String, Integer> counts) {
+        if (node.postings != null) {
+            for (Map.Entry<String, Integer> entry : node.postings.entrySet()) {
+                counts.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        for (Node child : node.children.values()) {
+            collectOccurrences(child, counts);
+        }
+    }
+
+    private static void collectWords(Node node, StringBuilder word, Map<String, Integer> eventCounts) {
+        if (node.postings != null && !node.postings.isEmpty()) {
+            eventCounts.put(word.toString(), node.postings.size());
+        }
+        for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+            word.append(child.getKey());
+            collectWords(child.getValue(), word, eventCounts);
+            word.setLength(word.length() - 1);
+        }
+    }
+}
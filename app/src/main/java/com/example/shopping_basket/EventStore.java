@@ -0,0 +1,59 @@
+package com.example.shopping_basket;
+
+import java.util.Map;
+
+/**
+ * Stores events, such as the "events" collection in Firestore or an in-memory stand-in.
+ * Committing a {@link LotteryCommit.Batch} writes its event change and notifications together.
+ */
+public interface EventStore extends LotteryCommit.BatchSink {
+
+    // Callback for a single event, null if not found
+    interface EventCallback {
+        void onCallback(Event event);
+    }
+
+    /**
+     * Gets one event
+     * @param eventId
+     *     ID of the event
+     * @param callback
+     *     receives the event, or null if it does not exist or could not be read
+     */
+    void getEvent(String eventId, EventCallback callback);
+
+    /**
+     * Creates an event, keyed by its ID. An event that is already stored is left as it is and
+     * the callback receives a failure, so a copy with partly loaded entrant lists is never written back
+     * @param event
+     *     event to create
+     * @param callback
+     *     receives null on success, or the failure
+     */
+    void putEvent(Event event, LotteryCommit.CommitCallback callback);
+
+    /**
+     * Updates some of the details of a stored event, such as its name or dates, leaving every
+     * other field as it is. Entrants and lottery results change through {@link #commit} instead
+     * @param eventId
+     *     ID of the event
+     * @param fields
+     *     field name -> new value
+     * @param callback
+     *     receives null on success, or the failure
+     */
+    void updateEvent(String eventId, Map<String, Object> fields, LotteryCommit.CommitCallback callback);
+
+    /**
+     * Loads one page of the event feed. Matches {@link EventFeed.PageSource} once the plan is fixed
+     * @param plan
+     *     the query to run; its residual is left to the caller
+     * @param cursor
+     *     value returned with the previous page, null for the first page
+     * @param limit
+     *     largest number of events in the page
+     * @param callback
+     *     receives the page
+     */
+    void loadPage(EventQueryPlan plan, Object cursor, int limit, EventFeed.PageCallback callback);
+}
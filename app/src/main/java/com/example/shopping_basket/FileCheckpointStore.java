@@ -0,0 +1,125 @@
+package com.example.shopping_basket;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * This class keeps {@link NotificationFanOut.Checkpoint}s as serialized files in a directory,
+ * one file per unfinished send.
+ * The notifications are written once, when the send starts, to a temporary file that is then
+ * renamed into place, so a send killed mid-write never leaves a half-written checkpoint.
+ * Each committed batch after that only appends its index to a small log next to it, on the
+ * executor, so progress costs the same for the last batch as for the first.
+ */
+public class FileCheckpointStore implements NotificationFanOut.CheckpointStore {
+    private static final String TAG = "FileCheckpointStore";
+    private static final String SUFFIX = ".checkpoint";
+    private static final String SENT_SUFFIX = ".sent";
+
+    private final File directory;
+    private final Executor executor;
+
+    /**
+     * @param directory
+     *     where the checkpoint files are kept
+     * @param executor
+     *     runs the appends and deletes off the calling thread, one at a time and in order
+     */
+    public FileCheckpointStore(File directory, Executor executor) {
+        this.directory = directory;
+        this.executor = executor;
+    }
+
+    @Override
+    public void save(NotificationFanOut.Checkpoint checkpoint) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+            return;
+        }
+        File target = new File(directory, checkpoint.getId() + SUFFIX);
+        File temp = new File(directory, checkpoint.getId() + SUFFIX + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(temp))) {
+            out.writeObject(checkpoint);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving checkpoint " + checkpoint.getId(), e);
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            Log.e(TAG, "Could not replace checkpoint " + checkpoint.getId());
+        }
+    }
+
+    @Override
+    public void markSent(NotificationFanOut.Checkpoint checkpoint, int index) {
+        String id = checkpoint.getId();
+        executor.execute(() -> {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(directory, id + SENT_SUFFIX), true))) {
+                out.writeInt(index);
+            } catch (IOException e) {
+                // The batch is sent again on resume, and its fixed ids keep that from duplicating it
+                Log.e(TAG, "Error recording batch " + index + " of checkpoint " + id, e);
+            }
+        });
+    }
+
+    @Override
+    public List<NotificationFanOut.Checkpoint> loadAll() {
+        List<NotificationFanOut.Checkpoint> checkpoints = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return checkpoints;
+        }
+        for (File file : files) {
+            NotificationFanOut.Checkpoint checkpoint;
+            try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+                checkpoint = (NotificationFanOut.Checkpoint) in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                // An unreadable checkpoint can never be resumed, so drop it
+                Log.e(TAG, "Discarding unreadable checkpoint " + file.getName(), e);
+                file.delete();
+                continue;
+            }
+            readSent(checkpoint);
+            checkpoints.add(checkpoint);
+        }
+        return checkpoints;
+    }
+
+    // Marks the batches recorded in the log as sent; an index cut short by a kill is ignored
+    private void readSent(NotificationFanOut.Checkpoint checkpoint) {
+        File log = new File(directory, checkpoint.getId() + SENT_SUFFIX);
+        if (!log.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(log))) {
+            while (true) {
+                checkpoint.markSent(in.readInt());
+            }
+        } catch (EOFException e) {
+            // end of the log
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading sent batches of checkpoint " + checkpoint.getId(), e);
+        }
+    }
+
+    @Override
+    public void delete(String id) {
+        // On the executor, after any appends still queued for this checkpoint
+        executor.execute(() -> {
+            new File(directory, id + SUFFIX).delete();
+            new File(directory, id + SENT_SUFFIX).delete();
+        });
+    }
+}
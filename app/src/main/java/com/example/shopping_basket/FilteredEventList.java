@@ -0,0 +1,79 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps the events loaded so far and the ones that pass the current filter.
+ * A newly loaded page is filtered on its own and appended, so every event is checked
+ * once when it arrives and once more only when the filter itself changes.
+ */
+public class FilteredEventList {
+
+    // Decides whether an event is shown, such as the residual of an EventQueryPlan
+    public interface Filter {
+        boolean matches(Event event);
+    }
+
+    private final ArrayList<Event> events = new ArrayList<>();
+    private final ArrayList<Event> visible = new ArrayList<>();
+    private Filter filter;
+
+    /**
+     * Adds a page of events, checking only the new events against the filter
+     * @param page
+     *     events to add, in feed order
+     * @return
+     *     the events from the page that pass the filter
+     */
+    public List<Event> addPage(List<Event> page) {
+        List<Event> added = new ArrayList<>();
+        for (Event event : page) {
+            events.add(event);
+            if (filter == null || filter.matches(event)) {
+                added.add(event);
+            }
+        }
+        visible.addAll(added);
+        return added;
+    }
+
+    /**
+     * Replaces the filter and checks every loaded event against it once
+     * @param filter
+     *     the new filter, null to show every event
+     */
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+        visible.clear();
+        for (Event event : events) {
+            if (filter == null || filter.matches(event)) {
+                visible.add(event);
+            }
+        }
+    }
+
+    // Drops every loaded event, keeping the filter
+    public void clear() {
+        events.clear();
+        visible.clear();
+    }
+
+    public boolean isFiltered() {
+        return filter != null;
+    }
+
+    // Every event loaded so far, in feed order
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    // A copy of the events that pass the filter, safe to hand to a ListAdapter
+    public List<Event> getVisible() {
+        return new ArrayList<>(visible);
+    }
+
+    public int getVisibleCount() {
+        return visible.size();
+    }
+}
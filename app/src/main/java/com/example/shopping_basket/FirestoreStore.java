@@ -0,0 +1,122 @@
+package com.example.shopping_basket;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The event, profile and notification stores backed by Firestore.
+ * Reads and writes go through {@link EventRepository}, {@link ProfileRepository} and
+ * {@link NotificationRepository}, so the profile cache is shared with the rest of the app.
+ * The lottery commits and the inbox read and mark notifications through this store.
+ */
+public class FirestoreStore implements EventStore, ProfileStore, NotificationStore {
+    private static final String TAG = "FirestoreStore";
+    private static final String EVENTS_COLLECTION = "events";
+
+    @Override
+    public void getEvent(String eventId, EventCallback callback) {
+        EventRepository.getEventById(eventId, callback::onCallback);
+    }
+
+    @Override
+    public void putEvent(Event event, LotteryCommit.CommitCallback callback) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        DocumentReference eventRef = db.collection(EVENTS_COLLECTION).document(event.getEventId());
+        db.runTransaction(transaction -> {
+            if (transaction.get(eventRef).exists()) {
+                throw new FirebaseFirestoreException("Event already exists: " + event.getEventId(),
+                        FirebaseFirestoreException.Code.ALREADY_EXISTS);
+            }
+            transaction.set(eventRef, event);
+            if (event.isEntrantsInSubcollection()) {
+                // The event serializes its lists even when they live in the subcollection
+                Map<String, Object> lists = new HashMap<>();
+                lists.put(EventDelta.WAITING_LIST, FieldValue.delete());
+                lists.put(EventDelta.INVITE_LIST, FieldValue.delete());
+                lists.put(EventDelta.ENROLL_LIST, FieldValue.delete());
+                lists.put(EventDelta.CANCEL_LIST, FieldValue.delete());
+                transaction.update(eventRef, lists);
+            }
+            return null;
+        })
+                .addOnSuccessListener(result -> callback.onCallback(null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error creating event: " + event.getEventId(), e);
+                    callback.onCallback(e);
+                });
+    }
+
+    @Override
+    public void updateEvent(String eventId, Map<String, Object> fields, LotteryCommit.CommitCallback callback) {
+        Map<String, Object> updates = new HashMap<>(fields);
+        updates.put(EventRepository.UPDATED_AT, FieldValue.serverTimestamp());
+        FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .document(eventId)
+                .update(updates)
+                .addOnSuccessListener(aVoid -> callback.onCallback(null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error updating event: " + eventId, e);
+                    callback.onCallback(e);
+                });
+    }
+
+    @Override
+    public void loadPage(EventQueryPlan plan, Object cursor, int limit, EventFeed.PageCallback callback) {
+        EventRepository.getEventPage(plan, cursor, limit,
+                (page, posters, nextCursor, error) -> callback.onCallback(page, nextCursor, error));
+    }
+
+    @Override
+    public void commit(LotteryCommit.Batch batch, LotteryCommit.CommitCallback callback) {
+        EventRepository.commitBatch(batch, callback);
+    }
+
+    @Override
+    public void getProfile(String guid, ProfileCache.ProfileCallback callback) {
+        ProfileRepository.getProfile(guid, callback::onCallback);
+    }
+
+    @Override
+    public void putProfile(Profile profile, LotteryCommit.CommitCallback callback) {
+        ProfileRepository.createProfile(profile, callback::onCallback);
+    }
+
+    @Override
+    public void updateProfile(String guid, Map<String, Object> fields, LotteryCommit.CommitCallback callback) {
+        ProfileRepository.updateFields(guid, fields, callback::onCallback);
+    }
+
+    @Override
+    public void deleteProfile(String guid, LotteryCommit.CommitCallback callback) {
+        ProfileRepository.deleteProfile(guid, callback::onCallback);
+    }
+
+    @Override
+    public void getNotificationPage(String target, Notif cursor, int limit, PageCallback callback) {
+        NotificationRepository.getNotificationPage(target, cursor, limit, callback);
+    }
+
+    @Override
+    public void addNotifications(List<Notif> notifications, LotteryCommit.CommitCallback callback) {
+        EventRepository.commitBatch(new LotteryCommit.Batch(null, notifications), callback);
+    }
+
+    @Override
+    public void markRead(String target, List<Notif> notifications, LotteryCommit.CommitCallback callback) {
+        NotificationRepository.markRead(target, notifications, callback);
+    }
+
+    @Override
+    public void getUnreadCount(String target, CountCallback callback) {
+        NotificationRepository.getUnreadCount(target, callback);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class encodes locations as geohashes. A geohash names a cell of the map, and every
+ * prefix of it names the larger cell containing it, so events in an area share a prefix.
+ * Events store the prefixes of the lengths in {@link #CELL_PRECISIONS} as cells that can be
+ * matched exactly, and "near me" looks for events in the cell around a location and the eight
+ * cells next to it, which covers at least the cell's own width in every direction.
+ */
+public class Geohash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    // Precision of the geohash stored on an event, a cell of a few meters
+    public static final int PRECISION = 9;
+    // Lengths of the cells stored on an event, for searches of about 150, 20 and 5 km around a location
+    public static final int[] CELL_PRECISIONS = {3, 4, 5};
+    public static final int[] CELL_RADIUS_KM = {150, 20, 5};
+
+    /**
+     * Encodes a location
+     * @param latitude
+     *     latitude in degrees, -90 to 90
+     * @param longitude
+     *     longitude in degrees, -180 to 180
+     * @param precision
+     *     number of characters
+     * @return
+     *     the geohash
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double[] lat = {-90, 90};
+        double[] lng = {-180, 180};
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int value = 0;
+        while (hash.length() < precision) {
+            double[] range = evenBit ? lng : lat;
+            double coordinate = evenBit ? longitude : latitude;
+            double middle = (range[0] + range[1]) / 2;
+            if (coordinate >= middle) {
+                value = (value << 1) | 1;
+                range[0] = middle;
+            } else {
+                value <<= 1;
+                range[1] = middle;
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(value));
+                bit = 0;
+                value = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Decodes a geohash into the bounds of its cell
+     * @param hash
+     *     the geohash
+     * @return
+     *     {south, north, west, east} in degrees
+     * @throws IllegalArgumentException
+     *     if the hash has a character outside the geohash alphabet
+     */
+    public static double[] bounds(String hash) {
+        double[] lat = {-90, 90};
+        double[] lng = {-180, 180};
+        boolean evenBit = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int value = BASE32.indexOf(hash.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid geohash: " + hash);
+            }
+            for (int shift = 4; shift >= 0; shift--) {
+                double[] range = evenBit ? lng : lat;
+                double middle = (range[0] + range[1]) / 2;
+                if (((value >> shift) & 1) == 1) {
+                    range[0] = middle;
+                } else {
+                    range[1] = middle;
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[] {lat[0], lat[1], lng[0], lng[1]};
+    }
+
+    /**
+     * Gets a cell and the cells around it, the area "near me" searches
+     * @param cell
+     *     the geohash of the cell
+     * @return
+     *     the cell first, then its neighbors; fewer than nine next to a pole
+     */
+    public static List<String> neighborhood(String cell) {
+        double[] bounds = bounds(cell);
+        double height = bounds[1] - bounds[0];
+        double width = bounds[3] - bounds[2];
+        double latitude = (bounds[0] + bounds[1]) / 2;
+        double longitude = (bounds[2] + bounds[3]) / 2;
+        Set<String> cells = new LinkedHashSet<>();
+        cells.add(cell);
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            double neighborLatitude = latitude + dLat * height;
+            if (neighborLatitude < -90 || neighborLatitude > 90) {
+                continue;
+            }
+            for (int dLng = -1; dLng <= 1; dLng++) {
+                double neighborLongitude = longitude + dLng * width;
+                // Wrap around the date line
+                if (neighborLongitude < -180) {
+                    neighborLongitude += 360;
+                } else if (neighborLongitude > 180) {
+                    neighborLongitude -= 360;
+                }
+                cells.add(encode(neighborLatitude, neighborLongitude, cell.length()));
+            }
+        }
+        return new ArrayList<>(cells);
+    }
+
+    /**
+     * Gets the cells an event at a location is stored under
+     * @param hash
+     *     geohash of the location, at least as long as the longest cell, or null
+     * @return
+     *     the cells keyed by {@link #cellKey}, empty if there is no location
+     */
+    public static Map<String, String> cells(String hash) {
+        Map<String, String> cells = new LinkedHashMap<>();
+        if (hash == null) {
+            return cells;
+        }
+        for (int precision : CELL_PRECISIONS) {
+            if (hash.length() >= precision) {
+                cells.put(cellKey(precision), hash.substring(0, precision));
+            }
+        }
+        return cells;
+    }
+
+    // Key of the cell of a given length in Event#getGeoCells, such as "p4"
+    public static String cellKey(int precision) {
+        return "p" + precision;
+    }
+}
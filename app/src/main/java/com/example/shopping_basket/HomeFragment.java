@@ -3,6 +3,11 @@ package com.example.shopping_basket;
 import static androidx.navigation.Navigation.findNavController;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -12,8 +17,8 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentResultListener;
 import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -23,14 +28,16 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentHomeBinding;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -38,21 +45,35 @@ import java.util.Map;
  * <p>
  * Key responsibilities:
  * <ul>
- *     <li>Fetching a list of all {@link Event} objects from the "events" collection in Firestore.</li>
+ *     <li>Paging through the {@link Event} objects in the "events" collection in Firestore with an {@link EventFeed},
+ *     loading the next page as the user nears the end of the list.</li>
+ *     <li>Showing the feed cached by {@link EventDiskCache} as soon as the screen opens, then fetching only the
+ *     events that changed since it was cached.</li>
  *     <li>Displaying the events in a {@link androidx.recyclerview.widget.RecyclerView} using the {@link EventCardAdapter}.</li>
  *     <li>Handling clicks on individual event cards to navigate to the {@link EventDetailFragment} for that event.</li>
  * </ul>
  */
 public class HomeFragment extends Fragment {
+    private static final String TAG = "HomeFragment";
+    // With more changes than this since the cache was saved, reloading the feed is cheaper than patching it
+    private static final int MAX_REVALIDATED_CHANGES = 50;
+    // Reads and writes the event cache file off the main thread; shared with screens that change the cache
+    static final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor();
 
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private FragmentHomeBinding binding;
     private EventCardAdapter eventAdapter;
-    private ArrayList<Event> events = new ArrayList<>();
-    private ArrayList<Event> filteredEvents = new ArrayList<>();
+    private final FilteredEventList eventList = new FilteredEventList();
     private Profile currentUser;
     private MenuProvider menuProvider;
     private Map<String, String> eventPosters = new HashMap<>();
     private EventFilterFragment.FilterCriteria currentFilterCriteria;
+    private EventQueryPlan plan;
+    private EventFeed feed;
+    private EventDiskCache eventCache;
+    private LiveSearch liveSearch;
+    private final EventFacets facets = new EventFacets();
+    private String searchText = "";
 
     /**
      * Default public constructor.
@@ -107,14 +128,22 @@ public class HomeFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         this.currentUser = ProfileManager.getInstance().getCurrentUserProfile();
+        this.eventCache = EventRepository.getEventCache(requireContext());
 
-        eventAdapter = new EventCardAdapter(filteredEvents, eventPosters);
+        eventAdapter = new EventCardAdapter(eventPosters);
         binding.eventCardList.setLayoutManager(new LinearLayoutManager(getContext()));
         binding.eventCardList.setAdapter(eventAdapter);
+        binding.eventCardList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                checkPrefetch();
+            }
+        });
 
         setupMenu();
         setupFilterListeners();
         setupClickListeners();
+        setupSearch();
         loadEvents();
 
         // Set title depending on whether we are in admin mode or not
@@ -132,13 +161,74 @@ public class HomeFragment extends Fragment {
                     (EventFilterFragment.FilterCriteria) result.getSerializable("filterCriteria");
             if (criteria != null) {
                 currentFilterCriteria = criteria;
-                applyFilters();
+                applyFilter();
+            }
+        });
+    }
+
+    /**
+     * Plans the query for the current filter. When the plan sends the same query as the feed
+     * already shown, such as when a keyword was added to one already searched, the loaded events are checked
+     * against the new residual instead of loading them again; otherwise the feed starts over.
+     */
+    private void applyFilter() {
+        if (plan == null) {
+            loadEvents();
+            return;
+        }
+        EventQueryPlan next = currentFilterCriteria.toQueryPlan(
+                ProfileManager.getInstance().isAdminMode(), plan.getNow(), planSample());
+        if (!plan.sameQuery(next)) {
+            loadEvents();
+            return;
+        }
+        plan = next;
+        eventList.setFilter(plan.getResidual());
+        showEvents();
+    }
+
+    // Only events of the unfiltered feed show fairly how many events each date range matches
+    private List<Event> planSample() {
+        return plan == null || plan.isFiltered() ? new ArrayList<>() : eventList.getEvents();
+    }
+
+    /**
+     * Searches the events loaded so far as the user types, off the main thread. Searches are
+     * debounced and superseded ones cancelled by {@link LiveSearch}.
+     */
+    private void setupSearch() {
+        liveSearch = new LiveSearch(mainHandler::post, this::onSearchResults);
+        binding.editTextSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchText = s.toString().trim();
+                showEvents();
             }
         });
     }
+
+    /**
+     * Shows the results of a search, unless the search box changed since it started.
+     *
+     * @param text The search the results are for.
+     * @param results The matching events that pass the filter, most relevant first.
+     */
+    private void onSearchResults(String text, List<Event> results) {
+        if (binding == null || !text.equals(searchText)) {
+            return;
+        }
+        submitEvents(results);
+    }
+
     private void setupClickListeners() {
         eventAdapter.setOnItemClickListener(position -> {
-            Event selectedEvent = filteredEvents.get(position);
+            Event selectedEvent = eventAdapter.getEvent(position);
             navigateToEventDetail(selectedEvent);
         });
 
@@ -147,76 +237,238 @@ public class HomeFragment extends Fragment {
             // Pass the currently active filter to the dialog so it can show the user's previous selections
             Bundle args = new Bundle();
             args.putSerializable("filterCriteria", currentFilterCriteria);
+            // Counts of the loaded events, kept up to date as pages load
+            args.putSerializable("categoryCounts", facets.getCategoryCounts());
+            String location = DeviceLocation.lastKnownGeohash(requireContext());
+            if (location == null) {
+                location = currentFilterCriteria.nearLocation;
+            }
+            if (location != null) {
+                int[] nearCounts = new int[Geohash.CELL_PRECISIONS.length];
+                for (int i = 0; i < nearCounts.length; i++) {
+                    nearCounts[i] = facets.nearCount(location, Geohash.CELL_PRECISIONS[i]);
+                }
+                args.putString("nearLocation", location);
+                args.putIntArray("nearCounts", nearCounts);
+            }
             dialog.setArguments(args);
             dialog.show(getParentFragmentManager(), "EventFilterFragment");
         });
     }
 
     /**
-     * Fetches the list of all events from the Firestore "events" collection.
-     * On success, it clears the local event list, populates it with the new data,
-     * and notifies the {@link EventCardAdapter} to refresh the UI.
+     * Starts a fresh {@link EventFeed} for the current filter, planned by {@link EventQueryPlan}:
+     * one date range is filtered on the server and the rest of the filter on each loaded page.
+     * In admin mode every event is listed, including past ones, and the first page is requested
+     * straight away. Regular users only see events whose registration period is still active,
+     * which is filtered on the server; their unfiltered feed starts from the cached events when there are any.
      */
     private void loadEvents() {
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        db.collection("events")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    events.clear();
-             // In admin mode we want to see every event, including past ones.
-             // Regular users only see events whose registration period is still active.
-                    boolean adminBrowsing = ProfileManager.getInstance().isAdminMode();
-
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Event event = document.toObject(Event.class);
-
-                        // Grab posterBase64 directly from the document
-                        String posterBase64 = document.getString("posterBase64");
-                        if (posterBase64 != null && !posterBase64.isEmpty()) {
-                            String eventId = event.getEventId();
-                            if (eventId == null || eventId.isEmpty()) {
-                                eventId = document.getId(); // fallback
-                            }
-                            eventPosters.put(eventId, posterBase64);
-                        }
+        boolean adminBrowsing = ProfileManager.getInstance().isAdminMode();
+        plan = currentFilterCriteria.toQueryPlan(adminBrowsing, new Date(), planSample());
+        Log.d(TAG, "Event feed query: " + plan);
+        eventList.clear();
+        eventList.setFilter(plan.getResidual());
+        liveSearch.clear();
+        facets.clear();
+        eventAdapter.submitList(null);
 
-                        if (adminBrowsing) {
-                            events.add(event);
-                        } else if (event.getEndDate() != null && event.getEndDate().after(new Date())) {
-                            events.add(event);
-                        }
-                        applyFilters();
+        EventQueryPlan feedPlan = plan;
+        boolean cached = !adminBrowsing && !feedPlan.isFiltered();
+        feed = new EventFeed((cursor, limit, callback) -> {
+                    Date requestedAt = new Date();
+                    EventRepository.getEventPage(feedPlan, cursor, limit,
+                            (page, posters, nextCursor, error) -> {
+                                eventPosters.putAll(posters);
+                                if (cached && error == null) {
+                                    // Serializing the page and waiting for a save stay off the main thread
+                                    cacheExecutor.execute(() ->
+                                            eventCache.putPage(page, posters, cursor == null, requestedAt));
+                                }
+                                callback.onCallback(page, nextCursor, error);
+                            });
+                },
+                this::onPageLoaded);
+        if (!cached) {
+            feed.loadMore();
+            return;
+        }
+
+        EventFeed startedFeed = feed;
+        cacheExecutor.execute(() -> {
+            Map<String, String> posters = new HashMap<>();
+            List<Event> cached = eventCache.getFeed(new Date(), posters);
+            Date watermark = eventCache.getWatermark();
+            mainHandler.post(() -> onCacheLoaded(startedFeed, cached, posters, watermark));
+        });
+    }
+
+    /**
+     * Shows the cached events and asks Firestore for the events changed since they were cached.
+     * Paging continues from the network after the last cached event. With nothing cached,
+     * the first page is requested instead.
+     *
+     * @param startedFeed The feed the cache was read for.
+     * @param cached The cached events, in feed order.
+     * @param posters The cached posters, keyed by event ID.
+     * @param watermark The time to fetch changes from, or null if nothing is cached.
+     */
+    private void onCacheLoaded(EventFeed startedFeed, List<Event> cached, Map<String, String> posters,
+                               @Nullable Date watermark) {
+        if (binding == null || feed != startedFeed) {
+            return; // The view or the feed was replaced while the cache was read
+        }
+        if (cached.isEmpty() || watermark == null) {
+            feed.loadMore();
+            return;
+        }
+        eventPosters.putAll(posters);
+        Event cursor = cached.get(cached.size() - 1);
+        feed.seed(cached, cursor);
+
+        Date requestedAt = new Date();
+        EventRepository.getEventsChangedSince(watermark, MAX_REVALIDATED_CHANGES,
+                (changed, changedPosters, more, error) -> {
+                    if (binding == null || feed != startedFeed) {
+                        return;
+                    }
+                    if (error != null) {
+                        return; // Keep showing the cached events; later pages still come from the network
                     }
-                    eventAdapter.notifyDataSetChanged();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("Firestore", "Error loading events", e);
-                    Toast.makeText(getContext(), "Failed to load events. Please try again.",
-                            Toast.LENGTH_SHORT).show();});
+                    if (more != null) {
+                        reloadWithoutCache();
+                        return;
+                    }
+                    // Deleted events never show up as changes, so check the cached ones are all still there
+                    List<String> cachedIds = new ArrayList<>();
+                    for (Event event : cached) {
+                        cachedIds.add(event.getEventId());
+                    }
+                    EventRepository.countExistingEvents(cachedIds, (existing, countError) -> {
+                        if (binding == null || feed != startedFeed || countError != null) {
+                            return;
+                        }
+                        if (existing < cachedIds.size()) {
+                            reloadWithoutCache();
+                            return;
+                        }
+                        cacheExecutor.execute(() -> {
+                            List<Event> revalidated = eventCache.revalidate(cached, cursor, changed, changedPosters, requestedAt);
+                            Log.d(TAG, String.format(Locale.US, "Event cache: %d changed, %d hits, %d misses (%.0f%% hit rate)",
+                                    changed.size(), eventCache.getHits(), eventCache.getMisses(), eventCache.getHitRate() * 100));
+                            eventCache.save();
+                            mainHandler.post(() -> onRevalidated(startedFeed, cached, revalidated, changed, changedPosters));
+                        });
+                    });
+                });
     }
 
     /**
-     * Applies the current filter criteria to the event list.
+     * Drops the cached feed and loads it again from the network, for when patching it
+     * would cost more than a reload or could not account for every change.
      */
-    private void applyFilters() {
-        filteredEvents.clear();
+    private void reloadWithoutCache() {
+        // Runs before the cache is read again for the new feed
+        cacheExecutor.execute(eventCache::clear);
+        loadEvents();
+    }
 
-        if (currentFilterCriteria == null || currentFilterCriteria.isDefault()) {
-            // If no filter is set, show all loaded events
-            filteredEvents.addAll(events);
-        } else {
-            // Otherwise, add only the events that match the criteria
-            for (Event event : events) {
-                if (currentFilterCriteria.matches(event)) {
-                    filteredEvents.add(event);
-                }
-            }
-            // Show feedback only when a filter is active
-            if (filteredEvents.isEmpty()) {
-                Toast.makeText(getContext(), "No events match your filters", Toast.LENGTH_SHORT).show();
-            }
+    /**
+     * Replaces the cached events on screen with their current versions, as merged by
+     * {@link EventDiskCache#revalidate} on the cache thread.
+     * Pages loaded from the network since the cache was shown are kept after them.
+     *
+     * @param startedFeed The feed the cache was read for.
+     * @param cached The cached events that were shown.
+     * @param revalidated The cached events brought up to date, in feed order.
+     * @param changed The events changed since the cache was saved.
+     * @param changedPosters The posters of the changed events, keyed by event ID.
+     */
+    private void onRevalidated(EventFeed startedFeed, List<Event> cached, List<Event> revalidated,
+                               List<Event> changed, Map<String, String> changedPosters) {
+        if (binding == null || feed != startedFeed) {
+            return;
+        }
+        for (Event event : changed) {
+            eventPosters.remove(event.getEventId());
+        }
+        eventPosters.putAll(changedPosters);
+
+        List<Event> loaded = eventList.getEvents();
+        List<Event> later = new ArrayList<>(loaded.subList(Math.min(cached.size(), loaded.size()), loaded.size()));
+        eventList.clear();
+        eventList.addPage(revalidated);
+        eventList.addPage(later);
+        liveSearch.clear();
+        liveSearch.add(eventList.getEvents());
+        facets.clear();
+        facets.addAll(eventList.getEvents());
+        showEvents();
+    }
+
+    /**
+     * Filters a newly loaded page and appends the events that pass to the list, then checks
+     * whether the list is still short enough that the following page should be loaded straight away.
+     * Events already in the list are not checked again.
+     *
+     * @param page The events in the page.
+     * @param error The failure, or null if the page loaded.
+     */
+    private void onPageLoaded(List<Event> page, Exception error) {
+        if (binding == null) {
+            return;
         }
-        eventAdapter.notifyDataSetChanged();
+        if (error != null) {
+            Toast.makeText(getContext(), "Failed to load events. Please try again.",
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        eventList.addPage(page);
+        liveSearch.add(page);
+        facets.addAll(page);
+        showEvents();
+    }
+
+    /**
+     * Asks the feed for the next page once the last visible card is close to the end of the list.
+     */
+    private void checkPrefetch() {
+        if (binding == null || feed == null) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) binding.eventCardList.getLayoutManager();
+        if (layoutManager != null) {
+            feed.onScrolled(layoutManager.findLastVisibleItemPosition(), eventAdapter.getItemCount());
+        }
+    }
+
+    /**
+     * Hands the events that pass the current filter to the adapter, which diffs them against
+     * the cards already shown and rebinds only what changed. While the search box has text,
+     * they are searched first and the results handed over once the search finishes.
+     */
+    private void showEvents() {
+        if (binding == null) {
+            return;
+        }
+        if (!searchText.isEmpty()) {
+            liveSearch.search(searchText, eventList.getVisible());
+            return;
+        }
+        liveSearch.cancel();
+        // Show feedback only when a filter is active and every page has been checked
+        if (plan != null && plan.isFiltered() && eventList.getVisibleCount() == 0 && feed != null && feed.isEndReached()) {
+            Toast.makeText(getContext(), "No events match your filters", Toast.LENGTH_SHORT).show();
+        }
+        submitEvents(eventList.getVisible());
+    }
+
+    private void submitEvents(List<Event> events) {
+        eventAdapter.submitList(events, () -> {
+            if (binding != null) {
+                binding.eventCardList.post(this::checkPrefetch);
+            }
+        });
     }
 
     private void setupMenu() {
@@ -274,6 +526,17 @@ public class HomeFragment extends Fragment {
         }
     }
 
+    /**
+     * Saves the event cache whenever the screen leaves the foreground, so the next launch starts from it.
+     */
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (eventCache != null) {
+            cacheExecutor.execute(eventCache::save);
+        }
+    }
+
     /**
      * Called when the view previously created by onCreateView has been detached from the fragment.
      * Nullifies the binding object to prevent memory leaks.
@@ -287,6 +550,15 @@ public class HomeFragment extends Fragment {
             requireActivity().removeMenuProvider(menuProvider);
             menuProvider = null;
         }
+        if (liveSearch != null) {
+            liveSearch.close();
+            liveSearch = null;
+        }
+        // Drop any page still loading for this view
+        if (feed != null) {
+            feed.reset();
+            feed = null;
+        }
         binding = null;
     }
 }
@@ -3,20 +3,18 @@ package com.example.shopping_basket;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import com.example.shopping_basket.databinding.FragmentImageItemBinding;
 
 import java.util.List;
+import java.util.Locale;
 
 /**
  * RecyclerView adapter for Admin browse posters screen.
- * It shows each event poster (decoded from Base64) with event name
- * and uploader, plus a delete button.
+ * It shows each event poster (loaded through PosterCache as it is bound) with
+ * uploader and size, plus a delete button.
  */
 public class ImageRecyclerViewAdapter extends RecyclerView.Adapter<ImageRecyclerViewAdapter.ViewHolder> {
 
@@ -60,42 +58,63 @@ public class ImageRecyclerViewAdapter extends RecyclerView.Adapter<ImageRecycler
     static class ViewHolder extends RecyclerView.ViewHolder {
 
         private final FragmentImageItemBinding binding;
+        private final int posterWidth;
+        private final int posterHeight;
 
         ViewHolder(FragmentImageItemBinding binding) {
             super(binding.getRoot());
             this.binding = binding;
+            // Posters are decoded just large enough to cover the image view, which spans the item
+            posterWidth = binding.getRoot().getResources().getDisplayMetrics().widthPixels;
+            posterHeight = binding.getRoot().getResources().getDimensionPixelSize(R.dimen.poster_thumbnail_height);
         }
 
         void bind(final EventPoster poster,
                   final OnPosterDeleteListener deleteListener) {
 
-            // Decode Base64 poster into a Bitmap
-            Bitmap bitmap = null;
-            try {
-                if (poster.getPosterBase64() != null && !poster.getPosterBase64().isEmpty()) {
-                    byte[] bytes = Base64.decode(poster.getPosterBase64(), Base64.DEFAULT);
-                    bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                }
-            } catch (IllegalArgumentException e) {
-                // invalid base64, ignore
+            // Poster loaded off the main thread; the view may be rebound before it arrives
+            // Thumbnail is enough here; older posters only have the full rendition, and ones not
+            // migrated yet were handed to the cache with their page
+            String posterHash = poster.getThumbnailHash() != null ? poster.getThumbnailHash() : poster.getPosterHash();
+            String key = PosterDiskCache.key(poster.getEventId(), posterHash);
+            binding.galleryItemImage.setTag(key);
+            binding.galleryItemImage.setImageResource(R.drawable.image_placeholder);
+            PosterCache.getInstance(binding.getRoot().getContext())
+                    .load(poster.getEventId(), posterHash, null,
+                            posterWidth, posterHeight, bitmap -> {
+                        // fallback placeholder stays if something went wrong
+                        if (bitmap != null && key.equals(binding.galleryItemImage.getTag())) {
+                            binding.galleryItemImage.setImageBitmap(bitmap);
+                        }
+                    });
+
+            showUploader(poster, poster.getUploaderName());
+            // The name saved with the poster may be out of date, so show the uploader's profile as it
+            // is now. Most uploaders have several posters, so the profile cache answers the repeats
+            binding.galleryItemUploaderName.setTag(poster.getEventId());
+            if (poster.getUploaderId() != null) {
+                ProfileRepository.getProfile(poster.getUploaderId(), profile -> {
+                    if (profile != null && poster.getEventId().equals(binding.galleryItemUploaderName.getTag())) {
+                        showUploader(poster, profile.getName());
+                    }
+                });
             }
 
-            if (bitmap != null) {
-                binding.galleryItemImage.setImageBitmap(bitmap);
-            } else {
-                // fallback placeholder if something went wrong
-                binding.galleryItemImage.setImageResource(R.drawable.image_placeholder);
-            }
-
-            String uploader = poster.getUploaderName() != null ? poster.getUploaderName() : "Unknown uploader";
-
-            binding.galleryItemUploaderName.setText("Uploaded by " + uploader);
-
             binding.buttonDeleteImage.setOnClickListener(v -> {
                 if (deleteListener != null) {
                     deleteListener.onPosterDelete(poster);
                 }
             });
         }
+
+        private void showUploader(EventPoster poster, String uploaderName) {
+            String uploader = uploaderName != null ? uploaderName : "Unknown uploader";
+            if (poster.getPosterSize() > 0) {
+                binding.galleryItemUploaderName.setText(String.format(Locale.US, "Uploaded by %s (%d KB)",
+                        uploader, (poster.getPosterSize() + 1023) / 1024));
+            } else {
+                binding.galleryItemUploaderName.setText("Uploaded by " + uploader);
+            }
+        }
     }
 }
\ No newline at end of file
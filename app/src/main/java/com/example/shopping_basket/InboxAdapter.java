@@ -2,6 +2,7 @@ package com.example.shopping_basket;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.res.ResourcesCompat;
 
 import android.content.Context;
 import android.view.LayoutInflater;
@@ -60,6 +61,9 @@ public class InboxAdapter extends ArrayAdapter<Notif> {
         TextView notificationTime = view.findViewById(R.id.inbox_item_time);
 
         notificationMessage.setText(notif.getMessage());
+        // Unread notifications stand out in the user's own inbox; the admin log has no reader
+        boolean unread = notif.isUnread() && !ProfileManager.getInstance().isAdminMode();
+        notificationMessage.setTypeface(ResourcesCompat.getFont(context, unread ? R.font.roboto_medium : R.font.roboto));
         notificationTime.setText(getFormattedTimestamp(notif));
 
         return view;
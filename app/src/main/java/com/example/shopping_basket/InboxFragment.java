@@ -17,15 +17,16 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ListView;
 import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentInboxBinding;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A fragment representing a list of notifications.
@@ -33,6 +34,10 @@ import java.util.ArrayList;
  * Behaviour:
  * - Normal user: shows only notifications targeted at the current user.
  * - Admin mode (from Admin Menu): shows ALL notifications as a log.
+ *
+ * The newest {@link NotificationRepository#PAGE_SIZE} notifications are observed live, and older
+ * ones are loaded a page at a time as the list is scrolled, so neither mode ever reads the whole
+ * collection. Notifications shown to a user are marked read when the inbox leaves the screen.
  */
 public class InboxFragment extends Fragment {
     private static final String TAG = "InboxFragment";
@@ -42,8 +47,12 @@ public class InboxFragment extends Fragment {
     private MenuProvider menuProvider;
     private InboxAdapter inboxAdapter;
     private ArrayList<Notif> notifications;
-    private FirebaseFirestore db;
     private Profile currentUser;
+    private final NotificationStore notificationStore = new FirestoreStore();
+    // Every notification shown, by document ID; kept when a newer one pushes it out of the live window
+    private final Map<String, Notif> loaded = new HashMap<>();
+    private boolean loadingOlder = false;
+    private boolean olderEndReached = false;
 
     public InboxFragment() {
         // Required empty public constructor
@@ -53,7 +62,6 @@ public class InboxFragment extends Fragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         currentUser = ProfileManager.getInstance().getCurrentUserProfile();
-        db = FirebaseFirestore.getInstance();
         notifications = new ArrayList<>();
     }
 
@@ -82,23 +90,21 @@ public class InboxFragment extends Fragment {
         }
 
         loadNotifications();
+        setupPaging();
 
         // Set visibility for the toggle notification button on toolbar
         setupMenu();
     }
 
     /**
-     * Loads notifications from Firestore.
+     * Observes the newest notifications in Firestore through the shared listener, so the inbox updates
+     * as notifications arrive and stops listening when the view is destroyed.
+     * Older notifications are loaded by {@link #loadOlder()}.
      * <p>
      * - In normal user mode: only notifications targeted at the current user.
      * - In admin mode: all notifications (log of everything sent).
      */
     private void loadNotifications() {
-        if (db == null) {
-            Log.e(TAG, "Firestore not initialised.");
-            return;
-        }
-
         final boolean adminMode = ProfileManager.getInstance().isAdminMode();
 
         if (!adminMode) {
@@ -111,52 +117,141 @@ public class InboxFragment extends Fragment {
             }
         }
 
-        Query query = db.collection("notifications");
-        final String userId;   // <-- final, assigned exactly once
-
-        if (adminMode) {
-            userId = null; // just for logging; not used in the query
-            query = query.orderBy("time", Query.Direction.DESCENDING);
-        } else {
-            userId = currentUser.getGuid();
-            query = query.whereEqualTo("target", userId).orderBy("time", Query.Direction.DESCENDING);
-        }
+        final String userId = adminMode ? null : currentUser.getGuid();
+        final int pageSize = NotificationRepository.PAGE_SIZE;
+        LiveQueryRepository.observeNotifications(getViewLifecycleOwner(), userId, pageSize, (items, changes, error) -> {
+            if (binding == null) {
+                return;
+            }
+            if (error != null) {
+                Log.e(TAG, "Error getting notifications: ", error);
+                if (getContext() != null) {
+                    Toast.makeText(getContext(), "Failed to load notifications.", Toast.LENGTH_SHORT).show();
+                }
+                return;
+            }
 
-        query.get().addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
-                notifications.clear();
-                for (QueryDocumentSnapshot document : task.getResult()) {
-                    Notif notification = document.toObject(Notif.class);
-                    notifications.add(notification);
-                    Log.d(TAG, "Loaded notification: " + notification.getMessage());
+            // The shared listener keeps the newest page up to date; only the delta was read from Firestore.
+            // A removed notification was pushed out of the newest page, so it stays listed.
+            for (LiveQuery.Change<Notif> change : changes) {
+                if (change.getType() != LiveQuery.ChangeType.REMOVED) {
+                    change.getItem().setNotifId(change.getId());
+                    loaded.put(change.getId(), change.getItem());
                 }
-                inboxAdapter.notifyDataSetChanged();
+            }
+            if (items.size() < pageSize && loaded.size() == items.size()) {
+                olderEndReached = true; // Everything fits in the newest page
+            }
+            showNotifications();
+            Log.d(TAG, "Applied " + changes.size() + " notification change(s)");
 
-                if (notifications.isEmpty()) {
-                    if (adminMode) {
-                        Log.d(TAG, "No notifications found in the system.");
-                        binding.emptyInboxDesc.setText("No notifications found");
-                    } else {
-                        Log.d(TAG, "No notifications found for user: " + userId);
-                        binding.emptyInboxDesc.setText("Your inbox is empty");
-                    }
-                    binding.notificationList.setVisibility(View.GONE);
-                    binding.emptyInboxView.setVisibility(View.VISIBLE);
-                    binding.emptyInboxDesc.setVisibility(View.VISIBLE);
+            if (notifications.isEmpty()) {
+                if (adminMode) {
+                    Log.d(TAG, "No notifications found in the system.");
+                    binding.emptyInboxDesc.setText("No notifications found");
                 } else {
-                    binding.notificationList.setVisibility(View.VISIBLE);
-                    binding.emptyInboxView.setVisibility(View.GONE);
-                    binding.emptyInboxDesc.setVisibility(View.GONE);
+                    Log.d(TAG, "No notifications found for user: " + userId);
+                    binding.emptyInboxDesc.setText("Your inbox is empty");
                 }
+                binding.notificationList.setVisibility(View.GONE);
+                binding.emptyInboxView.setVisibility(View.VISIBLE);
+                binding.emptyInboxDesc.setVisibility(View.VISIBLE);
             } else {
-                Log.e(TAG, "Error getting notifications: ", task.getException());
-                if (getContext() != null) {
-                    Toast.makeText(getContext(), "Failed to load notifications.", Toast.LENGTH_SHORT).show();
+                binding.notificationList.setVisibility(View.VISIBLE);
+                binding.emptyInboxView.setVisibility(View.GONE);
+                binding.emptyInboxDesc.setVisibility(View.GONE);
+            }
+        });
+    }
+
+    /**
+     * Lists the loaded notifications newest first.
+     */
+    private void showNotifications() {
+        notifications.clear();
+        notifications.addAll(loaded.values());
+        notifications.sort(NotificationStore.NEWEST_FIRST);
+        inboxAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Loads the next older page once the list is scrolled near its end.
+     */
+    private void setupPaging() {
+        notificationListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (totalItemCount > 0
+                        && firstVisibleItem + visibleItemCount >= totalItemCount - EventFeed.PREFETCH_DISTANCE) {
+                    loadOlder();
                 }
             }
         });
     }
 
+    /**
+     * Loads the page of notifications after the oldest one loaded, unless one is already
+     * loading or the oldest notification has been reached.
+     */
+    private void loadOlder() {
+        boolean adminMode = ProfileManager.getInstance().isAdminMode();
+        if (loadingOlder || olderEndReached || notifications.isEmpty() || (!adminMode && currentUser == null)) {
+            return;
+        }
+        loadingOlder = true;
+        String userId = adminMode ? null : currentUser.getGuid();
+        Notif oldest = notifications.get(notifications.size() - 1);
+        notificationStore.getNotificationPage(userId, oldest, NotificationRepository.PAGE_SIZE,
+                (page, nextCursor, error) -> {
+                    loadingOlder = false;
+                    if (binding == null) {
+                        return;
+                    }
+                    if (error != null) {
+                        // The next scroll retries the same page
+                        Toast.makeText(getContext(), "Failed to load notifications.", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    for (Notif notif : page) {
+                        loaded.put(notif.getNotifId(), notif);
+                    }
+                    olderEndReached = nextCursor == null;
+                    showNotifications();
+                });
+    }
+
+    /**
+     * Marks the notifications the user has seen as read once the inbox leaves the screen,
+     * so they stand out while the inbox is open and the badge drops afterwards.
+     */
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (ProfileManager.getInstance().isAdminMode() || currentUser == null) {
+            return;
+        }
+        List<Notif> unread = new ArrayList<>();
+        for (Notif notif : loaded.values()) {
+            if (notif.isUnread()) {
+                unread.add(notif);
+            }
+        }
+        // One write per notification plus the unread count, within a batch
+        int perBatch = LotteryCommit.MAX_BATCH_WRITES - 1;
+        for (int start = 0; start < unread.size(); start += perBatch) {
+            List<Notif> batch = new ArrayList<>(unread.subList(start, Math.min(start + perBatch, unread.size())));
+            notificationStore.markRead(currentUser.getGuid(), batch, error -> {
+                if (error != null) {
+                    Log.e(TAG, "Error marking notifications read: ", error);
+                }
+            });
+        }
+    }
+
     private void setupMenu() {
         menuProvider = new MenuProvider() {
             @Override
@@ -211,18 +306,15 @@ public class InboxFragment extends Fragment {
     }
 
     private void updateNotificationPref() {
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-
-        db.collection("profiles")
-                .document(currentUser.getGuid())
-                .set(currentUser)
-                .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(getContext(), "Notification preference changed", Toast.LENGTH_SHORT).show();
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(getContext(), "Failed to change notification preference.", Toast.LENGTH_SHORT).show();
-                    Log.e("InboxFragment", "Error changing notification preference: ", e);
-                });
+        // Only the preference changes, so only that field is written
+        ProfileRepository.updateNotificationPref(currentUser.getGuid(), currentUser.isNotificationPref(), error -> {
+            if (error == null) {
+                Toast.makeText(getContext(), "Notification preference changed", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), "Failed to change notification preference.", Toast.LENGTH_SHORT).show();
+                Log.e("InboxFragment", "Error changing notification preference: ", error);
+            }
+        });
     }
 
     /**
@@ -237,5 +329,6 @@ public class InboxFragment extends Fragment {
             requireActivity().removeMenuProvider(menuProvider);
             menuProvider = null;
         }
+        binding = null;
     }
 }
@@ -0,0 +1,183 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps an in-memory copy of the results of a query that is listened to for changes,
+ * such as a Firestore snapshot listener. Each update arrives as a list of {@link Change}s that
+ * are applied in order, so only the documents that were added, modified or removed are touched.
+ * One listener is shared by every observer: it is started by the first observer and removed when
+ * the last one leaves, and observers that arrive later are given the current results straight away.
+ * If the listener fails, its observers are given the error and dropped, and have to observe
+ * again to resume. Callbacks are expected on a single thread, which is how Firestore delivers them.
+ * @param <T>
+ *     type the documents are read as
+ */
+public class LiveQuery<T> {
+
+    // The same kinds of change as Firestore's DocumentChange.Type
+    public enum ChangeType {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    /**
+     * One document entering, changing or leaving the results
+     * @param <T>
+     *     type the documents are read as
+     */
+    public static class Change<T> {
+        private final ChangeType type;
+        private final String id;
+        private final T item;
+        private final int oldIndex;
+        private final int newIndex;
+
+        /**
+         * @param type
+         *     kind of change
+         * @param id
+         *     document ID
+         * @param item
+         *     the document as it is after the change
+         * @param oldIndex
+         *     position before the change, -1 for an added document
+         * @param newIndex
+         *     position after the change, -1 for a removed document
+         */
+        public Change(ChangeType type, String id, T item, int oldIndex, int newIndex) {
+            this.type = type;
+            this.id = id;
+            this.item = item;
+            this.oldIndex = oldIndex;
+            this.newIndex = newIndex;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public int getOldIndex() {
+            return oldIndex;
+        }
+
+        public int getNewIndex() {
+            return newIndex;
+        }
+    }
+
+    // Starts listening to the query, such as Query.addSnapshotListener
+    public interface Source<T> {
+        Registration listen(ChangeListener<T> listener);
+    }
+
+    // Stops a listener started by a Source
+    public interface Registration {
+        void remove();
+    }
+
+    // Callback for each update from the source; error is null on success
+    public interface ChangeListener<T> {
+        void onCallback(List<Change<T>> changes, Exception error);
+    }
+
+    // Callback for observers, with the full results and the changes that produced them
+    public interface Observer<T> {
+        void onCallback(List<T> items, List<Change<T>> changes, Exception error);
+    }
+
+    private final Source<T> source;
+    private final ArrayList<String> ids = new ArrayList<>();
+    private final ArrayList<T> items = new ArrayList<>();
+    private final ArrayList<Observer<T>> observers = new ArrayList<>();
+    private Registration registration;
+    private boolean synced = false;
+
+    public LiveQuery(Source<T> source) {
+        this.source = source;
+    }
+
+    /**
+     * Adds an observer, starting the listener if this is the first one
+     * @param observer
+     *     invoked with every update until it is removed
+     */
+    public void observe(Observer<T> observer) {
+        observers.add(observer);
+        if (registration == null) {
+            registration = source.listen(this::apply);
+        } else if (synced) {
+            // Catch the late observer up with everything already loaded
+            List<Change<T>> replay = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                replay.add(new Change<>(ChangeType.ADDED, ids.get(i), items.get(i), -1, i));
+            }
+            observer.onCallback(getItems(), replay, null);
+        }
+    }
+
+    /**
+     * Removes an observer, removing the listener and dropping the results if it was the last one
+     * @param observer
+     *     the observer to remove
+     */
+    public void removeObserver(Observer<T> observer) {
+        observers.remove(observer);
+        if (observers.isEmpty() && registration != null) {
+            registration.remove();
+            registration = null;
+            ids.clear();
+            items.clear();
+            synced = false;
+        }
+    }
+
+    public boolean hasObservers() {
+        return !observers.isEmpty();
+    }
+
+    // A copy of the current results, in query order
+    public List<T> getItems() {
+        return new ArrayList<>(items);
+    }
+
+    private void apply(List<Change<T>> changes, Exception error) {
+        if (error == null) {
+            for (Change<T> change : changes) {
+                if (change.getType() != ChangeType.ADDED) {
+                    ids.remove(change.getOldIndex());
+                    items.remove(change.getOldIndex());
+                }
+                if (change.getType() != ChangeType.REMOVED) {
+                    ids.add(change.getNewIndex(), change.getId());
+                    items.add(change.getNewIndex(), change.getItem());
+                }
+            }
+            synced = true;
+        }
+        List<T> current = getItems();
+        List<Observer<T>> notified = new ArrayList<>(observers);
+        if (error != null) {
+            // A failed listener has stopped and sends nothing more, so its observers are told and
+            // dropped along with the results. The next observer starts a new listener from scratch
+            registration = null;
+            observers.clear();
+            ids.clear();
+            items.clear();
+            synced = false;
+        }
+        for (Observer<T> observer : notified) {
+            observer.onCallback(current, error == null ? changes : new ArrayList<>(), error);
+        }
+    }
+}
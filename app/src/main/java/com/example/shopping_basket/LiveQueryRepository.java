@@ -0,0 +1,129 @@
+package com.example.shopping_basket;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares Firestore snapshot listeners between screens. Each query is listened to at most once,
+ * however many screens observe it, and observers are removed when their lifecycle is destroyed,
+ * so a fragment that passes its view lifecycle owner stops listening in onDestroyView.
+ */
+public class LiveQueryRepository {
+    private static final String TAG = "LiveQueryRepository";
+    private static final String EVENTS_COLLECTION = "events";
+    private static final String NOTIFICATIONS_COLLECTION = "notifications";
+
+    // Live queries by key, kept only while they have observers
+    private static final Map<String, LiveQuery<?>> queries = new HashMap<>();
+
+    /**
+     * Observes a single event document. The event is delivered as the only item of the results,
+     * and a removed event leaves the results empty.
+     *
+     * @param owner    The lifecycle the observer is tied to, such as a fragment's view lifecycle owner.
+     * @param eventId  The ID of the event.
+     * @param observer The observer that will be invoked with every change to the event.
+     */
+    public static void observeEvent(LifecycleOwner owner, String eventId, LiveQuery.Observer<Event> observer) {
+        Query query = FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .whereEqualTo(FieldPath.documentId(), eventId);
+        observe(owner, "event/" + eventId, query, Event.class, observer);
+    }
+
+    /**
+     * Observes the newest notifications. Older ones are paged in with
+     * {@link NotificationRepository#getNotificationPage}; a notification pushed out of the
+     * newest ones by a newer one is reported as removed.
+     *
+     * @param owner    The lifecycle the observer is tied to, such as a fragment's view lifecycle owner.
+     * @param userId   The GUID of the profile the notifications target, or null for every notification.
+     * @param limit    The number of newest notifications to observe.
+     * @param observer The observer that will be invoked with every change to the notifications.
+     */
+    public static void observeNotifications(LifecycleOwner owner, @Nullable String userId, int limit,
+                                            LiveQuery.Observer<Notif> observer) {
+        Query query = FirebaseFirestore.getInstance().collection(NOTIFICATIONS_COLLECTION);
+        if (userId != null) {
+            query = query.whereEqualTo("target", userId);
+        }
+        query = query.orderBy("time", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)
+                .limit(limit);
+        observe(owner, "notifications/" + (userId != null ? userId : "*") + "/" + limit, query, Notif.class,
+                observer);
+    }
+
+    /**
+     * Adds an observer to the shared live query for a key, creating the query if nobody is observing it.
+     *
+     * @param owner    The lifecycle the observer is tied to.
+     * @param key      Identifies the query; observers with the same key share one listener.
+     * @param query    The Firestore query to listen to, used only if the key is not already being listened to.
+     * @param type     The class the documents are read as.
+     * @param observer The observer that will be invoked with every change.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void observe(LifecycleOwner owner, String key, Query query, Class<T> type,
+                                   LiveQuery.Observer<T> observer) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        LiveQuery<T> liveQuery = (LiveQuery<T>) queries.get(key);
+        if (liveQuery == null) {
+            liveQuery = new LiveQuery<>(source(key, query, type));
+            queries.put(key, liveQuery);
+        }
+
+        LiveQuery<T> observed = liveQuery;
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner lifecycleOwner) {
+                observed.removeObserver(observer);
+                if (!observed.hasObservers() && queries.get(key) == observed) {
+                    queries.remove(key);
+                }
+            }
+        });
+        observed.observe(observer);
+    }
+
+    private static <T> LiveQuery.Source<T> source(String key, Query query, Class<T> type) {
+        return listener -> {
+            ListenerRegistration registration = query.addSnapshotListener((snapshot, e) -> {
+                if (e != null || snapshot == null) {
+                    Log.e(TAG, "Error listening to " + key, e);
+                    listener.onCallback(new ArrayList<>(), e != null ? e : new IllegalStateException("No snapshot"));
+                    return;
+                }
+                List<LiveQuery.Change<T>> changes = new ArrayList<>();
+                for (DocumentChange change : snapshot.getDocumentChanges()) {
+                    changes.add(new LiveQuery.Change<>(
+                            LiveQuery.ChangeType.valueOf(change.getType().name()),
+                            change.getDocument().getId(),
+                            change.getDocument().toObject(type),
+                            change.getOldIndex(),
+                            change.getNewIndex()));
+                }
+                listener.onCallback(changes, null);
+            });
+            return registration::remove;
+        };
+    }
+}
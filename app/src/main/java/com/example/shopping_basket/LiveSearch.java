@@ -0,0 +1,141 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs the search box on the home screen against the events loaded so far.
+ * Each keystroke restarts a short wait, and the search runs once typing pauses for
+ * {@link #DEBOUNCE_MILLIS}. A newer keystroke cancels a search still waiting, and one already
+ * running is dropped before its results are delivered.
+ * Loaded events are indexed in an {@link EventSearchIndex}, and searched, on one background
+ * thread, so the thread calling {@link #search} only schedules the work and receives the results.
+ * Apart from the constructor, every method is expected on that one thread, which is the main thread
+ * in the app.
+ */
+public class LiveSearch {
+    public static final long DEBOUNCE_MILLIS = 150;
+
+    // Callback for the results of the latest search, in order of relevance
+    public interface Listener {
+        void onResults(String text, List<Event> results);
+    }
+
+    private final ScheduledExecutorService worker;
+    private final Executor delivery;
+    private final Listener listener;
+    private final long debounceMillis;
+    // Only used on the worker thread
+    private final EventSearchIndex index = new EventSearchIndex();
+    // Bumped by every search and cancel, so older searches can tell they were superseded
+    private final AtomicInteger generation = new AtomicInteger();
+    private ScheduledFuture<?> pending;
+
+    /**
+     * @param delivery
+     *     runs the listener, such as a Handler posting to the main thread
+     * @param listener
+     *     receives the results of each search that is not superseded
+     */
+    public LiveSearch(Executor delivery, Listener listener) {
+        this(Executors.newSingleThreadScheduledExecutor(), delivery, listener, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @param worker
+     *     the single thread events are indexed and searched on
+     * @param delivery
+     *     runs the listener
+     * @param listener
+     *     receives the results of each search that is not superseded
+     * @param debounceMillis
+     *     how long typing has to pause before a search runs
+     */
+    LiveSearch(ScheduledExecutorService worker, Executor delivery, Listener listener, long debounceMillis) {
+        this.worker = worker;
+        this.delivery = delivery;
+        this.listener = listener;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Indexes newly loaded events, or new versions of events already indexed
+     * @param events
+     *     the events
+     */
+    public void add(List<Event> events) {
+        List<Event> copy = new ArrayList<>(events);
+        worker.execute(() -> {
+            for (Event event : copy) {
+                index.add(event);
+            }
+        });
+    }
+
+    // Cancels any search and drops every indexed event, such as when the feed starts over
+    public void clear() {
+        cancel();
+        worker.execute(index::clear);
+    }
+
+    /**
+     * Searches the given events once typing pauses, replacing any search not delivered yet
+     * @param text
+     *     the query as typed, see {@link EventSearchIndex.Query}; an empty one finds nothing
+     * @param candidates
+     *     the events that may be shown, such as the ones passing the filter; must not change afterwards
+     */
+    public void search(String text, List<Event> candidates) {
+        int searchGeneration = generation.incrementAndGet();
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = worker.schedule(() -> run(searchGeneration, text, candidates), debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Cancels the search not delivered yet, if any
+    public void cancel() {
+        generation.incrementAndGet();
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    // Cancels any search and stops the background thread
+    public void close() {
+        cancel();
+        worker.shutdownNow();
+    }
+
+    private void run(int searchGeneration, String text, List<Event> candidates) {
+        List<String> ranked = index.search(EventSearchIndex.Query.parse(text));
+        if (generation.get() != searchGeneration) {
+            return; // Superseded while searching
+        }
+        Map<String, Event> byId = new HashMap<>();
+        for (Event event : candidates) {
+            byId.put(event.getEventId(), event);
+        }
+        List<Event> results = new ArrayList<>();
+        for (String eventId : ranked) {
+            Event event = byId.get(eventId);
+            if (event != null) {
+                results.add(event);
+            }
+        }
+        delivery.execute(() -> {
+            if (generation.get() == searchGeneration) {
+                listener.onResults(text, results);
+            }
+        });
+    }
+}
@@ -22,8 +22,6 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 /**
  * The initial screen of the application.
@@ -42,12 +40,9 @@ public class LoginActivity extends AppCompatActivity {
     private Animation slideInAnimation;
     private Animation slideOutAnimation;
 
-    // Firebase
-    private FirebaseFirestore db;
-
     /**
      * Called when the activity is first created.
-     * Initializes the views, Firebase instances, and attempts to automatically log in the user.
+     * Initializes the views and attempts to automatically log in the user.
      *
      * @param savedInstanceState If the activity is being re-initialized after
      *     previously being shut down then this Bundle contains the data it most
@@ -58,9 +53,6 @@ public class LoginActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_login);
 
-        // Initialize Firebase
-        db = FirebaseFirestore.getInstance();
-
         // Initialize Views
         initializeViews();
 
@@ -122,24 +114,17 @@ public class LoginActivity extends AppCompatActivity {
             return;
         }
 
-        db.collection("profiles")
-                .whereEqualTo("deviceId", androidId)
-                .limit(1) // We only expect one match
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null && !task.getResult().isEmpty()) {
-                        // Profile was found, get the first (and only) document
-                        QueryDocumentSnapshot document = (QueryDocumentSnapshot) task.getResult().getDocuments().get(0);
-                        Profile foundProfile = document.toObject(Profile.class);
-                        Log.d(TAG, "Auto-login successful for device ID: " + androidId);
-                        ProfileManager.getInstance().setCurrentUserProfile(foundProfile);
-                        navigateToMain(foundProfile.getName());
-                    } else {
-                        // This block runs if the task fails or if no profile is found for this device
-                        Log.d(TAG, "Auto-login failed: No profile found for this device.", task.getException());
-                        setLoading(false); // Hide the progress bar and show the "Get started" button
-                    }
-                });
+        ProfileRepository.getProfileByDevice(androidId, foundProfile -> {
+            if (foundProfile != null) {
+                Log.d(TAG, "Auto-login successful for device ID: " + androidId);
+                ProfileManager.getInstance().setCurrentUserProfile(foundProfile);
+                navigateToMain(foundProfile.getName());
+            } else {
+                // This block runs if the lookup fails or if no profile is found for this device
+                Log.d(TAG, "Auto-login failed: No profile found for this device.");
+                setLoading(false); // Hide the progress bar and show the "Get started" button
+            }
+        });
     }
 
     /**
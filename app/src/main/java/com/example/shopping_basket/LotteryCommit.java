@@ -0,0 +1,224 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class writes the result of a lottery: the entrants that moved, as an {@link EventDelta},
+ * together with the notifications for winners and losers.
+ * The event change and as many notifications as fit are committed in one batch, so the
+ * event is never left half-updated; any remaining notifications are handed to a
+ * {@link NotificationFanOut}, which sends them in batches of at most {@link #MAX_BATCH_WRITES} writes.
+ * They are saved with the fan-out before the event change is committed, so a kill in between
+ * leaves them to be resumed, and dropped if the event change fails.
+ * For events that keep their entrants in a subcollection, the entrant documents that do not fit
+ * in that batch are written before it (see {@link EventDelta#split(int)}), and put back if the
+ * event change then fails.
+ * Besides its own document, each notification adds to its target's unread count, which is one more
+ * write for every distinct target in a batch.
+ */
+public class LotteryCommit {
+    // Firestore's limit on writes in a single batch
+    public static final int MAX_BATCH_WRITES = 500;
+    // Notifications that always fit in a batch, even when each goes to a different target
+    public static final int MAX_BATCH_NOTIFICATIONS = MAX_BATCH_WRITES / 2;
+
+    /**
+     * Destination for the batches, such as Firestore or an in-memory stand-in in tests.
+     * Each call must apply the whole batch or none of it.
+     */
+    public interface BatchSink {
+        void commit(Batch batch, CommitCallback callback);
+    }
+
+    // Callback for a single batch; error is null on success
+    public interface CommitCallback {
+        void onCallback(Exception error);
+    }
+
+    // Callback for the whole lottery commit
+    public interface ResultCallback {
+        /**
+         * @param eventUpdated
+         *     true if the event change was committed
+         * @param committedBatches
+         *     number of batches committed before stopping
+         * @param totalBatches
+         *     number of batches planned
+         * @param error
+         *     the failure that stopped the commit, null on full success
+         */
+        void onCallback(boolean eventUpdated, int committedBatches, int totalBatches, Exception error);
+    }
+
+    /**
+     * One atomic group of writes
+     */
+    public static class Batch {
+        private final EventDelta delta;
+        private final List<Notif> notifications;
+        private final String key;
+
+        Batch(EventDelta delta, List<Notif> notifications) {
+            this(delta, notifications, null);
+        }
+
+        Batch(EventDelta delta, List<Notif> notifications, String key) {
+            this.delta = delta;
+            this.notifications = notifications;
+            this.key = key;
+        }
+
+        // The event change, only present on the first batch
+        public EventDelta getDelta() {
+            return delta;
+        }
+
+        public List<Notif> getNotifications() {
+            return notifications;
+        }
+
+        // Prefix for fixed notification document ids, null to let the store pick ids
+        public String getKey() {
+            return key;
+        }
+
+        // Writes of the event change, the notifications, and the unread count of each target
+        public int getWriteCount() {
+            return (delta != null ? delta.getWriteCount() : 0) + notifications.size() + getTargets().size();
+        }
+
+        // Profiles whose unread count the batch adds to
+        public Set<String> getTargets() {
+            Set<String> targets = new HashSet<>();
+            for (Notif notif : notifications) {
+                if (notif.getTarget() != null) {
+                    targets.add(notif.getTarget());
+                }
+            }
+            return targets;
+        }
+    }
+
+    private LotteryCommit() {
+        // Static helpers only
+    }
+
+    /**
+     * Splits the event change and the notifications into batches within the write limit.
+     * Entrant documents split off the event change come first, then the event change with
+     * the first notifications, then the rest of the notifications
+     * @param delta
+     *     change to the event
+     * @param notifications
+     *     notifications to create
+     * @param maxWrites
+     *     largest number of writes in one batch
+     * @return
+     *     the batches in commit order
+     */
+    public static List<Batch> plan(EventDelta delta, List<Notif> notifications, int maxWrites) {
+        List<Batch> batches = new ArrayList<>();
+        List<Notif> pending = notifications != null ? notifications : new ArrayList<>();
+
+        List<EventDelta> parts = delta.split(maxWrites);
+        for (EventDelta part : parts.subList(0, parts.size() - 1)) {
+            batches.add(new Batch(part, new ArrayList<>()));
+        }
+        EventDelta change = parts.get(parts.size() - 1);
+        // A change still larger than the limit goes out whole; Firestore then rejects it rather than half-applying it
+        int start = fit(pending, 0, maxWrites - change.getWriteCount());
+        batches.add(new Batch(change, new ArrayList<>(pending.subList(0, start))));
+        while (start < pending.size()) {
+            int end = Math.max(start + 1, fit(pending, start, maxWrites));
+            batches.add(new Batch(null, new ArrayList<>(pending.subList(start, end))));
+            start = end;
+        }
+        return batches;
+    }
+
+    // End of the run of notifications from start whose documents and unread counts fit in maxWrites
+    private static int fit(List<Notif> notifications, int start, int maxWrites) {
+        Set<String> targets = new HashSet<>();
+        int writes = 0;
+        int end = start;
+        while (end < notifications.size()) {
+            String target = notifications.get(end).getTarget();
+            int cost = target == null || targets.contains(target) ? 1 : 2;
+            if (writes + cost > maxWrites) {
+                break;
+            }
+            if (target != null) {
+                targets.add(target);
+            }
+            writes += cost;
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Commits the event change with the first notifications, then fans out the rest
+     * @param delta
+     *     change to the event
+     * @param notifications
+     *     notifications to create
+     * @param sink
+     *     where the event change is written
+     * @param fanOut
+     *     sends the notifications that did not fit in the first batch
+     * @param callback
+     *     invoked once when the commit finishes or stops
+     */
+    public static void commit(EventDelta delta, List<Notif> notifications, BatchSink sink,
+                              NotificationFanOut fanOut, ResultCallback callback) {
+        List<Batch> batches = plan(delta, notifications, MAX_BATCH_WRITES);
+        int eventBatch = 0;
+        while (batches.get(eventBatch).getDelta().isEntrantsOnly()) {
+            eventBatch++;
+        }
+        Batch change = batches.get(eventBatch);
+        int committed = eventBatch + 1;
+        NotificationFanOut.Checkpoint rest = committed < batches.size()
+                ? fanOut.prepare(notifications.subList(change.getNotifications().size(), notifications.size()))
+                : null;
+        commitThrough(batches, 0, eventBatch, sink, error -> {
+            if (error != null) {
+                if (rest != null) {
+                    fanOut.discard(rest);
+                }
+                callback.onCallback(false, 0, batches.size(), error);
+            } else if (rest == null) {
+                callback.onCallback(true, committed, committed, null);
+            } else {
+                fanOut.start(rest, null, (sentBatches, failedBatches, fanOutError) ->
+                        callback.onCallback(true, committed + sentBatches, batches.size(), fanOutError));
+            }
+        });
+    }
+
+    // Commits the batches up to the event change in order, putting back the entrant parts already written if one fails
+    private static void commitThrough(List<Batch> batches, int index, int last, BatchSink sink, CommitCallback callback) {
+        sink.commit(batches.get(index), error -> {
+            if (error == null && index < last) {
+                commitThrough(batches, index + 1, last, sink, callback);
+            } else if (error != null) {
+                revert(batches, index - 1, sink, () -> callback.onCallback(error));
+            } else {
+                callback.onCallback(null);
+            }
+        });
+    }
+
+    // Puts back the entrant parts from index down to the first; each is tried once, and a failed one is skipped
+    private static void revert(List<Batch> batches, int index, BatchSink sink, Runnable done) {
+        if (index < 0) {
+            done.run();
+            return;
+        }
+        sink.commit(new Batch(batches.get(index).getDelta().reverted(), new ArrayList<>()),
+                error -> revert(batches, index - 1, sink, done));
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * This class draws lottery winners from a pool of entrants.
+ * Draws use a partial Fisher-Yates shuffle, so picking k winners from n entrants
+ * costs O(n + k) and never shifts the underlying list.
+ * Weighted draws use Efraimidis-Spirakis A-Res sampling in O(n log k), and stratified draws
+ * split the winners between groups in proportion to their size.
+ * Every draw is driven by a seed, so the same pool and seed always give the same winners
+ * and a past draw can be audited by replaying it.
+ */
+public class LotteryEngine {
+
+    /**
+     * Source of random indices for a draw.
+     * java.util.random.RandomGenerator is not available below API 34,
+     * so draws go through this interface instead.
+     */
+    public interface RandomSource {
+        /**
+         * @param bound
+         *     exclusive upper bound, must be positive
+         * @return
+         *     a value between 0 (inclusive) and bound (exclusive)
+         */
+        int nextInt(int bound);
+
+        /**
+         * @return
+         *     a value between 0 (inclusive) and 1 (exclusive)
+         */
+        double nextDouble();
+    }
+
+    private LotteryEngine() {
+        // Static helpers only
+    }
+
+    /**
+     * Creates a new random seed for a draw that has not been run before
+     * @return
+     *     seed to record on the event and pass to {@link #seeded(long)}
+     */
+    public static long newSeed() {
+        return new SplittableRandom().nextLong();
+    }
+
+    /**
+     * Creates a reproducible random source from a seed
+     * @param seed
+     *     seed recorded for the draw
+     * @return
+     *     random source backed by a SplittableRandom
+     */
+    public static RandomSource seeded(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        return new RandomSource() {
+            @Override
+            public int nextInt(int bound) {
+                return random.nextInt(bound);
+            }
+
+            @Override
+            public double nextDouble() {
+                return random.nextDouble();
+            }
+        };
+    }
+
+    /**
+     * Draws winners from the pool without modifying it
+     * @param pool
+     *     entrants to draw from, in a stable order
+     * @param winners
+     *     number of winners to draw, capped at the pool size
+     * @param random
+     *     source of random indices
+     * @return
+     *     the winners, in the order they were drawn
+     */
+    public static <T> ArrayList<T> draw(List<T> pool, int winners, RandomSource random) {
+        ArrayList<T> shuffled = new ArrayList<>(pool);
+        int count = Math.min(Math.max(winners, 0), shuffled.size());
+        // Only the first count positions are shuffled; each pick is swapped into place
+        for (int i = 0; i < count; i++) {
+            int pick = i + random.nextInt(shuffled.size() - i);
+            T winner = shuffled.get(pick);
+            shuffled.set(pick, shuffled.get(i));
+            shuffled.set(i, winner);
+        }
+        return new ArrayList<>(shuffled.subList(0, count));
+    }
+
+    /**
+     * Draws winners where each entrant's chance is proportional to their weight.
+     * Each entrant gets the key ln(u) / weight for a uniform u, and the k largest keys win,
+     * which only needs a heap of k entries.
+     * @param pool
+     *     entrants to draw from, in a stable order
+     * @param weights
+     *     positive weight of each entrant, aligned with the pool
+     * @param winners
+     *     number of winners to draw, capped at the pool size
+     * @param random
+     *     source of random values
+     * @return
+     *     the winners, in the order they were drawn
+     */
+    public static <T> ArrayList<T> drawWeighted(List<T> pool, double[] weights, int winners, RandomSource random) {
+        int count = Math.min(Math.max(winners, 0), pool.size());
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+
+        // Min-heap on key, so the weakest of the current winners is always on top
+        PriorityQueue<double[]> heap = new PriorityQueue<>(count, (a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < pool.size(); i++) {
+            double key = Math.log(1.0 - random.nextDouble()) / weights[i];
+            if (heap.size() < count) {
+                heap.add(new double[]{key, i});
+            } else if (key > heap.peek()[0]) {
+                heap.poll();
+                heap.add(new double[]{key, i});
+            }
+        }
+
+        // Polling yields the smallest key first, so fill from the back
+        ArrayList<T> drawn = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            drawn.add(null);
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            drawn.set(i, pool.get((int) heap.poll()[1]));
+        }
+        return drawn;
+    }
+
+    /**
+     * Draws winners so each stratum gets a quota in proportion to its share of the pool.
+     * Quotas are rounded down and the leftover places go to the strata with the largest
+     * remainders; winners are then drawn uniformly within each stratum.
+     * @param pool
+     *     entrants to draw from, in a stable order
+     * @param strata
+     *     stratum of each entrant, numbered from 0 and aligned with the pool
+     * @param winners
+     *     number of winners to draw, capped at the pool size
+     * @param random
+     *     source of random indices
+     * @return
+     *     the winners, grouped by stratum in stratum order
+     */
+    public static <T> ArrayList<T> drawStratified(List<T> pool, int[] strata, int winners, RandomSource random) {
+        int count = Math.min(Math.max(winners, 0), pool.size());
+        int strataCount = 0;
+        for (int stratum : strata) {
+            strataCount = Math.max(strataCount, stratum + 1);
+        }
+
+        ArrayList<ArrayList<T>> groups = new ArrayList<>(strataCount);
+        for (int i = 0; i < strataCount; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < pool.size(); i++) {
+            groups.get(strata[i]).add(pool.get(i));
+        }
+
+        int[] quotas = new int[strataCount];
+        long[] remainders = new long[strataCount];
+        int assigned = 0;
+        for (int i = 0; i < strataCount; i++) {
+            long share = (long) count * groups.get(i).size();
+            quotas[i] = (int) (share / pool.size());
+            remainders[i] = share % pool.size();
+            assigned += quotas[i];
+        }
+        while (assigned < count) {
+            int best = -1;
+            for (int i = 0; i < strataCount; i++) {
+                if (quotas[i] < groups.get(i).size() && (best < 0 || remainders[i] > remainders[best])) {
+                    best = i;
+                }
+            }
+            quotas[best]++;
+            remainders[best] = -1;
+            assigned++;
+        }
+
+        ArrayList<T> drawn = new ArrayList<>(count);
+        for (int i = 0; i < strataCount; i++) {
+            drawn.addAll(draw(groups.get(i), quotas[i], random));
+        }
+        return drawn;
+    }
+}
@@ -14,9 +14,6 @@ import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentLotteryBinding;
 import com.google.android.material.textfield.TextInputLayout;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.WriteBatch;
 
 import org.checkerframework.checker.units.qual.N;
 
@@ -30,16 +27,18 @@ import java.util.stream.Collectors;
  *
  * This fragment handles the following logic:
  * 1.  Validating the number of winners entered by the user.
- * 2.  Calling the lottery logic within the {@link Event} object.
+ * 2.  Calling the lottery logic within the {@link Event} object with the {@link LotteryStrategy} the owner picked.
  * 3.  Sending notifications to both the selected (invited) and unselected (waitlisted) entrants.
- * 4.  Updating the event object in Firestore to finalize the lottery results.
+ * 4.  Writing only the entrants that moved and the changed lottery fields to the event in Firestore.
  * 5.  Returning a result to the calling fragment (e.g., {@link MyEventFragment}) to signal that the UI should be refreshed.
  *
- * It ensures that database operations (sending notifications and updating the event) are chained to prevent data inconsistencies.
+ * The event change is committed in the same batch as the notifications (see {@link LotteryCommit}),
+ * so a failure can never leave the notifications sent without the event being updated.
  */
 public class LotteryFragment extends DialogFragment {
     private FragmentLotteryBinding binding;
     private Event event;
+    private final EventStore eventStore = new FirestoreStore();
 
     /**
      * Default public constructor.
@@ -114,12 +113,28 @@ public class LotteryFragment extends DialogFragment {
             if (validateInput(entrantNumberString)) {
                 int entrantNumber = Integer.parseInt(entrantNumberString);
                 event.setSelectNum(entrantNumber);
-                ArrayList<Invite> newInvites = event.runLottery();
+                ArrayList<Invite> newInvites = event.runLottery(getSelectedStrategy(), LotteryEngine.newSeed());
                 sendNotifications(newInvites, event.getWaitingList());
             }
         });
     }
 
+    /**
+     * Reads the lottery strategy chosen in the radio group.
+     * @return The selected strategy, uniform if nothing else is checked.
+     */
+    private LotteryStrategy getSelectedStrategy() {
+        int checkedId = binding.radioGroupLotteryStrategy.getCheckedRadioButtonId();
+        if (checkedId == R.id.radio_lottery_previous_entrants) {
+            return LotteryStrategy.FAVOUR_PREVIOUS_ENTRANTS;
+        } else if (checkedId == R.id.radio_lottery_early_registration) {
+            return LotteryStrategy.FAVOUR_EARLY_REGISTRATION;
+        } else if (checkedId == R.id.radio_lottery_stratified) {
+            return LotteryStrategy.STRATIFIED;
+        }
+        return LotteryStrategy.UNIFORM;
+    }
+
     /**
      * Prepares notification objects for both selected (newly invited) and unselected entrants.
      * It constructs the notification messages and then passes the batch of notifications
@@ -146,68 +161,50 @@ public class LotteryFragment extends DialogFragment {
             }
         }
 
-        updateFirestore(notifBatch);
+        updateFirestore(EventDelta.forLottery(event, newInvites), notifBatch);
     }
 
     /**
-     * Handles the sequential, asynchronous updates to Firestore.
-     * 1. It first commits a WriteBatch containing all the new notifications.
-     * 2. On successful commit of the notifications, it proceeds to update the main Event object in Firestore
-     *    to reflect the new state of its internal lists (inviteList, waitingList).
-     * 3. It handles success and failure for both operations, ensuring the dialog is dismissed and
-     *    appropriate feedback is shown to the user. It also sends a result back to the parent fragment upon full success.
+     * Commits the lottery result to Firestore through {@link LotteryCommit}.
+     * 1. The first batch holds the event change (moved entrants and lottery fields) together with
+     *    the first notifications, so either both are written or neither is.
+     * 2. Remaining notifications, if more than fit in one batch, are handed to a {@link NotificationFanOut},
+     *    which retries failed batches and resumes unfinished sends the next time the app starts.
+     * 3. Success and failure are reported to the user, and a result is sent back to the parent fragment
+     *    whenever the event itself was updated.
      *
+     * @param delta The change to the event document produced by the lottery.
      * @param notifBatch A list of Notif objects to be uploaded to Firestore.
      */
-    private void updateFirestore(List<Notif> notifBatch) {
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        WriteBatch batch = db.batch();
-
-        // Add all notifications to the batch
-        if (notifBatch != null && !notifBatch.isEmpty()) {
-            for (Notif notification : notifBatch) {
-                DocumentReference notifRef = db.collection("notifications").document();
-                batch.set(notifRef, notification);
-            }
-        }
-
-        batch.commit()
-                .addOnSuccessListener(aVoid -> {
-                    // Notifications are sent.
-                    Log.i("LotteryFragment", "Notification batch sent successfully.");
-
-                    // Update the Event object in Firestore.
-                    db.collection("events").document(event.getEventId())
-                            .set(event)
-                            .addOnSuccessListener(aVoid2 -> {
-                                // STEP 3: SUCCESS. Event is updated.
-                                Log.i("LotteryFragment", "Event updated successfully after lottery.");
-                                if (getContext() != null) {
-                                    Toast.makeText(getContext(), "Lottery run and notifications sent!", Toast.LENGTH_SHORT).show();
-                                }
-                                // Send result back to the calling fragment.
-                                Bundle result = new Bundle();
-                                result.putBoolean("lotteryRun", true);
-                                getParentFragmentManager().setFragmentResult("lotteryResult", result);
-
-                                // STEP 4: Finally, dismiss the dialog.
-                                dismiss();
-                            })
-                            .addOnFailureListener(e -> {
-                                // Event update failed. This is a partial failure state.
-                                Log.e("LotteryFragment", "Notifications sent, but failed to update event.", e);
-                                if (getContext() != null) {
-                                    Toast.makeText(getContext(), "Critical error: Notifications sent, but event update failed.", Toast.LENGTH_LONG).show();
-                                }
-                                dismiss();
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    // Initial notification batch failed. Nothing was sent, nothing was updated.
-                    Log.e("LotteryFragment", "Failed to send notification batch. Halting operation.", e);
-                    if (getContext() != null) {
-                        Toast.makeText(getContext(), "Failed to send notifications. Please try again.", Toast.LENGTH_LONG).show();
+    private void updateFirestore(EventDelta delta, List<Notif> notifBatch) {
+        LotteryCommit.commit(delta, notifBatch, eventStore,
+                EventRepository.notificationFanOut(requireContext()),
+                (eventUpdated, committedBatches, totalBatches, error) -> {
+                    if (error == null) {
+                        Log.i("LotteryFragment", "Lottery committed in " + totalBatches + " batch(es).");
+                        if (getContext() != null) {
+                            Toast.makeText(getContext(), "Lottery run and notifications sent!", Toast.LENGTH_SHORT).show();
+                        }
+                    } else if (eventUpdated) {
+                        // The event is updated, but some of the later notification batches failed.
+                        Log.e("LotteryFragment", "Event updated, but only " + committedBatches + " of " + totalBatches + " batches were sent.", error);
+                        if (getContext() != null) {
+                            Toast.makeText(getContext(), "Lottery run, but some notifications failed to send.", Toast.LENGTH_LONG).show();
+                        }
+                    } else {
+                        // The first batch failed. Nothing was sent, nothing was updated.
+                        Log.e("LotteryFragment", "Failed to commit lottery. Halting operation.", error);
+                        if (getContext() != null) {
+                            Toast.makeText(getContext(), "Failed to run lottery. Please try again.", Toast.LENGTH_LONG).show();
+                        }
+                        dismiss();
+                        return;
                     }
+
+                    // Send result back to the calling fragment.
+                    Bundle result = new Bundle();
+                    result.putBoolean("lotteryRun", true);
+                    getParentFragmentManager().setFragmentResult("lotteryResult", result);
                     dismiss();
                 });
     }
@@ -0,0 +1,15 @@
+package com.example.shopping_basket;
+
+/**
+ * The ways an organizer can choose winners when running the lottery for an {@link Event}
+ */
+public enum LotteryStrategy {
+    // Every entrant on the waiting list has the same chance
+    UNIFORM,
+    // Chance grows with the number of earlier draws the entrant has lost
+    FAVOUR_PREVIOUS_ENTRANTS,
+    // Chance falls off from twice as likely for the first registrant to even for the last
+    FAVOUR_EARLY_REGISTRATION,
+    // Returning and first-time entrants each get a share of the places matching their share of the list
+    STRATIFIED
+}
@@ -17,6 +17,7 @@ import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
 
 import com.example.shopping_basket.databinding.ActivityMainBinding;
+import com.google.android.material.badge.BadgeDrawable;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.firebase.firestore.FirebaseFirestore;
 
@@ -102,6 +103,44 @@ public class MainActivity extends AppCompatActivity {
         });
 
         handleDeepLink(getIntent());
+
+        // Finish any notification sends that were cut off when the app was last killed
+        if (savedInstanceState == null) {
+            EventRepository.notificationFanOut(this).resumePending(null, (sentBatches, failedBatches, error) -> {
+                if (error != null) {
+                    Log.e("MainActivity", "Resumed notification send still has " + failedBatches + " unsent batches", error);
+                }
+            });
+        }
+    }
+
+    /**
+     * Called when the activity becomes visible.
+     * <p>
+     * Shows the current user's unread notification count as a badge on the inbox tab. The count is
+     * a single document kept up to date as notifications are sent and read, so no notifications are
+     * queried; the listener is removed when the activity stops.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (profile == null) {
+            return;
+        }
+        NotificationRepository.observeUnreadCount(this, profile.getGuid(), count -> {
+            BadgeDrawable badge = binding.bottomNavView.getOrCreateBadge(R.id.inbox);
+            badge.setNumber((int) Math.min(count, Integer.MAX_VALUE));
+            badge.setVisible(count > 0);
+        });
+    }
+
+    /**
+     * Logs how often profile lookups were answered from the cache, each time the app is left.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        ProfileRepository.logCacheHitRate();
     }
 
     /**
@@ -1,7 +1,5 @@
 package com.example.shopping_basket;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 
 import androidx.annotation.NonNull;
@@ -13,7 +11,6 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Lifecycle;
 import androidx.navigation.fragment.NavHostFragment;
 
-import android.util.Base64;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -29,6 +26,7 @@ import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +35,10 @@ public class MyEventFragment extends Fragment {
     private FragmentMyEventBinding binding;
     private Event event;
     private MenuProvider menuProvider;
+    // Whether the event's full participation lists are on hand, so a lottery can be drawn from them
+    private boolean entrantsLoaded;
+    // Set while the full lists are being loaded, which keeps the lottery button disabled
+    private boolean loadingEntrants;
 
     /**
      * Default public constructor.
@@ -95,13 +97,10 @@ public class MyEventFragment extends Fragment {
             return;
         }
 
-        getParentFragmentManager().setFragmentResultListener("lotteryResult", this, (requestKey, bundle) -> {
-            boolean lotteryRun = bundle.getBoolean("lotteryRun");
-            if (lotteryRun) {
-                // The lottery was run successfully, refresh data and buttons' visibility
-                refreshEventData();
-            }
-        });
+        // Changes to the event, such as a lottery being run, arrive through the shared listener
+        if (event.getEventId() != null) {
+            LiveQueryRepository.observeEvent(getViewLifecycleOwner(), event.getEventId(), this::onEventChanged);
+        }
 
         setupMenu();
 
@@ -114,53 +113,81 @@ public class MyEventFragment extends Fragment {
         // Load the uploaded poster for this event (if any)
         loadPosterImage();
 
+        entrantsLoaded = !event.isEntrantsInSubcollection();
         setupEventDetail();
         setupClickListeners();
         setupButtonsVisibility();
     }
 
     /**
-     * Fetches the latest event data from Firestore and re-populates the entire UI.
-     * This is called after a significant change, like running the lottery.
+     * Runs an action that needs the event's full participation lists, such as the lottery or
+     * sending notifications, loading them first for an event that keeps them in a subcollection.
+     * The entrant list screens page through the entrants themselves, so they do not wait for this.
+     * If loading fails the action is not run, since it would leave out the entrants not loaded.
+     *
+     * @param action The action to run once the lists are on hand.
+     */
+    private void withAllEntrants(Runnable action) {
+        if (entrantsLoaded) {
+            action.run();
+            return;
+        }
+        if (loadingEntrants) {
+            return;
+        }
+        loadingEntrants = true;
+        renderRegistrationDuration();
+        Event loading = event;
+        EntrantRepository.loadAllEntrants(loading, error -> {
+            if (binding == null || loading != event) return;
+            loadingEntrants = false;
+            renderRegistrationDuration();
+            if (error != null) {
+                Log.e("MyEventFragment", "Failed to load entrants.", error);
+                Toast.makeText(getContext(), "Failed to load entrants.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            entrantsLoaded = true;
+            action.run();
+        });
+    }
+
+    /**
+     * Re-populates the UI when the event document changes in Firestore, such as after
+     * the lottery has run. The first snapshot only repeats the event passed in the arguments,
+     * so only modifications and removals are acted on.
+     *
+     * @param items The event, or nothing if it no longer exists.
+     * @param changes The changes since the last snapshot.
+     * @param error The failure, or null if the snapshot was read.
      */
-    private void refreshEventData() {
-        if (event == null || event.getEventId() == null) {
-            Log.e("MyEventFragment", "refreshEventData called with null event or eventId.");
-            return; // Cannot refresh without an event ID
+    private void onEventChanged(List<Event> items, List<LiveQuery.Change<Event>> changes, Exception error) {
+        if (!isAdded() || binding == null) return; // Ensure fragment is still active
+        if (error != null) {
+            Log.e("MyEventFragment", "Failed to refresh event data.", error);
+            return;
         }
 
-        FirebaseFirestore.getInstance()
-                .collection("events")
-                .document(event.getEventId())
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (!isAdded()) return; // Ensure fragment is still active
-
-                    if (documentSnapshot != null && documentSnapshot.exists()) {
-                        // Update the local event object with the fresh data from Firestore
-                        this.event = documentSnapshot.toObject(Event.class);
-
-                        if (this.event != null) {
-                            // Now, re-run all UI setup methods to reflect the new data
-                            setupEventDetail();
-                            setupButtonsVisibility(); // This is the most important call here
-                            // Optionally, notify the user
-                            Toast.makeText(getContext(), "Event data has been updated.", Toast.LENGTH_SHORT).show();
-                        }
-                    } else {
-                        Log.w("MyEventFragment", "Event document no longer exists.");
-                        Toast.makeText(getContext(), "Could not find event.", Toast.LENGTH_SHORT).show();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    if (!isAdded()) return;
-                    Log.e("MyEventFragment", "Failed to refresh event data.", e);
-                    Toast.makeText(getContext(), "Failed to refresh event data.", Toast.LENGTH_SHORT).show();
-                });
+        for (LiveQuery.Change<Event> change : changes) {
+            if (change.getType() == LiveQuery.ChangeType.REMOVED) {
+                Log.w("MyEventFragment", "Event document no longer exists.");
+                Toast.makeText(getContext(), "Could not find event.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            if (change.getType() == LiveQuery.ChangeType.MODIFIED && change.getItem() != null) {
+                // Update the local event object with the fresh data from Firestore. Its entrants
+                // are only read again when something needs the full lists
+                this.event = change.getItem();
+                entrantsLoaded = !event.isEntrantsInSubcollection();
+                loadingEntrants = false;
+                setupEventDetail();
+                setupButtonsVisibility();
+            }
+        }
     }
 
     /**
-     * Loads the poster image for this event from Firestore and displays it
+     * Loads the poster image for this event through the shared poster cache and displays it
      * in the header ImageView. If no poster is present or decoding fails,
      * a placeholder image is shown instead.
      */
@@ -176,43 +203,18 @@ public class MyEventFragment extends Fragment {
             return;
         }
 
-        FirebaseFirestore.getInstance()
-                .collection("events")
-                .document(eventId)
-                .get()
-                .addOnSuccessListener(doc -> {
-                    if (!isAdded() || binding == null) {
-                        return; // Fragment is no longer attached
-                    }
-
-                    if (doc != null && doc.exists()) {
-                        String posterBase64 = doc.getString("posterBase64");
-                        if (posterBase64 != null && !posterBase64.isEmpty()) {
-                            try {
-                                byte[] bytes = Base64.decode(posterBase64, Base64.DEFAULT);
-                                Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                                if (bitmap != null) {
-                                    binding.myEventPoster.setImageBitmap(bitmap);
-                                } else {
-                                    binding.myEventPoster.setImageResource(R.drawable.image_placeholder);
-                                }
-                            } catch (IllegalArgumentException e) {
-                                Log.e("MyEventFragment", "Invalid Base64 poster data", e);
-                                binding.myEventPoster.setImageResource(R.drawable.image_placeholder);
-                            }
-                        } else {
-                            binding.myEventPoster.setImageResource(R.drawable.image_placeholder);
-                        }
-                    } else {
-                        binding.myEventPoster.setImageResource(R.drawable.image_placeholder);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("MyEventFragment", "Failed to load poster image", e);
-                    if (isAdded() && binding != null) {
-                        binding.myEventPoster.setImageResource(R.drawable.image_placeholder);
-                    }
-                });
+        PosterCache.getInstance(requireContext()).load(eventId, event.getPosterHash(), null, bitmap -> {
+            // Check if the fragment is still attached to an activity
+            if (!isAdded() || binding == null) {
+                return;
+            }
+            if (bitmap != null) {
+                binding.myEventPoster.setImageBitmap(bitmap);
+            } else {
+                // No poster, or decoding failed, use placeholder
+                binding.myEventPoster.setImageResource(R.drawable.image_placeholder);
+            }
+        });
     }
 
     /**
@@ -229,8 +231,10 @@ public class MyEventFragment extends Fragment {
             @Override
             public boolean onMenuItemSelected(@NonNull MenuItem menuItem) {
                 if (menuItem.getItemId() == R.id.action_send) {
-                    SendNotificationFragment dialog = SendNotificationFragment.newInstance(event);
-                    dialog.show(getParentFragmentManager(), "SendNotificationFragment");
+                    withAllEntrants(() -> {
+                        SendNotificationFragment dialog = SendNotificationFragment.newInstance(event);
+                        dialog.show(getParentFragmentManager(), "SendNotificationFragment");
+                    });
                     return true;
                 }
                 if (menuItem.getItemId() == R.id.action_qr) {
@@ -272,8 +276,7 @@ public class MyEventFragment extends Fragment {
      * and enables/disables entrant list buttons based on lottery status.
      */
     private void setupButtonsVisibility() {
-        boolean lotteryDrawn = (event.getInviteList() != null && !event.getInviteList().isEmpty()) ||
-                (event.getEnrollList() != null && !event.getEnrollList().isEmpty());
+        boolean lotteryDrawn = event.getInvitedCount() > 0 || event.getEnrolledCount() > 0;
 
         if (lotteryDrawn) {
             // --- POST-LOTTERY STATE ---
@@ -311,11 +314,11 @@ public class MyEventFragment extends Fragment {
         });
 
 
-        binding.buttonOpenLottery.setOnClickListener(v -> {
+        binding.buttonOpenLottery.setOnClickListener(v -> withAllEntrants(() -> {
             LotteryFragment dialog = LotteryFragment.newInstance(event);
             dialog.show(getParentFragmentManager(), "LotteryFragment");
             setupButtonsVisibility();
-        });
+        }));
 
         binding.buttonToEnrolledEntrants.setOnClickListener(v -> {
             // This button navigates to a screen showing the enrolled list.
@@ -386,7 +389,7 @@ public class MyEventFragment extends Fragment {
         binding.myEventStatus.setText(statusText);
         binding.myEventStatus.setTextColor(statusColor);
 
-        binding.buttonOpenLottery.setEnabled(isRegistrationOver);
+        binding.buttonOpenLottery.setEnabled(isRegistrationOver && !loadingEntrants);
     }
 
     /**
@@ -1,15 +1,23 @@
 package com.example.shopping_basket;
+import com.google.firebase.firestore.Exclude;
+
+import java.io.Serializable;
 import java.util.Date;
 
 /**
  * This class defines a notification sent to a user
  * Named to avoid conflict with existing Notification class
  */
-public class Notif {
+public class Notif implements Serializable {
     // target is GUID of profile notif is sent to
     private String target;
     private String message;
     private Date time;
+    // Set once the target has seen it in their inbox, see NotificationRepository#markRead.
+    // Null for notifications stored before they were marked read, which are not in any unread count
+    private Boolean read;
+    // ID of the notification's document, filled in when it is read from the store
+    private String notifId;
 
     public Notif() {}
 
@@ -17,6 +25,7 @@ public class Notif {
         this.target = target;
         this.message = message;
         this.time = new Date();
+        this.read = false;
     }
 
     public String getTarget() {
@@ -39,4 +48,29 @@ public class Notif {
     public void setTime(Date time) {
         this.time = time;
     }
+
+    public Boolean getRead() {
+        return read;
+    }
+
+    public void setRead(Boolean read) {
+        this.read = read;
+    }
+
+    // Only a notification stored as unread counts as unread; one stored without the field does not
+    @Exclude
+    public boolean isUnread() {
+        return Boolean.FALSE.equals(read);
+    }
+
+    // Not stored in the document, the document's ID is
+    @Exclude
+    public String getNotifId() {
+        return notifId;
+    }
+
+    @Exclude
+    public void setNotifId(String notifId) {
+        this.notifId = notifId;
+    }
 }
@@ -0,0 +1,314 @@
+package com.example.shopping_basket;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class sends a large list of notifications, such as the output of
+ * {@link Event#notifyWaiting(String)}, in batches that stay within Firestore's write limit.
+ * A few batches are in flight at once, failed batches are retried with exponential backoff,
+ * and progress is reported as batches land.
+ * Each send is recorded in a {@link Checkpoint} so it can be resumed if the app is killed
+ * part way through. The notifications are saved once, and after that only the index of each
+ * committed batch is recorded. Notifications in a send get fixed document ids, so a batch that
+ * is sent twice does not create duplicates.
+ * Callbacks are expected on a single thread, which is how Firestore delivers them.
+ */
+public class NotificationFanOut {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+    public static final long MAX_DELAY_MILLIS = 30_000;
+
+    // Runs a task after a delay, such as Handler.postDelayed on the main looper
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    // Persists checkpoints so unfinished sends survive the app being killed
+    public interface CheckpointStore {
+        // Saves the whole checkpoint, once, before any of its batches is sent
+        void save(Checkpoint checkpoint);
+
+        // Records that one batch of a saved checkpoint has been committed
+        void markSent(Checkpoint checkpoint, int index);
+
+        List<Checkpoint> loadAll();
+
+        void delete(String id);
+    }
+
+    // Callback for progress, in notifications rather than batches
+    public interface ProgressCallback {
+        void onCallback(int sent, int total);
+    }
+
+    // Callback for a finished send
+    public interface ResultCallback {
+        /**
+         * @param sentBatches
+         *     batches committed by this run
+         * @param failedBatches
+         *     batches that ran out of attempts, kept in the checkpoint for a later resume
+         * @param error
+         *     the last failure seen, null if every batch was sent
+         */
+        void onCallback(int sentBatches, int failedBatches, Exception error);
+    }
+
+    /**
+     * The notifications of one send and which of its batches have been committed
+     */
+    public static class Checkpoint implements Serializable {
+        private final String id;
+        private final ArrayList<Notif> notifications;
+        private final int batchSize;
+        private final HashSet<Integer> sentBatches = new HashSet<>();
+
+        public Checkpoint(String id, List<Notif> notifications, int batchSize) {
+            this.id = id;
+            this.notifications = new ArrayList<>(notifications);
+            this.batchSize = batchSize;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getBatchCount() {
+            return (notifications.size() + batchSize - 1) / batchSize;
+        }
+
+        public List<Notif> getBatch(int index) {
+            int start = index * batchSize;
+            return new ArrayList<>(notifications.subList(start, Math.min(start + batchSize, notifications.size())));
+        }
+
+        public boolean isSent(int index) {
+            return sentBatches.contains(index);
+        }
+
+        public void markSent(int index) {
+            sentBatches.add(index);
+        }
+
+        public int getSentCount() {
+            int sent = 0;
+            for (int i : sentBatches) {
+                sent += Math.min(batchSize, notifications.size() - i * batchSize);
+            }
+            return sent;
+        }
+
+        public int getTotalCount() {
+            return notifications.size();
+        }
+
+        public boolean isComplete() {
+            return sentBatches.size() == getBatchCount();
+        }
+    }
+
+    private final LotteryCommit.BatchSink sink;
+    private final Scheduler scheduler;
+    private final CheckpointStore store;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+
+    public NotificationFanOut(LotteryCommit.BatchSink sink, Scheduler scheduler, CheckpointStore store) {
+        this(sink, scheduler, store, LotteryCommit.MAX_BATCH_NOTIFICATIONS, DEFAULT_MAX_IN_FLIGHT,
+                DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS);
+    }
+
+    /**
+     * @param sink
+     *     where batches are written, each batch all or nothing
+     * @param scheduler
+     *     runs retries after their backoff delay
+     * @param store
+     *     keeps checkpoints of unfinished sends
+     * @param batchSize
+     *     notifications per batch, at most {@link LotteryCommit#MAX_BATCH_NOTIFICATIONS}
+     * @param maxInFlight
+     *     largest number of batches being committed at once
+     * @param maxAttempts
+     *     attempts per batch before it is left for a later resume
+     * @param baseDelayMillis
+     *     delay before the first retry, doubled on each further retry
+     */
+    public NotificationFanOut(LotteryCommit.BatchSink sink, Scheduler scheduler, CheckpointStore store,
+                              int batchSize, int maxInFlight, int maxAttempts, long baseDelayMillis) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.store = store;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+    }
+
+    /**
+     * Starts sending a list of notifications
+     * @param notifications
+     *     notifications to send
+     * @param progress
+     *     invoked after each committed batch, may be null
+     * @param callback
+     *     invoked once when every batch has been sent or has run out of attempts
+     * @return
+     *     id of the checkpoint recording this send
+     */
+    public String send(List<Notif> notifications, ProgressCallback progress, ResultCallback callback) {
+        Checkpoint checkpoint = prepare(notifications);
+        start(checkpoint, progress, callback);
+        return checkpoint.getId();
+    }
+
+    /**
+     * Saves a send without starting it, so it is resumed after a restart even if the app is
+     * killed before {@link #start} is called. Used when the notifications must only go out
+     * once another write has been committed
+     * @param notifications
+     *     notifications to send
+     * @return
+     *     the saved checkpoint, to pass to {@link #start} or {@link #discard}
+     */
+    public Checkpoint prepare(List<Notif> notifications) {
+        Checkpoint checkpoint = new Checkpoint(UUID.randomUUID().toString(), notifications, batchSize);
+        store.save(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Starts sending a send saved by {@link #prepare}
+     * @param checkpoint
+     *     the saved send
+     * @param progress
+     *     invoked after each committed batch, may be null
+     * @param callback
+     *     invoked once when every batch has been sent or has run out of attempts
+     */
+    public void start(Checkpoint checkpoint, ProgressCallback progress, ResultCallback callback) {
+        new Run(checkpoint, progress, callback).start();
+    }
+
+    /**
+     * Drops a send saved by {@link #prepare} that must not go out after all
+     * @param checkpoint
+     *     the saved send
+     */
+    public void discard(Checkpoint checkpoint) {
+        store.delete(checkpoint.getId());
+    }
+
+    /**
+     * Continues every send that was left unfinished, sending only the batches not yet committed
+     * @param progress
+     *     invoked after each committed batch, may be null
+     * @param callback
+     *     invoked once per resumed send
+     */
+    public void resumePending(ProgressCallback progress, ResultCallback callback) {
+        for (Checkpoint checkpoint : store.loadAll()) {
+            new Run(checkpoint, progress, callback).start();
+        }
+    }
+
+    /**
+     * Delay before a retry, doubling from the base delay up to {@link #MAX_DELAY_MILLIS}
+     * @param attempt
+     *     number of attempts already made, starting at 1
+     * @return
+     *     delay in milliseconds
+     */
+    long backoff(int attempt) {
+        int shift = Math.min(attempt - 1, 16);
+        return Math.min(baseDelayMillis << shift, MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * State of one send while its batches are in flight
+     */
+    private class Run {
+        private final Checkpoint checkpoint;
+        private final ProgressCallback progress;
+        private final ResultCallback callback;
+        private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+        private int inFlight = 0;
+        private int sent = 0;
+        private int failed = 0;
+        private Exception lastError;
+
+        Run(Checkpoint checkpoint, ProgressCallback progress, ResultCallback callback) {
+            this.checkpoint = checkpoint;
+            this.progress = progress;
+            this.callback = callback;
+            for (int i = 0; i < checkpoint.getBatchCount(); i++) {
+                if (!checkpoint.isSent(i)) {
+                    pending.add(i);
+                }
+            }
+        }
+
+        void start() {
+            if (pending.isEmpty()) {
+                finish();
+                return;
+            }
+            fill();
+        }
+
+        private void fill() {
+            while (inFlight < maxInFlight && !pending.isEmpty()) {
+                inFlight++;
+                attempt(pending.poll(), 1);
+            }
+        }
+
+        private void attempt(int index, int attemptNumber) {
+            LotteryCommit.Batch batch = new LotteryCommit.Batch(null, checkpoint.getBatch(index),
+                    checkpoint.getId() + "-" + index);
+            sink.commit(batch, error -> {
+                if (error == null) {
+                    checkpoint.markSent(index);
+                    store.markSent(checkpoint, index);
+                    sent++;
+                    if (progress != null) {
+                        progress.onCallback(checkpoint.getSentCount(), checkpoint.getTotalCount());
+                    }
+                    release();
+                } else if (attemptNumber < maxAttempts) {
+                    scheduler.schedule(() -> attempt(index, attemptNumber + 1), backoff(attemptNumber));
+                } else {
+                    failed++;
+                    lastError = error;
+                    release();
+                }
+            });
+        }
+
+        private void release() {
+            inFlight--;
+            if (pending.isEmpty() && inFlight == 0) {
+                finish();
+            } else {
+                fill();
+            }
+        }
+
+        private void finish() {
+            if (checkpoint.isComplete()) {
+                store.delete(checkpoint.getId());
+            }
+            if (callback != null) {
+                callback.onCallback(sent, failed, lastError);
+            }
+        }
+    }
+}
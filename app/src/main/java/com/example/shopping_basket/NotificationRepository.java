@@ -0,0 +1,234 @@
+package com.example.shopping_basket;
+
+import android.app.Activity;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the "notifications" collection a page at a time, and keeps each profile's unread count
+ * in the "unreadCounts" collection, one document per GUID. Notifications are written with
+ * {@link EventRepository#commitBatch}, which adds to the counts only for notifications it creates,
+ * and taken off the counts here in a transaction that checks each one is still unread, so the
+ * inbox badge reads a single document.
+ * No method here reads the whole collection; the admin log is paged like a user's inbox.
+ */
+public class NotificationRepository {
+    private static final String TAG = "NotificationRepository";
+    private static final String NOTIFICATIONS_COLLECTION = "notifications";
+    private static final String UNREAD_COUNTS_COLLECTION = "unreadCounts";
+    // Field of an unread count document holding the count
+    private static final String UNREAD = "unread";
+    public static final int PAGE_SIZE = 50;
+
+    // Callback for an unread count, 0 if the profile has no count yet
+    public interface UnreadCountCallback {
+        void onCallback(long count);
+    }
+
+    /**
+     * Fetches one page of notifications, newest first, then by document ID.
+     *
+     * @param userId   The GUID of the profile the notifications target, or null for every notification.
+     * @param cursor   The last notification of the previous page, or null for the first page.
+     * @param limit    The largest number of notifications in the page.
+     * @param callback The callback that will be invoked with the page and the cursor for the next one.
+     */
+    public static void getNotificationPage(@Nullable String userId, @Nullable Notif cursor, int limit,
+                                           NotificationStore.PageCallback callback) {
+        Query query = FirebaseFirestore.getInstance().collection(NOTIFICATIONS_COLLECTION);
+        if (userId != null) {
+            query = query.whereEqualTo("target", userId);
+        }
+        query = query.orderBy("time", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+        if (cursor != null) {
+            query = query.startAfter(cursor.getTime(), cursor.getNotifId());
+        }
+        query.limit(limit)
+                .get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<Notif> page = new ArrayList<>();
+                    for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+                        Notif notif = document.toObject(Notif.class);
+                        if (notif != null) {
+                            notif.setNotifId(document.getId());
+                            page.add(notif);
+                        }
+                    }
+                    // Resumed from the last notification's time and ID
+                    Notif nextCursor = Paging.nextCursor(querySnapshot.getDocuments(), limit) != null && !page.isEmpty()
+                            ? page.get(page.size() - 1)
+                            : null;
+                    callback.onCallback(page, nextCursor, null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error getting notification page for: " + userId, e);
+                    callback.onCallback(new ArrayList<>(), null, e);
+                });
+    }
+
+    /**
+     * Adds the unread count updates for notifications that are being created to a WriteBatch,
+     * one increment for each target. Only notifications stored as unread are counted.
+     *
+     * @param db            The Firestore instance.
+     * @param writeBatch    The batch to add the writes to.
+     * @param notifications The notifications being created.
+     */
+    static void addUnreadCounts(FirebaseFirestore db, WriteBatch writeBatch, List<Notif> notifications) {
+        for (Map.Entry<String, Long> entry : countUnread(notifications).entrySet()) {
+            writeBatch.set(unreadCount(db, entry.getKey()),
+                    Collections.singletonMap(UNREAD, FieldValue.increment(entry.getValue())), SetOptions.merge());
+        }
+    }
+
+    /**
+     * Adds the unread count updates for notifications that are being created to a transaction,
+     * as {@link #addUnreadCounts(FirebaseFirestore, WriteBatch, List)} does for a WriteBatch.
+     *
+     * @param db            The Firestore instance.
+     * @param transaction   The transaction to add the writes to, after all of its reads.
+     * @param notifications The notifications being created.
+     */
+    static void addUnreadCounts(FirebaseFirestore db, Transaction transaction, List<Notif> notifications) {
+        for (Map.Entry<String, Long> entry : countUnread(notifications).entrySet()) {
+            transaction.set(unreadCount(db, entry.getKey()),
+                    Collections.singletonMap(UNREAD, FieldValue.increment(entry.getValue())), SetOptions.merge());
+        }
+    }
+
+    // Target -> number of unread notifications for them, leaving out targets with none
+    private static Map<String, Long> countUnread(List<Notif> notifications) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Notif notif : notifications) {
+            if (notif.getTarget() != null && notif.isUnread()) {
+                counts.merge(notif.getTarget(), 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Marks notifications read and takes them off the profile's unread count in one transaction.
+     * Each notification is read back first and only counted if it is still stored as unread, so
+     * marking the same notification on two devices, or from an old snapshot, takes it off once.
+     * Notifications stored without a read field are left alone, since they were never counted.
+     *
+     * @param userId        The GUID of the profile the notifications were sent to.
+     * @param notifications The notifications, as read by {@link #getNotificationPage}, at most
+     *                      {@link LotteryCommit#MAX_BATCH_WRITES} - 1 of them.
+     * @param callback      The callback that will be invoked with null on success, or the failure.
+     */
+    public static void markRead(String userId, List<Notif> notifications, LotteryCommit.CommitCallback callback) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        List<Notif> marked = new ArrayList<>();
+        for (Notif notif : notifications) {
+            if (notif.isUnread() && notif.getNotifId() != null) {
+                marked.add(notif);
+            }
+        }
+        if (marked.isEmpty()) {
+            callback.onCallback(null);
+            return;
+        }
+        // Marked straight away, so marking them again before this commits doesn't read them twice
+        for (Notif notif : marked) {
+            notif.setRead(true);
+        }
+        db.runTransaction(transaction -> {
+                    // Every read comes before the first write, as transactions require
+                    List<DocumentReference> unread = new ArrayList<>();
+                    for (Notif notif : marked) {
+                        DocumentReference notifRef = db.collection(NOTIFICATIONS_COLLECTION).document(notif.getNotifId());
+                        if (Boolean.FALSE.equals(transaction.get(notifRef).getBoolean("read"))) {
+                            unread.add(notifRef);
+                        }
+                    }
+                    for (DocumentReference notifRef : unread) {
+                        transaction.update(notifRef, "read", true);
+                    }
+                    if (!unread.isEmpty()) {
+                        transaction.set(unreadCount(db, userId),
+                                Collections.singletonMap(UNREAD, FieldValue.increment(-unread.size())), SetOptions.merge());
+                    }
+                    return null;
+                })
+                .addOnSuccessListener(result -> callback.onCallback(null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error marking notifications read for: " + userId, e);
+                    for (Notif notif : marked) {
+                        notif.setRead(false);
+                    }
+                    callback.onCallback(e);
+                });
+    }
+
+    /**
+     * Gets a profile's unread count once.
+     *
+     * @param userId   The GUID of the profile.
+     * @param callback The callback that will be invoked with the count, or the failure.
+     */
+    public static void getUnreadCount(String userId, NotificationStore.CountCallback callback) {
+        unreadCount(FirebaseFirestore.getInstance(), userId)
+                .get()
+                .addOnSuccessListener(document -> callback.onCallback(toCount(userId, document), null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error getting unread count for: " + userId, e);
+                    callback.onCallback(0, e);
+                });
+    }
+
+    /**
+     * Listens to a profile's unread count while an activity is started. Firestore removes
+     * the listener when the activity stops, so this is meant to be called from onStart.
+     *
+     * @param activity The activity the listener is tied to.
+     * @param userId   The GUID of the profile.
+     * @param callback The callback that will be invoked with the count and every change to it.
+     */
+    public static void observeUnreadCount(Activity activity, String userId, UnreadCountCallback callback) {
+        unreadCount(FirebaseFirestore.getInstance(), userId).addSnapshotListener(activity, (document, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Error listening to unread count for: " + userId, e);
+                return;
+            }
+            callback.onCallback(toCount(userId, document));
+        });
+    }
+
+    private static DocumentReference unreadCount(FirebaseFirestore db, String userId) {
+        return db.collection(UNREAD_COUNTS_COLLECTION).document(userId);
+    }
+
+    private static long toCount(String userId, @Nullable DocumentSnapshot document) {
+        if (document == null || !document.exists()) {
+            return 0;
+        }
+        Map<String, Object> data = document.getData();
+        Object value = data != null ? data.get(UNREAD) : null;
+        long count = value instanceof Number ? ((Number) value).longValue() : 0;
+        if (count < 0) {
+            // Writes here keep the count exact, so this means it was changed some other way
+            Log.w(TAG, "Unread count below zero for: " + userId + " (" + count + ")");
+        }
+        return count;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.shopping_basket;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Stores notifications, such as the "notifications" collection in Firestore or an in-memory stand-in.
+ * Each target also has an unread count, added to with every notification sent to them and taken
+ * from as notifications are marked read, so a badge can show it without querying the notifications.
+ */
+public interface NotificationStore {
+    // Order of the inbox: newest first, then by document ID so notifications sent together keep a fixed order
+    Comparator<Notif> NEWEST_FIRST = Comparator
+            .comparing(Notif::getTime, Comparator.nullsLast(Comparator.<Date>reverseOrder()))
+            .thenComparing(Notif::getNotifId, Comparator.nullsLast(Comparator.<String>reverseOrder()));
+
+    // Callback for one page of notifications; nextCursor is null when there are no more pages
+    interface PageCallback {
+        void onCallback(List<Notif> page, Notif nextCursor, Exception error);
+    }
+
+    // Callback for an unread count; error is null on success
+    interface CountCallback {
+        void onCallback(long count, Exception error);
+    }
+
+    /**
+     * Gets one page of notifications in {@link #NEWEST_FIRST} order, each with its ID set
+     * @param target
+     *     GUID of the profile the notifications are sent to, null for every notification
+     * @param cursor
+     *     the last notification of the previous page, null for the first page
+     * @param limit
+     *     largest number of notifications in the page
+     * @param callback
+     *     receives the page
+     */
+    void getNotificationPage(String target, Notif cursor, int limit, PageCallback callback);
+
+    /**
+     * Adds notifications, all or none of them
+     * @param notifications
+     *     notifications to add
+     * @param callback
+     *     receives null on success, or the failure
+     */
+    void addNotifications(List<Notif> notifications, LotteryCommit.CommitCallback callback);
+
+    /**
+     * Marks notifications read and takes them off their target's unread count, all or none of them
+     * @param target
+     *     GUID of the profile the notifications were sent to
+     * @param notifications
+     *     notifications with their IDs set; ones already read are skipped
+     * @param callback
+     *     receives null on success, or the failure
+     */
+    void markRead(String target, List<Notif> notifications, LotteryCommit.CommitCallback callback);
+
+    /**
+     * Gets the number of unread notifications sent to a profile
+     * @param target
+     *     GUID of the profile
+     * @param callback
+     *     receives the count, 0 if nothing has been sent to them
+     */
+    void getUnreadCount(String target, CountCallback callback);
+}
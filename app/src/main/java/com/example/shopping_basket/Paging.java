@@ -0,0 +1,26 @@
+package com.example.shopping_basket;
+
+import java.util.List;
+
+/**
+ * This class holds the cursor logic shared by every query read a page at a time.
+ * A page is requested with a limit, and a short page means there is nothing after it, so only
+ * a full page is followed by another request, continuing after its last result.
+ */
+public final class Paging {
+    private Paging() {
+    }
+
+    /**
+     * Gets where the next page starts
+     * @param results
+     *     the results of a page, in query order
+     * @param limit
+     *     the limit the page was requested with
+     * @return
+     *     the last result of a full page, null when there is nothing after it
+     */
+    public static <T> T nextCursor(List<T> results, int limit) {
+        return results.isEmpty() || results.size() < limit ? null : results.get(results.size() - 1);
+    }
+}
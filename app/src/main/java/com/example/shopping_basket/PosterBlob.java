@@ -0,0 +1,98 @@
+package com.example.shopping_basket;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class holds the content addressing used for posters.
+ * A poster is stored once under the SHA-256 hash of its JPEG bytes, so the same image
+ * uploaded for several events is kept a single time, and a poster read back can be
+ * checked against the hash it was requested by.
+ * Posters larger than {@link #CHUNK_SIZE} are split into chunks, since a Firestore
+ * document holds at most 1 MiB.
+ */
+public class PosterBlob {
+    // Leaves room under the 1 MiB document limit for the other fields
+    public static final int CHUNK_SIZE = 512 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private PosterBlob() { }
+
+    /**
+     * Computes the hash a poster is stored under
+     * @param data
+     *     JPEG bytes of the poster
+     * @return
+     *     the SHA-256 hash as 64 lowercase hex digits
+     */
+    public static String hash(byte[] data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] hash = digest.digest(data);
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Splits a poster into chunks of at most the given size
+     * @param data
+     *     JPEG bytes of the poster
+     * @param chunkSize
+     *     largest number of bytes in a chunk
+     * @return
+     *     the chunks in order; a single empty chunk for an empty poster
+     */
+    public static List<byte[]> split(byte[] data, int chunkSize) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int start = 0; start < data.length || chunks.isEmpty(); start += chunkSize) {
+            chunks.add(Arrays.copyOfRange(data, start, Math.min(start + chunkSize, data.length)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Joins chunks back into a poster
+     * @param chunks
+     *     the chunks in order
+     * @return
+     *     the poster's bytes
+     */
+    public static byte[] join(List<byte[]> chunks) {
+        int size = 0;
+        for (byte[] chunk : chunks) {
+            size += chunk.length;
+        }
+        byte[] data = new byte[size];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, data, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return data;
+    }
+
+    /**
+     * Checks that poster bytes are the ones stored under a hash
+     * @param hash
+     *     hash the poster was requested by
+     * @param data
+     *     bytes read back
+     * @return
+     *     true if the bytes hash to the given value
+     */
+    public static boolean matches(String hash, byte[] data) {
+        return data != null && hash != null && hash.equals(hash(data));
+    }
+}
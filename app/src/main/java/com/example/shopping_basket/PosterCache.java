@@ -0,0 +1,208 @@
+package com.example.shopping_basket;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Poster cache shared by every screen that shows posters.
+ * Decoded bitmaps are kept in memory, bounded by their byte count, and the JPEG bytes behind
+ * them in a {@link PosterDiskCache}, both keyed by event ID and poster hash. A poster missing
+ * from both is fetched through {@link PosterRepository}.
+ * Posters are decoded by a {@link PosterDecoder} at the size of the view showing them, so the
+ * memory tier also keys bitmaps by that size.
+ * Reading the disk and decoding run on a background thread, and a poster requested again while
+ * it is still loading is loaded once for all of its requests.
+ * Must be used from the main thread; callbacks are delivered on it.
+ */
+public class PosterCache {
+    private static final String TAG = "PosterCache";
+    private static final String DIRECTORY = "posters";
+    // Threads reading and decoding posters, so a slow poster doesn't hold up the others
+    private static final int DECODE_THREADS = 2;
+
+    private static PosterCache instance;
+
+    // Callback for a poster, null if there is none or it could not be decoded
+    public interface BitmapCallback {
+        void onCallback(@Nullable Bitmap bitmap);
+    }
+
+    private final LruCache<String, Bitmap> memory;
+    private final PosterDiskCache disk;
+    private final PosterDecoder decoder = new PosterDecoder();
+    private final ExecutorService executor = Executors.newFixedThreadPool(DECODE_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Callbacks waiting for each poster being loaded
+    private final Map<String, List<BitmapCallback>> pending = new HashMap<>();
+    // Base64 of posters not migrated yet, by event ID, from a page read until it is on disk
+    private final Map<String, String> legacyPosters = new ConcurrentHashMap<>();
+
+    private PosterCache(File directory) {
+        // An eighth of the heap, as bitmaps are the largest thing the app keeps in memory
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        disk = new PosterDiskCache(directory);
+    }
+
+    /**
+     * Gets the poster cache, creating it on first use.
+     *
+     * @param context Any context; only the application context is kept.
+     * @return The poster cache.
+     */
+    public static synchronized PosterCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new PosterCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY));
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the poster of an event at its full size.
+     *
+     * @param eventId      The ID of the event.
+     * @param posterHash   The hash of the event's poster, or null if it is not migrated yet.
+     * @param posterBase64 The poster as read with the event document, if it was not migrated yet.
+     * @param callback     The callback that will be invoked with the poster, or null if there is none.
+     */
+    public void load(String eventId, @Nullable String posterHash, @Nullable String posterBase64,
+                     BitmapCallback callback) {
+        load(eventId, posterHash, posterBase64, 0, 0, callback);
+    }
+
+    /**
+     * Loads the poster of an event. A poster already in memory is delivered before this returns.
+     *
+     * @param eventId      The ID of the event.
+     * @param posterHash   The hash of the event's poster, or null if it is not migrated yet.
+     * @param posterBase64 The poster as read with the event document, if it was not migrated yet.
+     *                     Saves fetching the document again.
+     * @param reqWidth     The width of the view showing the poster in pixels, or 0 for the full size.
+     * @param reqHeight    The height of the view showing the poster in pixels, or 0 for the full size.
+     * @param callback     The callback that will be invoked with the poster, or null if there is none.
+     */
+    public void load(String eventId, @Nullable String posterHash, @Nullable String posterBase64,
+                     int reqWidth, int reqHeight, BitmapCallback callback) {
+        if (posterBase64 == null && posterHash == null) {
+            posterBase64 = legacyPosters.get(eventId); // still on its way to disk
+        }
+        String legacyBase64 = posterBase64;
+        String diskKey = PosterDiskCache.key(eventId, posterHash);
+        // Starts with the disk key, so removing an event's posters by prefix covers every size
+        String key = diskKey + "@" + reqWidth + "x" + reqHeight;
+        Bitmap cached = memory.get(key);
+        if (cached != null) {
+            callback.onCallback(cached);
+            return;
+        }
+        List<BitmapCallback> waiting = pending.get(key);
+        if (waiting != null) {
+            waiting.add(callback); // Already loading
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        pending.put(key, waiting);
+
+        executor.execute(() -> {
+            // Decoded straight from the file, so the JPEG bytes are never all on the heap
+            File file = disk.getFile(diskKey);
+            Bitmap bitmap = file != null ? decoder.decode(file, reqWidth, reqHeight) : null;
+            if (bitmap != null) {
+                deliver(key, bitmap);
+            } else if (legacyBase64 != null && !legacyBase64.isEmpty()) {
+                // Streamed from the string to disk, rather than decoded into a copy first
+                File stored = disk.put(diskKey, new Base64Stream(legacyBase64)) ? disk.getFile(diskKey) : null;
+                if (stored == null) {
+                    Log.e(TAG, "Could not store Base64 poster of event: " + eventId);
+                }
+                deliver(key, stored != null ? decoder.decode(stored, reqWidth, reqHeight) : null);
+            } else {
+                PosterRepository.loadPoster(eventId, posterHash, fetched -> {
+                    if (fetched == null) {
+                        deliver(key, null);
+                    } else {
+                        executor.execute(() -> store(key, diskKey, fetched, reqWidth, reqHeight));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stores posters not migrated yet, as read with a page of events, on disk, so showing them
+     * later doesn't fetch their documents again. Until a poster is written, {@link #load} takes
+     * it from here; after that only the file is kept.
+     *
+     * @param posters The Base64 posters, keyed by event ID.
+     */
+    public void putLegacy(Map<String, String> posters) {
+        for (Map.Entry<String, String> entry : posters.entrySet()) {
+            String eventId = entry.getKey();
+            String posterBase64 = entry.getValue();
+            legacyPosters.put(eventId, posterBase64);
+            executor.execute(() -> {
+                String diskKey = PosterDiskCache.key(eventId, null);
+                if (disk.getFile(diskKey) == null && !disk.put(diskKey, new Base64Stream(posterBase64))) {
+                    Log.e(TAG, "Could not store Base64 poster of event: " + eventId);
+                }
+                legacyPosters.remove(eventId, posterBase64);
+            });
+        }
+    }
+
+    /**
+     * Drops every cached poster of an event, such as after its poster was removed.
+     *
+     * @param eventId The ID of the event.
+     */
+    public void remove(String eventId) {
+        String prefix = PosterDiskCache.keyPrefix(eventId);
+        for (String key : memory.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                memory.remove(key);
+            }
+        }
+        executor.execute(() -> disk.remove(eventId));
+    }
+
+    // Runs on the executor: keeps fetched bytes on disk and decodes them
+    private void store(String key, String diskKey, byte[] data, int reqWidth, int reqHeight) {
+        disk.put(diskKey, data);
+        deliver(key, decoder.decode(data, reqWidth, reqHeight));
+    }
+
+    private void deliver(String key, @Nullable Bitmap bitmap) {
+        mainHandler.post(() -> {
+            if (bitmap != null) {
+                memory.put(key, bitmap);
+            }
+            List<BitmapCallback> waiting = pending.remove(key);
+            if (waiting != null) {
+                for (BitmapCallback callback : waiting) {
+                    callback.onCallback(bitmap);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.shopping_basket;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * Decodes posters at the size they are shown at (see {@link PosterSampling}).
+ * The poster's bounds are read first to pick a sample size, and JPEGs, which have no alpha
+ * channel, are decoded at two bytes per pixel instead of four.
+ * Every decode allocates a new bitmap. Bitmaps are not decoded into old ones, since a bitmap
+ * dropped from a cache may still be shown by a view, which would then show the wrong poster.
+ * Can be used from any thread.
+ */
+public class PosterDecoder {
+    private static final String JPEG = "image/jpeg";
+
+    // Where a poster is decoded from; each decode reads it again from the start
+    private interface Source {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * Decodes a poster to cover a view of the given size.
+     *
+     * @param data      The encoded poster.
+     * @param reqWidth  The width of the view in pixels, or 0 for the full size.
+     * @param reqHeight The height of the view in pixels, or 0 for the full size.
+     * @return The bitmap, or null if the data could not be decoded.
+     */
+    @Nullable
+    public Bitmap decode(byte[] data, int reqWidth, int reqHeight) {
+        return decode(options -> BitmapFactory.decodeByteArray(data, 0, data.length, options), reqWidth, reqHeight);
+    }
+
+    /**
+     * Decodes a poster stored in a file to cover a view of the given size,
+     * without reading the whole file into memory.
+     *
+     * @param file      The file holding the encoded poster.
+     * @param reqWidth  The width of the view in pixels, or 0 for the full size.
+     * @param reqHeight The height of the view in pixels, or 0 for the full size.
+     * @return The bitmap, or null if the file could not be decoded.
+     */
+    @Nullable
+    public Bitmap decode(File file, int reqWidth, int reqHeight) {
+        String path = file.getPath();
+        return decode(options -> BitmapFactory.decodeFile(path, options), reqWidth, reqHeight);
+    }
+
+    @Nullable
+    private Bitmap decode(Source source, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        source.decode(options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        boolean opaque = JPEG.equals(options.outMimeType);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = PosterSampling.sampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inPreferredConfig = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        return source.decode(options);
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.shopping_basket;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps poster JPEG bytes on disk, one file per poster, so a poster seen before
+ * is decoded from local storage instead of being fetched again.
+ * A poster is keyed by its event's ID and its content hash ({@link PosterBlob#hash(byte[])}),
+ * so a changed poster gets a new key and a stale one is never returned.
+ * The cache holds at most a fixed number of bytes, evicting the least recently used posters
+ * when full; the order survives restarts through the files' modification times.
+ * Every method touches the disk and belongs on a background thread.
+ */
+public class PosterDiskCache {
+    private static final String TAG = "PosterDiskCache";
+    private static final String SUFFIX = ".jpg";
+
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    // Hash used for posters still stored as Base64 on the event document
+    public static final String LEGACY_HASH = "legacy";
+
+    private final File directory;
+    private final long maxBytes;
+    // Sizes of the stored posters; access order makes the first one the least recently used
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private boolean loaded = false;
+
+    public PosterDiskCache(File directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    public PosterDiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds the key a poster is stored under
+     * @param eventId
+     *     ID of the event the poster belongs to
+     * @param posterHash
+     *     hash of the poster, or null for a poster not migrated yet
+     * @return
+     *     a key usable as a file name
+     */
+    public static String key(String eventId, String posterHash) {
+        return keyPrefix(eventId) + (posterHash != null && !posterHash.isEmpty() ? posterHash : LEGACY_HASH);
+    }
+
+    /**
+     * Gets the start shared by the keys of every poster of an event
+     * @param eventId
+     *     ID of the event
+     * @return
+     *     the prefix of its keys
+     */
+    public static String keyPrefix(String eventId) {
+        // Event IDs may hold characters a file name can't, and the separator must stay unique
+        return eventId.replaceAll("[^A-Za-z0-9-]", "-") + "_";
+    }
+
+    /**
+     * Reads a stored poster and marks it as recently used
+     * @param key
+     *     key from {@link #key(String, String)}
+     * @return
+     *     the JPEG bytes, or null if the poster isn't stored
+     */
+    public synchronized byte[] get(String key) {
+        File file = getFile(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read poster " + key, e);
+            forget(key);
+            return null;
+        }
+    }
+
+    /**
+     * Finds a stored poster and marks it as recently used, so it can be decoded straight from disk
+     * @param key
+     *     key from {@link #key(String, String)}
+     * @return
+     *     the poster's file, or null if the poster isn't stored
+     */
+    public synchronized File getFile(String key) {
+        load();
+        if (sizes.get(key) == null) { // get, unlike containsKey, marks it as used
+            return null;
+        }
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            forget(key);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Stores a poster, evicting the least recently used ones if the cache is full
+     * @param key
+     *     key from {@link #key(String, String)}
+     * @param data
+     *     JPEG bytes of the poster
+     */
+    public synchronized void put(String key, byte[] data) {
+        if (data.length <= maxBytes) {
+            put(key, new ByteArrayInputStream(data));
+        }
+    }
+
+    /**
+     * Stores a poster read from a stream, without holding all of it in memory
+     * @param key
+     *     key from {@link #key(String, String)}
+     * @param in
+     *     stream of the poster's JPEG bytes; it is read to the end but not closed
+     * @return
+     *     true if the poster was stored
+     */
+    public synchronized boolean put(String key, InputStream in) {
+        load();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Failed to create " + directory);
+            return false;
+        }
+        File file = fileFor(key);
+        File temp = new File(directory, key + ".tmp");
+        long size;
+        try {
+            size = Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (size > maxBytes) {
+                temp.delete();
+                return false;
+            }
+            // Replace atomically, so a crash never leaves a partial poster behind
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write poster " + key, e);
+            temp.delete();
+            return false;
+        }
+        Long old = sizes.put(key, size);
+        totalBytes += size - (old != null ? old : 0);
+        trimToSize();
+        return sizes.containsKey(key);
+    }
+
+    /**
+     * Removes every stored poster of an event
+     * @param eventId
+     *     ID of the event
+     */
+    public synchronized void remove(String eventId) {
+        load();
+        String prefix = keyPrefix(eventId);
+        for (String key : new ArrayList<>(sizes.keySet())) {
+            if (key.startsWith(prefix)) {
+                fileFor(key).delete();
+                forget(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of stored posters
+     * @return
+     *     the number of posters
+     */
+    public synchronized int size() {
+        load();
+        return sizes.size();
+    }
+
+    /**
+     * Gets the bytes taken by the stored posters
+     * @return
+     *     the total size of the posters
+     */
+    public synchronized long getTotalBytes() {
+        load();
+        return totalBytes;
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private void forget(String key) {
+        Long size = sizes.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            fileFor(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    // Lists the stored posters once, oldest first, so the least recently used are evicted first
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> posters = new ArrayList<>(Arrays.asList(files));
+        posters.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : posters) {
+            String name = file.getName();
+            if (!name.endsWith(SUFFIX)) {
+                file.delete(); // Left over from an interrupted write
+                continue;
+            }
+            sizes.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+            totalBytes += file.length();
+        }
+        trimToSize();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.shopping_basket;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Turns a picked image into the poster renditions described in {@link PosterEncoding},
+ * on a background thread. The image is decoded no larger than the detail rendition needs,
+ * and each rendition is compressed at the highest JPEG quality within its byte budget.
+ */
+public class PosterEncoder {
+    private static final String TAG = "PosterEncoder";
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The encoded renditions of a poster.
+     */
+    public static class Renditions {
+        public final byte[] thumbnail;
+        public final byte[] detail;
+        public final long encodeMillis;
+
+        Renditions(byte[] thumbnail, byte[] detail, long encodeMillis) {
+            this.thumbnail = thumbnail;
+            this.detail = detail;
+            this.encodeMillis = encodeMillis;
+        }
+    }
+
+    // Callback for an encoded poster; error is null on success
+    public interface EncodeCallback {
+        void onCallback(@Nullable Renditions renditions, @Nullable Exception error);
+    }
+
+    /**
+     * Encodes an image into poster renditions.
+     *
+     * @param resolver The content resolver to read the image with.
+     * @param imageUri The image picked by the user.
+     * @param callback The callback that will be invoked on the main thread with the renditions, or the failure.
+     */
+    public static void encode(ContentResolver resolver, Uri imageUri, EncodeCallback callback) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                Bitmap detail = decode(resolver, imageUri);
+                Bitmap thumbnail = scale(detail, PosterEncoding.THUMBNAIL_SIZE);
+                byte[] detailBytes = PosterEncoding.fitToBudget(quality -> compress(detail, quality),
+                        PosterEncoding.DETAIL_BUDGET);
+                byte[] thumbnailBytes = PosterEncoding.fitToBudget(quality -> compress(thumbnail, quality),
+                        PosterEncoding.THUMBNAIL_BUDGET);
+                long encodeMillis = (System.nanoTime() - start) / 1_000_000;
+                Log.d(TAG, "Encoded poster in " + encodeMillis + " ms: thumbnail " + thumbnailBytes.length
+                        + " bytes, detail " + detailBytes.length + " bytes");
+                Renditions renditions = new Renditions(thumbnailBytes, detailBytes, encodeMillis);
+                mainHandler.post(() -> callback.onCallback(renditions, null));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error encoding poster", e);
+                mainHandler.post(() -> callback.onCallback(null, e));
+            }
+        });
+    }
+
+    // Decodes the image scaled to the detail rendition, sampling it down first if it is much larger
+    private static Bitmap decode(ContentResolver resolver, Uri imageUri) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream stream = open(resolver, imageUri)) {
+            BitmapFactory.decodeStream(stream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unsupported image");
+        }
+
+        int[] size = PosterEncoding.scaledSize(options.outWidth, options.outHeight, PosterEncoding.DETAIL_SIZE);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = PosterSampling.sampleSize(options.outWidth, options.outHeight, size[0], size[1]);
+        Bitmap bitmap;
+        try (InputStream stream = open(resolver, imageUri)) {
+            bitmap = BitmapFactory.decodeStream(stream, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Unsupported image");
+        }
+        return scale(bitmap, PosterEncoding.DETAIL_SIZE);
+    }
+
+    private static InputStream open(ContentResolver resolver, Uri imageUri) throws IOException {
+        InputStream stream = resolver.openInputStream(imageUri);
+        if (stream == null) {
+            throw new IOException("Unable to read " + imageUri);
+        }
+        return stream;
+    }
+
+    private static Bitmap scale(Bitmap bitmap, int maxSize) {
+        int[] size = PosterEncoding.scaledSize(bitmap.getWidth(), bitmap.getHeight(), maxSize);
+        if (size[0] == bitmap.getWidth() && size[1] == bitmap.getHeight()) {
+            return bitmap; // already small enough
+        }
+        return Bitmap.createScaledBitmap(bitmap, size[0], size[1], true);
+    }
+
+    private static byte[] compress(Bitmap bitmap, int quality) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out);
+        return out.toByteArray();
+    }
+}
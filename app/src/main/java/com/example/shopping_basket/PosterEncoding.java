@@ -0,0 +1,84 @@
+package com.example.shopping_basket;
+
+/**
+ * This class holds the sizes posters are encoded at and the search for the JPEG quality
+ * that fits each one in its byte budget.
+ * Every poster is stored twice: a thumbnail for the lists, which show it in a 180dp card,
+ * and a larger rendition for the event screens.
+ * JPEG size grows with quality, so the highest quality within a budget is found by a binary
+ * search, with a handful of encodes instead of one per quality step.
+ */
+public class PosterEncoding {
+    // Longest side and byte budget of the rendition shown in lists
+    public static final int THUMBNAIL_SIZE = 360;
+    public static final int THUMBNAIL_BUDGET = 40 * 1024;
+    // Longest side and byte budget of the rendition shown on the event screens
+    public static final int DETAIL_SIZE = 1024;
+    public static final int DETAIL_BUDGET = 200 * 1024;
+
+    // Below this, JPEG artifacts show even in a thumbnail
+    public static final int MIN_QUALITY = 40;
+    // Above this, the size grows quickly for no visible gain
+    public static final int MAX_QUALITY = 90;
+
+    // Encodes an image at a JPEG quality
+    public interface QualityEncoder {
+        byte[] encode(int quality);
+    }
+
+    private PosterEncoding() { }
+
+    /**
+     * Gets the size of an image scaled down to fit a square, keeping its aspect ratio
+     * @param width
+     *     width of the image in pixels
+     * @param height
+     *     height of the image in pixels
+     * @param maxSize
+     *     longest side allowed
+     * @return
+     *     the scaled width and height; the original size if it already fits
+     */
+    public static int[] scaledSize(int width, int height, int maxSize) {
+        float scale = Math.min((float) maxSize / width, (float) maxSize / height);
+        if (scale >= 1.0f) {
+            return new int[] {width, height};
+        }
+        return new int[] {Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale))};
+    }
+
+    /**
+     * Encodes an image at the highest quality that fits a byte budget
+     * @param encoder
+     *     encodes the image at a given quality
+     * @param budget
+     *     largest number of bytes allowed
+     * @return
+     *     the encoded image; at {@link #MIN_QUALITY} if nothing fits the budget
+     */
+    public static byte[] fitToBudget(QualityEncoder encoder, int budget) {
+        byte[] best = encoder.encode(MAX_QUALITY);
+        if (best.length <= budget) {
+            return best;
+        }
+        byte[] smallest = null;
+        int low = MIN_QUALITY;
+        int high = MAX_QUALITY - 1;
+        best = null;
+        while (low <= high) {
+            int quality = (low + high) >>> 1;
+            byte[] encoded = encoder.encode(quality);
+            if (encoded.length <= budget) {
+                best = encoded;
+                low = quality + 1;
+            } else {
+                if (quality == MIN_QUALITY) {
+                    smallest = encoded;
+                }
+                high = quality - 1;
+            }
+        }
+        // If nothing fit, the search ended by trying MIN_QUALITY
+        return best != null ? best : smallest;
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.shopping_basket;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes posters in the "posters" collection, where each poster is a document named
+ * after the SHA-256 hash of its JPEG bytes (see {@link PosterBlob}). Events refer to their poster
+ * by that hash in {@link #POSTER_HASH}, so event queries no longer carry the image, and an image
+ * used by several events is stored once.
+ * The bytes are stored as a Blob rather than Base64. Posters over {@link PosterBlob#CHUNK_SIZE}
+ * keep their first chunk on the poster document and the rest in its "chunks" subcollection.
+ * Since a poster never changes once written, reads are answered from the local Firestore cache
+ * when possible.
+ */
+public class PosterRepository {
+    private static final String TAG = "PosterRepository";
+    private static final String EVENTS_COLLECTION = "events";
+    private static final String POSTERS_COLLECTION = "posters";
+    private static final String CHUNKS_COLLECTION = "chunks";
+    // Field on the event document holding the hash of its poster
+    public static final String POSTER_HASH = "posterHash";
+    // Field on the event document holding the hash of its list thumbnail (see PosterEncoding)
+    public static final String THUMBNAIL_HASH = "thumbnailHash";
+    // Field on the event document holding the size of its poster in bytes
+    public static final String POSTER_SIZE = "posterSize";
+    // Field on event documents written before posters were moved out of them
+    public static final String LEGACY_POSTER_FIELD = "posterBase64";
+    // One batch holds every chunk, and a batch is limited to 10 MiB
+    public static final int MAX_POSTER_SIZE = 8 * 1024 * 1024;
+    // Events read per page when migrating, since each legacy event can hold a poster near the 1 MiB document limit
+    private static final int MIGRATION_PAGE_SIZE = 20;
+
+    // Callback for a stored poster; error is null on success
+    public interface HashCallback {
+        void onCallback(@Nullable String hash, @Nullable Exception error);
+    }
+
+    // Callback for a poster's JPEG bytes, null if there is none or it could not be read
+    public interface PosterCallback {
+        void onCallback(@Nullable byte[] data);
+    }
+
+    // Callback for a page of poster metadata and the Base64 posters it came with, keyed by event ID;
+    // last is null when there are no more pages
+    public interface PosterPageCallback {
+        void onCallback(List<EventPoster> page, Map<String, String> legacyPosters,
+                        @Nullable DocumentSnapshot last, @Nullable Exception error);
+    }
+
+    // Callback for a migration; error is null if every event was migrated
+    public interface MigrationCallback {
+        void onCallback(int migratedEvents, @Nullable Exception error);
+    }
+
+    /**
+     * Stores a poster under its hash. Nothing is written if the same image is already stored.
+     *
+     * @param data     The JPEG bytes of the poster.
+     * @param callback The callback that will be invoked with the poster's hash, or the failure.
+     */
+    public static void putPoster(byte[] data, HashCallback callback) {
+        if (data.length > MAX_POSTER_SIZE) {
+            callback.onCallback(null, new IllegalArgumentException("Poster is too large: " + data.length + " bytes"));
+            return;
+        }
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        String hash = PosterBlob.hash(data);
+        DocumentReference posterRef = db.collection(POSTERS_COLLECTION).document(hash);
+
+        posterRef.get()
+                .addOnSuccessListener(document -> {
+                    if (document.exists()) {
+                        Log.d(TAG, "Poster already stored: " + hash);
+                        callback.onCallback(hash, null);
+                        return;
+                    }
+                    List<byte[]> chunks = PosterBlob.split(data, PosterBlob.CHUNK_SIZE);
+                    WriteBatch batch = db.batch();
+                    Map<String, Object> fields = new HashMap<>();
+                    fields.put("data", Blob.fromBytes(chunks.get(0)));
+                    fields.put("chunkCount", chunks.size());
+                    fields.put("size", data.length);
+                    batch.set(posterRef, fields);
+                    for (int i = 1; i < chunks.size(); i++) {
+                        Map<String, Object> chunk = new HashMap<>();
+                        chunk.put("index", i);
+                        chunk.put("data", Blob.fromBytes(chunks.get(i)));
+                        batch.set(posterRef.collection(CHUNKS_COLLECTION).document(String.valueOf(i)), chunk);
+                    }
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> callback.onCallback(hash, null))
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Error writing poster: " + hash, e);
+                                callback.onCallback(null, e);
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error checking for poster: " + hash, e);
+                    callback.onCallback(null, e);
+                });
+    }
+
+    /**
+     * Reads a poster by its hash and checks the bytes against it.
+     *
+     * @param hash     The hash of the poster.
+     * @param callback The callback that will be invoked with the JPEG bytes, or null if not found.
+     */
+    public static void getPoster(String hash, PosterCallback callback) {
+        DocumentReference posterRef = FirebaseFirestore.getInstance().collection(POSTERS_COLLECTION).document(hash);
+        getCachedFirst(posterRef, document -> {
+            Blob first = document.exists() ? document.getBlob("data") : null;
+            if (first == null) {
+                Log.w(TAG, "No such poster: " + hash);
+                callback.onCallback(null);
+                return;
+            }
+            Long chunkCount = document.getLong("chunkCount");
+            if (chunkCount == null || chunkCount <= 1) {
+                callback.onCallback(verified(hash, first.toBytes()));
+                return;
+            }
+            posterRef.collection(CHUNKS_COLLECTION)
+                    .orderBy("index")
+                    .get()
+                    .addOnSuccessListener(querySnapshot -> {
+                        List<byte[]> chunks = new ArrayList<>();
+                        chunks.add(first.toBytes());
+                        for (DocumentSnapshot chunk : querySnapshot.getDocuments()) {
+                            Blob blob = chunk.getBlob("data");
+                            if (blob != null) {
+                                chunks.add(blob.toBytes());
+                            }
+                        }
+                        callback.onCallback(verified(hash, PosterBlob.join(chunks)));
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Error reading chunks of poster: " + hash, e);
+                        callback.onCallback(null);
+                    });
+        }, callback);
+    }
+
+    /**
+     * Reads the poster of an event, by hash when the event has one and otherwise from the
+     * Base64 field of an event document that has not been migrated yet.
+     *
+     * @param eventId    The ID of the event.
+     * @param posterHash The hash of the event's poster, or null if it has none or is not migrated.
+     * @param callback   The callback that will be invoked with the JPEG bytes, or null if there is no poster.
+     */
+    public static void loadPoster(String eventId, @Nullable String posterHash, PosterCallback callback) {
+        if (posterHash != null && !posterHash.isEmpty()) {
+            getPoster(posterHash, callback);
+            return;
+        }
+        if (eventId == null || eventId.isEmpty()) {
+            callback.onCallback(null);
+            return;
+        }
+        FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .document(eventId)
+                .get()
+                .addOnSuccessListener(document -> callback.onCallback(decodeLegacy(document)))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error reading poster of event: " + eventId, e);
+                    callback.onCallback(null);
+                });
+    }
+
+    /**
+     * Fetches one page of poster metadata, from the events that have a poster, in document ID order.
+     * Images stored with their hash are not kept; each one is loaded when it is shown. Posters not
+     * migrated yet are read with the page anyway, so they are passed on to be cached rather than
+     * fetched a second time.
+     *
+     * @param after    The last document of the previous page, or null for the first page.
+     * @param limit    The largest number of posters in the page.
+     * @param callback The callback that will be invoked with the page and the cursor for the next one.
+     */
+    public static void getPosterPage(@Nullable DocumentSnapshot after, int limit, PosterPageCallback callback) {
+        Query query = FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .whereEqualTo("hasPoster", true)
+                .orderBy(FieldPath.documentId())
+                .limit(limit);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+                    List<EventPoster> page = new ArrayList<>();
+                    Map<String, String> legacyPosters = new HashMap<>();
+                    for (DocumentSnapshot document : documents) {
+                        String posterHash = document.getString(POSTER_HASH);
+                        String posterBase64 = document.getString(LEGACY_POSTER_FIELD);
+                        if (posterHash == null && posterBase64 == null) {
+                            continue; // nothing to display
+                        }
+                        if (posterHash == null) {
+                            legacyPosters.put(document.getId(), posterBase64);
+                        }
+                        Long size = document.getLong(POSTER_SIZE);
+                        page.add(new EventPoster(
+                                document.getId(),
+                                document.getString("name"),
+                                posterHash,
+                                document.getString(THUMBNAIL_HASH),
+                                document.getString("posterUploaderId"),
+                                document.getString("posterUploaderName"),
+                                size != null ? size : posterBase64 != null ? Base64Stream.decodedLength(posterBase64) : 0));
+                    }
+                    DocumentSnapshot last = Paging.nextCursor(documents, limit);
+                    callback.onCallback(page, legacyPosters, last, null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching posters", e);
+                    callback.onCallback(new ArrayList<>(), new HashMap<>(), null, e);
+                });
+    }
+
+    /**
+     * Moves the poster of every event that still stores it as Base64 into the "posters" collection,
+     * one event at a time, stopping at the first failure. Each event is left with the poster's hash
+     * and without the Base64 field. Running it again only migrates what is left.
+     * Events with a poster are read a few at a time by document ID, and each page is migrated
+     * before the next is fetched, since every legacy document can carry close to a megabyte of Base64.
+     *
+     * @param callback The callback that will be invoked with the number of events migrated.
+     */
+    public static void migrateAllPosters(MigrationCallback callback) {
+        migratePostersAfter(null, 0, callback);
+    }
+
+    private static void migratePostersAfter(@Nullable DocumentSnapshot after, int migrated,
+                                            MigrationCallback callback) {
+        Query query = FirebaseFirestore.getInstance()
+                .collection(EVENTS_COLLECTION)
+                .whereEqualTo("hasPoster", true)
+                .orderBy(FieldPath.documentId())
+                .limit(MIGRATION_PAGE_SIZE);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+                    List<DocumentSnapshot> pending = new ArrayList<>();
+                    for (DocumentSnapshot document : documents) {
+                        if (document.getString(LEGACY_POSTER_FIELD) != null) {
+                            pending.add(document);
+                        }
+                    }
+                    DocumentSnapshot last = Paging.nextCursor(documents, MIGRATION_PAGE_SIZE);
+                    migrateInOrder(pending, 0, migrated, (total, error) -> {
+                        if (error != null || last == null) {
+                            Log.d(TAG, "Migrated posters of " + total + " events");
+                            callback.onCallback(total, error);
+                        } else {
+                            migratePostersAfter(last, total, callback);
+                        }
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching events to migrate", e);
+                    callback.onCallback(migrated, e);
+                });
+    }
+
+    private static void migrateInOrder(List<DocumentSnapshot> documents, int index, int migrated,
+                                       MigrationCallback callback) {
+        if (index == documents.size()) {
+            callback.onCallback(migrated, null);
+            return;
+        }
+        DocumentSnapshot document = documents.get(index);
+        byte[] data = decodeLegacy(document);
+        if (data == null) {
+            // Unreadable Base64 cannot be recovered, so leave it for the admin to remove
+            migrateInOrder(documents, index + 1, migrated, callback);
+            return;
+        }
+        putPoster(data, (hash, error) -> {
+            if (error != null) {
+                callback.onCallback(migrated, error);
+                return;
+            }
+            document.getReference()
+                    .update(POSTER_HASH, hash,
+                            POSTER_SIZE, data.length,
+                            LEGACY_POSTER_FIELD, FieldValue.delete(),
+                            EventRepository.UPDATED_AT, FieldValue.serverTimestamp())
+                    .addOnSuccessListener(aVoid -> migrateInOrder(documents, index + 1, migrated + 1, callback))
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Error migrating poster of event: " + document.getId(), e);
+                        callback.onCallback(migrated, e);
+                    });
+        });
+    }
+
+    @Nullable
+    private static byte[] decodeLegacy(DocumentSnapshot document) {
+        String posterBase64 = document.exists() ? document.getString(LEGACY_POSTER_FIELD) : null;
+        if (posterBase64 == null || posterBase64.isEmpty()) {
+            return null;
+        }
+        try {
+            // Decoded from the string in place, without a byte copy of it
+            return Base64Stream.decode(posterBase64);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid Base64 poster on event: " + document.getId(), e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static byte[] verified(String hash, byte[] data) {
+        if (!PosterBlob.matches(hash, data)) {
+            Log.e(TAG, "Poster does not match its hash: " + hash);
+            return null;
+        }
+        return data;
+    }
+
+    // Posters never change once written, so a cached copy is as good as the server's
+    private static void getCachedFirst(DocumentReference ref, OnSuccessListener<DocumentSnapshot> listener,
+                                       PosterCallback callback) {
+        Runnable fromServer = () -> ref.get()
+                .addOnSuccessListener(listener)
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error reading poster: " + ref.getId(), e);
+                    callback.onCallback(null);
+                });
+        ref.get(Source.CACHE)
+                .addOnSuccessListener(document -> {
+                    if (document.exists()) {
+                        listener.onSuccess(document);
+                    } else {
+                        fromServer.run(); // Only a stored poster is final
+                    }
+                })
+                .addOnFailureListener(notCached -> fromServer.run());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.shopping_basket;
+
+/**
+ * This class holds the arithmetic for decoding a poster at the size it is shown at.
+ * A JPEG decoder can skip pixels by a power of two (the sample size), so a poster shown
+ * in a small view is decoded at a fraction of its full size. The poster must still cover
+ * the view, since posters are shown cropped to fill it.
+ * The sizes here match what the decoder allocates.
+ */
+public class PosterSampling {
+    // Bytes per pixel with and without an alpha channel (ARGB_8888 and RGB_565)
+    public static final int BYTES_PER_PIXEL_ALPHA = 4;
+    public static final int BYTES_PER_PIXEL_OPAQUE = 2;
+
+    private PosterSampling() { }
+
+    /**
+     * Picks the largest sample size that still covers the view
+     * @param width
+     *     width of the poster in pixels
+     * @param height
+     *     height of the poster in pixels
+     * @param reqWidth
+     *     width of the view in pixels, 0 for the full size
+     * @param reqHeight
+     *     height of the view in pixels, 0 for the full size
+     * @return
+     *     the sample size, a power of two and at least 1
+     */
+    public static int sampleSize(int width, int height, int reqWidth, int reqHeight) {
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return 1;
+        }
+        int sampleSize = 1;
+        while (sampledSize(width, sampleSize * 2) >= reqWidth
+                && sampledSize(height, sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Gets a dimension of a poster decoded with a sample size
+     * @param size
+     *     width or height of the poster in pixels
+     * @param sampleSize
+     *     sample size it is decoded with
+     * @return
+     *     the decoded width or height, rounded up like the JPEG decoder does
+     */
+    public static int sampledSize(int size, int sampleSize) {
+        return (size + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * Gets the bytes a decoded poster takes in memory
+     * @param width
+     *     width of the poster in pixels
+     * @param height
+     *     height of the poster in pixels
+     * @param sampleSize
+     *     sample size it is decoded with
+     * @param bytesPerPixel
+     *     {@link #BYTES_PER_PIXEL_ALPHA} or {@link #BYTES_PER_PIXEL_OPAQUE}
+     * @return
+     *     the size of the decoded bitmap
+     */
+    public static long allocationBytes(int width, int height, int sampleSize, int bytesPerPixel) {
+        return (long) sampledSize(width, sampleSize) * sampledSize(height, sampleSize) * bytesPerPixel;
+    }
+}
@@ -33,6 +33,21 @@ public class Profile implements Serializable {
         this.deviceId = deviceId;
     }
 
+    /**
+     * Copies another profile, such as to keep one that its holder may go on changing
+     * @param other
+     *     the profile to copy
+     */
+    public Profile(Profile other){
+        this.deviceId = other.deviceId;
+        this.guid = other.guid;
+        this.name = other.name;
+        this.phone = other.phone;
+        this.email = other.email;
+        this.notificationPref = other.notificationPref;
+        this.isAdmin = other.isAdmin;
+    }
+
     /**
      * This methods finds all relevant notifications for the profile
      * @param notifs
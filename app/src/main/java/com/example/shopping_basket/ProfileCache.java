@@ -0,0 +1,154 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a read-through cache of profiles keyed by GUID.
+ * It holds at most a fixed number of profiles, evicting the least recently used one
+ * when full. A profile that is requested again while it is still loading shares the
+ * load already in flight rather than starting another.
+ * Profiles are copied on the way in and out, so a caller changing a profile it passed in or was
+ * given, such as the one logged in, never changes the cached one.
+ * Callbacks are expected on a single thread, which is how Firestore delivers them.
+ */
+public class ProfileCache {
+    public static final int DEFAULT_MAX_SIZE = 200;
+
+    // Loads one profile from the backing store, such as a Firestore document read
+    public interface Loader {
+        void load(String guid, ProfileCallback callback);
+    }
+
+    // Callback for a single profile, null if it does not exist or could not be read
+    public interface ProfileCallback {
+        void onCallback(Profile profile);
+    }
+
+    private final Loader loader;
+    private final int maxSize;
+    private final LinkedHashMap<String, Profile> profiles;
+    private final Map<String, List<ProfileCallback>> pending = new HashMap<>();
+    private int hits = 0;
+    private int misses = 0;
+
+    public ProfileCache(Loader loader) {
+        this(loader, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param loader
+     *     reads profiles that are not cached
+     * @param maxSize
+     *     largest number of profiles kept
+     */
+    public ProfileCache(Loader loader, int maxSize) {
+        this.loader = loader;
+        this.maxSize = maxSize;
+        // Access order makes the eldest entry the least recently used one
+        this.profiles = new LinkedHashMap<String, Profile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Profile> eldest) {
+                return size() > ProfileCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets a profile, from the cache if present and from the loader otherwise
+     * @param guid
+     *     GUID of the profile
+     * @param callback
+     *     receives the profile, or null if it could not be loaded
+     */
+    public void get(String guid, ProfileCallback callback) {
+        Profile cached = profiles.get(guid);
+        if (cached != null) {
+            hits++;
+            callback.onCallback(new Profile(cached));
+            return;
+        }
+        misses++;
+
+        List<ProfileCallback> waiting = pending.get(guid);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        List<ProfileCallback> callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pending.put(guid, callbacks);
+        loader.load(guid, profile -> {
+            // A load that was invalidated while in flight is still answered, but not cached
+            if (pending.get(guid) == callbacks) {
+                pending.remove(guid);
+                if (profile != null) {
+                    profiles.put(guid, new Profile(profile));
+                }
+            }
+            for (ProfileCallback waiter : callbacks) {
+                waiter.onCallback(profile);
+            }
+        });
+    }
+
+    /**
+     * Adds or replaces a profile that was read or written elsewhere
+     * @param profile
+     *     the profile, keyed by its GUID
+     */
+    public void put(Profile profile) {
+        if (profile != null && profile.getGuid() != null) {
+            profiles.put(profile.getGuid(), new Profile(profile));
+        }
+    }
+
+    /**
+     * Gets a profile only if it is cached, without loading it or counting a hit or miss
+     * @param guid
+     *     GUID of the profile
+     * @return
+     *     a copy of the cached profile, or null
+     */
+    public Profile peek(String guid) {
+        Profile cached = profiles.get(guid);
+        return cached != null ? new Profile(cached) : null;
+    }
+
+    /**
+     * Drops a profile, so the next request for it goes to the loader
+     * @param guid
+     *     GUID of the profile
+     */
+    public void invalidate(String guid) {
+        profiles.remove(guid);
+        pending.remove(guid);
+    }
+
+    // Drops every profile
+    public void invalidateAll() {
+        profiles.clear();
+        pending.clear();
+    }
+
+    public int size() {
+        return profiles.size();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    // Fraction of requests answered from the cache, 0 before any request
+    public double getHitRate() {
+        int requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
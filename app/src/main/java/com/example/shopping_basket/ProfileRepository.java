@@ -1,4 +1,265 @@
 package com.example.shopping_basket;
 
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads and writes the "profiles" collection. Every profile read or written through here is kept
+ * in a bounded {@link ProfileCache}, so repeated lookups by GUID do not go back to Firestore.
+ * Writes update only the fields that changed and drop the cached copy so the next read is fresh.
+ * The cache keeps its own copies, so profiles passed in or handed out can be changed freely.
+ */
 public class ProfileRepository {
+    private static final String TAG = "ProfileRepository";
+    private static final String PROFILES_COLLECTION = "profiles";
+
+    private static final ProfileCache cache = new ProfileCache(ProfileRepository::loadProfile);
+
+    // Callback for a single profile, null if not found
+    public interface ProfileCallback {
+        void onCallback(@Nullable Profile profile);
+    }
+
+    // Callback for a list of profiles
+    public interface ProfilesCallback {
+        void onCallback(ArrayList<Profile> profiles, @Nullable Exception error);
+    }
+
+    // Callback for an email lookup; error is null if the lookup succeeded
+    public interface ExistsCallback {
+        void onCallback(boolean exists, @Nullable Exception error);
+    }
+
+    // Callback for a write; error is null on success
+    public interface WriteCallback {
+        void onCallback(@Nullable Exception error);
+    }
+
+    /**
+     * Gets a profile by GUID, from the cache if it has been read recently.
+     * Concurrent requests for the same profile share one read.
+     *
+     * @param guid     The GUID of the profile.
+     * @param callback The callback that will be invoked with the profile, or null if not found.
+     */
+    public static void getProfile(String guid, ProfileCallback callback) {
+        if (guid == null || guid.isEmpty()) {
+            Log.e(TAG, "GUID is null or empty. Cannot fetch profile.");
+            callback.onCallback(null);
+            return;
+        }
+        cache.get(guid, callback::onCallback);
+    }
+
+    private static void loadProfile(String guid, ProfileCache.ProfileCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(PROFILES_COLLECTION)
+                .document(guid)
+                .get()
+                .addOnSuccessListener(document -> callback.onCallback(toProfile(document)))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching profile: " + guid, e);
+                    callback.onCallback(null);
+                });
+    }
+
+    /**
+     * Finds the profile registered to a device, used to log in automatically.
+     *
+     * @param deviceId The Android ID of the device.
+     * @param callback The callback that will be invoked with the profile, or null if none is registered.
+     */
+    public static void getProfileByDevice(String deviceId, ProfileCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(PROFILES_COLLECTION)
+                .whereEqualTo("deviceId", deviceId)
+                .limit(1) // We only expect one match
+                .get()
+                .addOnSuccessListener(querySnapshot -> {
+                    Profile profile = querySnapshot.isEmpty() ? null : toProfile(querySnapshot.getDocuments().get(0));
+                    cache.put(profile);
+                    callback.onCallback(profile);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching profile for device: " + deviceId, e);
+                    callback.onCallback(null);
+                });
+    }
+
+    /**
+     * Checks whether a profile already uses an email address.
+     *
+     * @param email    The email address to look for.
+     * @param callback The callback that will be invoked with the result.
+     */
+    public static void emailExists(String email, ExistsCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(PROFILES_COLLECTION)
+                .whereEqualTo("email", email)
+                .limit(1) // We only need to know if at least one exists
+                .get()
+                .addOnSuccessListener(querySnapshot -> callback.onCallback(!querySnapshot.isEmpty(), null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error checking for email existence: " + email, e);
+                    callback.onCallback(false, e);
+                });
+    }
+
+    /**
+     * Fetches every profile, for the admin profile browser.
+     *
+     * @param callback The callback that will be invoked with the profiles.
+     */
+    public static void getAllProfiles(ProfilesCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(PROFILES_COLLECTION)
+                .get()
+                .addOnSuccessListener(querySnapshot -> {
+                    ArrayList<Profile> profiles = new ArrayList<>();
+                    for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+                        Profile profile = toProfile(document);
+                        if (profile != null) {
+                            profiles.add(profile);
+                        }
+                    }
+                    callback.onCallback(profiles, null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error loading profiles", e);
+                    callback.onCallback(new ArrayList<>(), e);
+                });
+    }
+
+    /**
+     * Writes a new profile document, keyed by its GUID.
+     *
+     * @param profile  The profile to create.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    public static void createProfile(Profile profile, WriteCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(PROFILES_COLLECTION)
+                .document(profile.getGuid())
+                .set(profile)
+                .addOnSuccessListener(aVoid -> {
+                    cache.put(profile);
+                    callback.onCallback(null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error writing profile: " + profile.getGuid(), e);
+                    callback.onCallback(e);
+                });
+    }
+
+    /**
+     * Updates some fields of a profile, leaving the rest of the document as it is.
+     *
+     * @param guid     The GUID of the profile.
+     * @param fields   The field names and their new values.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    public static void updateFields(String guid, Map<String, Object> fields, WriteCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(PROFILES_COLLECTION)
+                .document(guid)
+                .update(fields)
+                .addOnSuccessListener(aVoid -> {
+                    cache.invalidate(guid);
+                    callback.onCallback(null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error updating profile: " + guid, e);
+                    callback.onCallback(e);
+                });
+    }
+
+    /**
+     * Updates whether a profile receives notifications.
+     *
+     * @param guid     The GUID of the profile.
+     * @param enabled  Whether notifications are on.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    public static void updateNotificationPref(String guid, boolean enabled, WriteCallback callback) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("notificationPref", enabled);
+        updateFields(guid, fields, callback);
+    }
+
+    /**
+     * Deletes a profile document.
+     *
+     * @param guid     The GUID of the profile.
+     * @param callback The callback that will be invoked with null on success, or the failure.
+     */
+    public static void deleteProfile(String guid, WriteCallback callback) {
+        FirebaseFirestore.getInstance()
+                .collection(PROFILES_COLLECTION)
+                .document(guid)
+                .delete()
+                .addOnSuccessListener(aVoid -> {
+                    cache.invalidate(guid);
+                    callback.onCallback(null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error deleting profile: " + guid, e);
+                    callback.onCallback(e);
+                });
+    }
+
+    /**
+     * Drops a cached profile, for when it is known to have changed elsewhere.
+     *
+     * @param guid The GUID of the profile.
+     */
+    public static void invalidate(String guid) {
+        cache.invalidate(guid);
+    }
+
+    /**
+     * Drops every cached profile, such as on logout, logging how well the cache did until then.
+     */
+    public static void invalidateAll() {
+        logCacheHitRate();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the fraction of profile lookups answered from the cache.
+     *
+     * @return The hit rate, between 0 and 1.
+     */
+    public static double getCacheHitRate() {
+        return cache.getHitRate();
+    }
+
+    /**
+     * Logs the fraction of profile lookups answered from the cache so far.
+     */
+    public static void logCacheHitRate() {
+        Log.d(TAG, String.format(Locale.US, "Profile cache answered %.0f%% of %d lookups",
+                getCacheHitRate() * 100, cache.getHits() + cache.getMisses()));
+    }
+
+    @Nullable
+    private static Profile toProfile(DocumentSnapshot document) {
+        if (document == null || !document.exists()) {
+            return null;
+        }
+        Profile profile = document.toObject(Profile.class);
+        // Ensure the guid field is set even if it wasn't stored explicitly.
+        if (profile != null && (profile.getGuid() == null || profile.getGuid().isEmpty())) {
+            profile.setGuid(document.getId());
+        }
+        return profile;
+    }
 }
@@ -0,0 +1,47 @@
+package com.example.shopping_basket;
+
+import java.util.Map;
+
+/**
+ * Stores profiles, such as the "profiles" collection in Firestore or an in-memory stand-in.
+ */
+public interface ProfileStore {
+
+    /**
+     * Gets one profile
+     * @param guid
+     *     GUID of the profile
+     * @param callback
+     *     receives the profile, or null if it does not exist or could not be read
+     */
+    void getProfile(String guid, ProfileCache.ProfileCallback callback);
+
+    /**
+     * Creates or replaces a profile, keyed by its GUID
+     * @param profile
+     *     profile to write
+     * @param callback
+     *     receives null on success, or the failure
+     */
+    void putProfile(Profile profile, LotteryCommit.CommitCallback callback);
+
+    /**
+     * Updates some fields of a profile, leaving the rest as they are
+     * @param guid
+     *     GUID of the profile
+     * @param fields
+     *     field names and their new values
+     * @param callback
+     *     receives null on success, or the failure
+     */
+    void updateProfile(String guid, Map<String, Object> fields, LotteryCommit.CommitCallback callback);
+
+    /**
+     * Deletes a profile
+     * @param guid
+     *     GUID of the profile
+     * @param callback
+     *     receives null on success, or the failure
+     */
+    void deleteProfile(String guid, LotteryCommit.CommitCallback callback);
+}
@@ -23,7 +23,6 @@ import android.widget.ListView;
 
 // We no longer need FirebaseAuth here
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
@@ -144,18 +143,10 @@ public class RegisteredEventFragment extends DialogFragment {
     }
 
     /**
-     * Fetches events from Firestore where the user is registered, sorting them by most recent.
-     * It queries the {@code enrollList}, {@code waitingList}, {@code inviteList}, and {@code cancelList} arrays.
+     * Fetches the events the user has registered for with a single query on the
+     * {@code participantGuids} index (see {@link RegistrationIndex}), newest first.
+     * The matches are sorted on the client, so the query needs no composite index.
      * Populates the list and notifies the adapter to refresh the UI.
-     * This query requires a composite index in Firestore for each field being queried.
-     */
-    // In RegisteredEventFragment.java
-
-    /**
-     * Fetches ALL events from Firestore and filters them on the client-side to find
-     * where the user is registered. This is necessary because Firestore cannot query
-     * for a value within an array of objects.
-     * This method can be slow if there are many events in the database.
      */
     private void loadRegisteredEvents() {
         if (currentUser == null || currentUser.getGuid() == null || currentUser.getGuid().isEmpty()) {
@@ -167,51 +158,47 @@ public class RegisteredEventFragment extends DialogFragment {
         String userGuid = currentUser.getGuid();
         ArrayList<Event> foundEvents = new ArrayList<>();
 
-        // Fetch ALL events. We cannot use a 'where' clause here.
         db.collection("events")
-                .orderBy("eventTime", Query.Direction.DESCENDING)
+                .whereArrayContains(RegistrationIndex.FIELD, userGuid)
                 .get()
                 .addOnCompleteListener(task -> {
                     if (task.isSuccessful() && task.getResult() != null) {
-                        // Loop through every single event returned from the database
                         for (QueryDocumentSnapshot document : task.getResult()) {
                             Event event = document.toObject(Event.class);
-
-                            // Now, perform the check in your Java code
                             if (isUserInEvent(event, userGuid)) {
-                                // Prevent adding the same event multiple times
-                                if (!foundEvents.contains(event)) {
-                                    foundEvents.add(event);
-                                }
+                                foundEvents.add(event);
                             }
                         }
+                        foundEvents.sort((a, b) -> compareEventTime(b, a));
                     } else {
                         // Log the error if the task failed
-                        Log.e(TAG, "Error getting all events for filtering.", task.getException());
+                        Log.e(TAG, "Error getting registered events.", task.getException());
                     }
 
-                    // All filtering is done, now update the UI with the events we found.
-                    // The list is already sorted by the initial query.
                     updateUI(foundEvents);
                 });
     }
 
+    // Orders events by eventTime, with events that have no time last
+    private static int compareEventTime(Event a, Event b) {
+        if (a.getEventTime() == null) return b.getEventTime() == null ? 0 : -1;
+        if (b.getEventTime() == null) return 1;
+        return a.getEventTime().compareTo(b.getEventTime());
+    }
+
     /**
      * Helper method to check if a user's GUID exists in any of the event's participation lists.
+     * Events that keep their entrants in a subcollection are trusted to the index.
      * @param event The Event object to check.
      * @param userGuid The user GUID to look for.
      * @return true if the user is found in any list, false otherwise.
      */
     private boolean isUserInEvent(Event event, String userGuid) {
         if (event == null || userGuid == null) return false;
+        if (event.isEntrantsInSubcollection()) return true;
 
-        // Check each list of Profile objects for a matching GUID
-        if (event.getWaitingList().stream().anyMatch(p -> userGuid.equals(p.getGuid()))) return true;
-        if (event.getEnrollList().stream().anyMatch(p -> userGuid.equals(p.getGuid()))) return true;
-        if (event.getInviteList().stream().anyMatch(p -> userGuid.equals(p.getGuid()))) return true;
-        if (event.getCancelList().stream().anyMatch(p -> userGuid.equals(p.getGuid()))) return true;
-
-        return false;
+        // A single lookup covers the waiting, invite, enroll and cancel lists
+        return event.statusOf(userGuid) != EntrantStatus.NONE;
     }
 
 
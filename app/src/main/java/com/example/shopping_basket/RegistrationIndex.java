@@ -0,0 +1,90 @@
+package com.example.shopping_basket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class describes the user to events index: each event document carries the GUIDs of
+ * everyone who has registered for it in {@link #FIELD}, so the events a user registered for
+ * can be found with one array-contains query instead of scanning every event.
+ * The index is updated along with each registration; {@link #compare} is used to check it
+ * against the participation lists and rebuild it if they have drifted apart.
+ */
+public class RegistrationIndex {
+    public static final String FIELD = "participantGuids";
+
+    /**
+     * Difference between the stored index of one event and its participation lists
+     */
+    public static class Mismatch {
+        private final String eventId;
+        private final List<String> missing;
+        private final List<String> extra;
+        private final List<String> expected;
+
+        Mismatch(String eventId, List<String> missing, List<String> extra, List<String> expected) {
+            this.eventId = eventId;
+            this.missing = missing;
+            this.extra = extra;
+            this.expected = expected;
+        }
+
+        public String getEventId() {
+            return eventId;
+        }
+
+        // Registered entrants absent from the index
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        // GUIDs in the index with no matching entrant
+        public List<String> getExtra() {
+            return extra;
+        }
+
+        // The index as it should be
+        public List<String> getExpected() {
+            return expected;
+        }
+    }
+
+    private RegistrationIndex() {
+        // Static helpers only
+    }
+
+    /**
+     * Compares the stored index of an event with the GUIDs found in its participation lists
+     * @param eventId
+     *     event being checked
+     * @param stored
+     *     GUIDs stored in the index, may be null if the field was never written
+     * @param expected
+     *     GUIDs of every registered entrant
+     * @return
+     *     the differences, or null if the index is consistent
+     */
+    public static Mismatch compare(String eventId, Collection<String> stored, Collection<String> expected) {
+        HashSet<String> storedSet = stored != null ? new HashSet<>(stored) : new HashSet<>();
+        HashSet<String> expectedSet = new HashSet<>(expected);
+
+        List<String> missing = new ArrayList<>();
+        for (String guid : expected) {
+            if (!storedSet.contains(guid)) {
+                missing.add(guid);
+            }
+        }
+        List<String> extra = new ArrayList<>();
+        for (String guid : storedSet) {
+            if (!expectedSet.contains(guid)) {
+                extra.add(guid);
+            }
+        }
+        if (missing.isEmpty() && extra.isEmpty()) {
+            return null;
+        }
+        return new Mismatch(eventId, missing, extra, new ArrayList<>(expected));
+    }
+}
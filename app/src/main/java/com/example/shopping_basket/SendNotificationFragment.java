@@ -16,9 +16,6 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.example.shopping_basket.databinding.FragmentSendNotificationBinding;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -133,31 +130,42 @@ public class SendNotificationFragment extends DialogFragment {
     }
 
     private void uploadToFirebase(List<Notif> notifBatch) {
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        WriteBatch batch = db.batch();
-
         // Check if there is anything to send to prevent an empty batch commit
         if (notifBatch == null || notifBatch.isEmpty()) {
             Toast.makeText(getContext(), "No recipients registered or selected.", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Loop through the list of notifications and add each one to the batch
-        for (Notif notification : notifBatch) {
-            DocumentReference notifRef = db.collection("notifications").document();
-            batch.set(notifRef, notification);
-        }
-
-        // Commit the batch to Firestore.
-        batch.commit()
-                .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(getContext(), "Notification sent successfully!", Toast.LENGTH_SHORT).show();
-                    Log.e("Firestore", "All notifications sent successfully.");
-                    dismiss();
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(getContext(), "Failed to send notification: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    Log.e("Firestore", "Error writing notification batch", e);
+        // Large recipient lists are split into batches within Firestore's write limit
+        binding.buttonSendNotification.setEnabled(false);
+        EventRepository.notificationFanOut(requireContext()).send(notifBatch,
+                (sent, total) -> {
+                    if (binding != null) {
+                        binding.buttonSendNotification.setText("Sending " + sent + "/" + total);
+                    }
+                },
+                (sentBatches, failedBatches, error) -> {
+                    if (error == null) {
+                        Log.i("Firestore", "All notifications sent successfully.");
+                        if (getContext() != null) {
+                            Toast.makeText(getContext(), "Notification sent successfully!", Toast.LENGTH_SHORT).show();
+                        }
+                    } else {
+                        // Unsent batches stay checkpointed and are retried the next time the app starts
+                        Log.e("Firestore", "Error writing notification batch", error);
+                        if (getContext() != null) {
+                            Toast.makeText(getContext(), "Failed to send notification: " + error.getMessage(), Toast.LENGTH_LONG).show();
+                        }
+                    }
+                    if (binding != null) {
+                        dismiss();
+                    }
                 });
     }
-}
\ No newline at end of file
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        binding = null;
+    }
+}
@@ -12,8 +12,6 @@ import android.provider.Settings.Secure;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.android.material.textfield.TextInputEditText;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.UUID;
 
@@ -35,7 +33,6 @@ public class SignupActivity extends AppCompatActivity {
     private ProgressBar progressBar;
 
     // Firebase
-    private FirebaseFirestore db;
 
     /**
      * Called when the activity is first created.
@@ -63,7 +60,6 @@ public class SignupActivity extends AppCompatActivity {
         setContentView(R.layout.activity_signup);
 
         // Initialize Firebase
-        db = FirebaseFirestore.getInstance();
 
         // Initialize Views
         initializeViews();
@@ -120,28 +116,21 @@ public class SignupActivity extends AppCompatActivity {
      * @param phone The user's (optional) phone number to be passed along for profile creation.
      */
     private void checkIfEmailExists(String name, String email, String phone) {
-        db.collection("profiles")
-                .whereEqualTo("email", email)
-                .limit(1) // We only need to know if at least one exists
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        QuerySnapshot snapshot = task.getResult();
-                        if (snapshot != null && !snapshot.isEmpty()) {
-                            // Email is already taken
-                            Toast.makeText(this, "This email address is already registered.", Toast.LENGTH_LONG).show();
-                            setLoading(false);
-                        } else {
-                            // Email is unique, proceed to create the profile
-                            createProfileInDatabase(name, email, phone);
-                        }
-                    } else {
-                        // Handle failure to query the database
-                        Log.e(TAG, "Error checking for email existence: ", task.getException());
-                        Toast.makeText(this, "Error checking profile. Please try again.", Toast.LENGTH_SHORT).show();
-                        setLoading(false);
-                    }
-                });
+        ProfileRepository.emailExists(email, (exists, error) -> {
+            if (error != null) {
+                // Handle failure to query the database
+                Log.e(TAG, "Error checking for email existence: ", error);
+                Toast.makeText(this, "Error checking profile. Please try again.", Toast.LENGTH_SHORT).show();
+                setLoading(false);
+            } else if (exists) {
+                // Email is already taken
+                Toast.makeText(this, "This email address is already registered.", Toast.LENGTH_LONG).show();
+                setLoading(false);
+            } else {
+                // Email is unique, proceed to create the profile
+                createProfileInDatabase(name, email, phone);
+            }
+        });
     }
 
 
@@ -161,21 +150,20 @@ public class SignupActivity extends AppCompatActivity {
         String androidId = Secure.getString(getContentResolver(), Secure.ANDROID_ID);
         Profile newProfile = new Profile(androidId, guid, name, phone, email);
 
-        db.collection("profiles").document(guid)
-                .set(newProfile)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Profile created successfully in Firestore with GUID: " + guid);
-
-                    // Set the profile in the singleton for global app access
-                    ProfileManager.getInstance().setCurrentUserProfile(newProfile);
-
-                    navigateToMain();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error writing profile to Firestore", e);
-                    Toast.makeText(this, "Failed to save profile. Please try again.", Toast.LENGTH_SHORT).show();
-                    setLoading(false);
-                });
+        ProfileRepository.createProfile(newProfile, error -> {
+            if (error == null) {
+                Log.d(TAG, "Profile created successfully in Firestore with GUID: " + guid);
+
+                // Set the profile in the singleton for global app access
+                ProfileManager.getInstance().setCurrentUserProfile(newProfile);
+
+                navigateToMain();
+            } else {
+                Log.e(TAG, "Error writing profile to Firestore", error);
+                Toast.makeText(this, "Failed to save profile. Please try again.", Toast.LENGTH_SHORT).show();
+                setLoading(false);
+            }
+        });
     }
 
     /**
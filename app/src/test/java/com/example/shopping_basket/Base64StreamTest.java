@@ -0,0 +1,148 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that {@link Base64Stream} decodes what Base64 encoders produce, and counts the bytes
+ * allocated storing unmigrated posters through it against decoding them into a copy first.
+ * That is all the garbage each poster leaves for the collector, not the peak heap in use.
+ */
+public class Base64StreamTest {
+    private static final int POSTER_COUNT = 200;
+    // About the size of a 512px poster saved at JPEG quality 60
+    private static final int POSTER_SIZE = 48 * 1024;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("base64-stream").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private byte[] poster(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testDecodesEncoderOutput() {
+        for (int size = 0; size < 10; size++) {
+            byte[] data = poster(size, size);
+            // Plain, and with line breaks as Android's Base64.DEFAULT writes them
+            assertArrayEquals(data, Base64Stream.decode(Base64.getEncoder().encodeToString(data)));
+            assertArrayEquals(data, Base64Stream.decode(Base64.getMimeEncoder().encodeToString(data)));
+            assertArrayEquals(data, Base64Stream.decode(Base64.getEncoder().withoutPadding().encodeToString(data)));
+        }
+        byte[] data = poster(POSTER_SIZE, 1);
+        String text = Base64.getMimeEncoder().encodeToString(data);
+        assertEquals(data.length, Base64Stream.decodedLength(text));
+        assertArrayEquals(data, Base64Stream.decode(text + "\n"));
+    }
+
+    @Test
+    public void testRejectsInvalidInput() {
+        for (String text : new String[] {"ab*d", "abcde", "\u00e9123"}) {
+            try {
+                Base64Stream.decode(text);
+                fail("Accepted " + text);
+            } catch (IllegalArgumentException expected) {
+                // Not Base64
+            }
+        }
+    }
+
+    @Test
+    public void testStreamsToDiskCache() {
+        byte[] data = poster(POSTER_SIZE, 2);
+        PosterDiskCache cache = new PosterDiskCache(directory);
+
+        assertTrue(cache.put("a_legacy", new Base64Stream(Base64.getMimeEncoder().encodeToString(data))));
+        assertArrayEquals(data, cache.get("a_legacy"));
+        assertTrue(!cache.put("b_legacy", new Base64Stream("not base64!")));
+        assertEquals(1, cache.size());
+    }
+
+    // Bytes allocated by this thread so far, or -1 if the JVM doesn't count them
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+            if (counting.isThreadAllocatedMemorySupported()) {
+                return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkPosterAllocation() {
+        List<String> posters = new ArrayList<>();
+        for (int i = 0; i < POSTER_COUNT; i++) {
+            posters.add(Base64.getMimeEncoder().encodeToString(poster(POSTER_SIZE, i)));
+        }
+        PosterDiskCache copied = new PosterDiskCache(new File(directory, "copied"), Long.MAX_VALUE);
+        PosterDiskCache streamed = new PosterDiskCache(new File(directory, "streamed"), Long.MAX_VALUE);
+        // Warm up both paths, so class loading isn't counted
+        copied.put("warmup_legacy", Base64.getMimeDecoder().decode(posters.get(0).getBytes(StandardCharsets.US_ASCII)));
+        streamed.put("warmup_legacy", new Base64Stream(posters.get(0)));
+
+        // Decoding the way Android's Base64.decode(String) does: a byte copy of the text, then the poster
+        long start = allocatedBytes();
+        for (int i = 0; i < POSTER_COUNT; i++) {
+            byte[] text = posters.get(i).getBytes(StandardCharsets.US_ASCII);
+            copied.put(i + "_legacy", Base64.getMimeDecoder().decode(text));
+        }
+        long copiedBytes = allocatedBytes() - start;
+
+        start = allocatedBytes();
+        for (int i = 0; i < POSTER_COUNT; i++) {
+            streamed.put(i + "_legacy", new Base64Stream(posters.get(i)));
+        }
+        long streamedBytes = allocatedBytes() - start;
+
+        assertEquals(copied.getTotalBytes(), streamed.getTotalBytes());
+        if (start < 0) {
+            Benchmark.report("Allocation counting not supported by this JVM");
+            return;
+        }
+        // Total allocation, including buffers that die before the poster is stored
+        Benchmark.report(String.format(Locale.US,
+                "%d posters of %,d bytes (%,d as Base64): %,d bytes allocated per poster decoded into a copy, "
+                        + "%,d streamed (%.0f%%)",
+                POSTER_COUNT, POSTER_SIZE, posters.get(0).length(), copiedBytes / POSTER_COUNT,
+                streamedBytes / POSTER_COUNT, 100.0 * streamedBytes / copiedBytes));
+        assertTrue(streamedBytes * 2 < copiedBytes);
+    }
+}
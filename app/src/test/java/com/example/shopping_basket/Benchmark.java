@@ -0,0 +1,32 @@
+package com.example.shopping_basket;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * JUnit category of the tests that time or measure something rather than check behaviour.
+ * The unit test tasks leave them out; {@code ./gradlew benchmark} runs only them, and what they
+ * report is appended to the file named by the {@value #REPORT_PROPERTY} system property,
+ * build/reports/benchmarks.txt when run that way.
+ */
+public interface Benchmark {
+    String REPORT_PROPERTY = "benchmark.report";
+
+    /**
+     * Records one line of results. Dropped when no report file is set.
+     * @param line
+     *     the results
+     */
+    static void report(String line) {
+        String path = System.getProperty(REPORT_PROPERTY);
+        if (path == null) {
+            return;
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(path, true))) {
+            out.println(line);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write benchmark report " + path, e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that {@link EventDiskCache} survives a restart, merges changed events into the cached
+ * feed, evicts by size without leaving gaps in the feed, and counts hits and misses.
+ */
+public class EventDiskCacheTest {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private File directory;
+    private File file;
+    private Date now;
+    private Profile owner;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("event-cache").toFile();
+        file = new File(directory, "events.bin");
+        now = new Date();
+        owner = new Profile("owner", "Owner", "", "owner@nmail.com");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    // An event whose registration ends the given number of days from now
+    private Event event(String id, int endsInDays, long updatedAt) {
+        Event event = new Event(owner, "Event " + id, "", 0, 0, null,
+                new Date(now.getTime() + endsInDays * DAY_MILLIS), null);
+        event.setEventId(id);
+        event.setUpdatedAt(new Date(updatedAt));
+        return event;
+    }
+
+    // A time the given number of seconds before now
+    private Date ago(int seconds) {
+        return new Date(now.getTime() - seconds * 1000L);
+    }
+
+    private List<String> ids(List<Event> events) {
+        List<String> ids = new ArrayList<>();
+        for (Event event : events) {
+            ids.add(event.getEventId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testFeedSurvivesRestart() {
+        EventDiskCache cache = new EventDiskCache(file);
+        Map<String, String> posters = new HashMap<>();
+        posters.put("b", "cG9zdGVy");
+        cache.putPage(Arrays.asList(event("a", 1, 100), event("b", 2, 300)), posters, true, ago(30));
+        cache.putPage(Collections.singletonList(event("c", 3, 200)), new HashMap<>(), false, ago(20));
+        cache.save();
+
+        EventDiskCache restarted = new EventDiskCache(file);
+        Map<String, String> cachedPosters = new HashMap<>();
+        List<Event> feed = restarted.getFeed(now, cachedPosters);
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids(feed));
+        assertEquals("cG9zdGVy", cachedPosters.get("b"));
+        assertNull(cachedPosters.get("a"));
+        assertEquals(ago(30).getTime() - EventDiskCache.CLOCK_SKEW_MILLIS, restarted.getWatermark().getTime());
+        assertEquals(3, restarted.getHits());
+    }
+
+    @Test
+    public void testWatermarkIsEarliestFetch() {
+        EventDiskCache cache = new EventDiskCache(file);
+        // "a" is cached with the first page, then changes; "b" arrives later with a newer version
+        cache.putPage(Collections.singletonList(event("a", 1, ago(60).getTime())), new HashMap<>(), true, ago(60));
+        cache.putPage(Collections.singletonList(event("b", 2, ago(10).getTime())), new HashMap<>(), false, ago(10));
+
+        // Changes to "a" made after its fetch are still after the watermark
+        assertTrue(cache.getWatermark().before(ago(60)));
+    }
+
+    @Test
+    public void testRevalidateMergesChanges() {
+        EventDiskCache cache = new EventDiskCache(file);
+        cache.putPage(Arrays.asList(event("a", 1, 100), event("b", 2, 100), event("c", 3, 100),
+                event("d", 5, 100)), new HashMap<>(), true, ago(30));
+        List<Event> shown = cache.getFeed(now, new HashMap<>());
+        Event cursor = shown.get(shown.size() - 1);
+
+        Event renamed = event("b", 2, 200);
+        renamed.setName("Renamed");
+        List<Event> changed = Arrays.asList(
+                renamed,
+                event("a", -1, 200),    // Registration closed
+                event("c", 9, 200),     // Moved past the cursor, so it comes with the next page
+                event("new", 4, 200),   // Created before the cursor
+                event("later", 8, 200)  // Created after the cursor
+        );
+        List<Event> merged = cache.revalidate(shown, cursor, changed, new HashMap<>(), now);
+
+        assertEquals(Arrays.asList("b", "new", "d"), ids(merged));
+        assertEquals("Renamed", merged.get(0).getName());
+        // Every shown event is current as of the revalidation
+        assertEquals(now.getTime() - EventDiskCache.CLOCK_SKEW_MILLIS, cache.getWatermark().getTime());
+        assertEquals(Arrays.asList("b", "new", "d"), ids(cache.getFeed(now, new HashMap<>())));
+    }
+
+    @Test
+    public void testEvictionKeepsFeedContiguous() {
+        Map<String, String> posters = new HashMap<>();
+        char[] poster = new char[4000];
+        Arrays.fill(poster, 'x');
+        for (String id : Arrays.asList("a", "b", "c", "d")) {
+            posters.put(id, new String(poster));
+        }
+        EventDiskCache measured = new EventDiskCache(file);
+        measured.putPage(Collections.singletonList(event("a", 1, 1)), posters, true, now);
+        // Room for three and a half events with posters
+        long maxBytes = measured.getTotalBytes() * 7 / 2;
+
+        EventDiskCache cache = new EventDiskCache(file, maxBytes);
+        cache.putPage(Arrays.asList(event("a", 1, 1), event("b", 2, 1), event("c", 3, 1)), posters, true, now);
+        cache.putPage(Collections.singletonList(event("d", 4, 1)), posters, false, now);
+
+        assertEquals(3, cache.size());
+        assertTrue(cache.getTotalBytes() <= maxBytes);
+        // "a" was least recently used, and nothing after it can be shown without it
+        assertTrue(cache.getFeed(now, new HashMap<>()).isEmpty());
+    }
+
+    @Test
+    public void testOldCacheIsDropped() {
+        EventDiskCache cache = new EventDiskCache(file);
+        cache.putPage(Collections.singletonList(event("a", 3, 1)), new HashMap<>(), true, now);
+
+        Date later = new Date(now.getTime() + EventDiskCache.MAX_AGE_MILLIS + DAY_MILLIS);
+        assertTrue(cache.getFeed(later, new HashMap<>()).isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRevalidationDoesNotExtendAge() {
+        EventDiskCache cache = new EventDiskCache(file);
+        cache.putPage(Collections.singletonList(event("a", 30, 1)), new HashMap<>(), true, now);
+        Date revalidatedAt = new Date(now.getTime() + EventDiskCache.MAX_AGE_MILLIS / 2);
+        List<Event> shown = cache.getFeed(revalidatedAt, new HashMap<>());
+        cache.revalidate(shown, shown.get(0), new ArrayList<>(), new HashMap<>(), revalidatedAt);
+
+        // Deletions never show up as changes, so a full reload is still due a day after the last one
+        Date later = new Date(now.getTime() + EventDiskCache.MAX_AGE_MILLIS + 1);
+        assertTrue(cache.getFeed(later, new HashMap<>()).isEmpty());
+    }
+
+    @Test
+    public void testHitRate() {
+        EventDiskCache cache = new EventDiskCache(file);
+        assertEquals(0, cache.getHitRate(), 0);
+
+        cache.putPage(Arrays.asList(event("a", 1, 1), event("b", 2, 1)), new HashMap<>(), true, now);
+        List<Event> shown = cache.getFeed(now, new HashMap<>());
+        cache.getFeed(now, new HashMap<>());
+        cache.revalidate(shown, shown.get(1), Collections.singletonList(event("a", 1, 2)), new HashMap<>(), now);
+
+        // Four events shown from the cache, two fetched for the first page and one refetched
+        assertEquals(4, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(4.0 / 7, cache.getHitRate(), 1e-9);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks geohash cells and their neighbors, and that facet counts follow events as they
+ * are added, edited and removed.
+ */
+public class EventFacetsTest {
+
+    private Event event(String id, String geohash, String... categories) {
+        Event event = new Event(null, "Event " + id, "", "", 0, 0, null, null, null);
+        event.setEventId(id);
+        event.setGeohash(geohash);
+        event.setCategories(Arrays.asList(categories));
+        return event;
+    }
+
+    @Test
+    public void testEncodeAndBounds() {
+        // A well known example geohash
+        assertEquals("ezs42", Geohash.encode(42.6, -5.6, 5));
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            String hash = Geohash.encode(latitude, longitude, Geohash.PRECISION);
+            double[] bounds = Geohash.bounds(hash);
+            assertTrue(bounds[0] <= latitude && latitude <= bounds[1]);
+            assertTrue(bounds[2] <= longitude && longitude <= bounds[3]);
+            assertEquals(hash.substring(0, 4), Geohash.cells(hash).get("p4"));
+        }
+        assertTrue(Geohash.cells(null).isEmpty());
+    }
+
+    @Test
+    public void testNeighborhood() {
+        List<String> cells = Geohash.neighborhood("c3x2");
+        assertEquals(9, cells.size());
+        assertEquals("c3x2", cells.get(0));
+        double[] center = Geohash.bounds("c3x2");
+        for (String cell : cells) {
+            double[] bounds = Geohash.bounds(cell);
+            // Each neighbor shares an edge or a corner with the center cell
+            assertTrue(Math.abs(bounds[0] - center[0]) <= center[1] - center[0] + 1e-9);
+            assertTrue(Math.abs(bounds[2] - center[2]) <= center[3] - center[2] + 1e-9);
+        }
+        // Across the date line, the neighbors to the east are at the far west
+        String east = Geohash.encode(0.1, 179.99, 3);
+        assertTrue(Geohash.neighborhood(east).contains(Geohash.encode(0.1, -179.99, 3)));
+        // Next to the pole there are no cells to the north
+        assertEquals(6, Geohash.neighborhood(Geohash.encode(89.99, 10, 3)).size());
+    }
+
+    @Test
+    public void testParseCategories() {
+        assertEquals(Arrays.asList("sports", "swimming"), EventFacets.parseCategories(" Sports, swimming,,SPORTS "));
+        assertTrue(EventFacets.parseCategories(null).isEmpty());
+    }
+
+    @Test
+    public void testCountsFollowEvents() {
+        String home = Geohash.encode(53.5461, -113.4938, Geohash.PRECISION);
+        // About 10 km away, and about 300 km away
+        String nearby = Geohash.encode(53.6, -113.38, Geohash.PRECISION);
+        String far = Geohash.encode(51.05, -114.07, Geohash.PRECISION);
+
+        EventFacets facets = new EventFacets();
+        facets.addAll(Arrays.asList(event("a", home, "sports", "kids"), event("b", nearby, "sports"),
+                event("c", far, "music"), event("d", null, "music", "sports")));
+
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("sports", 3);
+        expected.put("music", 2);
+        expected.put("kids", 1);
+        assertEquals(expected, facets.getCategoryCounts());
+        assertEquals(2, facets.nearCount(home, 4));
+        assertEquals(1, facets.nearCount(home, 5));
+        assertEquals(1, facets.nearCount(far, 3));
+
+        // An edited event is counted under its new values only
+        facets.add(event("b", far, "music"));
+        assertEquals(Integer.valueOf(2), facets.getCategoryCounts().get("sports"));
+        assertEquals(Integer.valueOf(3), facets.getCategoryCounts().get("music"));
+        assertEquals(1, facets.nearCount(home, 4));
+        assertEquals(2, facets.nearCount(far, 3));
+
+        facets.remove("a");
+        facets.remove("missing");
+        assertTrue(!facets.getCategoryCounts().containsKey("kids"));
+        assertEquals(0, facets.nearCount(home, 4));
+        assertEquals(3, facets.size());
+        facets.clear();
+        assertTrue(facets.getCategoryCounts().isEmpty());
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks paging and prefetching of {@link EventFeed}, and filtering of the pages with
+ * {@link FilteredEventList}, against an in-memory list of events standing in for the Firestore query.
+ */
+public class EventFeedTest {
+
+    /**
+     * Serves pages from a list, using the index of the next event as the cursor.
+     * Pages are held until the test delivers them.
+     */
+    private static class ListSource implements EventFeed.PageSource {
+        final List<Event> events = new ArrayList<>();
+        final List<Integer> limits = new ArrayList<>();
+        final List<Runnable> held = new ArrayList<>();
+        boolean fail = false;
+
+        ListSource(int count) {
+            Profile owner = new Profile("owner", "Owner", "", "owner@nmail.com");
+            for (int i = 0; i < count; i++) {
+                Event event = new Event(owner, "Event " + i, "", 0, 0, null, null, null);
+                event.setEventId("event-" + i);
+                events.add(event);
+            }
+        }
+
+        @Override
+        public void loadPage(Object cursor, int limit, EventFeed.PageCallback callback) {
+            limits.add(limit);
+            int start = cursor == null ? 0 : (Integer) cursor;
+            int end = Math.min(start + limit, events.size());
+            boolean failed = fail;
+            held.add(() -> {
+                if (failed) {
+                    callback.onCallback(new ArrayList<>(), null, new Exception("injected failure"));
+                } else {
+                    callback.onCallback(new ArrayList<>(events.subList(start, end)),
+                            end - start == limit ? end : null, null);
+                }
+            });
+        }
+
+        void deliver() {
+            List<Runnable> pages = new ArrayList<>(held);
+            held.clear();
+            for (Runnable page : pages) {
+                page.run();
+            }
+        }
+    }
+
+    @Test
+    public void testSeededFeedContinuesAfterCursor() {
+        ListSource source = new ListSource(40);
+        List<Event> shown = new ArrayList<>();
+        EventFeed feed = new EventFeed(source, (page, error) -> shown.addAll(page));
+
+        feed.seed(new ArrayList<>(source.events.subList(0, 12)), 12);
+        assertEquals(12, shown.size());
+        assertTrue(source.limits.isEmpty());
+
+        feed.loadMore();
+        source.deliver();
+        // The cached events count as the first page, so a full page follows them
+        assertEquals(EventFeed.PAGE_SIZE, (int) source.limits.get(0));
+        assertEquals(source.events.subList(0, 12 + EventFeed.PAGE_SIZE), shown);
+    }
+
+    @Test
+    public void testPagesFollowCursor() {
+        ListSource source = new ListSource(45);
+        List<Event> shown = new ArrayList<>();
+        EventFeed feed = new EventFeed(source, (page, error) -> shown.addAll(page));
+
+        feed.loadMore();
+        source.deliver();
+        assertEquals(EventFeed.FIRST_PAGE_SIZE, shown.size());
+
+        while (!feed.isEndReached()) {
+            feed.loadMore();
+            source.deliver();
+        }
+        assertEquals(45, shown.size());
+        assertEquals(source.events, shown);
+        assertEquals(EventFeed.FIRST_PAGE_SIZE, (int) source.limits.get(0));
+        assertEquals(EventFeed.PAGE_SIZE, (int) source.limits.get(1));
+    }
+
+    @Test
+    public void testOnlyOnePageInFlight() {
+        ListSource source = new ListSource(100);
+        EventFeed feed = new EventFeed(source, (page, error) -> { });
+
+        feed.loadMore();
+        feed.loadMore();
+        feed.onScrolled(0, 0);
+        assertEquals(1, source.held.size());
+        assertTrue(feed.isLoading());
+    }
+
+    @Test
+    public void testPrefetchNearEnd() {
+        ListSource source = new ListSource(100);
+        EventFeed feed = new EventFeed(source, (page, error) -> { });
+        feed.loadMore();
+        source.deliver();
+
+        // Far from the end of the ten loaded events
+        feed.onScrolled(2, 10);
+        assertTrue(source.held.isEmpty());
+
+        // Within the prefetch distance
+        feed.onScrolled(10 - 1 - EventFeed.PREFETCH_DISTANCE, 10);
+        assertEquals(1, source.held.size());
+    }
+
+    @Test
+    public void testFailedPageIsRetried() {
+        ListSource source = new ListSource(30);
+        List<Exception> errors = new ArrayList<>();
+        EventFeed feed = new EventFeed(source, (page, error) -> {
+            if (error != null) {
+                errors.add(error);
+            }
+        });
+
+        source.fail = true;
+        feed.loadMore();
+        source.deliver();
+        assertEquals(1, errors.size());
+        assertFalse(feed.isLoading());
+        assertTrue(feed.getEvents().isEmpty());
+
+        source.fail = false;
+        feed.loadMore();
+        source.deliver();
+        assertEquals(EventFeed.FIRST_PAGE_SIZE, feed.getEvents().size());
+        assertNotNull(feed.getEvents().get(0));
+    }
+
+    @Test
+    public void testResetDropsLoadingPage() {
+        ListSource source = new ListSource(30);
+        List<Event> shown = new ArrayList<>();
+        EventFeed feed = new EventFeed(source, (page, error) -> shown.addAll(page));
+
+        feed.loadMore();
+        feed.reset();
+        source.deliver();
+        assertTrue(shown.isEmpty());
+        assertFalse(feed.isLoading());
+    }
+
+    @Test
+    public void testEachEventFilteredOnce() {
+        ListSource source = new ListSource(1000);
+        FilteredEventList list = new FilteredEventList();
+        final int[] evaluations = {0};
+        list.setFilter(event -> {
+            evaluations[0]++;
+            return event.getEventId().endsWith("0");
+        });
+        List<Event> appended = new ArrayList<>();
+        EventFeed feed = new EventFeed(source, (page, error) -> appended.addAll(list.addPage(page)));
+
+        while (!feed.isEndReached()) {
+            feed.loadMore();
+            source.deliver();
+        }
+
+        // Linear: one check per loaded event, however many pages there were
+        assertEquals(1000, evaluations[0]);
+        assertEquals(100, list.getVisibleCount());
+        assertEquals(list.getVisible(), appended);
+
+        // Changing the filter checks every loaded event exactly once more
+        list.setFilter(event -> {
+            evaluations[0]++;
+            return true;
+        });
+        assertEquals(2000, evaluations[0]);
+        assertEquals(1000, list.getVisibleCount());
+
+        list.setFilter(null);
+        list.addPage(new ArrayList<>(source.events.subList(0, 10)));
+        assertEquals(2000, evaluations[0]);
+        assertEquals(1010, list.getVisibleCount());
+    }
+}
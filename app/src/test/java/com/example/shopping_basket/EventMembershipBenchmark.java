@@ -0,0 +1,110 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares join/leave throughput of the GUID-indexed participation lists in {@link Event}
+ * against the previous linear-scan ArrayList implementation.
+ * Each operation has a registered entrant leave and rejoin, so both the waiting list
+ * and the cancelled list are searched on every call.
+ */
+@Category(Benchmark.class)
+public class EventMembershipBenchmark {
+    private static final int[] ENTRANT_COUNTS = {1_000, 10_000, 100_000};
+    private static final int OPERATIONS = 1_000;
+
+    /**
+     * Copy of the join/leave logic Event used before the lists were indexed by GUID.
+     */
+    private static class LinearLists {
+        final ArrayList<Profile> waitingList = new ArrayList<>();
+        final ArrayList<Profile> cancelList = new ArrayList<>();
+
+        void joinEvent(Profile profile){
+            for(int i = 0; i < waitingList.size(); i++){
+                if(waitingList.get(i).getGuid().equals(profile.getGuid())){
+                    return;
+                }
+            }
+            for(int i = 0; i < cancelList.size(); i++){
+                if(cancelList.get(i).getGuid().equals(profile.getGuid())){
+                    cancelList.remove(i);
+                    break;
+                }
+            }
+            waitingList.add(profile);
+        }
+
+        void leaveEvent(Profile profile){
+            for(int i = 0; i < waitingList.size(); i++){
+                if(waitingList.get(i).getGuid().equals(profile.getGuid())){
+                    cancelList.add(profile);
+                    waitingList.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    private ArrayList<Profile> entrants(int count){
+        ArrayList<Profile> profiles = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            profiles.add(new Profile("guid-" + i, "Entrant " + i, "", "entrant" + i + "@nmail.com"));
+        }
+        return profiles;
+    }
+
+    private int[] picks(int count){
+        Random random = new Random(301);
+        int[] picks = new int[OPERATIONS];
+        for(int i = 0; i < OPERATIONS; i++){
+            picks[i] = random.nextInt(count);
+        }
+        return picks;
+    }
+
+    private double opsPerSecond(long nanos){
+        return OPERATIONS / (nanos / 1e9);
+    }
+
+    @Test
+    public void benchmarkJoinLeave(){
+        for(int count : ENTRANT_COUNTS){
+            ArrayList<Profile> profiles = entrants(count);
+            int[] picks = picks(count);
+
+            LinearLists before = new LinearLists();
+            before.waitingList.addAll(profiles);
+            long start = System.nanoTime();
+            for(int pick : picks){
+                before.leaveEvent(profiles.get(pick));
+                before.joinEvent(profiles.get(pick));
+            }
+            long beforeNanos = System.nanoTime() - start;
+
+            Event after = new Event(profiles.get(0), "Benchmark", "", 0, 0, null, null, null);
+            for(Profile i : profiles){
+                after.joinEvent(i);
+            }
+            start = System.nanoTime();
+            for(int pick : picks){
+                after.leaveEvent(profiles.get(pick));
+                after.joinEvent(profiles.get(pick));
+            }
+            long afterNanos = System.nanoTime() - start;
+
+            assertEquals(before.waitingList.size(), after.getWaitListSize());
+            assertEquals(before.cancelList.size(), after.getCancelList().size());
+            Benchmark.report(String.format(Locale.US,
+                    "%,7d entrants: before %,12.0f ops/s, after %,12.0f ops/s",
+                    count, opsPerSecond(beforeNanos), opsPerSecond(afterNanos)));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Checks that the planned query and its residual together pick the same events as filtering
+ * every event on the device did, and that the most selective range is sent to the server.
+ */
+public class EventQueryPlanTest {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Edmonton");
+    private static final String[] CATEGORIES = {"sports", "music", "art", "kids"};
+
+    private InMemoryStore store;
+    private Profile owner;
+    private long now;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+        owner = new Profile("owner", "Owner", "", "owner@nmail.com");
+        now = 1_760_000_000_000L;
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private Event event(String id, String name, long start, long end, long eventTime) {
+        Event event = new Event(owner, name, "", 0, 0, new Date(start), new Date(end), new Date(eventTime));
+        event.setEventId(id);
+        event.setSearchTokens(EventSearchIndex.searchTokens(event));
+        return event;
+    }
+
+    // The filter as it was checked on the device, one Calendar per date
+    private static boolean matches(Event event, String keywords, Date regStart, Date regEnd, Date eventDay,
+                                   List<String> categories, String near, int precision,
+                                   boolean includeEnded, Date now) {
+        if (!includeEnded && !event.getEndDate().after(now)) {
+            return false;
+        }
+        if (keywords != null && !event.getName().toLowerCase().contains(keywords.toLowerCase())) {
+            return false;
+        }
+        if (categories != null && !categories.isEmpty()
+                && (event.getCategories() == null || Collections.disjoint(categories, event.getCategories()))) {
+            return false;
+        }
+        if (near != null && (event.getGeohash() == null || !Geohash.neighborhood(near.substring(0, precision))
+                .contains(event.getGeohash().substring(0, precision)))) {
+            return false;
+        }
+        if (regStart != null && event.getStartDate().before(regStart)) {
+            return false;
+        }
+        if (regEnd != null && event.getEndDate().after(regEnd)) {
+            return false;
+        }
+        if (eventDay != null) {
+            Calendar filterCal = Calendar.getInstance(ZONE);
+            filterCal.setTime(eventDay);
+            Calendar eventCal = Calendar.getInstance(ZONE);
+            eventCal.setTime(event.getEventTime());
+            return filterCal.get(Calendar.YEAR) == eventCal.get(Calendar.YEAR)
+                    && filterCal.get(Calendar.DAY_OF_YEAR) == eventCal.get(Calendar.DAY_OF_YEAR);
+        }
+        return true;
+    }
+
+    private static List<String> randomCategories(Random random) {
+        List<String> categories = new ArrayList<>();
+        for (String category : CATEGORIES) {
+            if (random.nextInt(3) == 0) {
+                categories.add(category);
+            }
+        }
+        return categories;
+    }
+
+    @Test
+    public void testEpochDayMatchesCalendar() {
+        Random random = new Random(1);
+        for (String id : new String[] {"UTC", "America/Edmonton", "Asia/Kolkata", "Pacific/Chatham"}) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            for (int i = 0; i < 1000; i++) {
+                Date date = new Date(now + (long) (random.nextDouble() * 400 * DAY_MILLIS) - 200 * DAY_MILLIS);
+                long day = EventQueryPlan.epochDay(date, zone);
+                assertTrue(EventQueryPlan.startOfDay(day, zone) <= date.getTime());
+                assertTrue(date.getTime() < EventQueryPlan.startOfDay(day + 1, zone));
+
+                Calendar calendar = Calendar.getInstance(zone);
+                calendar.setTime(date);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                assertEquals(calendar.getTimeInMillis(), EventQueryPlan.startOfDay(day, zone));
+            }
+        }
+    }
+
+    @Test
+    public void testPlanMatchesDeviceFilter() {
+        Random random = new Random(2);
+        List<Event> all = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            long start = now + (random.nextInt(60) - 30) * DAY_MILLIS + random.nextInt((int) DAY_MILLIS);
+            long end = start + (1 + random.nextInt(30)) * DAY_MILLIS;
+            long eventTime = end + random.nextInt(10) * DAY_MILLIS + random.nextInt((int) DAY_MILLIS);
+            Event event = event("e" + i, (i % 3 == 0 ? "Swim " : "Chess ") + i, start, end, eventTime);
+            event.setCategories(randomCategories(random));
+            if (random.nextInt(4) > 0) {
+                // Around Edmonton, a few hundred kilometers apart at most
+                event.setGeohash(Geohash.encode(53.5 + random.nextDouble() * 4 - 2,
+                        -113.5 + random.nextDouble() * 6 - 3, Geohash.PRECISION));
+            }
+            all.add(event);
+            store.putEvent(event, error -> { });
+        }
+
+        Date nowDate = new Date(now);
+        for (int i = 0; i < 200; i++) {
+            String keywords = random.nextBoolean() ? "swim" : null;
+            Date regStart = random.nextBoolean() ? new Date(now + (random.nextInt(40) - 20) * DAY_MILLIS) : null;
+            Date regEnd = random.nextBoolean() ? new Date(now + random.nextInt(40) * DAY_MILLIS) : null;
+            Date eventDay = random.nextBoolean() ? new Date(now + random.nextInt(40) * DAY_MILLIS) : null;
+            List<String> categories = random.nextBoolean() ? randomCategories(random) : null;
+            String near = null;
+            int precision = 0;
+            if (random.nextBoolean()) {
+                near = Geohash.encode(53.5 + random.nextDouble() - 0.5, -113.5 + random.nextDouble() - 0.5,
+                        Geohash.PRECISION);
+                precision = Geohash.CELL_PRECISIONS[random.nextInt(Geohash.CELL_PRECISIONS.length)];
+            }
+            boolean includeEnded = random.nextBoolean();
+            List<Event> sample = random.nextBoolean() ? all.subList(0, 50) : new ArrayList<>();
+            EventQueryPlan plan = EventQueryPlan.plan(keywords, regStart, regEnd, eventDay, categories,
+                    near, precision, includeEnded, nowDate, ZONE, sample);
+
+            Set<String> expected = new HashSet<>();
+            for (Event event : all) {
+                if (matches(event, keywords, regStart, regEnd, eventDay, categories, near, precision,
+                        includeEnded, nowDate)) {
+                    expected.add(event.getEventId());
+                }
+            }
+            List<Event> loaded = new ArrayList<>();
+            EventFeed feed = new EventFeed((cursor, limit, callback) -> store.loadPage(plan, cursor, limit, callback),
+                    (page, error) -> loaded.addAll(page));
+            while (!feed.isEndReached()) {
+                feed.loadMore();
+            }
+            Set<String> shown = new HashSet<>();
+            for (Event event : loaded) {
+                if (plan.getResidual() == null || plan.getResidual().matches(event)) {
+                    shown.add(event.getEventId());
+                }
+            }
+            assertEquals(plan.toString(), expected, shown);
+
+            // Without an index for the facets, the fallback query checks them all on the device
+            EventQueryPlan fallback = plan.withoutServerFacets();
+            assertTrue(!fallback.hasServerFacets());
+            List<Event> fallbackLoaded = new ArrayList<>();
+            EventFeed fallbackFeed = new EventFeed(
+                    (cursor, limit, callback) -> store.loadPage(fallback, cursor, limit, callback),
+                    (page, error) -> fallbackLoaded.addAll(page));
+            while (!fallbackFeed.isEndReached()) {
+                fallbackFeed.loadMore();
+            }
+            Set<String> fallbackShown = new HashSet<>();
+            for (Event event : fallbackLoaded) {
+                if (fallback.getResidual() == null || fallback.getResidual().matches(event)) {
+                    fallbackShown.add(event.getEventId());
+                }
+            }
+            assertEquals(fallback.toString(), expected, fallbackShown);
+        }
+    }
+
+    @Test
+    public void testPicksMostSelectiveRange() {
+        Date nowDate = new Date(now);
+        List<Event> sample = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sample.add(event("e" + i, "Event", now - i * DAY_MILLIS, now + (i + 1) * DAY_MILLIS, now + 40 * DAY_MILLIS));
+        }
+
+        // Two events start on or after yesterday, while every one ends within a month
+        EventQueryPlan plan = EventQueryPlan.plan(null, new Date(now - DAY_MILLIS), new Date(now + 30 * DAY_MILLIS),
+                null, false, nowDate, ZONE, sample);
+        assertEquals(EventQueryPlan.START_DATE, plan.getRangeField());
+        // With nothing to go by, the closed registration range wins over the open one
+        plan = EventQueryPlan.plan(null, new Date(now - DAY_MILLIS), new Date(now + 30 * DAY_MILLIS),
+                null, false, nowDate, ZONE, new ArrayList<>());
+        assertEquals(EventQueryPlan.END_DATE, plan.getRangeField());
+        assertEquals(now + 1, plan.getLowerBound().getTime());
+        assertEquals(now + 30 * DAY_MILLIS + 1, plan.getUpperBound().getTime());
+        // and a single day wins over both
+        plan = EventQueryPlan.plan(null, new Date(now - DAY_MILLIS), new Date(now + 30 * DAY_MILLIS),
+                new Date(now), false, nowDate, ZONE, new ArrayList<>());
+        assertEquals(EventQueryPlan.EVENT_TIME, plan.getRangeField());
+        assertEquals(DAY_MILLIS, plan.getUpperBound().getTime() - plan.getLowerBound().getTime());
+
+        assertEquals(EventQueryPlan.END_DATE, EventQueryPlan.feed(false, nowDate).getRangeField());
+        assertNull(EventQueryPlan.feed(true, nowDate).getRangeField());
+        assertNull(EventQueryPlan.feed(false, nowDate).getResidual());
+    }
+
+    @Test
+    public void testQueryKeptWhenServerPartIsUnchanged() {
+        Date nowDate = new Date(now);
+        Date day = new Date(now + 3 * DAY_MILLIS);
+        EventQueryPlan plan = EventQueryPlan.plan("swim", null, null, day, false, nowDate, ZONE, new ArrayList<>());
+        // The longer term is the one searched on the server, so a shorter one only adds to the residual
+        EventQueryPlan narrowed = EventQueryPlan.plan("swim po", null, null, day, false, nowDate, ZONE,
+                new ArrayList<>());
+        EventQueryPlan otherWord = EventQueryPlan.plan("chess", null, null, day, false, nowDate, ZONE,
+                new ArrayList<>());
+        EventQueryPlan otherDay = EventQueryPlan.plan("swim", null, null, new Date(now + 4 * DAY_MILLIS),
+                false, nowDate, ZONE, new ArrayList<>());
+
+        assertTrue(plan.sameQuery(narrowed));
+        assertTrue(!plan.sameQuery(otherWord));
+        assertTrue(!plan.sameQuery(otherDay));
+        assertTrue(EventQueryPlan.feed(false, nowDate).sameQuery(EventQueryPlan.feed(false, nowDate)));
+        assertTrue(!EventQueryPlan.feed(true, nowDate).sameQuery(EventQueryPlan.feed(false, nowDate)));
+    }
+
+    @Test
+    public void testFacetsSentToServerWithinLimits() {
+        Date nowDate = new Date(now);
+        String near = Geohash.encode(53.5, -113.5, Geohash.PRECISION);
+        EventQueryPlan plan = EventQueryPlan.plan(null, null, null, null, Arrays.asList("music", "art"),
+                near, 4, false, nowDate, ZONE, new ArrayList<>());
+        assertEquals(Arrays.asList("art", "music"), plan.getCategoryValues());
+        assertEquals("p4", plan.getNearCellKey());
+        assertEquals(9, plan.getNearCells().size());
+        assertEquals(near.substring(0, 4), plan.getNearCells().get(0));
+        assertNull(plan.getResidual());
+
+        // Only one array-contains-any is allowed, and the keywords have it
+        plan = EventQueryPlan.plan("swim", null, null, null, Arrays.asList("music"),
+                null, 0, false, nowDate, ZONE, new ArrayList<>());
+        assertNull(plan.getCategoryValues());
+        assertTrue(plan.getResidual() != null);
+
+        // Nine cells for each of four categories is more than Firestore combines in one query
+        plan = EventQueryPlan.plan(null, null, null, null, Arrays.asList(CATEGORIES),
+                near, 5, false, nowDate, ZONE, new ArrayList<>());
+        assertEquals(4, plan.getCategoryValues().size());
+        assertNull(plan.getNearCells());
+        assertTrue(plan.getResidual() != null);
+        // so the distance is checked on the device against the same server query
+        assertTrue(plan.sameQuery(EventQueryPlan.plan(null, null, null, null, Arrays.asList(CATEGORIES),
+                null, 0, false, nowDate, ZONE, new ArrayList<>())));
+    }
+}
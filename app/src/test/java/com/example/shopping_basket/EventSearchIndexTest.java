@@ -0,0 +1,100 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the stored search tokens, matching queries against them, and ranking and
+ * completing words with the in-memory trie.
+ */
+public class EventSearchIndexTest {
+
+    private Event event(String id, String name, String desc) {
+        Event event = new Event(null, name, desc, "", 0, 0, null, null, null);
+        event.setEventId(id);
+        event.setSearchTokens(EventSearchIndex.searchTokens(event));
+        return event;
+    }
+
+    @Test
+    public void testSearchTokens() {
+        Event event = event("a", "Swim Lessons!", "Bring a towel. SWIM");
+
+        assertEquals(Arrays.asList("swim", "lessons", "bring", "a", "towel", "swim"),
+                EventSearchIndex.words("Swim Lessons! Bring a towel. SWIM"));
+        assertEquals(Arrays.asList("a", "br", "bri", "brin", "bring", "le", "les", "less", "lesso", "lesson",
+                "lessons", "sw", "swi", "swim", "to", "tow", "towe", "towel"), event.getSearchTokens());
+
+        // Long words are stored whole, with prefixes only up to the longest prefix length
+        List<String> tokens = EventSearchIndex.searchTokens(event("b", "Internationalization", ""));
+        assertTrue(tokens.contains("internationalization"));
+        assertTrue(tokens.contains("internationa"));
+        assertTrue(!tokens.contains("international"));
+    }
+
+    @Test
+    public void testQueryMatches() {
+        Event event = event("a", "Swim Lessons", "Bring a towel");
+
+        assertTrue(EventSearchIndex.Query.parse("swim").matches(event));
+        assertTrue(EventSearchIndex.Query.parse("SW les").matches(event));
+        assertTrue(EventSearchIndex.Query.parse("t").matches(event));
+        assertTrue(!EventSearchIndex.Query.parse("swim chess").matches(event));
+        assertTrue(EventSearchIndex.Query.parse("swim chess OR towel").matches(event));
+        assertTrue(!EventSearchIndex.Query.parse("wim").matches(event));
+        // Events saved before tokens were stored are tokenized when checked
+        event.setSearchTokens(null);
+        assertTrue(EventSearchIndex.Query.parse("lesson").matches(event));
+        assertTrue(EventSearchIndex.Query.parse("  ").isEmpty());
+    }
+
+    @Test
+    public void testServerValues() {
+        assertEquals(Arrays.asList("lesson"), EventSearchIndex.Query.parse("sw lesson").getServerValues());
+        assertEquals(Arrays.asList("swim", "chess"), EventSearchIndex.Query.parse("swim OR chess").getServerValues());
+        assertEquals(Arrays.asList("internationa"),
+                EventSearchIndex.Query.parse("internationalization").getServerValues());
+        // A one-letter term isn't stored on its own, so it can't be searched on the server
+        assertNull(EventSearchIndex.Query.parse("swim OR a").getServerValues());
+        assertNull(EventSearchIndex.Query.parse("").getServerValues());
+    }
+
+    @Test
+    public void testSearchRanksByTermFrequency() {
+        EventSearchIndex index = new EventSearchIndex();
+        index.add(event("once", "Swim meet", ""));
+        index.add(event("twice", "Swim club", "Swimming for everyone"));
+        index.add(event("chess", "Chess club", ""));
+
+        assertEquals(Arrays.asList("twice", "once"), index.search(EventSearchIndex.Query.parse("swim")));
+        assertEquals(Arrays.asList("twice"), index.search(EventSearchIndex.Query.parse("swim club")));
+        assertEquals(Arrays.asList("twice", "chess", "once"),
+                index.search(EventSearchIndex.Query.parse("club OR swim")));
+
+        // Editing an event replaces its words
+        index.add(event("twice", "Chess night", ""));
+        assertEquals(Arrays.asList("chess", "twice"), index.search(EventSearchIndex.Query.parse("chess")));
+        assertEquals(Arrays.asList("once"), index.search(EventSearchIndex.Query.parse("swim")));
+        index.remove("once");
+        assertTrue(index.search(EventSearchIndex.Query.parse("swim")).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testComplete() {
+        EventSearchIndex index = new EventSearchIndex();
+        index.add(event("a", "Swim club", "swimming"));
+        index.add(event("b", "Swim meet", ""));
+        index.add(event("c", "Swing dance", ""));
+
+        assertEquals(Arrays.asList("swim", "swimming", "swing"), index.complete("Sw", 5));
+        assertEquals(Arrays.asList("swim"), index.complete("swi", 1));
+        assertTrue(index.complete("x", 5).isEmpty());
+    }
+}
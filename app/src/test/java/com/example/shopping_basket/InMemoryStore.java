@@ -0,0 +1,380 @@
+package com.example.shopping_basket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory stand-in for Firestore that implements the event, profile and notification stores,
+ * so the lottery, notification fan-out and event feed can be run and timed in plain JVM tests.
+ * Every value is copied on the way in and out, the way documents are encoded and decoded, and
+ * each batch is applied all at once or not at all.
+ * With no latency, callbacks run before the call returns. With latency, every callback is delivered
+ * after the delay on a single background thread, the way Firestore delivers them on the main thread.
+ * The store can be used from any thread.
+ */
+public class InMemoryStore implements EventStore, ProfileStore, NotificationStore {
+
+    private final Map<String, Event> events = new HashMap<>();
+    private final Map<String, Profile> profiles = new HashMap<>();
+    private final LinkedHashMap<String, Notif> notifications = new LinkedHashMap<>();
+    private final Map<String, Long> unreadCounts = new HashMap<>();
+    private final ScheduledExecutorService callbacks = Executors.newSingleThreadScheduledExecutor();
+    private volatile long latencyMillis;
+    private int reads = 0;
+    private int writes = 0;
+
+    public InMemoryStore() {
+        this(0);
+    }
+
+    /**
+     * @param latencyMillis
+     *     delay before each callback is delivered, 0 to answer immediately
+     */
+    public InMemoryStore(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Runs tasks on the callback thread after a delay, for a {@link NotificationFanOut} driven by this store
+     * @return
+     *     a scheduler that runs on the same thread as the callbacks
+     */
+    public NotificationFanOut.Scheduler scheduler() {
+        return (task, delayMillis) -> {
+            if (latencyMillis == 0 && delayMillis == 0) {
+                task.run();
+            } else {
+                callbacks.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        };
+    }
+
+    // Stops the callback thread; callbacks still pending are dropped
+    public void close() {
+        callbacks.shutdownNow();
+    }
+
+    public synchronized int getReads() {
+        return reads;
+    }
+
+    public synchronized int getWrites() {
+        return writes;
+    }
+
+    @Override
+    public void getEvent(String eventId, EventCallback callback) {
+        Event event;
+        synchronized (this) {
+            reads++;
+            event = copy(events.get(eventId));
+        }
+        deliver(() -> callback.onCallback(event));
+    }
+
+    @Override
+    public void putEvent(Event event, LotteryCommit.CommitCallback callback) {
+        Exception error = null;
+        synchronized (this) {
+            reads++;
+            if (events.containsKey(event.getEventId())) {
+                error = new IllegalStateException("Event already exists: " + event.getEventId());
+            } else {
+                writes++;
+                events.put(event.getEventId(), copy(event));
+            }
+        }
+        Exception result = error;
+        deliver(() -> callback.onCallback(result));
+    }
+
+    @Override
+    public void updateEvent(String eventId, Map<String, Object> fields, LotteryCommit.CommitCallback callback) {
+        Exception error = null;
+        synchronized (this) {
+            Event updated = copy(events.get(eventId));
+            if (updated == null) {
+                error = new IllegalStateException("No such event: " + eventId);
+            } else {
+                try {
+                    for (Map.Entry<String, Object> entry : fields.entrySet()) {
+                        applyField(updated, entry.getKey(), entry.getValue());
+                    }
+                    events.put(eventId, updated);
+                    writes++;
+                } catch (IllegalArgumentException e) {
+                    error = e;
+                }
+            }
+        }
+        Exception result = error;
+        deliver(() -> callback.onCallback(result));
+    }
+
+    @Override
+    public void loadPage(EventQueryPlan plan, Object cursor, int limit, EventFeed.PageCallback callback) {
+        // Same order as the Firestore feed query: by the range field, then ID
+        Comparator<Event> order = plan.getOrder();
+        List<Event> page = new ArrayList<>();
+        synchronized (this) {
+            List<Event> matching = new ArrayList<>();
+            for (Event event : events.values()) {
+                if (plan.matchesQuery(event)) {
+                    matching.add(event);
+                }
+            }
+            matching.sort(order);
+            for (Event event : matching) {
+                if (page.size() == limit) {
+                    break;
+                }
+                if (cursor == null || order.compare(event, (Event) cursor) > 0) {
+                    page.add(copy(event));
+                }
+            }
+            reads += page.size();
+        }
+        Object nextCursor = Paging.nextCursor(page, limit);
+        deliver(() -> callback.onCallback(page, nextCursor, null));
+    }
+
+    @Override
+    public void commit(LotteryCommit.Batch batch, LotteryCommit.CommitCallback callback) {
+        Exception error = null;
+        synchronized (this) {
+            EventDelta delta = batch.getDelta();
+            Event updated = null;
+            if (delta != null) {
+                updated = copy(events.get(delta.getEventId()));
+                if (updated == null) {
+                    error = new IllegalStateException("No such event: " + delta.getEventId());
+                } else {
+                    try {
+                        delta.applyTo(updated);
+                    } catch (IllegalArgumentException e) {
+                        error = e;
+                    }
+                }
+            }
+            if (error == null) {
+                // Nothing is stored until the whole batch has been checked
+                if (updated != null) {
+                    events.put(updated.getEventId(), updated);
+                }
+                putNotifications(batch.getKey(), batch.getNotifications());
+                writes += batch.getWriteCount();
+            }
+        }
+        Exception result = error;
+        deliver(() -> callback.onCallback(result));
+    }
+
+    @Override
+    public void getProfile(String guid, ProfileCache.ProfileCallback callback) {
+        Profile profile;
+        synchronized (this) {
+            reads++;
+            profile = copy(profiles.get(guid));
+        }
+        deliver(() -> callback.onCallback(profile));
+    }
+
+    @Override
+    public void putProfile(Profile profile, LotteryCommit.CommitCallback callback) {
+        synchronized (this) {
+            writes++;
+            profiles.put(profile.getGuid(), copy(profile));
+        }
+        deliver(() -> callback.onCallback(null));
+    }
+
+    @Override
+    public void updateProfile(String guid, Map<String, Object> fields, LotteryCommit.CommitCallback callback) {
+        Exception error = null;
+        synchronized (this) {
+            Profile updated = copy(profiles.get(guid));
+            if (updated == null) {
+                error = new IllegalStateException("No such profile: " + guid);
+            } else {
+                try {
+                    for (Map.Entry<String, Object> entry : fields.entrySet()) {
+                        applyField(updated, entry.getKey(), entry.getValue());
+                    }
+                    profiles.put(guid, updated);
+                    writes++;
+                } catch (IllegalArgumentException e) {
+                    error = e;
+                }
+            }
+        }
+        Exception result = error;
+        deliver(() -> callback.onCallback(result));
+    }
+
+    @Override
+    public void deleteProfile(String guid, LotteryCommit.CommitCallback callback) {
+        synchronized (this) {
+            writes++;
+            profiles.remove(guid);
+        }
+        deliver(() -> callback.onCallback(null));
+    }
+
+    @Override
+    public void getNotificationPage(String target, Notif cursor, int limit, PageCallback callback) {
+        List<Notif> page = new ArrayList<>();
+        synchronized (this) {
+            List<Notif> matching = new ArrayList<>();
+            for (Map.Entry<String, Notif> entry : notifications.entrySet()) {
+                if (target == null || Objects.equals(target, entry.getValue().getTarget())) {
+                    Notif notif = copy(entry.getValue());
+                    notif.setNotifId(entry.getKey());
+                    matching.add(notif);
+                }
+            }
+            matching.sort(NEWEST_FIRST);
+            for (Notif notif : matching) {
+                if (page.size() == limit) {
+                    break;
+                }
+                if (cursor == null || NEWEST_FIRST.compare(notif, cursor) > 0) {
+                    page.add(notif);
+                }
+            }
+            reads += page.size();
+        }
+        Notif nextCursor = Paging.nextCursor(page, limit);
+        deliver(() -> callback.onCallback(page, nextCursor, null));
+    }
+
+    @Override
+    public void addNotifications(List<Notif> added, LotteryCommit.CommitCallback callback) {
+        LotteryCommit.Batch batch = new LotteryCommit.Batch(null, added);
+        synchronized (this) {
+            putNotifications(null, added);
+            writes += batch.getWriteCount();
+        }
+        deliver(() -> callback.onCallback(null));
+    }
+
+    @Override
+    public void markRead(String target, List<Notif> marked, LotteryCommit.CommitCallback callback) {
+        synchronized (this) {
+            long count = 0;
+            for (Notif notif : marked) {
+                Notif stored = notifications.get(notif.getNotifId());
+                if (stored != null && stored.isUnread()) {
+                    stored.setRead(true);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                unreadCounts.merge(target, -count, Long::sum);
+                writes += count + 1;
+            }
+        }
+        deliver(() -> callback.onCallback(null));
+    }
+
+    @Override
+    public void getUnreadCount(String target, CountCallback callback) {
+        long count;
+        synchronized (this) {
+            reads++;
+            count = unreadCounts.getOrDefault(target, 0L);
+        }
+        deliver(() -> callback.onCallback(count, null));
+    }
+
+    // Fixed ids let a retried batch skip the notifications it already created, as the Firestore
+    // transaction does, so they are neither counted twice nor marked unread again
+    private void putNotifications(String key, List<Notif> added) {
+        for (int i = 0; i < added.size(); i++) {
+            String id = key != null ? key + "-" + i : UUID.randomUUID().toString();
+            if (notifications.containsKey(id)) {
+                continue;
+            }
+            notifications.put(id, copy(added.get(i)));
+            if (added.get(i).getTarget() != null && added.get(i).isUnread()) {
+                unreadCounts.merge(added.get(i).getTarget(), 1L, Long::sum);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void applyField(Event event, String field, Object value) {
+        switch (field) {
+            case "name": event.setName((String) value); break;
+            case "desc": event.setDesc((String) value); break;
+            case "guideline": event.setGuideline((String) value); break;
+            case "maxReg": event.setMaxReg(((Number) value).intValue()); break;
+            case "startDate": event.setStartDate((Date) value); break;
+            case "endDate": event.setEndDate((Date) value); break;
+            case "eventTime": event.setEventTime((Date) value); break;
+            case EventSearchIndex.SEARCH_TOKENS: event.setSearchTokens((List<String>) value); break;
+            case EventFacets.CATEGORIES: event.setCategories((List<String>) value); break;
+            case "geohash": event.setGeohash((String) value); break;
+            default: throw new IllegalArgumentException("Cannot update event field " + field);
+        }
+    }
+
+    private static void applyField(Profile profile, String field, Object value) {
+        switch (field) {
+            case "name": profile.setName((String) value); break;
+            case "email": profile.setEmail((String) value); break;
+            case "phone": profile.setPhone((String) value); break;
+            case "deviceId": profile.setDeviceId((String) value); break;
+            case "notificationPref": profile.setNotificationPref((Boolean) value); break;
+            case "admin": profile.setAdmin((Boolean) value); break;
+            default: throw new IllegalArgumentException("Cannot update profile field " + field);
+        }
+    }
+
+    private void deliver(Runnable callback) {
+        long delay = latencyMillis;
+        if (delay == 0) {
+            callback.run();
+        } else {
+            callbacks.schedule(callback, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> T copy(T value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(value);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (T) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Could not copy " + value.getClass().getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.shopping_basket;
+
+import static com.example.shopping_basket.NotificationFanOutTest.notifications;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the lottery write path, the notification fan-out and the event feed against
+ * {@link InMemoryStore}, and times them with simulated network latency.
+ */
+public class InMemoryStoreTest {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    // Page size of the inbox, NotificationRepository#PAGE_SIZE
+    private static final int INBOX_PAGE_SIZE = 50;
+
+    private InMemoryStore store;
+    private Profile owner;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+        owner = new Profile("owner", "Owner", "", "owner@nmail.com");
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private Event event(String id, int entrants, Date endDate) {
+        Event event = new Event(owner, "Event " + id, "", 0, 0, null, endDate, null);
+        event.setEventId(id);
+        for (int i = 0; i < entrants; i++) {
+            event.joinEvent(new Profile("guid-" + i, "Entrant " + i, "", "entrant" + i + "@nmail.com"));
+        }
+        return event;
+    }
+
+    private NotificationFanOut fanOut() {
+        return new NotificationFanOut(store, store.scheduler(), new NotificationFanOutTest.MemoryStore());
+    }
+
+    private Event stored(String id) {
+        final Event[] found = {null};
+        store.getEvent(id, event -> found[0] = event);
+        return found[0];
+    }
+
+    @Test
+    public void testLotteryCommitsToStore() {
+        Event event = event("lottery", 1200, null);
+        store.putEvent(event, error -> assertNull(error));
+        event.setSelectNum(100);
+        ArrayList<Invite> invites = event.runLottery(LotteryStrategy.UNIFORM, 9L);
+
+        final boolean[] done = {false};
+        LotteryCommit.commit(EventDelta.forLottery(event, invites), notifications(1200), store, fanOut(),
+                (eventUpdated, committedBatches, totalBatches, error) -> {
+                    assertNull(error);
+                    assertEquals(totalBatches, committedBatches);
+                    done[0] = true;
+                });
+
+        assertTrue(done[0]);
+        Event result = stored("lottery");
+        assertEquals(100, result.getInvitedCount());
+        assertEquals(1100, result.getWaitingCount());
+        assertEquals(Long.valueOf(9L), result.getLotterySeed());
+        assertEquals(EntrantStatus.INVITED, result.statusOf(invites.get(0).getTarget()));
+
+        final int[] received = {0};
+        store.getNotificationPage("guid-7", null, INBOX_PAGE_SIZE, (page, next, error) -> received[0] = page.size());
+        assertEquals(1, received[0]);
+        received[0] = 0;
+        final Notif[] cursor = {null};
+        do {
+            store.getNotificationPage(null, cursor[0], INBOX_PAGE_SIZE, (page, next, error) -> {
+                received[0] += page.size();
+                cursor[0] = next;
+            });
+        } while (cursor[0] != null);
+        assertEquals(1200, received[0]);
+    }
+
+    @Test
+    public void testLargeSubcollectionLotteryIsSplit() {
+        Event event = new Event(owner, "Large", "", 0, 0, null, null, null);
+        event.setEventId("large");
+        event.setEntrantsInSubcollection(true);
+        for (int i = 0; i < 1500; i++) {
+            event.joinEvent(new Profile("guid-" + i, "Entrant " + i, "", "entrant" + i + "@nmail.com"));
+        }
+        store.putEvent(event, error -> assertNull(error));
+        event.setSelectNum(1200);
+        ArrayList<Invite> invites = event.runLottery(LotteryStrategy.UNIFORM, 4L);
+        EventDelta delta = EventDelta.forLottery(event, invites);
+
+        // Each winner is a document write, so the winners go ahead of the event change
+        List<LotteryCommit.Batch> batches = LotteryCommit.plan(delta, notifications(1500), LotteryCommit.MAX_BATCH_WRITES);
+        assertTrue(batches.get(0).getDelta().isEntrantsOnly());
+        for (LotteryCommit.Batch batch : batches) {
+            assertTrue(batch.getWriteCount() <= LotteryCommit.MAX_BATCH_WRITES);
+        }
+
+        // The event change fails, so the winners already written are put back
+        LotteryCommit.BatchSink failing = (batch, callback) -> {
+            if (batch.getDelta() != null && !batch.getDelta().isEntrantsOnly()) {
+                callback.onCallback(new Exception("injected failure"));
+            } else {
+                store.commit(batch, callback);
+            }
+        };
+        final boolean[] done = {false};
+        LotteryCommit.commit(delta, notifications(1500), failing, fanOut(),
+                (eventUpdated, committedBatches, totalBatches, error) -> {
+                    assertFalse(eventUpdated);
+                    assertNotNull(error);
+                    done[0] = true;
+                });
+        assertTrue(done[0]);
+        Event unchanged = stored("large");
+        assertEquals(0, unchanged.getInvitedCount());
+        assertEquals(EntrantStatus.WAITING, unchanged.statusOf(invites.get(0).getTarget()));
+        assertEquals(EntrantStatus.WAITING, unchanged.statusOf(invites.get(1199).getTarget()));
+
+        done[0] = false;
+        LotteryCommit.commit(delta, notifications(1500), store, fanOut(),
+                (eventUpdated, committedBatches, totalBatches, error) -> {
+                    assertNull(error);
+                    assertEquals(totalBatches, committedBatches);
+                    done[0] = true;
+                });
+        assertTrue(done[0]);
+        Event result = stored("large");
+        assertEquals(1200, result.getInvitedCount());
+        assertEquals(300, result.getWaitingCount());
+        assertEquals(EntrantStatus.INVITED, result.statusOf(invites.get(1199).getTarget()));
+    }
+
+    @Test
+    public void testStoredCopiesAreIndependent() {
+        Event event = event("copy", 3, null);
+        store.putEvent(event, error -> { });
+        event.joinEvent(new Profile("late", "Late", "", "late@nmail.com"));
+
+        assertEquals(3, stored("copy").getWaitingCount());
+        stored("copy").setSelectNum(50);
+        assertEquals(0, stored("copy").getSelectNum());
+    }
+
+    @Test
+    public void testEventDetailsUpdateKeepsEntrants() {
+        store.putEvent(event("details", 3, null), error -> assertNull(error));
+        // A copy with only some of its entrants loaded is never written back over the stored event
+        final Exception[] failure = {null};
+        store.putEvent(event("details", 1, null), error -> failure[0] = error);
+        assertNotNull(failure[0]);
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("name", "Renamed");
+        store.updateEvent("details", fields, error -> assertNull(error));
+        assertEquals("Renamed", stored("details").getName());
+        assertEquals(3, stored("details").getWaitingCount());
+    }
+
+    @Test
+    public void testProfileFieldUpdate() {
+        store.putProfile(new Profile("a", "Alice", "123", "a@nmail.com"), error -> { });
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("notificationPref", false);
+        store.updateProfile("a", fields, error -> assertNull(error));
+
+        final Profile[] found = {null};
+        store.getProfile("a", profile -> found[0] = profile);
+        assertNotNull(found[0]);
+        assertEquals("Alice", found[0].getName());
+        assertTrue(!found[0].isNotificationPref());
+
+        fields.put("unknown", 1);
+        final Exception[] failure = {null};
+        store.updateProfile("a", fields, error -> failure[0] = error);
+        assertNotNull(failure[0]);
+    }
+
+    @Test
+    public void testInboxPagesAndUnreadCounts() {
+        // 120 notifications for one entrant and 30 for another, several sent at the same time
+        List<Notif> sent = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            Notif notif = new Notif(i < 120 ? "guid-a" : "guid-b", "message " + i);
+            notif.setTime(new Date(1_760_000_000_000L + (i / 3) * 1000L));
+            sent.add(notif);
+        }
+        store.addNotifications(sent, error -> assertNull(error));
+
+        final long[] unread = {0};
+        store.getUnreadCount("guid-a", (count, error) -> unread[0] = count);
+        assertEquals(120, unread[0]);
+
+        // Pages never overlap or skip, and reading them reads no more than was asked for
+        List<Notif> inbox = new ArrayList<>();
+        final Notif[] cursor = {null};
+        final boolean[] more = {true};
+        int pages = 0;
+        while (more[0]) {
+            int readsBefore = store.getReads();
+            store.getNotificationPage("guid-a", cursor[0], INBOX_PAGE_SIZE, (page, next, error) -> {
+                inbox.addAll(page);
+                cursor[0] = next;
+                more[0] = next != null;
+            });
+            assertTrue(store.getReads() - readsBefore <= INBOX_PAGE_SIZE);
+            pages++;
+        }
+        assertEquals(3, pages);
+        assertEquals(120, inbox.size());
+        assertEquals(120, inbox.stream().map(Notif::getNotifId).distinct().count());
+        for (int i = 1; i < inbox.size(); i++) {
+            assertTrue(NotificationStore.NEWEST_FIRST.compare(inbox.get(i - 1), inbox.get(i)) < 0);
+        }
+
+        // The admin log is paged the same way
+        final int[] logged = {0};
+        store.getNotificationPage(null, null, INBOX_PAGE_SIZE, (page, next, error) -> logged[0] = page.size());
+        assertEquals(INBOX_PAGE_SIZE, logged[0]);
+
+        // Marking read takes off only what was unread
+        store.markRead("guid-a", inbox.subList(0, 50), error -> assertNull(error));
+        store.markRead("guid-a", inbox.subList(40, 60), error -> assertNull(error));
+        store.getUnreadCount("guid-a", (count, error) -> unread[0] = count);
+        assertEquals(60, unread[0]);
+        store.getUnreadCount("guid-b", (count, error) -> unread[0] = count);
+        assertEquals(30, unread[0]);
+        store.getNotificationPage("guid-a", null, 1, (page, next, error) -> assertFalse(page.get(0).isUnread()));
+    }
+
+    @Test
+    public void testMarkReadSkipsNotificationsWithoutReadField() {
+        store.addNotifications(Collections.singletonList(new Notif("guid-a", "new")), error -> assertNull(error));
+        // Stored before notifications had a read field, so it was never counted
+        Notif legacy = new Notif();
+        legacy.setTarget("guid-a");
+        legacy.setMessage("old");
+        legacy.setTime(new Date(1_700_000_000_000L));
+        store.addNotifications(Collections.singletonList(legacy), error -> assertNull(error));
+
+        final long[] unread = {0};
+        store.getUnreadCount("guid-a", (count, error) -> unread[0] = count);
+        assertEquals(1, unread[0]);
+
+        List<Notif> inbox = new ArrayList<>();
+        store.getNotificationPage("guid-a", null, INBOX_PAGE_SIZE, (page, next, error) -> inbox.addAll(page));
+        assertEquals(2, inbox.size());
+        assertNull(inbox.get(1).getRead());
+        store.markRead("guid-a", inbox, error -> assertNull(error));
+        store.getUnreadCount("guid-a", (count, error) -> unread[0] = count);
+        assertEquals(0, unread[0]);
+        store.markRead("guid-a", inbox, error -> assertNull(error));
+        store.getUnreadCount("guid-a", (count, error) -> unread[0] = count);
+        assertEquals(0, unread[0]);
+    }
+
+    @Test
+    public void testRetriedBatchCountsNotificationsOnce() {
+        List<Notif> sent = new ArrayList<>();
+        sent.add(new Notif("guid-a", "first"));
+        sent.add(new Notif("guid-a", "second"));
+        LotteryCommit.Batch batch = new LotteryCommit.Batch(null, sent, "fanout-0");
+        store.commit(batch, error -> assertNull(error));
+
+        final long[] unread = {0};
+        List<Notif> inbox = new ArrayList<>();
+        store.getNotificationPage("guid-a", null, INBOX_PAGE_SIZE, (page, next, error) -> inbox.addAll(page));
+        store.markRead("guid-a", inbox.subList(0, 1), error -> assertNull(error));
+
+        // The batch is sent again, as after a kill before its success was recorded
+        store.commit(batch, error -> assertNull(error));
+        store.getUnreadCount("guid-a", (count, error) -> unread[0] = count);
+        assertEquals(1, unread[0]);
+        List<Notif> after = new ArrayList<>();
+        store.getNotificationPage("guid-a", null, INBOX_PAGE_SIZE, (page, next, error) -> after.addAll(page));
+        assertEquals(2, after.size());
+        assertEquals(1, after.stream().filter(Notif::isUnread).count());
+    }
+
+    @Test
+    public void testFeedPagesInEndDateOrder() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 55; i++) {
+            store.putEvent(event("open-" + i, 0, new Date(now + (60 - i) * DAY_MILLIS)), error -> { });
+        }
+        for (int i = 0; i < 5; i++) {
+            store.putEvent(event("ended-" + i, 0, new Date(now - DAY_MILLIS)), error -> { });
+        }
+
+        List<Event> shown = new ArrayList<>();
+        EventQueryPlan plan = EventQueryPlan.feed(false, new Date(now));
+        EventFeed feed = new EventFeed((cursor, limit, callback) -> store.loadPage(plan, cursor, limit, callback),
+                (page, error) -> shown.addAll(page));
+        while (!feed.isEndReached()) {
+            feed.loadMore();
+        }
+
+        assertEquals(55, shown.size());
+        for (int i = 1; i < shown.size(); i++) {
+            assertTrue(shown.get(i - 1).getEndDate().before(shown.get(i).getEndDate()));
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkFanOutWithLatency() throws InterruptedException {
+        int count = 5_000;
+        store.setLatencyMillis(20);
+        CountDownLatch finished = new CountDownLatch(1);
+        final int[] sent = {0};
+
+        long start = System.nanoTime();
+        fanOut().send(notifications(count), null, (sentBatches, failedBatches, error) -> {
+            sent[0] = sentBatches;
+            finished.countDown();
+        });
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+
+        int batches = (count + LotteryCommit.MAX_BATCH_NOTIFICATIONS - 1) / LotteryCommit.MAX_BATCH_NOTIFICATIONS;
+        assertEquals(batches, sent[0]);
+        Benchmark.report(String.format(Locale.US,
+                "%,d notifications in %d batches at 20 ms latency: %.1f ms (%d in flight)",
+                count, batches, elapsed / 1e6, NotificationFanOut.DEFAULT_MAX_IN_FLIGHT));
+    }
+}
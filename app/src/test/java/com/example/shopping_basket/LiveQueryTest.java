@@ -0,0 +1,143 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that {@link LiveQuery} applies change deltas in order and shares one listener
+ * between its observers, using a hand-driven stand-in for a Firestore snapshot listener.
+ */
+public class LiveQueryTest {
+
+    /**
+     * Counts listeners started and removed, and lets the test push changes to the live one.
+     */
+    private static class ManualSource implements LiveQuery.Source<String> {
+        LiveQuery.ChangeListener<String> listener;
+        int started = 0;
+        int removed = 0;
+
+        @Override
+        public LiveQuery.Registration listen(LiveQuery.ChangeListener<String> listener) {
+            this.listener = listener;
+            started++;
+            return () -> removed++;
+        }
+
+        @SafeVarargs
+        private final void push(LiveQuery.Change<String>... changes) {
+            listener.onCallback(Arrays.asList(changes), null);
+        }
+    }
+
+    private static LiveQuery.Change<String> added(String id, int index) {
+        return new LiveQuery.Change<>(LiveQuery.ChangeType.ADDED, id, id, -1, index);
+    }
+
+    private static LiveQuery.Change<String> modified(String id, String item, int oldIndex, int newIndex) {
+        return new LiveQuery.Change<>(LiveQuery.ChangeType.MODIFIED, id, item, oldIndex, newIndex);
+    }
+
+    private static LiveQuery.Change<String> removed(String id, int index) {
+        return new LiveQuery.Change<>(LiveQuery.ChangeType.REMOVED, id, null, index, -1);
+    }
+
+    @Test
+    public void testDeltasApplyInOrder() {
+        ManualSource source = new ManualSource();
+        LiveQuery<String> query = new LiveQuery<>(source);
+        List<List<String>> seen = new ArrayList<>();
+        query.observe((items, changes, error) -> seen.add(items));
+
+        source.push(added("a", 0), added("b", 1), added("c", 2));
+        assertEquals(Arrays.asList("a", "b", "c"), query.getItems());
+
+        // "a" changes and moves to the end, "b" is removed, "d" arrives at the front
+        source.push(modified("a", "a2", 0, 2), removed("b", 0), added("d", 0));
+        assertEquals(Arrays.asList("d", "c", "a2"), query.getItems());
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    public void testObserversShareOneListener() {
+        ManualSource source = new ManualSource();
+        LiveQuery<String> query = new LiveQuery<>(source);
+        List<String> first = new ArrayList<>();
+        query.observe((items, changes, error) -> {
+            first.clear();
+            first.addAll(items);
+        });
+        source.push(added("a", 0), added("b", 1));
+
+        // A late observer is caught up without a second listener
+        List<LiveQuery.Change<String>> replayed = new ArrayList<>();
+        LiveQuery.Observer<String> second = (items, changes, error) -> replayed.addAll(changes);
+        query.observe(second);
+        assertEquals(1, source.started);
+        assertEquals(2, replayed.size());
+        assertEquals(LiveQuery.ChangeType.ADDED, replayed.get(1).getType());
+        assertEquals(1, replayed.get(1).getNewIndex());
+
+        source.push(added("c", 2));
+        assertEquals(Arrays.asList("a", "b", "c"), first);
+        assertEquals(3, replayed.size());
+
+        query.removeObserver(second);
+        assertEquals(0, source.removed);
+        assertTrue(query.hasObservers());
+    }
+
+    @Test
+    public void testLastObserverRemovesListener() {
+        ManualSource source = new ManualSource();
+        LiveQuery<String> query = new LiveQuery<>(source);
+        LiveQuery.Observer<String> observer = (items, changes, error) -> { };
+        query.observe(observer);
+        source.push(added("a", 0));
+
+        query.removeObserver(observer);
+        assertEquals(1, source.removed);
+        assertFalse(query.hasObservers());
+        assertTrue(query.getItems().isEmpty());
+
+        // Observing again starts a fresh listener
+        query.observe(observer);
+        assertEquals(2, source.started);
+    }
+
+    @Test
+    public void testErrorRestartsListener() {
+        ManualSource source = new ManualSource();
+        LiveQuery<String> query = new LiveQuery<>(source);
+        List<Exception> errors = new ArrayList<>();
+        query.observe((items, changes, error) -> {
+            if (error != null) {
+                errors.add(error);
+            }
+        });
+
+        source.push(added("a", 0));
+        source.listener.onCallback(new ArrayList<>(), new Exception("permission denied"));
+        assertEquals(1, errors.size());
+        assertNotNull(errors.get(0));
+        assertFalse(query.hasObservers());
+        assertTrue(query.getItems().isEmpty());
+
+        // The new listener's first snapshot starts from empty results, so nothing is duplicated
+        List<List<String>> seen = new ArrayList<>();
+        query.observe((items, changes, error) -> seen.add(items));
+        assertEquals(2, source.started);
+        source.push(added("a", 0));
+        assertEquals(Arrays.asList("a"), query.getItems());
+        assertEquals(1, seen.size());
+        assertEquals(1, errors.size());
+    }
+}
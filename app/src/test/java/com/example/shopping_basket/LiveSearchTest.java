@@ -0,0 +1,165 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that typing only delivers the results of the last search, including over a feed of
+ * 10,000 events, and times each keystroke on the calling thread as a {@link Benchmark}.
+ */
+public class LiveSearchTest {
+    private static final String[] WORDS = {"swim", "chess", "yoga", "pottery", "soccer", "piano", "hike",
+            "robotics", "baking", "choir", "lesson", "club", "meet", "beginner", "family", "night"};
+
+    private final List<String> delivered = new ArrayList<>();
+    private final List<List<Event>> results = new ArrayList<>();
+    private CountDownLatch deliveries;
+    private LiveSearch search;
+
+    @Before
+    public void setUp() {
+        deliveries = new CountDownLatch(1);
+        search = new LiveSearch(Executors.newSingleThreadScheduledExecutor(), Runnable::run, (text, found) -> {
+            synchronized (delivered) {
+                delivered.add(text);
+                results.add(found);
+            }
+            deliveries.countDown();
+        }, 50);
+    }
+
+    @After
+    public void tearDown() {
+        search.close();
+    }
+
+    private Event event(String id, String name, String desc) {
+        Event event = new Event(null, name, desc, "", 0, 0, null, null, null);
+        event.setEventId(id);
+        return event;
+    }
+
+    @Test
+    public void testDeliversOnlyTheLastSearch() throws InterruptedException {
+        List<Event> events = Arrays.asList(event("a", "Swim meet", ""), event("b", "Swim club", "Swim every week"),
+                event("c", "Chess club", ""));
+        search.add(events);
+        for (String typed : new String[] {"s", "sw", "swi", "swim"}) {
+            search.search(typed, events);
+        }
+
+        assertTrue(deliveries.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        synchronized (delivered) {
+            assertEquals(Arrays.asList("swim"), delivered);
+            List<Event> found = results.get(0);
+            assertEquals(2, found.size());
+            assertEquals("b", found.get(0).getEventId());
+        }
+    }
+
+    @Test
+    public void testOnlyCandidatesAreReturned() throws InterruptedException {
+        List<Event> events = Arrays.asList(event("a", "Swim meet", ""), event("b", "Swim club", ""));
+        search.add(events);
+        search.search("swim", events.subList(0, 1));
+
+        assertTrue(deliveries.await(2, TimeUnit.SECONDS));
+        synchronized (delivered) {
+            assertEquals(1, results.get(0).size());
+            assertEquals("a", results.get(0).get(0).getEventId());
+        }
+    }
+
+    @Test
+    public void testCancelDropsPendingSearch() throws InterruptedException {
+        List<Event> events = Arrays.asList(event("a", "Swim meet", ""));
+        search.add(events);
+        search.search("swim", events);
+        search.cancel();
+
+        assertTrue(!deliveries.await(200, TimeUnit.MILLISECONDS));
+    }
+
+    private List<Event> largeFeed(int count) {
+        Random random = new Random(1);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            String desc = WORDS[random.nextInt(WORDS.length)] + " for everyone, session " + i;
+            events.add(event("e" + i, name, desc));
+        }
+        return events;
+    }
+
+    @Test
+    public void testTypingOverLargeFeed() throws InterruptedException {
+        List<Event> events = largeFeed(10_000);
+        search.add(events);
+
+        // Keystrokes arrive faster than the debounce, as when typing quickly
+        String query = "beginner swim";
+        for (int i = 1; i <= query.length(); i++) {
+            search.search(query.substring(0, i), events);
+            Thread.sleep(10);
+        }
+        assertTrue(deliveries.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        int expected = 0;
+        for (Event event : events) {
+            String text = (event.getName() + " " + event.getDesc()).toLowerCase(Locale.ROOT);
+            if (text.contains("beginner") && text.contains("swim")) {
+                expected++;
+            }
+        }
+        synchronized (delivered) {
+            assertEquals(Arrays.asList(query), delivered);
+            for (Event event : results.get(0)) {
+                String text = (event.getName() + " " + event.getDesc()).toLowerCase(Locale.ROOT);
+                assertTrue(text.contains("beginner") && text.contains("swim"));
+            }
+            assertEquals(expected, results.get(0).size());
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkTypingOverLargeFeed() throws InterruptedException {
+        int count = 10_000;
+        List<Event> events = largeFeed(count);
+        search.add(events);
+
+        // Keystrokes arrive faster than the debounce, as when typing quickly
+        String query = "beginner swim";
+        long slowestKeystroke = 0;
+        long start = System.nanoTime();
+        for (int i = 1; i <= query.length(); i++) {
+            long keystroke = System.nanoTime();
+            search.search(query.substring(0, i), events);
+            slowestKeystroke = Math.max(slowestKeystroke, System.nanoTime() - keystroke);
+            Thread.sleep(10);
+        }
+        assertTrue(deliveries.await(10, TimeUnit.SECONDS));
+        long untilResults = System.nanoTime() - start;
+
+        Benchmark.report(String.format(Locale.US,
+                "%,d events, %d keystrokes: slowest keystroke %.3f ms on the calling thread, "
+                        + "results %.1f ms after the first keystroke (%d found)",
+                count, query.length(), slowestKeystroke / 1e6, untilResults / 1e6, results.get(0).size()));
+    }
+}
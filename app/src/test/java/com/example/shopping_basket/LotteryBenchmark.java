@@ -0,0 +1,79 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares drawing 5k winners from a 100k waiting list with {@link LotteryEngine}
+ * against the previous approach of removing each winner from an ArrayList,
+ * and reports the cost of a weighted draw over the same pool.
+ */
+@Category(Benchmark.class)
+public class LotteryBenchmark {
+    private static final int ENTRANTS = 100_000;
+    private static final int WINNERS = 5_000;
+    private static final int ROUNDS = 5;
+
+    private ArrayList<Profile> entrants(){
+        ArrayList<Profile> profiles = new ArrayList<>(ENTRANTS);
+        for(int i = 0; i < ENTRANTS; i++){
+            profiles.add(new Profile("guid-" + i, "Entrant " + i, "", "entrant" + i + "@nmail.com"));
+        }
+        return profiles;
+    }
+
+    /**
+     * Copy of the draw loop runLottery used before, which shifts the list on every removal.
+     */
+    private ArrayList<Profile> removeEachWinner(ArrayList<Profile> pool, Random lottery){
+        ArrayList<Profile> waitingList = new ArrayList<>(pool);
+        ArrayList<Profile> winners = new ArrayList<>();
+        for(int i = 0; i < WINNERS; i++){
+            int winner = lottery.nextInt(waitingList.size());
+            winners.add(waitingList.get(winner));
+            waitingList.remove(winner);
+        }
+        return winners;
+    }
+
+    @Test
+    public void benchmarkDraw(){
+        ArrayList<Profile> pool = entrants();
+        long beforeNanos = 0;
+        long afterNanos = 0;
+        long weightedNanos = 0;
+        double[] weights = new double[ENTRANTS];
+        for(int i = 0; i < ENTRANTS; i++){
+            weights[i] = 1 + i % 4;
+        }
+
+        for(int round = 0; round < ROUNDS; round++){
+            long start = System.nanoTime();
+            ArrayList<Profile> before = removeEachWinner(pool, new Random(round));
+            beforeNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ArrayList<Profile> after = LotteryEngine.draw(pool, WINNERS, LotteryEngine.seeded(round));
+            afterNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ArrayList<Profile> weighted = LotteryEngine.drawWeighted(pool, weights, WINNERS, LotteryEngine.seeded(round));
+            weightedNanos += System.nanoTime() - start;
+
+            assertEquals(WINNERS, before.size());
+            assertEquals(WINNERS, new HashSet<>(after).size());
+            assertEquals(WINNERS, new HashSet<>(weighted).size());
+        }
+
+        Benchmark.report(String.format(Locale.US,
+                "%,d entrants / %,d winners: before %.2f ms/draw, after %.2f ms/draw, weighted %.2f ms/draw",
+                ENTRANTS, WINNERS, beforeNanos / 1e6 / ROUNDS, afterNanos / 1e6 / ROUNDS, weightedNanos / 1e6 / ROUNDS));
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.shopping_basket;
+
+import static com.example.shopping_basket.NotificationFanOutTest.notifications;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the lottery write path against an in-memory stand-in for Firestore.
+ * The stand-in applies each batch all at once, the way a Firestore WriteBatch does,
+ * and can be told to fail a given batch.
+ */
+public class LotteryCommitTest {
+    private Profile owner;
+    private Event event;
+
+    /**
+     * Stores the event's lists by name as GUIDs and counts the notifications written.
+     */
+    private static class MemorySink implements LotteryCommit.BatchSink {
+        final Map<String, List<String>> lists = new LinkedHashMap<>();
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        final List<Notif> notifications = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        int failAt = -1;
+
+        MemorySink(Event stored) {
+            lists.put(EventDelta.WAITING_LIST, guids(stored.getWaitingList()));
+            lists.put(EventDelta.INVITE_LIST, guids(stored.getInviteList()));
+            lists.put(EventDelta.ENROLL_LIST, guids(stored.getEnrollList()));
+            lists.put(EventDelta.CANCEL_LIST, guids(stored.getCancelList()));
+        }
+
+        @Override
+        public void commit(LotteryCommit.Batch batch, LotteryCommit.CommitCallback callback) {
+            if (batchSizes.size() == failAt) {
+                callback.onCallback(new Exception("injected failure"));
+                return;
+            }
+            batchSizes.add(batch.getWriteCount());
+            EventDelta delta = batch.getDelta();
+            if (delta != null) {
+                for (Map.Entry<String, ArrayList<Profile>> entry : delta.getRemoved().entrySet()) {
+                    lists.get(entry.getKey()).removeAll(guids(entry.getValue()));
+                }
+                for (Map.Entry<String, ArrayList<Profile>> entry : delta.getAdded().entrySet()) {
+                    lists.get(entry.getKey()).addAll(guids(entry.getValue()));
+                }
+                fields.putAll(delta.getFields());
+            }
+            notifications.addAll(batch.getNotifications());
+            callback.onCallback(null);
+        }
+
+        static List<String> guids(List<Profile> profiles) {
+            List<String> guids = new ArrayList<>();
+            for (Profile i : profiles) {
+                guids.add(i.getGuid());
+            }
+            return guids;
+        }
+    }
+
+    private NotificationFanOut fanOut(MemorySink sink) {
+        return fanOut(sink, new NotificationFanOutTest.MemoryStore());
+    }
+
+    private NotificationFanOut fanOut(MemorySink sink, NotificationFanOutTest.MemoryStore store) {
+        return new NotificationFanOut(sink, (task, delayMillis) -> task.run(), store);
+    }
+
+    @Before
+    public void setUp() {
+        owner = new Profile("owner", "Owner", "", "owner@nmail.com");
+        event = new Event(owner, "Lottery", "", 0, 0, null, null, null);
+    }
+
+    private void join(int count) {
+        for (int i = 0; i < count; i++) {
+            event.joinEvent(new Profile("guid-" + i, "Entrant " + i, "", "entrant" + i + "@nmail.com"));
+        }
+    }
+
+    @Test
+    public void testDeltaMatchesEvent() {
+        join(50);
+        MemorySink sink = new MemorySink(event);
+        event.setSelectNum(10);
+        ArrayList<Invite> invites = event.runLottery(LotteryStrategy.UNIFORM, 7L);
+
+        final boolean[] done = {false};
+        LotteryCommit.commit(EventDelta.forLottery(event, invites), notifications(50), sink, fanOut(sink),
+                (eventUpdated, committedBatches, totalBatches, error) -> {
+                    assertNull(error);
+                    assertTrue(eventUpdated);
+                    assertEquals(1, totalBatches);
+                    done[0] = true;
+                });
+
+        assertTrue(done[0]);
+        assertEquals(MemorySink.guids(event.getWaitingList()), sink.lists.get(EventDelta.WAITING_LIST));
+        assertEquals(MemorySink.guids(event.getInviteList()), sink.lists.get(EventDelta.INVITE_LIST));
+        assertEquals(40, sink.fields.get("waitListSize"));
+        assertEquals(7L, sink.fields.get("lotterySeed"));
+        assertEquals(50, sink.notifications.size());
+    }
+
+    @Test
+    public void testLossesAreIncrementedForLosersOnly() {
+        join(50);
+        event.setSelectNum(10);
+        EventDelta first = EventDelta.forLottery(event, event.runLottery(LotteryStrategy.UNIFORM, 7L));
+        // The loss map is never written whole, only one increment per loser of this draw
+        assertFalse(first.getFields().containsKey(EventDelta.LOTTERY_LOSSES));
+        assertEquals(40, first.getLosses().size());
+
+        Event stored = new Event(owner, "Lottery", "", 0, 0, null, null, null);
+        first.applyTo(stored);
+        event.setSelectNum(20);
+        EventDelta second = EventDelta.forLottery(event, event.runLottery(LotteryStrategy.UNIFORM, 8L));
+        assertEquals(30, second.getLosses().size());
+        second.applyTo(stored);
+        assertEquals(event.getLotteryLosses(), stored.getLotteryLosses());
+    }
+
+    @Test
+    public void testBatchesStayWithinLimit() {
+        join(1200);
+        event.setSelectNum(100);
+        ArrayList<Invite> invites = event.runLottery(LotteryStrategy.UNIFORM, 11L);
+        EventDelta delta = EventDelta.forLottery(event, invites);
+
+        List<LotteryCommit.Batch> batches = LotteryCommit.plan(delta, notifications(1200), LotteryCommit.MAX_BATCH_WRITES);
+        // Every notification goes to a different entrant, so each one also writes an unread count
+        assertEquals(5, batches.size());
+        assertSame(delta, batches.get(0).getDelta());
+        int notifs = 0;
+        for (LotteryCommit.Batch batch : batches) {
+            assertTrue(batch.getWriteCount() <= LotteryCommit.MAX_BATCH_WRITES);
+            notifs += batch.getNotifications().size();
+        }
+        assertEquals(1200, notifs);
+
+        // Notifications to the same entrant share one unread count write
+        List<Notif> repeated = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            repeated.add(new Notif("guid-" + (i % 2), "message"));
+        }
+        List<LotteryCommit.Batch> shared = LotteryCommit.plan(new EventDelta(event), repeated,
+                LotteryCommit.MAX_BATCH_WRITES);
+        assertEquals(2, shared.size());
+        assertEquals(LotteryCommit.MAX_BATCH_WRITES, shared.get(0).getWriteCount());
+        assertEquals(2, shared.get(0).getTargets().size());
+        assertNull(batches.get(1).getDelta());
+        assertNull(batches.get(2).getDelta());
+    }
+
+    @Test
+    public void testFailureBeforeEventUpdate() {
+        join(20);
+        MemorySink sink = new MemorySink(event);
+        sink.failAt = 0;
+        event.setSelectNum(5);
+        ArrayList<Invite> invites = event.runLottery(LotteryStrategy.UNIFORM, 3L);
+
+        final boolean[] done = {false};
+        LotteryCommit.commit(EventDelta.forLottery(event, invites), notifications(20), sink, fanOut(sink),
+                (eventUpdated, committedBatches, totalBatches, error) -> {
+                    assertFalse(eventUpdated);
+                    assertEquals(0, committedBatches);
+                    assertNotNull(error);
+                    done[0] = true;
+                });
+
+        assertTrue(done[0]);
+        assertEquals(20, sink.lists.get(EventDelta.WAITING_LIST).size());
+        assertTrue(sink.lists.get(EventDelta.INVITE_LIST).isEmpty());
+        assertTrue(sink.notifications.isEmpty());
+    }
+
+    @Test
+    public void testFailureAfterEventUpdate() {
+        join(800);
+        MemorySink sink = new MemorySink(event);
+        sink.failAt = 1;
+        event.setSelectNum(100);
+        ArrayList<Invite> invites = event.runLottery(LotteryStrategy.UNIFORM, 5L);
+
+        final boolean[] done = {false};
+        LotteryCommit.commit(EventDelta.forLottery(event, invites), notifications(800), sink, fanOut(sink),
+                (eventUpdated, committedBatches, totalBatches, error) -> {
+                    assertTrue(eventUpdated);
+                    assertEquals(1, committedBatches);
+                    assertEquals(4, totalBatches);
+                    assertNotNull(error);
+                    done[0] = true;
+                });
+
+        assertTrue(done[0]);
+        assertEquals(100, sink.lists.get(EventDelta.INVITE_LIST).size());
+    }
+
+    @Test
+    public void testRemainingNotificationsSavedBeforeEventUpdate() {
+        join(800);
+        NotificationFanOutTest.MemoryStore store = new NotificationFanOutTest.MemoryStore();
+        List<Integer> savedAtEventBatch = new ArrayList<>();
+        MemorySink sink = new MemorySink(event) {
+            @Override
+            public void commit(LotteryCommit.Batch batch, LotteryCommit.CommitCallback callback) {
+                if (batch.getDelta() != null) {
+                    // Killed here, the notifications that did not fit would still be resumed
+                    savedAtEventBatch.add(store.checkpoints.size());
+                }
+                super.commit(batch, callback);
+            }
+        };
+        sink.failAt = 0;
+        event.setSelectNum(100);
+        ArrayList<Invite> invites = event.runLottery(LotteryStrategy.UNIFORM, 5L);
+
+        LotteryCommit.commit(EventDelta.forLottery(event, invites), notifications(800), sink, fanOut(sink, store),
+                (eventUpdated, committedBatches, totalBatches, error) -> assertFalse(eventUpdated));
+
+        assertEquals(1, (int) savedAtEventBatch.get(0));
+        // The event change failed, so they must not go out
+        assertTrue(store.checkpoints.isEmpty());
+        assertTrue(sink.notifications.isEmpty());
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks batching, bounded concurrency, retries and resuming of {@link NotificationFanOut}
+ * against in-memory stand-ins for Firestore and the checkpoint store.
+ */
+public class NotificationFanOutTest {
+
+    /**
+     * Keeps checkpoints in memory.
+     */
+    static class MemoryStore implements NotificationFanOut.CheckpointStore {
+        final Map<String, NotificationFanOut.Checkpoint> checkpoints = new LinkedHashMap<>();
+        int saves = 0;
+
+        @Override
+        public void save(NotificationFanOut.Checkpoint checkpoint) {
+            checkpoints.put(checkpoint.getId(), checkpoint);
+            saves++;
+        }
+
+        @Override
+        public void markSent(NotificationFanOut.Checkpoint checkpoint, int index) {
+            // The stored checkpoint is the same object, already marked
+        }
+
+        @Override
+        public List<NotificationFanOut.Checkpoint> loadAll() {
+            return new ArrayList<>(checkpoints.values());
+        }
+
+        @Override
+        public void delete(String id) {
+            checkpoints.remove(id);
+        }
+    }
+
+    /**
+     * Holds each batch until the test completes it, and stores committed notifications by document id.
+     */
+    private static class HeldSink implements LotteryCommit.BatchSink {
+        final List<LotteryCommit.Batch> held = new ArrayList<>();
+        final List<LotteryCommit.CommitCallback> callbacks = new ArrayList<>();
+        final Map<String, Notif> documents = new HashMap<>();
+        int maxHeld = 0;
+
+        @Override
+        public void commit(LotteryCommit.Batch batch, LotteryCommit.CommitCallback callback) {
+            held.add(batch);
+            callbacks.add(callback);
+            maxHeld = Math.max(maxHeld, held.size());
+        }
+
+        void complete(Exception error) {
+            LotteryCommit.Batch batch = held.remove(0);
+            LotteryCommit.CommitCallback callback = callbacks.remove(0);
+            if (error == null) {
+                for (int i = 0; i < batch.getNotifications().size(); i++) {
+                    documents.put(batch.getKey() + "-" + i, batch.getNotifications().get(i));
+                }
+            }
+            callback.onCallback(error);
+        }
+    }
+
+    /**
+     * Records retry delays and runs retries on demand.
+     */
+    private static class QueueScheduler implements NotificationFanOut.Scheduler {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(task);
+            delays.add(delayMillis);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    // Notifications to count distinct entrants, shared with the other fan-out tests
+    static List<Notif> notifications(int count) {
+        List<Notif> notifs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            notifs.add(new Notif("guid-" + i, "message"));
+        }
+        return notifs;
+    }
+
+    @Test
+    public void testBoundedConcurrencyAndProgress() {
+        HeldSink sink = new HeldSink();
+        MemoryStore store = new MemoryStore();
+        NotificationFanOut fanOut = new NotificationFanOut(sink, new QueueScheduler(), store, 100, 3, 5, 500);
+        List<Integer> progress = new ArrayList<>();
+        final int[] result = {-1};
+
+        fanOut.send(notifications(1050), (sent, total) -> {
+            assertEquals(1050, total);
+            progress.add(sent);
+        }, (sentBatches, failedBatches, error) -> {
+            assertNull(error);
+            result[0] = sentBatches;
+        });
+
+        assertEquals(3, sink.held.size());
+        while (!sink.held.isEmpty()) {
+            sink.complete(null);
+        }
+        assertEquals(3, sink.maxHeld);
+        assertEquals(11, result[0]);
+        assertEquals(11, progress.size());
+        assertEquals(1050, (int) progress.get(progress.size() - 1));
+        assertEquals(1050, sink.documents.size());
+        assertTrue(store.checkpoints.isEmpty());
+        // The notifications are saved once; progress after that only records batch indexes
+        assertEquals(1, store.saves);
+    }
+
+    @Test
+    public void testRetryWithBackoff() {
+        HeldSink sink = new HeldSink();
+        QueueScheduler scheduler = new QueueScheduler();
+        NotificationFanOut fanOut = new NotificationFanOut(sink, scheduler, new MemoryStore(), 500, 1, 5, 500);
+        final Exception[] result = {new Exception("not finished")};
+
+        fanOut.send(notifications(10), null, (sentBatches, failedBatches, error) -> result[0] = error);
+
+        sink.complete(new Exception("unavailable"));
+        scheduler.runAll();
+        sink.complete(new Exception("unavailable"));
+        scheduler.runAll();
+        sink.complete(null);
+
+        assertNull(result[0]);
+        assertEquals(2, scheduler.delays.size());
+        assertEquals(500L, (long) scheduler.delays.get(0));
+        assertEquals(1000L, (long) scheduler.delays.get(1));
+        assertEquals(NotificationFanOut.MAX_DELAY_MILLIS, fanOut.backoff(20));
+    }
+
+    @Test
+    public void testResumeSendsOnlyUnsentBatches() {
+        HeldSink sink = new HeldSink();
+        QueueScheduler scheduler = new QueueScheduler();
+        MemoryStore store = new MemoryStore();
+        NotificationFanOut fanOut = new NotificationFanOut(sink, scheduler, store, 100, 1, 2, 500);
+        final int[] failed = {0};
+
+        fanOut.send(notifications(250), null, (sentBatches, failedBatches, error) -> {
+            assertNotNull(error);
+            failed[0] = failedBatches;
+        });
+        sink.complete(null);
+        sink.complete(new Exception("unavailable"));
+        scheduler.runAll();
+        sink.complete(new Exception("unavailable"));
+        sink.complete(null);
+
+        assertEquals(1, failed[0]);
+        assertEquals(1, store.checkpoints.size());
+        assertEquals(150, store.loadAll().get(0).getSentCount());
+
+        // A new fan-out, as after a restart, picks up the checkpoint
+        HeldSink restarted = new HeldSink();
+        final int[] resumed = {-1};
+        new NotificationFanOut(restarted, scheduler, store, 100, 1, 2, 500)
+                .resumePending(null, (sentBatches, failedBatches, error) -> resumed[0] = sentBatches);
+        assertEquals(1, restarted.held.size());
+        assertEquals(100, restarted.held.get(0).getNotifications().size());
+        restarted.complete(null);
+
+        assertEquals(1, resumed[0]);
+        assertTrue(store.checkpoints.isEmpty());
+    }
+
+    @Test
+    public void testFileCheckpointStore() throws IOException {
+        File directory = Files.createTempDirectory("fanout").toFile();
+        FileCheckpointStore store = new FileCheckpointStore(directory, Runnable::run);
+        NotificationFanOut.Checkpoint checkpoint = new NotificationFanOut.Checkpoint("send-1", notifications(30), 10);
+        store.save(checkpoint);
+        checkpoint.markSent(1);
+        store.markSent(checkpoint, 1);
+        checkpoint.markSent(2);
+        store.markSent(checkpoint, 2);
+
+        List<NotificationFanOut.Checkpoint> loaded = store.loadAll();
+        assertEquals(1, loaded.size());
+        assertEquals("send-1", loaded.get(0).getId());
+        assertEquals(20, loaded.get(0).getSentCount());
+        assertEquals("guid-29", loaded.get(0).getBatch(2).get(9).getTarget());
+
+        store.delete("send-1");
+        assertTrue(store.loadAll().isEmpty());
+        directory.delete();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the hashes posters are stored under and that chunked posters are rebuilt exactly.
+ */
+public class PosterBlobTest {
+
+    private byte[] bytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testHash() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                PosterBlob.hash("abc".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(64, PosterBlob.hash(new byte[0]).length());
+    }
+
+    @Test
+    public void testSplitAndJoin() {
+        int chunkSize = 1000;
+        for (int size : new int[] {0, 1, chunkSize, chunkSize * 3, chunkSize * 3 + 1}) {
+            byte[] data = bytes(size);
+            List<byte[]> chunks = PosterBlob.split(data, chunkSize);
+
+            assertEquals(Math.max(1, (size + chunkSize - 1) / chunkSize), chunks.size());
+            for (byte[] chunk : chunks) {
+                assertTrue(chunk.length <= chunkSize);
+            }
+            assertArrayEquals(data, PosterBlob.join(chunks));
+        }
+    }
+
+    @Test
+    public void testMatches() {
+        byte[] data = bytes(PosterBlob.CHUNK_SIZE + 1);
+        String hash = PosterBlob.hash(data);
+        assertTrue(PosterBlob.matches(hash, PosterBlob.join(PosterBlob.split(data, PosterBlob.CHUNK_SIZE))));
+
+        data[0]++;
+        assertFalse(PosterBlob.matches(hash, data));
+        assertFalse(PosterBlob.matches(hash, null));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Checks that {@link PosterDiskCache} keys posters by event and hash, survives a restart,
+ * and evicts the least recently used posters when full.
+ */
+public class PosterDiskCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("poster-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private byte[] poster(int size, int fill) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) fill);
+        return data;
+    }
+
+    @Test
+    public void testKeys() {
+        assertEquals("abc_" + PosterDiskCache.LEGACY_HASH, PosterDiskCache.key("abc", null));
+        assertFalse(PosterDiskCache.key("abc", "1234").equals(PosterDiskCache.key("abc", "5678")));
+        // Characters that can't go in a file name, or would break the prefix, are replaced
+        assertEquals("a-b-c_1234", PosterDiskCache.key("a/b_c", "1234"));
+        assertTrue(PosterDiskCache.key("a/b_c", "1234").startsWith(PosterDiskCache.keyPrefix("a/b_c")));
+    }
+
+    @Test
+    public void testPostersSurviveRestart() {
+        PosterDiskCache cache = new PosterDiskCache(directory);
+        byte[] data = poster(100, 1);
+        cache.put(PosterDiskCache.key("a", "1234"), data);
+
+        PosterDiskCache restarted = new PosterDiskCache(directory);
+        assertArrayEquals(data, restarted.get(PosterDiskCache.key("a", "1234")));
+        assertNull(restarted.get(PosterDiskCache.key("a", "5678")));
+        assertEquals(100, restarted.getTotalBytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        PosterDiskCache cache = new PosterDiskCache(directory, 250);
+        cache.put(PosterDiskCache.key("a", "1"), poster(100, 1));
+        cache.put(PosterDiskCache.key("b", "1"), poster(100, 2));
+        assertNotNull(cache.get(PosterDiskCache.key("a", "1")));
+        cache.put(PosterDiskCache.key("c", "1"), poster(100, 3));
+
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getTotalBytes());
+        assertNull(cache.get(PosterDiskCache.key("b", "1")));
+        assertNotNull(cache.get(PosterDiskCache.key("a", "1")));
+        assertEquals(2, directory.listFiles().length);
+
+        // A poster larger than the whole cache is not kept
+        cache.put(PosterDiskCache.key("d", "1"), poster(300, 4));
+        assertNull(cache.get(PosterDiskCache.key("d", "1")));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRemoveEvent() {
+        PosterDiskCache cache = new PosterDiskCache(directory);
+        cache.put(PosterDiskCache.key("a", "1"), poster(10, 1));
+        cache.put(PosterDiskCache.key("a", null), poster(10, 2));
+        cache.put(PosterDiskCache.key("ab", "1"), poster(10, 3));
+
+        cache.remove("a");
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(PosterDiskCache.key("a", "1")));
+        assertNotNull(cache.get(PosterDiskCache.key("ab", "1")));
+        assertEquals(1, new PosterDiskCache(directory).size());
+    }
+}
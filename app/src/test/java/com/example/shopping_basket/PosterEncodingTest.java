@@ -0,0 +1,65 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the rendition sizes and that the quality search finds the highest quality within
+ * a byte budget in a few encodes.
+ */
+public class PosterEncodingTest {
+
+    // Stands in for a JPEG encoder whose output grows with quality
+    private static class FakeEncoder implements PosterEncoding.QualityEncoder {
+        final List<Integer> qualities = new ArrayList<>();
+
+        @Override
+        public byte[] encode(int quality) {
+            qualities.add(quality);
+            return new byte[quality * 1000];
+        }
+    }
+
+    @Test
+    public void testScaledSize() {
+        assertArrayEquals(new int[] {1024, 768}, PosterEncoding.scaledSize(4000, 3000, 1024));
+        assertArrayEquals(new int[] {270, 360}, PosterEncoding.scaledSize(3000, 4000, 360));
+        assertArrayEquals(new int[] {300, 200}, PosterEncoding.scaledSize(300, 200, 360));
+        assertArrayEquals(new int[] {1024, 1}, PosterEncoding.scaledSize(10000, 2, 1024));
+    }
+
+    @Test
+    public void testFitsBudget() {
+        FakeEncoder encoder = new FakeEncoder();
+        byte[] encoded = PosterEncoding.fitToBudget(encoder, 55_500);
+
+        assertEquals(55_000, encoded.length);
+        // One try at the top, then a binary search over the rest
+        assertTrue(encoder.qualities.size() <= 7);
+        assertEquals(PosterEncoding.MAX_QUALITY, (int) encoder.qualities.get(0));
+    }
+
+    @Test
+    public void testSmallImageKeepsTopQuality() {
+        FakeEncoder encoder = new FakeEncoder();
+        byte[] encoded = PosterEncoding.fitToBudget(encoder, PosterEncoding.DETAIL_BUDGET);
+
+        assertEquals(PosterEncoding.MAX_QUALITY * 1000, encoded.length);
+        assertEquals(1, encoder.qualities.size());
+    }
+
+    @Test
+    public void testNothingFitsUsesLowestQuality() {
+        FakeEncoder encoder = new FakeEncoder();
+        byte[] encoded = PosterEncoding.fitToBudget(encoder, 1000);
+
+        assertEquals(PosterEncoding.MIN_QUALITY * 1000, encoded.length);
+        assertTrue(encoder.qualities.size() <= 7);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the sample sizes picked for posters, and estimates the memory a thumbnail takes
+ * when decoded for the card it is shown in, against decoding it in full.
+ * The estimates come from {@link PosterSampling#allocationBytes}, the size a decoder allocates
+ * for the bitmap; nothing is decoded here. The instrumented PosterDecoderTest checks them
+ * against bitmaps decoded on a device.
+ */
+public class PosterSamplingTest {
+
+    @Test
+    public void testSampleSizeCoversView() {
+        assertEquals(1, PosterSampling.sampleSize(512, 512, 0, 0));
+        assertEquals(1, PosterSampling.sampleSize(512, 512, 1080, 540));
+        assertEquals(1, PosterSampling.sampleSize(512, 384, 320, 180));
+        assertEquals(2, PosterSampling.sampleSize(512, 384, 256, 180));
+        assertEquals(4, PosterSampling.sampleSize(2048, 1536, 320, 180));
+        // The height decides for a tall poster in a wide view
+        assertEquals(2, PosterSampling.sampleSize(4000, 1000, 320, 400));
+        // Rounded up, so an odd-sized poster still covers the view
+        assertEquals(4, PosterSampling.sampleSize(1001, 777, 250, 194));
+        assertEquals(251, PosterSampling.sampledSize(1001, 4));
+        assertEquals(195, PosterSampling.sampledSize(777, 4));
+    }
+
+    @Test
+    public void testAllocationBytes() {
+        assertEquals(512 * 384 * 2, PosterSampling.allocationBytes(512, 384, 1, PosterSampling.BYTES_PER_PIXEL_OPAQUE));
+        assertEquals(512 * 384 * 4, PosterSampling.allocationBytes(512, 384, 1, PosterSampling.BYTES_PER_PIXEL_ALPHA));
+        assertEquals(512 * 384 * 2, PosterSampling.allocationBytes(2048, 1536, 4, PosterSampling.BYTES_PER_PIXEL_OPAQUE));
+        assertEquals(251 * 195 * 2, PosterSampling.allocationBytes(1001, 777, 4, PosterSampling.BYTES_PER_PIXEL_OPAQUE));
+    }
+
+    @Test
+    public void testThumbnailAllocationEstimate() {
+        int cardHeight = 180;
+        // Screen densities from mdpi to xxxhdpi, with a 360dp wide screen
+        float[] densities = {1f, 2f, 3f, 4f};
+        // Posters as uploaded now, and a large one from before they were resized
+        int[][] posters = {{512, 512}, {512, 384}, {384, 512}, {2048, 1536}};
+
+        for (int[] poster : posters) {
+            for (float density : densities) {
+                int reqWidth = Math.round(360 * density);
+                int reqHeight = Math.round(cardHeight * density);
+                int sampleSize = PosterSampling.sampleSize(poster[0], poster[1], reqWidth, reqHeight);
+                long full = PosterSampling.allocationBytes(poster[0], poster[1], 1, PosterSampling.BYTES_PER_PIXEL_ALPHA);
+                long sampled = PosterSampling.allocationBytes(poster[0], poster[1], sampleSize,
+                        PosterSampling.BYTES_PER_PIXEL_OPAQUE);
+
+                assertTrue(sampled * 2 <= full);
+            }
+        }
+
+        // A large poster on a small screen needs a sixteenth of the pixels, at half the bytes each
+        long full = PosterSampling.allocationBytes(2048, 1536, 1, PosterSampling.BYTES_PER_PIXEL_ALPHA);
+        long sampled = PosterSampling.allocationBytes(2048, 1536, 4, PosterSampling.BYTES_PER_PIXEL_OPAQUE);
+        assertEquals(full / 32, sampled);
+    }
+}
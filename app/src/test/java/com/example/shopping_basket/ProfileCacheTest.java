@@ -0,0 +1,127 @@
+package com.example.shopping_basket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks eviction, de-duplication of concurrent loads, invalidation and the hit rate of
+ * {@link ProfileCache}, with a loader that holds each load until the test completes it.
+ */
+public class ProfileCacheTest {
+
+    /**
+     * Records each load and answers it when the test calls {@link #complete()}.
+     */
+    private static class HeldLoader implements ProfileCache.Loader {
+        final List<String> loaded = new ArrayList<>();
+        final List<Runnable> held = new ArrayList<>();
+
+        @Override
+        public void load(String guid, ProfileCache.ProfileCallback callback) {
+            loaded.add(guid);
+            held.add(() -> callback.onCallback(new Profile(guid, "Name " + guid, "", guid + "@nmail.com")));
+        }
+
+        void complete() {
+            List<Runnable> loads = new ArrayList<>(held);
+            held.clear();
+            for (Runnable load : loads) {
+                load.run();
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentLoadsShareOneRead() {
+        HeldLoader loader = new HeldLoader();
+        ProfileCache cache = new ProfileCache(loader);
+        List<Profile> results = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            cache.get("a", results::add);
+        }
+        assertEquals(1, loader.loaded.size());
+
+        loader.complete();
+        assertEquals(5, results.size());
+        assertSame(results.get(0), results.get(4));
+
+        cache.get("a", results::add);
+        assertEquals(1, loader.loaded.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        HeldLoader loader = new HeldLoader();
+        ProfileCache cache = new ProfileCache(loader, 3);
+        cache.put(new Profile("a", "A", "", ""));
+        cache.put(new Profile("b", "B", "", ""));
+        cache.put(new Profile("c", "C", "", ""));
+
+        // Touch "a" so "b" becomes the least recently used
+        cache.get("a", profile -> { });
+        cache.put(new Profile("d", "D", "", ""));
+
+        assertEquals(3, cache.size());
+        assertNotNull(cache.peek("a"));
+        assertNull(cache.peek("b"));
+        assertNotNull(cache.peek("d"));
+    }
+
+    @Test
+    public void testInvalidatedLoadIsNotCached() {
+        HeldLoader loader = new HeldLoader();
+        ProfileCache cache = new ProfileCache(loader);
+        List<Profile> results = new ArrayList<>();
+
+        cache.get("a", results::add);
+        cache.invalidate("a");
+        loader.complete();
+
+        // The waiting caller still gets an answer, but the stale copy is not kept
+        assertEquals(1, results.size());
+        assertNull(cache.peek("a"));
+
+        cache.get("a", results::add);
+        assertEquals(2, loader.loaded.size());
+    }
+
+    @Test
+    public void testCallersCannotChangeCachedProfile() {
+        HeldLoader loader = new HeldLoader();
+        ProfileCache cache = new ProfileCache(loader);
+        Profile written = new Profile("a", "A", "", "");
+        cache.put(written);
+        written.setName("Changed after the write");
+
+        List<Profile> results = new ArrayList<>();
+        cache.get("a", results::add);
+        assertEquals("A", results.get(0).getName());
+        results.get(0).setName("Changed by a reader");
+        assertEquals("A", cache.peek("a").getName());
+        assertEquals(0, loader.loaded.size());
+    }
+
+    @Test
+    public void testHitRate() {
+        HeldLoader loader = new HeldLoader();
+        ProfileCache cache = new ProfileCache(loader);
+        assertEquals(0, cache.getHitRate(), 0);
+
+        cache.get("a", profile -> { });
+        loader.complete();
+        for (int i = 0; i < 3; i++) {
+            cache.get("a", profile -> { });
+        }
+        assertEquals(0.75, cache.getHitRate(), 1e-9);
+    }
+}
@@ -1,12 +1,16 @@
 package com.example.shopping_basket;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 
 public class ProjectTest {
     private ArrayList<Profile> testProfileData(){
@@ -192,4 +196,311 @@ public class ProjectTest {
         notifs = events.get(1).notifyInvited("Hello");
         assertEquals(1, notifs.size());
     }
+
+    @Test
+    public void testStatusOf(){
+        ArrayList<Profile> profiles = testProfileData();
+        ArrayList<Event> events = testEventData(profiles);
+        Event event = events.get(0);
+        assertEquals(EntrantStatus.NONE, event.statusOf("0"));
+        event.joinEvent(profiles.get(0));
+        event.joinEvent(profiles.get(1));
+        assertEquals(EntrantStatus.WAITING, event.statusOf("0"));
+        event.leaveEvent(profiles.get(1));
+        assertEquals(EntrantStatus.CANCELLED, event.statusOf("1"));
+        event.runLottery();
+        assertEquals(EntrantStatus.INVITED, event.statusOf("0"));
+        event.enroll(profiles.get(0));
+        assertEquals(EntrantStatus.ENROLLED, event.statusOf("0"));
+
+        //lookups should be rebuilt when the lists are replaced, as on Firestore deserialization
+        Event loaded = new Event();
+        loaded.setWaitingList(event.getWaitingList());
+        loaded.setEnrollList(event.getEnrollList());
+        loaded.setCancelList(event.getCancelList());
+        assertEquals(EntrantStatus.ENROLLED, loaded.statusOf("0"));
+        assertEquals(EntrantStatus.CANCELLED, loaded.statusOf("1"));
+        assertEquals(EntrantStatus.NONE, loaded.statusOf("2"));
+    }
+
+    @Test
+    public void testLotteryReplay(){
+        ArrayList<Profile> profiles = testProfileData();
+        Event first = new Event(profiles.get(0), "Test Event", "This is a test event", 2, 0, null, null, null);
+        Event replay = new Event(profiles.get(0), "Test Event", "This is a test event", 2, 0, null, null, null);
+        for(Profile i : profiles){
+            first.joinEvent(i);
+            replay.joinEvent(i);
+        }
+
+        first.runLottery();
+        assertNotNull(first.getLotterySeed());
+
+        //the recorded seed should pick the same winners from the same waiting list
+        replay.runLottery(first.getLotterySeed());
+        assertEquals(first.getLotterySeed(), replay.getLotterySeed());
+        assertEquals(2, replay.getInviteList().size());
+        for(int i = 0; i < 2; i++){
+            assertEquals(first.getInviteList().get(i).getGuid(), replay.getInviteList().get(i).getGuid());
+        }
+    }
+
+    @Test
+    public void testLotteryStrategies(){
+        ArrayList<Profile> profiles = testProfileData();
+        for(LotteryStrategy strategy : LotteryStrategy.values()){
+            Event event = new Event(profiles.get(0), "Test Event", "This is a test event", 1, 0, null, null, null);
+            for(Profile i : profiles){
+                event.joinEvent(i);
+            }
+            ArrayList<Invite> invites = event.runLottery(strategy, 7);
+            assertEquals(1, invites.size());
+            assertEquals(3, event.getWaitListSize());
+            assertEquals(strategy, event.getLotteryStrategy());
+
+            //everyone left on the waiting list should have the loss recorded
+            for(Profile i : event.getWaitingList()){
+                assertEquals(Integer.valueOf(1), event.getLotteryLosses().get(i.getGuid()));
+            }
+            assertNull(event.getLotteryLosses().get(invites.get(0).getTarget()));
+        }
+    }
+
+    @Test
+    public void testWeightedLotteryReplay(){
+        ArrayList<Profile> profiles = testProfileData();
+        Event first = new Event(profiles.get(0), "Test Event", "This is a test event", 2, 0, null, null, null);
+        Event replay = new Event(profiles.get(0), "Test Event", "This is a test event", 2, 0, null, null, null);
+        for(Profile i : profiles){
+            first.joinEvent(i);
+            replay.joinEvent(i);
+        }
+        HashMap<String, Integer> losses = new HashMap<>();
+        losses.put(profiles.get(1).getGuid(), 3);
+        first.setLotteryLosses(losses);
+
+        first.runLottery(LotteryStrategy.FAVOUR_PREVIOUS_ENTRANTS, 13L);
+        assertEquals(Integer.valueOf(3), first.getLotteryDrawLosses().get(profiles.get(1).getGuid()));
+
+        //the recorded seed and draw losses should pick the same winners from the same waiting list
+        replay.setLotteryLosses(first.getLotteryDrawLosses());
+        replay.runLottery(first.getLotteryStrategy(), first.getLotterySeed());
+        for(int i = 0; i < 2; i++){
+            assertEquals(first.getInviteList().get(i).getGuid(), replay.getInviteList().get(i).getGuid());
+        }
+    }
+
+    @Test
+    public void testLotteryReplayIgnoresLoadOrder(){
+        // Subcollection pages can arrive in any order, so the same entrants loaded differently draw the same
+        ArrayList<Profile> profiles = testProfileData();
+        Event first = new Event(profiles.get(0), "Test Event", "This is a test event", 2, 0, null, null, null);
+        Event replay = new Event(profiles.get(0), "Test Event", "This is a test event", 2, 0, null, null, null);
+        for(int i = 0; i < profiles.size(); i++){
+            first.joinEvent(profiles.get(i));
+            replay.joinEvent(profiles.get(profiles.size() - 1 - i));
+        }
+        first.runLottery(LotteryStrategy.UNIFORM, 21L);
+        replay.runLottery(LotteryStrategy.UNIFORM, 21L);
+        for(int i = 0; i < 2; i++){
+            assertEquals(first.getInviteList().get(i).getGuid(), replay.getInviteList().get(i).getGuid());
+        }
+    }
+
+    @Test
+    public void testStratifiedQuotas(){
+        ArrayList<Integer> pool = new ArrayList<>();
+        int[] strata = new int[10];
+        for(int i = 0; i < 10; i++){
+            pool.add(i);
+            strata[i] = i < 7 ? 0 : 1;
+        }
+        //7 of 10 entrants are in stratum 0, so they should get 3 of the 4 places after rounding
+        ArrayList<Integer> winners = LotteryEngine.drawStratified(pool, strata, 4, LotteryEngine.seeded(11));
+        int first = 0;
+        for(int i : winners){
+            if(i < 7) first++;
+        }
+        assertEquals(4, winners.size());
+        assertEquals(3, first);
+    }
+
+    @Test
+    public void testEntrantPaging(){
+        Event event = new Event(testProfileData().get(0), "Paging", "", 0, 0, null, null, null);
+        for(int i = 0; i < 25; i++){
+            event.joinEvent(new Profile("g" + i, "Entrant " + i, "", ""));
+        }
+        ArrayList<String> cursors = new ArrayList<>();
+        ArrayList<Integer> sizes = new ArrayList<>();
+        String cursor = null;
+        do{
+            event.loadEntrants(EntrantStatus.WAITING, cursor, 10, null, (page, nextCursor, error) -> {
+                sizes.add(page.size());
+                cursors.add(nextCursor);
+            });
+            cursor = cursors.get(cursors.size() - 1);
+        } while(cursor != null);
+        assertEquals(3, sizes.size());
+        assertEquals(10, (int) sizes.get(0));
+        assertEquals(5, (int) sizes.get(2));
+        assertEquals("g9", cursors.get(0));
+    }
+
+    @Test
+    public void testSubcollectionEntrants(){
+        ArrayList<Profile> profiles = testProfileData();
+        Event event = new Event(profiles.get(0), "Subcollection", "", 1, 3, null, null, null);
+        event.setEventId("event");
+        event.setEntrantsInSubcollection(true);
+        event.setWaitingCount(2);
+        event.setCancelledCount(1);
+
+        // Only the entrants in each requested page are fetched and kept on the event
+        ArrayList<EntrantStatus> requested = new ArrayList<>();
+        EntrantSource source = (eventId, status, afterGuid, limit, callback) -> {
+            requested.add(status);
+            ArrayList<Entrant> page = new ArrayList<>();
+            if(status == EntrantStatus.WAITING){
+                page.add(new Entrant(profiles.get(1), status));
+                page.add(new Entrant(profiles.get(2), status));
+            } else if(status == EntrantStatus.CANCELLED){
+                page.add(new Entrant(profiles.get(3), status));
+            }
+            callback.onCallback(page, null, null);
+        };
+        event.loadEntrants(EntrantStatus.WAITING, null, 10, source, (page, nextCursor, error) -> {});
+        assertEquals(EntrantStatus.WAITING, event.statusOf("1"));
+        assertEquals(EntrantStatus.NONE, event.statusOf("3"));
+        event.loadAllEntrants(source, 10, error -> assertNull(error));
+        assertEquals(EntrantStatus.CANCELLED, event.statusOf("3"));
+        assertEquals(5, requested.size());
+
+        // A page that fails to load stops loading and is reported, rather than read as the end of the list
+        Exception failure = new Exception("unavailable");
+        ArrayList<Exception> results = new ArrayList<>();
+        event.loadAllEntrants((eventId, status, afterGuid, limit, callback) -> {
+            requested.add(status);
+            callback.onCallback(new ArrayList<>(), null, status == EntrantStatus.INVITED ? failure : null);
+        }, 10, results::add);
+        assertEquals(1, results.size());
+        assertSame(failure, results.get(0));
+        assertEquals(EntrantStatus.INVITED, requested.get(requested.size() - 1));
+
+        // Counters follow moves, and capacity is checked against the counter
+        event.joinEvent(profiles.get(3));
+        assertEquals(3, event.getWaitListSize());
+        assertEquals(0, event.getCancelledCount());
+        event.joinEvent(profiles.get(0));
+        assertEquals(EntrantStatus.NONE, event.statusOf("0"));
+        event.runLottery(LotteryStrategy.UNIFORM, 1L);
+        assertEquals(2, event.getWaitingCount());
+        assertEquals(1, event.getInvitedCount());
+    }
+
+    @Test
+    public void testToEntrants(){
+        ArrayList<Profile> profiles = testProfileData();
+        Event event = testEventData(profiles).get(1);
+        event.joinEvent(profiles.get(0));
+        event.joinEvent(profiles.get(1));
+        event.joinEvent(profiles.get(2));
+        event.leaveEvent(profiles.get(2));
+        ArrayList<Profile> invited = new ArrayList<>();
+        invited.add(profiles.get(1));
+        event.setInviteList(invited);   // profile 1 is now in both the waiting and invite lists
+
+        ArrayList<Entrant> entrants = event.toEntrants();
+        assertEquals(3, entrants.size());
+        for(Entrant i : entrants){
+            assertEquals(event.statusOf(i.getGuid()), i.getStatus());
+        }
+
+        EventDelta delta = new EventDelta(event).move(profiles.get(0), EntrantStatus.WAITING, EntrantStatus.INVITED);
+        assertEquals(1, delta.getWriteCount());
+        event.setEntrantsInSubcollection(true);
+        delta = new EventDelta(event).move(profiles.get(0), EntrantStatus.WAITING, EntrantStatus.INVITED);
+        assertEquals(2, delta.getWriteCount());
+        assertEquals(-1, (int) delta.getCounts().get("waitingCount"));
+        assertEquals(1, (int) delta.getCounts().get("invitedCount"));
+        assertEquals(EntrantStatus.INVITED, delta.getEntrants().get("0").getStatus());
+    }
+
+    @Test
+    public void testEarlyRegistrationOrder(){
+        // Pages come back in GUID order, but entrants registered in the opposite order
+        Event event = new Event(testProfileData().get(0), "Early", "", 1, 0, null, null, null);
+        event.setEventId("event");
+        event.setEntrantsInSubcollection(true);
+        event.setWaitingCount(20);
+        EntrantSource source = (eventId, status, afterGuid, limit, callback) -> {
+            ArrayList<Entrant> page = new ArrayList<>();
+            if(status == EntrantStatus.WAITING){
+                for(int i = 10; i < 30; i++){
+                    Entrant entrant = new Entrant(new Profile("g" + i, "Entrant " + i, "", ""), status);
+                    entrant.setRegisteredAt(new Date(1000 - i));
+                    page.add(entrant);
+                }
+            }
+            callback.onCallback(page, null, null);
+        };
+        event.loadAllEntrants(source, 100, error -> assertNull(error));
+        assertEquals(new Date(990), event.registeredAt("g10"));
+
+        int first = 0;
+        int last = 0;
+        for(long seed = 0; seed < 2000; seed++){
+            Event draw = new Event(testProfileData().get(0), "Early", "", 1, 0, null, null, null);
+            draw.setEventId("event");
+            draw.setEntrantsInSubcollection(true);
+            draw.setWaitingCount(20);
+            draw.loadAllEntrants(source, 100, error -> {});
+            String winner = draw.runLottery(LotteryStrategy.FAVOUR_EARLY_REGISTRATION, seed).get(0).getTarget();
+            if(winner.equals("g29")) first++;
+            if(winner.equals("g10")) last++;
+        }
+        // g29 registered first, so it has about twice g10's weight
+        assertTrue(first > last * 3 / 2);
+
+        // Moves keep the registration time; joining the waiting list leaves it to the server
+        EventDelta delta = new EventDelta(event).move(event.findEntrant("g10"), EntrantStatus.WAITING, EntrantStatus.INVITED);
+        assertEquals(new Date(990), delta.getEntrants().get("g10").getRegisteredAt());
+        Profile joining = new Profile("g40", "Entrant 40", "", "");
+        event.joinEvent(joining);
+        delta = new EventDelta(event).move(joining, EntrantStatus.NONE, EntrantStatus.WAITING);
+        assertNull(delta.getEntrants().get("g40").getRegisteredAt());
+    }
+
+    @Test
+    public void testRegistrationIndex(){
+        ArrayList<Profile> profiles = testProfileData();
+        Event event = testEventData(profiles).get(1);
+        event.joinEvent(profiles.get(0));
+        event.joinEvent(profiles.get(1));
+        event.leaveEvent(profiles.get(1));
+        assertEquals(2, event.getParticipantGuids().size());
+        assertTrue(event.getParticipantGuids().contains("1"));
+
+        // A first registration adds to the index, a move between lists does not
+        EventDelta delta = new EventDelta(event).move(profiles.get(2), EntrantStatus.NONE, EntrantStatus.WAITING);
+        assertEquals(1, delta.getJoined().size());
+        delta = new EventDelta(event).move(profiles.get(1), EntrantStatus.CANCELLED, EntrantStatus.WAITING);
+        assertTrue(delta.getJoined().isEmpty());
+
+        ArrayList<String> stored = new ArrayList<>();
+        stored.add("0");
+        stored.add("9");
+        RegistrationIndex.Mismatch mismatch = RegistrationIndex.compare("event", stored, event.getParticipantGuids());
+        assertEquals(1, mismatch.getMissing().size());
+        assertEquals("1", mismatch.getMissing().get(0));
+        assertEquals("9", mismatch.getExtra().get(0));
+        assertNull(RegistrationIndex.compare("event", event.getParticipantGuids(), event.getParticipantGuids()));
+
+        // With subcollection storage the index is kept on the event as entrants join
+        Event subcollectionEvent = new Event(profiles.get(0), "Subcollection", "", 1, 0, null, null, null);
+        subcollectionEvent.setEntrantsInSubcollection(true);
+        subcollectionEvent.setParticipantGuids(stored);
+        subcollectionEvent.joinEvent(profiles.get(3));
+        assertEquals(3, subcollectionEvent.getParticipantGuids().size());
+    }
 }